@@ -0,0 +1,372 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Contrast-limited adaptive histogram equalization (CLAHE) for MonoImages.
+ * 
+ * The image is divided into a grid of tiles. A histogram of each tile's pixels
+ * is built (concurrently), clipped to a multiple of its mean bin count (with
+ * the excess redistributed evenly), and converted to a lookup table. Each
+ * pixel is then mapped by bilinearly interpolating the lookup tables of the
+ * four nearest tile centers.
+ * 
+ * As with MonoImageUtil.equalizeHistogram(), zero pixels are treated as
+ * omitted: they are excluded from the histograms and remain zero, while the
+ * other pixels are mapped to [1, MAX_PIXEL_VALUE).
+ * 
+ * The work buffers are retained between calls, so an instance can be applied
+ * to a sequence of frames without allocating; an instance should not be used
+ * by more than one thread at a time.
+ */
+public final class AdaptiveEqualizer extends BaseObject {
+
+  public static final int DEFAULT_GRID = 8;
+  public static final float DEFAULT_CLIP_LIMIT = 2f;
+  public static final int DEFAULT_BINS = 256;
+
+  /**
+   * Set the number of tile columns and rows
+   */
+  public AdaptiveEqualizer withGrid(int columns, int rows) {
+    checkArgument(columns > 0 && rows > 0, "bad grid:", columns, rows);
+    mGrid = new IPoint(columns, rows);
+    return this;
+  }
+
+  /**
+   * Set the clip limit, as a multiple of a histogram's mean bin count; zero
+   * disables clipping (yielding ordinary adaptive equalization)
+   */
+  public AdaptiveEqualizer withClipLimit(float clipLimit) {
+    checkArgument(clipLimit == 0 || clipLimit >= 1, "bad clip limit:", clipLimit);
+    mClipLimit = clipLimit;
+    return this;
+  }
+
+  /**
+   * Set the number of histogram bins; the range of nonzero pixel values is
+   * divided evenly among them
+   */
+  public AdaptiveEqualizer withBins(int bins) {
+    checkArgument(bins >= 2 && bins <= 4096, "bad bin count:", bins);
+    mBins = bins;
+    return this;
+  }
+
+  /**
+   * Construct an equalized version of an image
+   */
+  public MonoImage apply(MonoImage image) {
+    short[] output = new short[image.pixels().length];
+    apply(image, output);
+    return MonoImageUtil.construct(image.size(), output);
+  }
+
+  /**
+   * Equalize an image, storing the results in an array (which may be the
+   * image's own pixels)
+   */
+  public void apply(MonoImage image, short[] output) {
+    short[] pixels = image.pixels();
+    checkArgument(output.length == pixels.length, "output length mismatch");
+    prepare(image.size());
+    if (!findRange(pixels)) {
+      Arrays.fill(output, (short) 0);
+      return;
+    }
+    buildBinTable();
+    buildTileLuts(pixels);
+    interpolate(pixels, output);
+  }
+
+  /**
+   * (Re)allocate the work buffers and interpolation tables, if the image size
+   * or settings have changed
+   */
+  private void prepare(IPoint size) {
+    int gx = Math.min(mGrid.x, size.x);
+    int gy = Math.min(mGrid.y, size.y);
+    if (size.equals(mSize) && gx == mGridX && gy == mGridY && mBins == mPreparedBins)
+      return;
+    mSize = size;
+    mGridX = gx;
+    mGridY = gy;
+    mPreparedBins = mBins;
+    int tileCount = gx * gy;
+    mHistograms = new int[tileCount * mBins];
+    mLuts = new int[tileCount * mBins];
+    mBandMin = new int[size.y];
+    mBandMax = new int[size.y];
+    mRangeMin = -1;
+
+    mColumnOffset0 = new int[size.x];
+    mColumnOffset1 = new int[size.x];
+    mColumnWeight = new int[size.x];
+    buildAxisTable(size.x, gx, 1, mColumnOffset0, mColumnOffset1, mColumnWeight);
+    mRowOffset0 = new int[size.y];
+    mRowOffset1 = new int[size.y];
+    mRowWeight = new int[size.y];
+    buildAxisTable(size.y, gy, gx, mRowOffset0, mRowOffset1, mRowWeight);
+  }
+
+  /**
+   * For each coordinate along an axis, determine the (scaled) indices of the
+   * tiles whose centers bracket it, and the fixed-point weight of the second
+   */
+  private void buildAxisTable(int length, int tiles, int tileStride, int[] offset0, int[] offset1,
+      int[] weight) {
+    int scale = tileStride * mBins;
+    int tile = 0;
+    for (int i = 0; i < length; i++) {
+      float pos = i + 0.5f;
+      while (tile + 1 < tiles && tileCenter(tile + 1, tiles, length) <= pos)
+        tile++;
+      float c0 = tileCenter(tile, tiles, length);
+      if (pos < c0 || tile + 1 == tiles) {
+        offset0[i] = tile * scale;
+        offset1[i] = tile * scale;
+        weight[i] = 0;
+      } else {
+        float c1 = tileCenter(tile + 1, tiles, length);
+        offset0[i] = tile * scale;
+        offset1[i] = (tile + 1) * scale;
+        weight[i] = Math.round(((pos - c0) / (c1 - c0)) * WEIGHT_ONE);
+      }
+    }
+  }
+
+  private static int tileStart(int tile, int tiles, int length) {
+    return (int) ((long) length * tile / tiles);
+  }
+
+  private static float tileCenter(int tile, int tiles, int length) {
+    return (tileStart(tile, tiles, length) + tileStart(tile + 1, tiles, length)) * 0.5f;
+  }
+
+  /**
+   * Determine the range of nonzero pixel values; return false if there are no
+   * nonzero pixels
+   */
+  private boolean findRange(short[] pixels) {
+    int width = mSize.x;
+    RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      int min = Integer.MAX_VALUE;
+      int max = 0;
+      for (int i = rowStart * width; i < rowEnd * width; i++) {
+        int v = pixels[i] & 0xffff;
+        if (v == 0)
+          continue;
+        if (v < min)
+          min = v;
+        if (v > max)
+          max = v;
+      }
+      mBandMin[rowStart] = min;
+      mBandMax[rowStart] = max;
+    });
+    int bandCount = RowBands.bandCount(mSize.y, MIN_ROWS_PER_BAND);
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    for (int band = 0; band < bandCount; band++) {
+      int rowStart = (int) ((long) mSize.y * band / bandCount);
+      min = Math.min(min, mBandMin[rowStart]);
+      max = Math.max(max, mBandMax[rowStart]);
+    }
+    if (max == 0)
+      return false;
+    mMin = min;
+    mMax = max;
+    return true;
+  }
+
+  /**
+   * Build the table mapping (pixel - min) to histogram bin, if the range has
+   * changed
+   */
+  private void buildBinTable() {
+    if (mMin == mRangeMin && mMax == mRangeMax && mBinTableBins == mBins)
+      return;
+    mRangeMin = mMin;
+    mRangeMax = mMax;
+    mBinTableBins = mBins;
+    int range = mMax + 1 - mMin;
+    if (mBinOf == null)
+      mBinOf = new int[MAX_UNSIGNED_PIXEL + 1];
+    for (int i = 0; i < range; i++)
+      mBinOf[i] = (int) ((long) i * mBins / range);
+  }
+
+  /**
+   * Build each tile's clipped histogram and lookup table
+   */
+  private void buildTileLuts(short[] pixels) {
+    IntStream.range(0, mGridX * mGridY).parallel().forEach(tile -> buildTileLut(pixels, tile));
+  }
+
+  private void buildTileLut(short[] pixels, int tile) {
+    int bins = mBins;
+    int base = tile * bins;
+    int[] hist = mHistograms;
+    Arrays.fill(hist, base, base + bins, 0);
+
+    int tx = tile % mGridX;
+    int ty = tile / mGridX;
+    int x0 = tileStart(tx, mGridX, mSize.x);
+    int x1 = tileStart(tx + 1, mGridX, mSize.x);
+    int y0 = tileStart(ty, mGridY, mSize.y);
+    int y1 = tileStart(ty + 1, mGridY, mSize.y);
+    int[] binOf = mBinOf;
+    int min = mMin;
+    int count = 0;
+    for (int y = y0; y < y1; y++) {
+      int rowStart = y * mSize.x;
+      for (int i = rowStart + x0; i < rowStart + x1; i++) {
+        int v = pixels[i] & 0xffff;
+        if (v == 0)
+          continue;
+        hist[base + binOf[v - min]]++;
+        count++;
+      }
+    }
+
+    int[] lut = mLuts;
+    int outputRange = MonoImageUtil.MAX_PIXEL_VALUE - 2;
+    if (count == 0) {
+      for (int b = 0; b < bins; b++)
+        lut[base + b] = 1 + b * outputRange / (bins - 1);
+      return;
+    }
+
+    if (mClipLimit > 0) {
+      int limit = Math.max(1, (int) (mClipLimit * count / bins));
+      int excess = 0;
+      for (int b = base; b < base + bins; b++) {
+        int h = hist[b];
+        if (h > limit) {
+          excess += h - limit;
+          hist[b] = limit;
+        }
+      }
+      int increment = excess / bins;
+      int remainder = excess - increment * bins;
+      for (int b = base; b < base + bins; b++)
+        hist[b] += increment;
+      if (remainder > 0) {
+        int step = bins / remainder;
+        for (int b = base; remainder > 0; b += step, remainder--)
+          hist[b]++;
+      }
+    }
+
+    long cumulative = 0;
+    for (int b = base; b < base + bins; b++) {
+      cumulative += hist[b];
+      lut[b] = 1 + (int) (cumulative * outputRange / count);
+    }
+  }
+
+  /**
+   * Map each pixel by bilinear interpolation of the four nearest tiles' lookup
+   * tables
+   */
+  private void interpolate(short[] pixels, short[] output) {
+    int width = mSize.x;
+    int[] lut = mLuts;
+    int[] binOf = mBinOf;
+    int min = mMin;
+    int[] columnOffset0 = mColumnOffset0;
+    int[] columnOffset1 = mColumnOffset1;
+    int[] columnWeight = mColumnWeight;
+    RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        int row0 = mRowOffset0[y];
+        int row1 = mRowOffset1[y];
+        int wy = mRowWeight[y];
+        int wy0 = WEIGHT_ONE - wy;
+        int i = y * width;
+        for (int x = 0; x < width; x++, i++) {
+          int v = pixels[i] & 0xffff;
+          if (v == 0) {
+            output[i] = 0;
+            continue;
+          }
+          int bin = binOf[v - min];
+          int c0 = columnOffset0[x] + bin;
+          int c1 = columnOffset1[x] + bin;
+          int wx = columnWeight[x];
+          int wx0 = WEIGHT_ONE - wx;
+          int top = lut[row0 + c0] * wx0 + lut[row0 + c1] * wx;
+          int bottom = lut[row1 + c0] * wx0 + lut[row1 + c1] * wx;
+          output[i] = (short) ((top * wy0 + bottom * wy + WEIGHT_ROUND) >> (2 * WEIGHT_BITS));
+        }
+      }
+    });
+  }
+
+  // Fixed-point interpolation weights; with 15-bit table values, the weighted
+  // sums fit within an int
+  private static final int WEIGHT_BITS = 8;
+  private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+  private static final int WEIGHT_ROUND = 1 << (2 * WEIGHT_BITS - 1);
+
+  private static final int MAX_UNSIGNED_PIXEL = 0xffff;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private IPoint mGrid = new IPoint(DEFAULT_GRID, DEFAULT_GRID);
+  private float mClipLimit = DEFAULT_CLIP_LIMIT;
+  private int mBins = DEFAULT_BINS;
+
+  // Work buffers, retained between calls
+  private IPoint mSize;
+  private int mGridX;
+  private int mGridY;
+  private int mPreparedBins;
+  private int[] mHistograms;
+  private int[] mLuts;
+  private int[] mBandMin;
+  private int[] mBandMax;
+  private int[] mColumnOffset0;
+  private int[] mColumnOffset1;
+  private int[] mColumnWeight;
+  private int[] mRowOffset0;
+  private int[] mRowOffset1;
+  private int[] mRowWeight;
+  private int mMin;
+  private int mMax;
+  private int[] mBinOf;
+  private int mRangeMin = -1;
+  private int mRangeMax;
+  private int mBinTableBins;
+}
@@ -0,0 +1,87 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import js.geometry.IPoint;
+import js.graphics.gen.DefectMap;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Replaces the defective pixels of frames, as described by a DefectMap, with
+ * the mean of their replacement neighbors. Correction is done in place,
+ * without allocating memory; defective pixels with no replacement neighbors
+ * are left unchanged.
+ */
+public final class BadPixelCorrector {
+
+  public BadPixelCorrector(DefectMap defectMap) {
+    checkArgument(defectMap.neighbors().length == defectMap.indices().length * 4,
+        "neighbors length doesn't match indices");
+    mSize = defectMap.size();
+    mIndices = defectMap.indices();
+    mNeighbors = defectMap.neighbors();
+  }
+
+  public int defectCount() {
+    return mIndices.length;
+  }
+
+  /**
+   * Correct a frame's pixels in place
+   */
+  public void apply(MonoImage frame) {
+    checkArgument(frame.size().equals(mSize), "frame size", frame.size(), "differs from", mSize);
+    apply(frame.pixels());
+  }
+
+  /**
+   * Correct the pixels of a frame (of the defect map's size) in place
+   */
+  public void apply(short[] pixels) {
+    checkArgument(pixels.length == mSize.x * mSize.y, "pixel count mismatch");
+    int[] indices = mIndices;
+    int[] neighbors = mNeighbors;
+    int slot = 0;
+    for (int d = 0; d < indices.length; d++, slot += 4) {
+      int sum = 0;
+      int count = 0;
+      for (int k = slot; k < slot + 4; k++) {
+        int j = neighbors[k];
+        if (j < 0)
+          break;
+        sum += pixels[j] & 0xffff;
+        count++;
+      }
+      if (count != 0)
+        pixels[indices[d]] = (short) ((sum + (count >> 1)) / count);
+    }
+  }
+
+  private final IPoint mSize;
+  private final int[] mIndices;
+  private final int[] mNeighbors;
+}
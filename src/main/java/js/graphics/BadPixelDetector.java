@@ -0,0 +1,264 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.graphics.gen.DefectMap;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Learns a DefectMap from a stream of frames from a sensor.
+ * 
+ * A pixel is considered defective if, in a sufficient fraction of the frames,
+ * it is a spatial outlier: its difference from the median of its four
+ * neighbors is large relative to the frame's typical difference (estimated
+ * from their median absolute value), or it has an extreme value (i.e., it is
+ * negative when treated as a signed short). A pixel is also considered
+ * defective (stuck) if its temporal variance is much smaller than that of a
+ * typical pixel.
+ */
+public final class BadPixelDetector extends BaseObject {
+
+  /**
+   * Set the number of typical differences a pixel must differ from its
+   * neighbors by to be an outlier within a frame
+   */
+  public BadPixelDetector withOutlierFactor(float factor) {
+    checkArgument(factor > 0, "bad factor:", factor);
+    mOutlierFactor = factor;
+    return this;
+  }
+
+  /**
+   * Set the fraction of frames in which a pixel must be an outlier to be
+   * considered defective
+   */
+  public BadPixelDetector withOutlierFraction(float fraction) {
+    checkArgument(fraction > 0 && fraction <= 1, "bad fraction:", fraction);
+    mOutlierFraction = fraction;
+    return this;
+  }
+
+  /**
+   * Set the fraction of the median temporal standard deviation below which a
+   * pixel is considered stuck; zero disables this test
+   */
+  public BadPixelDetector withStuckFraction(float fraction) {
+    checkArgument(fraction >= 0 && fraction < 1, "bad fraction:", fraction);
+    mStuckFraction = fraction;
+    return this;
+  }
+
+  public int frameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * Update the statistics with another frame
+   */
+  public BadPixelDetector add(MonoImage frame) {
+    IPoint size = frame.size();
+    if (mSize == null) {
+      mSize = size;
+      int n = size.x * size.y;
+      mMean = new double[n];
+      mSquaredDeviations = new double[n];
+      mOutlierCounts = new int[n];
+      mResiduals = new int[n];
+    }
+    checkArgument(size.equals(mSize), "frame size", size, "differs from", mSize);
+
+    short[] pixels = frame.pixels();
+    int width = mSize.x;
+    int height = mSize.y;
+    mFrameCount++;
+    int frameCount = mFrameCount;
+
+    RowBands.forEach(height, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      int[] neighbors = new int[4];
+      for (int y = rowStart; y < rowEnd; y++) {
+        for (int x = 0; x < width; x++) {
+          int i = y * width + x;
+          int v = pixels[i] & 0xffff;
+
+          // Welford's online mean and variance
+          double delta = v - mMean[i];
+          mMean[i] += delta / frameCount;
+          mSquaredDeviations[i] += delta * (v - mMean[i]);
+
+          int count = 0;
+          if (x > 0)
+            neighbors[count++] = pixels[i - 1] & 0xffff;
+          if (x + 1 < width)
+            neighbors[count++] = pixels[i + 1] & 0xffff;
+          if (y > 0)
+            neighbors[count++] = pixels[i - width] & 0xffff;
+          if (y + 1 < height)
+            neighbors[count++] = pixels[i + width] & 0xffff;
+          mResiduals[i] = (count == 0) ? 0 : Math.abs(v - median(neighbors, count));
+        }
+      }
+    });
+
+    float threshold = mOutlierFactor * Math.max(1, medianOf(mResiduals));
+    for (int i = 0; i < pixels.length; i++) {
+      if (pixels[i] < 0 || mResiduals[i] > threshold)
+        mOutlierCounts[i]++;
+    }
+    return this;
+  }
+
+  /**
+   * Construct a DefectMap from the statistics gathered so far
+   */
+  public DefectMap build() {
+    checkState(mFrameCount > 0, "no frames added");
+    int n = mMean.length;
+    boolean[] defective = new boolean[n];
+
+    int minOutlierCount = Math.max(1, (int) Math.ceil(mOutlierFraction * mFrameCount));
+    for (int i = 0; i < n; i++)
+      defective[i] = mOutlierCounts[i] >= minOutlierCount;
+
+    if (mStuckFraction > 0 && mFrameCount > 1) {
+      int[] deviations = new int[n];
+      for (int i = 0; i < n; i++)
+        deviations[i] = (int) Math.round(Math.sqrt(mSquaredDeviations[i] / (mFrameCount - 1)) * DEVIATION_SCALE);
+      double stuckThreshold = medianOf(deviations) * mStuckFraction;
+      for (int i = 0; i < n; i++)
+        if (deviations[i] < stuckThreshold)
+          defective[i] = true;
+    }
+    return buildMap(mSize, defective);
+  }
+
+  /**
+   * Construct a DefectMap for a set of defective pixels, choosing for each the
+   * nearest nondefective pixel (if any, within a small distance) in each of the
+   * four directions as its replacement neighbors
+   */
+  public static DefectMap buildMap(IPoint size, boolean[] defective) {
+    int width = size.x;
+    int height = size.y;
+    checkArgument(defective.length == width * height, "size mismatch");
+    int count = 0;
+    for (boolean d : defective)
+      if (d)
+        count++;
+    int[] indices = new int[count];
+    int[] neighbors = new int[count * 4];
+    Arrays.fill(neighbors, -1);
+
+    int cursor = 0;
+    for (int i = 0; i < defective.length; i++) {
+      if (!defective[i])
+        continue;
+      int x = i % width;
+      int y = i / width;
+      indices[cursor] = i;
+      int slot = cursor * 4;
+      for (int dir = 0; dir < 4; dir++) {
+        int dx = DIR_X[dir];
+        int dy = DIR_Y[dir];
+        for (int dist = 1; dist <= MAX_NEIGHBOR_DISTANCE; dist++) {
+          int nx = x + dx * dist;
+          int ny = y + dy * dist;
+          if (nx < 0 || ny < 0 || nx >= width || ny >= height)
+            break;
+          int j = ny * width + nx;
+          if (!defective[j]) {
+            neighbors[slot++] = j;
+            break;
+          }
+        }
+      }
+      cursor++;
+    }
+    return DefectMap.newBuilder().size(size).indices(indices).neighbors(neighbors).build();
+  }
+
+  /**
+   * Get the median of the first count values of an array (the mean of the
+   * middle two, if count is even); the array is reordered
+   */
+  private static int median(int[] values, int count) {
+    // Insertion sort, as there are at most four values
+    for (int i = 1; i < count; i++) {
+      int v = values[i];
+      int j = i - 1;
+      while (j >= 0 && values[j] > v) {
+        values[j + 1] = values[j];
+        j--;
+      }
+      values[j + 1] = v;
+    }
+    int mid = count / 2;
+    if ((count & 1) != 0)
+      return values[mid];
+    return (values[mid - 1] + values[mid]) / 2;
+  }
+
+  /**
+   * Get the median of a set of nonnegative values, via a histogram of those
+   * below a cap (larger values are counted as the cap)
+   */
+  private static int medianOf(int[] values) {
+    int[] histogram = new int[MEDIAN_CAP + 1];
+    for (int v : values)
+      histogram[Math.min(v, MEDIAN_CAP)]++;
+    int target = values.length / 2;
+    int cumulative = 0;
+    for (int v = 0; v <= MEDIAN_CAP; v++) {
+      cumulative += histogram[v];
+      if (cumulative > target)
+        return v;
+    }
+    return MEDIAN_CAP;
+  }
+
+  private static final int[] DIR_X = { -1, 1, 0, 0 };
+  private static final int[] DIR_Y = { 0, 0, -1, 1 };
+  private static final int MAX_NEIGHBOR_DISTANCE = 4;
+  private static final int MEDIAN_CAP = 0xffff;
+  // Standard deviations are scaled to integers with this precision
+  private static final int DEVIATION_SCALE = 16;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private float mOutlierFactor = 8;
+  private float mOutlierFraction = 0.5f;
+  private float mStuckFraction = 0.05f;
+
+  private IPoint mSize;
+  private int mFrameCount;
+  private double[] mMean;
+  private double[] mSquaredDeviations;
+  private int[] mOutlierCounts;
+  private int[] mResiduals;
+}
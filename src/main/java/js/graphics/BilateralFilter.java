@@ -0,0 +1,254 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Fast approximate bilateral filter for MonoImages, whose cost per pixel is
+ * independent of the spatial radius (Yang, Tan and Ahuja's method).
+ * 
+ * The range of pixel values is sampled at a small number of levels. For each
+ * level, the range weights of every pixel relative to that level (and those
+ * weights times the pixel values) are smoothed by a box filter, computed with
+ * running sums; their ratio is the bilateral filter response for pixels at
+ * that level. Each pixel's output is interpolated between the responses of the
+ * two levels bracketing its value.
+ * 
+ * The work buffers are retained between calls; an instance should not be used
+ * by more than one thread at a time.
+ */
+public final class BilateralFilter extends BaseObject {
+
+  public static final int DEFAULT_RADIUS = 3;
+  public static final float DEFAULT_RANGE_SIGMA = 256;
+  public static final int DEFAULT_LEVELS = 8;
+
+  /**
+   * Set the radius of the (square) spatial window
+   */
+  public BilateralFilter withRadius(int radius) {
+    checkArgument(radius >= 0, "bad radius:", radius);
+    mRadius = radius;
+    return this;
+  }
+
+  /**
+   * Set the standard deviation of the (Gaussian) range kernel, in pixel value
+   * units
+   */
+  public BilateralFilter withRangeSigma(float sigma) {
+    checkArgument(sigma > 0, "bad sigma:", sigma);
+    mRangeSigma = sigma;
+    return this;
+  }
+
+  /**
+   * Set the number of levels the range of pixel values is sampled at; more
+   * levels give a closer approximation, at proportionally greater cost
+   */
+  public BilateralFilter withLevels(int levels) {
+    checkArgument(levels >= 2, "bad levels:", levels);
+    mLevels = levels;
+    return this;
+  }
+
+  public MonoImage apply(MonoImage image) {
+    short[] output = new short[image.pixels().length];
+    apply(image, output);
+    return MonoImageUtil.construct(image.size(), output);
+  }
+
+  /**
+   * Filter an image, storing the results in an array (which may be the
+   * image's own pixels)
+   */
+  public void apply(MonoImage image, short[] output) {
+    short[] pixels = image.pixels();
+    checkArgument(output.length == pixels.length, "output length mismatch");
+    prepare(image.size());
+
+    int min = 0xffff;
+    int max = 0;
+    for (short p : pixels) {
+      int v = p & 0xffff;
+      if (v < min)
+        min = v;
+      if (v > max)
+        max = v;
+    }
+    if (min >= max || mRadius == 0) {
+      if (output != pixels)
+        System.arraycopy(pixels, 0, output, 0, pixels.length);
+      return;
+    }
+
+    int range = max - min;
+    float[] rangeWeight = rangeWeights(range);
+    int levelCount = mLevels;
+    float levelScale = (levelCount - 1) / (float) range;
+    int width = mSize.x;
+    int minValue = min;
+
+    for (int level = 0; level < levelCount; level++) {
+      int levelValue = minValue + Math.round(level / levelScale);
+      RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+        for (int i = rowStart * width; i < rowEnd * width; i++) {
+          int v = pixels[i] & 0xffff;
+          float wt = rangeWeight[Math.abs(v - levelValue)];
+          mWeights[i] = wt;
+          mWeightedValues[i] = wt * v;
+        }
+      });
+      boxFilter(mWeights);
+      boxFilter(mWeightedValues);
+
+      int currentLevel = level;
+      RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+        for (int i = rowStart * width; i < rowEnd * width; i++) {
+          float t = ((pixels[i] & 0xffff) - minValue) * levelScale;
+          int lower = Math.min((int) t, levelCount - 2);
+          float frac = t - lower;
+          float contribution;
+          if (lower == currentLevel)
+            contribution = 1 - frac;
+          else if (lower + 1 == currentLevel)
+            contribution = frac;
+          else
+            continue;
+          float response = mWeightedValues[i] / mWeights[i];
+          if (currentLevel == lower)
+            mAccumulator[i] = contribution * response;
+          else
+            mAccumulator[i] += contribution * response;
+        }
+      });
+    }
+
+    RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int i = rowStart * width; i < rowEnd * width; i++) {
+        int v = Math.round(mAccumulator[i]);
+        output[i] = (short) Math.max(0, Math.min(0xffff, v));
+      }
+    });
+  }
+
+  /**
+   * Allocate the work buffers, if the image size has changed
+   */
+  private void prepare(IPoint size) {
+    if (size.equals(mSize))
+      return;
+    mSize = size;
+    int n = size.x * size.y;
+    mWeights = new float[n];
+    mWeightedValues = new float[n];
+    mAccumulator = new float[n];
+    mTemp = new float[n];
+  }
+
+  /**
+   * Build a table of range kernel weights, indexed by the absolute difference
+   * of pixel values
+   */
+  private float[] rangeWeights(int range) {
+    float[] weights = new float[range + 1];
+    double denom = -1 / (2.0 * mRangeSigma * mRangeSigma);
+    for (int d = 0; d <= range; d++) {
+      // Don't let weights underflow to zero, which could produce 0/0 ratios
+      weights[d] = (float) Math.max(MIN_WEIGHT, Math.exp(d * (double) d * denom));
+    }
+    return weights;
+  }
+
+  /**
+   * Replace each value by the sum of those within the (clipped) spatial window
+   * centered on it; normalization is unnecessary, as only ratios of the sums
+   * are used
+   */
+  private void boxFilter(float[] values) {
+    int width = mSize.x;
+    int height = mSize.y;
+    int r = mRadius;
+    float[] temp = mTemp;
+
+    RowBands.forEach(height, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        int offset = y * width;
+        double sum = 0;
+        for (int x = 0; x < Math.min(r, width); x++)
+          sum += values[offset + x];
+        for (int x = 0; x < width; x++) {
+          if (x + r < width)
+            sum += values[offset + x + r];
+          if (x - r - 1 >= 0)
+            sum -= values[offset + x - r - 1];
+          temp[offset + x] = (float) sum;
+        }
+      }
+    });
+
+    RowBands.forEach(height, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      // Start with the window preceding the band's first row (rows rowStart - r
+      // - 1 through rowStart + r - 1), as the first row's update subtracts the
+      // topmost of these
+      double[] sums = new double[width];
+      for (int y = Math.max(0, rowStart - r - 1); y < Math.min(height, rowStart + r); y++) {
+        int offset = y * width;
+        for (int x = 0; x < width; x++)
+          sums[x] += temp[offset + x];
+      }
+      for (int y = rowStart; y < rowEnd; y++) {
+        int add = y + r;
+        int sub = y - r - 1;
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+          if (add < height)
+            sums[x] += temp[add * width + x];
+          if (sub >= 0)
+            sums[x] -= temp[sub * width + x];
+          values[offset + x] = (float) sums[x];
+        }
+      }
+    });
+  }
+
+  private static final double MIN_WEIGHT = 1e-20;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private int mRadius = DEFAULT_RADIUS;
+  private float mRangeSigma = DEFAULT_RANGE_SIGMA;
+  private int mLevels = DEFAULT_LEVELS;
+
+  private IPoint mSize;
+  private float[] mWeights;
+  private float[] mWeightedValues;
+  private float[] mAccumulator;
+  private float[] mTemp;
+}
@@ -0,0 +1,439 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.ElementProperties;
+import js.graphics.gen.MonoImage;
+
+/**
+ * A monochrome image with one bit per pixel, where each row is stored as a
+ * sequence of 64-bit words (pixel x of a row is bit (x & 63) of word (x >>
+ * 6)).
+ * 
+ * Logical and morphological operations work on entire words, i.e. 64 pixels
+ * at a time. Morphological operations treat pixels outside of the mask as set
+ * when eroding, and unset when dilating; so (as with
+ * MonoImageUtil.erodeMonochromeImage) the image boundary doesn't erode
+ * anything.
+ */
+public final class BinaryMask {
+
+  /**
+   * Construct a mask with all pixels unset
+   */
+  public BinaryMask(IPoint size) {
+    checkArgument(size.x > 0 && size.y > 0, "bad size:", size);
+    mWidth = size.x;
+    mHeight = size.y;
+    mWordsPerRow = (mWidth + 63) >> 6;
+    mWords = new long[mWordsPerRow * mHeight];
+    int extraBits = mWidth & 63;
+    mLastWordMask = (extraBits == 0) ? ~0L : (1L << extraBits) - 1;
+  }
+
+  /**
+   * Construct a mask whose set pixels are the nonzero pixels of a MonoImage
+   */
+  public static BinaryMask from(MonoImage image) {
+    MonoImageUtil.verifyNonEmpty(image);
+    BinaryMask mask = new BinaryMask(image.size());
+    short[] pixels = image.pixels();
+    long[] words = mask.mWords;
+    int width = mask.mWidth;
+    int i = 0;
+    int w = 0;
+    for (int y = 0; y < mask.mHeight; y++) {
+      for (int x0 = 0; x0 < width; x0 += 64, w++) {
+        int count = Math.min(64, width - x0);
+        long word = 0;
+        for (int b = 0; b < count; b++, i++)
+          if (pixels[i] != 0)
+            word |= 1L << b;
+        words[w] = word;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Construct a mask whose set pixels are those of a MonoImage whose
+   * (unsigned) values are at least some threshold
+   */
+  public static BinaryMask from(MonoImage image, int threshold) {
+    MonoImageUtil.verifyNonEmpty(image);
+    BinaryMask mask = new BinaryMask(image.size());
+    short[] pixels = image.pixels();
+    int i = 0;
+    for (int y = 0; y < mask.mHeight; y++) {
+      int rowStart = y * mask.mWordsPerRow;
+      for (int x = 0; x < mask.mWidth; x++, i++)
+        if ((pixels[i] & 0xffff) >= threshold)
+          mask.mWords[rowStart + (x >> 6)] |= 1L << x;
+    }
+    return mask;
+  }
+
+  /**
+   * Construct a mask by rasterizing the MaskElements from a list of script
+   * elements (other element types are ignored)
+   */
+  public static BinaryMask rasterize(IPoint size, Iterable<ScriptElement> elements) {
+    BinaryMask mask = new BinaryMask(size);
+    for (ScriptElement elem : elements)
+      if (elem.is(MaskElement.DEFAULT_INSTANCE))
+        mask.fill(elem.bounds());
+    return mask;
+  }
+
+  /**
+   * Construct a MonoImage with set pixels having a particular value, and unset
+   * pixels zero
+   */
+  public MonoImage toMonoImage(int setPixelValue) {
+    short[] pixels = new short[mWidth * mHeight];
+    short value = (short) setPixelValue;
+    for (int y = 0; y < mHeight; y++) {
+      int rowStart = y * mWordsPerRow;
+      int pixelRowStart = y * mWidth;
+      for (int w = 0; w < mWordsPerRow; w++) {
+        long word = mWords[rowStart + w];
+        while (word != 0) {
+          int b = Long.numberOfTrailingZeros(word);
+          pixels[pixelRowStart + (w << 6) + b] = value;
+          word &= word - 1;
+        }
+      }
+    }
+    return MonoImageUtil.construct(size(), pixels);
+  }
+
+  /**
+   * Construct a MaskElement covering the set pixels, or null if there are none
+   */
+  public MaskElement toMaskElement(ElementProperties properties) {
+    IRect bounds = bounds();
+    if (bounds == null)
+      return null;
+    return new MaskElement(properties, bounds);
+  }
+
+  // ------------------------------------------------------------------
+  // Attributes
+  // ------------------------------------------------------------------
+
+  public IPoint size() {
+    return new IPoint(mWidth, mHeight);
+  }
+
+  public int width() {
+    return mWidth;
+  }
+
+  public int height() {
+    return mHeight;
+  }
+
+  public int wordsPerRow() {
+    return mWordsPerRow;
+  }
+
+  /**
+   * Get the words containing the pixels; bits beyond the width of each row are
+   * always zero
+   */
+  public long[] words() {
+    return mWords;
+  }
+
+  public boolean get(int x, int y) {
+    return (mWords[y * mWordsPerRow + (x >> 6)] & (1L << x)) != 0;
+  }
+
+  public BinaryMask set(int x, int y) {
+    mWords[y * mWordsPerRow + (x >> 6)] |= 1L << x;
+    return this;
+  }
+
+  public BinaryMask clear(int x, int y) {
+    mWords[y * mWordsPerRow + (x >> 6)] &= ~(1L << x);
+    return this;
+  }
+
+  public BinaryMask set(int x, int y, boolean value) {
+    return value ? set(x, y) : clear(x, y);
+  }
+
+  /**
+   * Set all the pixels within a rectangle (clipped to the mask)
+   */
+  public BinaryMask fill(IRect rect) {
+    int x0 = Math.max(0, rect.x);
+    int x1 = Math.min(mWidth, rect.endX());
+    int y0 = Math.max(0, rect.y);
+    int y1 = Math.min(mHeight, rect.endY());
+    if (x0 >= x1 || y0 >= y1)
+      return this;
+    int w0 = x0 >> 6;
+    int w1 = (x1 - 1) >> 6;
+    long firstMask = ~0L << x0;
+    long lastMask = ~0L >>> (63 - ((x1 - 1) & 63));
+    for (int y = y0; y < y1; y++) {
+      int rowStart = y * mWordsPerRow;
+      if (w0 == w1) {
+        mWords[rowStart + w0] |= firstMask & lastMask;
+        continue;
+      }
+      mWords[rowStart + w0] |= firstMask;
+      for (int w = w0 + 1; w < w1; w++)
+        mWords[rowStart + w] = ~0L;
+      mWords[rowStart + w1] |= lastMask;
+    }
+    return this;
+  }
+
+  /**
+   * Determine the number of set pixels
+   */
+  public int count() {
+    int count = 0;
+    for (long word : mWords)
+      count += Long.bitCount(word);
+    return count;
+  }
+
+  /**
+   * Determine the bounding rectangle of the set pixels, or null if there are
+   * none
+   */
+  public IRect bounds() {
+    long[] columns = new long[mWordsPerRow];
+    int minY = -1;
+    int maxY = -1;
+    for (int y = 0; y < mHeight; y++) {
+      int rowStart = y * mWordsPerRow;
+      long any = 0;
+      for (int w = 0; w < mWordsPerRow; w++) {
+        long word = mWords[rowStart + w];
+        columns[w] |= word;
+        any |= word;
+      }
+      if (any != 0) {
+        if (minY < 0)
+          minY = y;
+        maxY = y;
+      }
+    }
+    if (minY < 0)
+      return null;
+    int minX = -1;
+    int maxX = -1;
+    for (int w = 0; w < mWordsPerRow; w++) {
+      long word = columns[w];
+      if (word == 0)
+        continue;
+      if (minX < 0)
+        minX = (w << 6) + Long.numberOfTrailingZeros(word);
+      maxX = (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+    return new IRect(minX, minY, maxX + 1 - minX, maxY + 1 - minY);
+  }
+
+  // ------------------------------------------------------------------
+  // Logical operations (these modify this mask)
+  // ------------------------------------------------------------------
+
+  public BinaryMask and(BinaryMask other) {
+    assertSameSize(other);
+    long[] src = other.mWords;
+    for (int i = 0; i < mWords.length; i++)
+      mWords[i] &= src[i];
+    return this;
+  }
+
+  public BinaryMask or(BinaryMask other) {
+    assertSameSize(other);
+    long[] src = other.mWords;
+    for (int i = 0; i < mWords.length; i++)
+      mWords[i] |= src[i];
+    return this;
+  }
+
+  public BinaryMask xor(BinaryMask other) {
+    assertSameSize(other);
+    long[] src = other.mWords;
+    for (int i = 0; i < mWords.length; i++)
+      mWords[i] ^= src[i];
+    return this;
+  }
+
+  /**
+   * Clear any pixels that are set in another mask
+   */
+  public BinaryMask andNot(BinaryMask other) {
+    assertSameSize(other);
+    long[] src = other.mWords;
+    for (int i = 0; i < mWords.length; i++)
+      mWords[i] &= ~src[i];
+    return this;
+  }
+
+  public BinaryMask invert() {
+    for (int i = 0; i < mWords.length; i++)
+      mWords[i] = ~mWords[i];
+    clearPadding();
+    return this;
+  }
+
+  public BinaryMask copy() {
+    BinaryMask copy = new BinaryMask(size());
+    System.arraycopy(mWords, 0, copy.mWords, 0, mWords.length);
+    return copy;
+  }
+
+  private void assertSameSize(BinaryMask other) {
+    if (other.mWidth != mWidth || other.mHeight != mHeight)
+      throw badArg("mask sizes differ:", size(), other.size());
+  }
+
+  // ------------------------------------------------------------------
+  // Morphological operations (these construct new masks)
+  // ------------------------------------------------------------------
+
+  /**
+   * Construct the erosion of this mask: a pixel is set only if every pixel
+   * within the structuring element (centered at that pixel) is set
+   */
+  public BinaryMask erode(StructuringElement element) {
+    BinaryMask result = new BinaryMask(size());
+    Arrays.fill(result.mWords, ~0L);
+    result.clearPadding();
+    for (int i = 0; i < element.size(); i++)
+      result.combineShifted(this, element.dx(i), element.dy(i), true);
+    return result;
+  }
+
+  /**
+   * Construct the dilation of this mask: a pixel is set if it lies within the
+   * structuring element centered at any set pixel
+   */
+  public BinaryMask dilate(StructuringElement element) {
+    BinaryMask result = new BinaryMask(size());
+    for (int i = 0; i < element.size(); i++)
+      result.combineShifted(this, -element.dx(i), -element.dy(i), false);
+    return result;
+  }
+
+  /**
+   * Construct the opening (erosion followed by dilation) of this mask
+   */
+  public BinaryMask open(StructuringElement element) {
+    return erode(element).dilate(element);
+  }
+
+  /**
+   * Construct the closing (dilation followed by erosion) of this mask
+   */
+  public BinaryMask close(StructuringElement element) {
+    return dilate(element).erode(element);
+  }
+
+  /**
+   * Combine each pixel (x,y) of this mask with pixel (x+dx, y+dy) of another.
+   * If combining via AND, pixels outside the source are considered set;
+   * otherwise, unset
+   */
+  private void combineShifted(BinaryMask source, int dx, int dy, boolean and) {
+    int wordsPerRow = mWordsPerRow;
+    int wordShift = dx >> 6;
+    int bitShift = dx & 63;
+    long[] src = source.mWords;
+    for (int y = 0; y < mHeight; y++) {
+      int sy = y + dy;
+      if (sy < 0 || sy >= mHeight)
+        continue;
+      int dest = y * wordsPerRow;
+      int srcRow = sy * wordsPerRow;
+      for (int w = 0; w < wordsPerRow; w++) {
+        int sw = w + wordShift;
+        long word = sourceWord(src, srcRow, sw, and);
+        if (bitShift != 0) {
+          long hi = sourceWord(src, srcRow, sw + 1, and);
+          word = (word >>> bitShift) | (hi << (64 - bitShift));
+        }
+        if (and)
+          mWords[dest + w] &= word;
+        else
+          mWords[dest + w] |= word;
+      }
+    }
+    clearPadding();
+  }
+
+  private long sourceWord(long[] src, int srcRow, int wordIndex, boolean outsideSet) {
+    if (wordIndex < 0 || wordIndex >= mWordsPerRow)
+      return outsideSet ? ~0L : 0L;
+    long word = src[srcRow + wordIndex];
+    if (outsideSet && wordIndex == mWordsPerRow - 1)
+      word |= ~mLastWordMask;
+    return word;
+  }
+
+  /**
+   * Clear any bits lying beyond the width of each row
+   */
+  private void clearPadding() {
+    if (mLastWordMask == ~0L)
+      return;
+    for (int i = mWordsPerRow - 1; i < mWords.length; i += mWordsPerRow)
+      mWords[i] &= mLastWordMask;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (!(object instanceof BinaryMask))
+      return false;
+    BinaryMask other = (BinaryMask) object;
+    return mWidth == other.mWidth && mHeight == other.mHeight && Arrays.equals(mWords, other.mWords);
+  }
+
+  @Override
+  public int hashCode() {
+    return (mWidth * 37 + mHeight) * 37 + Arrays.hashCode(mWords);
+  }
+
+  private final int mWidth;
+  private final int mHeight;
+  private final int mWordsPerRow;
+  private final long mLastWordMask;
+  private final long[] mWords;
+}
@@ -0,0 +1,627 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import js.base.BaseObject;
+import js.geometry.FPoint;
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.geometry.Polygon;
+import js.graphics.gen.ElementProperties;
+import js.graphics.gen.MonoImage;
+import js.graphics.gen.Script;
+import js.json.JSMap;
+
+/**
+ * Labels the connected components of a BinaryMask, or of the nonzero pixels
+ * of a MonoImage.
+ * 
+ * The foreground is first converted to horizontal runs of pixels; runs in
+ * adjacent rows that touch are then merged using union-find. The pixels
+ * themselves are only examined once (a word at a time for masks), and memory
+ * use is proportional to the number of runs. If parallel processing is
+ * enabled (the default), the rows are divided into bands that are labelled
+ * concurrently, and a second pass merges components that span band
+ * boundaries.
+ */
+public final class ConnectedComponents extends BaseObject {
+
+  public ConnectedComponents withMask(BinaryMask mask) {
+    mMask = mask;
+    mImage = null;
+    mSize = mask.size();
+    discardResults();
+    return this;
+  }
+
+  /**
+   * Label the nonzero pixels of a MonoImage. Each component will include
+   * statistics about the values of its pixels
+   */
+  public ConnectedComponents withImage(MonoImage image) {
+    checkArgument(image.pixels().length == image.size().product(), "unexpected pixel count");
+    mImage = image;
+    mMask = null;
+    mSize = image.size();
+    discardResults();
+    return this;
+  }
+
+  /**
+   * Set the connectivity: 4 (edge neighbors only) or 8 (the default; edge and
+   * corner neighbors)
+   */
+  public ConnectedComponents withConnectivity(int connectivity) {
+    checkArgument(connectivity == 4 || connectivity == 8, "bad connectivity:", connectivity);
+    mConnectivity = connectivity;
+    discardResults();
+    return this;
+  }
+
+  /**
+   * Omit components with fewer than this many pixels
+   */
+  public ConnectedComponents withMinimumArea(int minimumArea) {
+    mMinimumArea = minimumArea;
+    discardResults();
+    return this;
+  }
+
+  public ConnectedComponents withParallel(boolean parallel) {
+    mParallel = parallel;
+    return this;
+  }
+
+  /**
+   * Information about a single component
+   */
+  public static final class Component {
+
+    /**
+     * Label assigned to component; these are 1...n, in order of each
+     * component's first pixel (in row-major order)
+     */
+    public int label() {
+      return mLabel;
+    }
+
+    /**
+     * Number of pixels in component
+     */
+    public int area() {
+      return mArea;
+    }
+
+    public IRect bounds() {
+      return mBounds;
+    }
+
+    public FPoint centroid() {
+      return mCentroid;
+    }
+
+    /**
+     * Minimum pixel value (zero if labelling a mask)
+     */
+    public int minValue() {
+      return mMinValue;
+    }
+
+    /**
+     * Maximum pixel value (zero if labelling a mask)
+     */
+    public int maxValue() {
+      return mMaxValue;
+    }
+
+    /**
+     * Mean pixel value (zero if labelling a mask)
+     */
+    public float meanValue() {
+      return mMeanValue;
+    }
+
+    public JSMap toJson() {
+      JSMap m = map();
+      m.put("label", mLabel);
+      m.put("area", mArea);
+      m.put("bounds", mBounds.toJson());
+      m.put("centroid", mCentroid.toJson());
+      if (mMaxValue != 0) {
+        m.put("min", mMinValue);
+        m.put("max", mMaxValue);
+        m.put("mean", mMeanValue);
+      }
+      return m;
+    }
+
+    @Override
+    public String toString() {
+      return toJson().prettyPrint();
+    }
+
+    private int mLabel;
+    private int mArea;
+    private IRect mBounds;
+    private FPoint mCentroid;
+    private int mMinValue;
+    private int mMaxValue;
+    private float mMeanValue;
+  }
+
+  /**
+   * Get the components, ordered by label
+   */
+  public List<Component> components() {
+    calculate();
+    return mComponents;
+  }
+
+  public int componentCount() {
+    return components().size();
+  }
+
+  /**
+   * Construct an array holding the label of each pixel (or zero, if the pixel
+   * is not part of a component)
+   */
+  public int[] labels() {
+    calculate();
+    int[] labels = new int[mSize.product()];
+    int width = mSize.x;
+    for (int y = 0; y < mSize.y; y++) {
+      for (int r = mRowFirstRun[y]; r < mRowFirstRun[y + 1]; r++) {
+        int label = mRunLabel[r];
+        if (label != 0)
+          Arrays.fill(labels, y * width + mRunStart[r], y * width + mRunEnd[r], label);
+      }
+    }
+    return labels;
+  }
+
+  /**
+   * Construct a RectElement for the bounds of each component
+   */
+  public List<ScriptElement> rectElements(int category) {
+    ElementProperties properties = ScriptUtil.setCategory(null, category).build();
+    List<ScriptElement> elements = arrayList();
+    for (Component c : components())
+      elements.add(new RectElement(properties, c.bounds()));
+    return elements;
+  }
+
+  /**
+   * Construct a PolygonElement for each component. The polygon encloses the
+   * leftmost and rightmost pixels of each of the component's rows, so it
+   * includes any concavities or holes that lie between them; use
+   * ContourTracer for exact outlines
+   */
+  public List<ScriptElement> polygonElements(int category) {
+    ElementProperties properties = ScriptUtil.setCategory(null, category).build();
+    List<Component> components = components();
+
+    // Determine the horizontal extent of each row of each component
+    int[][] left = new int[components.size()][];
+    int[][] right = new int[components.size()][];
+    for (int y = 0; y < mSize.y; y++) {
+      for (int r = mRowFirstRun[y]; r < mRowFirstRun[y + 1]; r++) {
+        int label = mRunLabel[r];
+        if (label == 0)
+          continue;
+        int index = label - 1;
+        IRect bounds = components.get(index).bounds();
+        if (left[index] == null) {
+          left[index] = new int[bounds.height];
+          right[index] = new int[bounds.height];
+          Arrays.fill(left[index], Integer.MAX_VALUE);
+        }
+        int row = y - bounds.y;
+        left[index][row] = Math.min(left[index][row], mRunStart[r]);
+        right[index][row] = Math.max(right[index][row], mRunEnd[r]);
+      }
+    }
+
+    List<ScriptElement> elements = arrayList();
+    for (Component c : components) {
+      int index = c.label() - 1;
+      int[] lt = left[index];
+      int[] rt = right[index];
+      int y0 = c.bounds().y;
+      List<IPoint> vertices = arrayList();
+      for (int i = 0; i < lt.length; i++) {
+        addVertex(vertices, lt[i], y0 + i);
+        addVertex(vertices, lt[i], y0 + i + 1);
+      }
+      for (int i = rt.length - 1; i >= 0; i--) {
+        addVertex(vertices, rt[i], y0 + i + 1);
+        addVertex(vertices, rt[i], y0 + i);
+      }
+      // Remove any collinear vertices at the seam
+      int n;
+      while ((n = vertices.size()) > 3 && collinear(vertices.get(n - 2), vertices.get(n - 1), vertices.get(0)))
+        vertices.remove(n - 1);
+      while ((n = vertices.size()) > 3 && collinear(vertices.get(n - 1), vertices.get(0), vertices.get(1)))
+        vertices.remove(0);
+      elements.add(new PolygonElement(properties, new Polygon(vertices)));
+    }
+    return elements;
+  }
+
+  /**
+   * Append a RectElement for each component to a script
+   */
+  public Script.Builder appendRectElements(Script.Builder script, int category) {
+    return append(script, rectElements(category));
+  }
+
+  /**
+   * Append a PolygonElement for each component to a script
+   */
+  public Script.Builder appendPolygonElements(Script.Builder script, int category) {
+    return append(script, polygonElements(category));
+  }
+
+  private static Script.Builder append(Script.Builder script, List<ScriptElement> elements) {
+    List<ScriptElement> items = arrayList();
+    items.addAll(script.items());
+    items.addAll(elements);
+    return script.items(items);
+  }
+
+  private static void addVertex(List<IPoint> vertices, int x, int y) {
+    IPoint pt = new IPoint(x, y);
+    int n = vertices.size();
+    if (n > 0 && vertices.get(n - 1).equals(pt))
+      return;
+    if (n > 1 && collinear(vertices.get(n - 2), vertices.get(n - 1), pt))
+      vertices.remove(n - 1);
+    vertices.add(pt);
+  }
+
+  /**
+   * Determine if three points lie on a common horizontal or vertical line
+   */
+  private static boolean collinear(IPoint a, IPoint b, IPoint c) {
+    return (a.x == b.x && b.x == c.x) || (a.y == b.y && b.y == c.y);
+  }
+
+  // ------------------------------------------------------------------
+  // Labelling
+  // ------------------------------------------------------------------
+
+  private static final int MIN_ROWS_PER_BAND = 32;
+
+  private void discardResults() {
+    mComponents = null;
+  }
+
+  private void calculate() {
+    if (mComponents != null)
+      return;
+    checkState(mSize != null, "no mask or image provided");
+    int height = mSize.y;
+
+    // Extract runs (and label them within each band) concurrently
+    //
+    Band[] bandForRow = new Band[height];
+    if (mParallel)
+      RowBands.forEach(height, MIN_ROWS_PER_BAND, (y0, y1) -> bandForRow[y0] = processBand(y0, y1));
+    else
+      bandForRow[0] = processBand(0, height);
+
+    // Concatenate the bands' runs
+    //
+    int runCount = 0;
+    for (int y = 0; y < height; y = bandForRow[y].mRowEnd)
+      runCount += bandForRow[y].mCount;
+    mRunStart = new int[runCount];
+    mRunEnd = new int[runCount];
+    mRowFirstRun = new int[height + 1];
+    int[] parent = new int[runCount];
+    long[] runValueSum = (mImage != null) ? new long[runCount] : null;
+    int[] runValueMin = (mImage != null) ? new int[runCount] : null;
+    int[] runValueMax = (mImage != null) ? new int[runCount] : null;
+
+    int offset = 0;
+    for (int y = 0; y < height; y = bandForRow[y].mRowEnd) {
+      Band b = bandForRow[y];
+      System.arraycopy(b.mStart, 0, mRunStart, offset, b.mCount);
+      System.arraycopy(b.mEnd, 0, mRunEnd, offset, b.mCount);
+      for (int i = 0; i < b.mCount; i++)
+        parent[offset + i] = b.mParent[i] + offset;
+      for (int row = b.mRowStart; row < b.mRowEnd; row++)
+        mRowFirstRun[row] = b.mRowFirstRun[row - b.mRowStart] + offset;
+      if (runValueSum != null) {
+        System.arraycopy(b.mValueSum, 0, runValueSum, offset, b.mCount);
+        System.arraycopy(b.mValueMin, 0, runValueMin, offset, b.mCount);
+        System.arraycopy(b.mValueMax, 0, runValueMax, offset, b.mCount);
+      }
+      offset += b.mCount;
+    }
+    mRowFirstRun[height] = runCount;
+
+    // Merge components that span band boundaries
+    //
+    for (int y = bandForRow[0].mRowEnd; y < height; y = bandForRow[y].mRowEnd)
+      mergeRows(parent, mRunStart, mRunEnd, mRowFirstRun[y - 1], mRowFirstRun[y], mRowFirstRun[y],
+          mRowFirstRun[y + 1]);
+
+    // Assign provisional labels to the root runs, and accumulate statistics
+    //
+    int[] runLabel = new int[runCount];
+    int labelCount = 0;
+    for (int r = 0; r < runCount; r++) {
+      int root = find(parent, r);
+      if (root == r)
+        runLabel[r] = ++labelCount;
+      else
+        runLabel[r] = runLabel[root];
+    }
+
+    long[] area = new long[labelCount + 1];
+    long[] sumX = new long[labelCount + 1];
+    long[] sumY = new long[labelCount + 1];
+    long[] sumValue = new long[labelCount + 1];
+    int[] minX = new int[labelCount + 1];
+    int[] maxX = new int[labelCount + 1];
+    int[] minY = new int[labelCount + 1];
+    int[] maxY = new int[labelCount + 1];
+    int[] minValue = new int[labelCount + 1];
+    int[] maxValue = new int[labelCount + 1];
+    Arrays.fill(minX, Integer.MAX_VALUE);
+    Arrays.fill(minY, Integer.MAX_VALUE);
+    Arrays.fill(minValue, Integer.MAX_VALUE);
+
+    for (int y = 0; y < height; y++) {
+      for (int r = mRowFirstRun[y]; r < mRowFirstRun[y + 1]; r++) {
+        int label = runLabel[r];
+        int x0 = mRunStart[r];
+        int x1 = mRunEnd[r];
+        long length = x1 - x0;
+        area[label] += length;
+        sumX[label] += length * (x0 + x1 - 1) / 2;
+        sumY[label] += length * y;
+        minX[label] = Math.min(minX[label], x0);
+        maxX[label] = Math.max(maxX[label], x1);
+        minY[label] = Math.min(minY[label], y);
+        maxY[label] = y + 1;
+        if (runValueSum != null) {
+          sumValue[label] += runValueSum[r];
+          minValue[label] = Math.min(minValue[label], runValueMin[r]);
+          maxValue[label] = Math.max(maxValue[label], runValueMax[r]);
+        }
+      }
+    }
+
+    // Construct components, discarding any that are too small
+    //
+    int[] finalLabel = new int[labelCount + 1];
+    List<Component> components = arrayList();
+    for (int label = 1; label <= labelCount; label++) {
+      if (area[label] < mMinimumArea)
+        continue;
+      Component c = new Component();
+      c.mLabel = components.size() + 1;
+      c.mArea = (int) area[label];
+      c.mBounds = new IRect(minX[label], minY[label], maxX[label] - minX[label], maxY[label] - minY[label]);
+      c.mCentroid = new FPoint(sumX[label] / (double) area[label] + 0.5,
+          sumY[label] / (double) area[label] + 0.5);
+      if (runValueSum != null) {
+        c.mMinValue = minValue[label];
+        c.mMaxValue = maxValue[label];
+        c.mMeanValue = (float) (sumValue[label] / (double) area[label]);
+      }
+      finalLabel[label] = c.mLabel;
+      components.add(c);
+    }
+    for (int r = 0; r < runCount; r++)
+      runLabel[r] = finalLabel[runLabel[r]];
+    mRunLabel = runLabel;
+    mComponents = components;
+  }
+
+  /**
+   * Runs extracted from a band of rows, with the runs labelled (via
+   * union-find) relative to that band
+   */
+  private static final class Band {
+    int mRowStart;
+    int mRowEnd;
+    int mCount;
+    int[] mStart = new int[64];
+    int[] mEnd = new int[64];
+    int[] mParent;
+    int[] mRowFirstRun;
+    long[] mValueSum;
+    int[] mValueMin;
+    int[] mValueMax;
+
+    void add(int start, int end) {
+      if (mCount == mStart.length) {
+        mStart = Arrays.copyOf(mStart, mCount * 2);
+        mEnd = Arrays.copyOf(mEnd, mCount * 2);
+      }
+      mStart[mCount] = start;
+      mEnd[mCount] = end;
+      mCount++;
+    }
+  }
+
+  private Band processBand(int rowStart, int rowEnd) {
+    Band b = new Band();
+    b.mRowStart = rowStart;
+    b.mRowEnd = rowEnd;
+    b.mRowFirstRun = new int[rowEnd - rowStart + 1];
+    for (int y = rowStart; y < rowEnd; y++) {
+      b.mRowFirstRun[y - rowStart] = b.mCount;
+      if (mMask != null)
+        extractMaskRuns(b, y);
+      else
+        extractImageRuns(b, y);
+    }
+    b.mRowFirstRun[rowEnd - rowStart] = b.mCount;
+
+    int[] parent = new int[b.mCount];
+    for (int i = 0; i < parent.length; i++)
+      parent[i] = i;
+    for (int row = 1; row < rowEnd - rowStart; row++)
+      mergeRows(parent, b.mStart, b.mEnd, b.mRowFirstRun[row - 1], b.mRowFirstRun[row], b.mRowFirstRun[row],
+          b.mRowFirstRun[row + 1]);
+    b.mParent = parent;
+
+    if (mImage != null)
+      calcRunValues(b);
+    return b;
+  }
+
+  /**
+   * Extract runs from a row of the mask, by locating the transitions between
+   * unset and set bits within each word
+   */
+  private void extractMaskRuns(Band b, int y) {
+    long[] words = mMask.words();
+    int wordsPerRow = mMask.wordsPerRow();
+    int rowOffset = y * wordsPerRow;
+    boolean inRun = false;
+    int start = 0;
+    for (int w = 0; w < wordsPerRow; w++) {
+      long word = words[rowOffset + w];
+      int base = w << 6;
+      int pos = 0;
+      while (pos < 64) {
+        long transitions = (inRun ? ~word : word) & (-1L << pos);
+        if (transitions == 0)
+          break;
+        pos = Long.numberOfTrailingZeros(transitions);
+        if (inRun)
+          b.add(start, base + pos);
+        else
+          start = base + pos;
+        inRun = !inRun;
+      }
+    }
+    if (inRun)
+      b.add(start, mSize.x);
+  }
+
+  private void extractImageRuns(Band b, int y) {
+    short[] pixels = mImage.pixels();
+    int width = mSize.x;
+    int i = y * width;
+    int x = 0;
+    while (x < width) {
+      while (x < width && pixels[i + x] == 0)
+        x++;
+      if (x == width)
+        break;
+      int start = x;
+      while (x < width && pixels[i + x] != 0)
+        x++;
+      b.add(start, x);
+    }
+  }
+
+  private void calcRunValues(Band b) {
+    short[] pixels = mImage.pixels();
+    int width = mSize.x;
+    b.mValueSum = new long[b.mCount];
+    b.mValueMin = new int[b.mCount];
+    b.mValueMax = new int[b.mCount];
+    for (int y = b.mRowStart; y < b.mRowEnd; y++) {
+      int row = y - b.mRowStart;
+      for (int r = b.mRowFirstRun[row]; r < b.mRowFirstRun[row + 1]; r++) {
+        long sum = 0;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        int end = y * width + b.mEnd[r];
+        for (int i = y * width + b.mStart[r]; i < end; i++) {
+          int value = pixels[i] & 0xffff;
+          sum += value;
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+        b.mValueSum[r] = sum;
+        b.mValueMin[r] = min;
+        b.mValueMax[r] = max;
+      }
+    }
+  }
+
+  /**
+   * Union any runs of a row [a0,a1) that touch runs of the following row
+   * [b0,b1)
+   */
+  private void mergeRows(int[] parent, int[] start, int[] end, int a0, int a1, int b0, int b1) {
+    int slack = (mConnectivity == 8) ? 1 : 0;
+    int i = a0;
+    int j = b0;
+    while (i < a1 && j < b1) {
+      if (start[i] < end[j] + slack && start[j] < end[i] + slack)
+        union(parent, i, j);
+      if (end[i] < end[j])
+        i++;
+      else
+        j++;
+    }
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * Merge two sets; the root of the merged set is the smaller of the two roots
+   */
+  private static void union(int[] parent, int a, int b) {
+    a = find(parent, a);
+    b = find(parent, b);
+    if (a < b)
+      parent[b] = a;
+    else if (b < a)
+      parent[a] = b;
+  }
+
+  private BinaryMask mMask;
+  private MonoImage mImage;
+  private IPoint mSize;
+  private int mConnectivity = 8;
+  private int mMinimumArea;
+  private boolean mParallel = true;
+
+  private List<Component> mComponents;
+  private int[] mRunStart;
+  private int[] mRunEnd;
+  private int[] mRowFirstRun;
+  private int[] mRunLabel;
+}
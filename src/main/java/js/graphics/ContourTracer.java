@@ -0,0 +1,461 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.geometry.Polygon;
+import js.graphics.gen.ElementProperties;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Traces the outlines of the foreground regions of a BinaryMask (or the
+ * nonzero pixels of a MonoImage), producing polygons whose vertices lie on
+ * pixel corners.
+ * 
+ * The tracer makes a single pass over the pixel corners in row-major order,
+ * examining the 2x2 block of pixels surrounding each corner (as with marching
+ * squares) to determine which pixel edges meet there. Partial contours are
+ * extended, joined and closed as the scan proceeds; only turning corners
+ * become vertices, and a contour is emitted (and optionally simplified) as
+ * soon as it is closed. Aside from two rows of pixels, memory use is
+ * proportional to the length of the contours.
+ * 
+ * Contours are oriented so the foreground lies to the right of each edge
+ * (with y increasing downward); hence outer boundaries have positive signed
+ * area, and the boundaries of holes have negative signed area.
+ */
+public final class ContourTracer extends BaseObject {
+
+  public ContourTracer withMask(BinaryMask mask) {
+    mMask = mask;
+    mImage = null;
+    mSize = mask.size();
+    mContours = null;
+    return this;
+  }
+
+  public ContourTracer withImage(MonoImage image) {
+    checkArgument(image.pixels().length == image.size().product(), "unexpected pixel count");
+    mImage = image;
+    mMask = null;
+    mSize = image.size();
+    mContours = null;
+    return this;
+  }
+
+  /**
+   * Set the connectivity of the foreground: 8 (the default) or 4. Holes have
+   * the complementary connectivity
+   */
+  public ContourTracer withConnectivity(int connectivity) {
+    checkArgument(connectivity == 4 || connectivity == 8, "bad connectivity:", connectivity);
+    mConnectivity = connectivity;
+    mContours = null;
+    return this;
+  }
+
+  /**
+   * Simplify each contour (using the Douglas-Peucker algorithm) so that no
+   * pixel corner of the original contour lies farther than this distance from
+   * the simplified one. Zero (the default) produces exact outlines
+   */
+  public ContourTracer withTolerance(float tolerance) {
+    checkArgument(tolerance >= 0, "bad tolerance:", tolerance);
+    mTolerance = tolerance;
+    mContours = null;
+    return this;
+  }
+
+  /**
+   * A closed contour
+   */
+  public static final class Contour {
+
+    public Polygon polygon() {
+      return mPolygon;
+    }
+
+    /**
+     * Determine if this contour is the boundary of a hole within a region,
+     * vs the outer boundary of a region
+     */
+    public boolean isHole() {
+      return mSignedArea < 0;
+    }
+
+    /**
+     * Get the signed area of the polygon (positive for outer boundaries,
+     * negative for holes)
+     */
+    public float signedArea() {
+      return mSignedArea;
+    }
+
+    private Polygon mPolygon;
+    private float mSignedArea;
+  }
+
+  /**
+   * Get the contours, in the order they were closed
+   */
+  public List<Contour> contours() {
+    if (mContours == null)
+      trace();
+    return mContours;
+  }
+
+  /**
+   * Construct a PolygonElement for each contour
+   * 
+   * @param includeHoles
+   *          if false, contours of holes are omitted
+   */
+  public List<ScriptElement> polygonElements(int category, boolean includeHoles) {
+    ElementProperties properties = ScriptUtil.setCategory(null, category).build();
+    List<ScriptElement> elements = arrayList();
+    for (Contour c : contours()) {
+      if (c.isHole() && !includeHoles)
+        continue;
+      elements.add(new PolygonElement(properties, c.polygon()));
+    }
+    return elements;
+  }
+
+  // ------------------------------------------------------------------
+  // Tracing
+  // ------------------------------------------------------------------
+
+  private void trace() {
+    checkState(mSize != null, "no mask or image provided");
+    mContours = arrayList();
+    int width = mSize.x;
+    int height = mSize.y;
+
+    mNodeCount = 0;
+    mChainCount = 0;
+
+    // Pixel rows above and below the current row of corners, padded with a
+    // background pixel at each end
+    boolean[] above = new boolean[width + 2];
+    boolean[] below = new boolean[width + 2];
+
+    // Chain that owns the vertical edge below each corner of the current row
+    int[] pendingDown = new int[width + 1];
+    Arrays.fill(pendingDown, -1);
+
+    boolean conn8 = mConnectivity == 8;
+
+    for (int y = 0; y <= height; y++) {
+      boolean[] tmp = above;
+      above = below;
+      below = tmp;
+      if (y < height)
+        readRow(y, below);
+      else
+        Arrays.fill(below, false);
+
+      // Chain that owns the horizontal edge to the right of the current corner
+      int pendingRight = -1;
+
+      for (int x = 0; x <= width; x++) {
+        boolean a = above[x];
+        boolean b = above[x + 1];
+        boolean c = below[x];
+        boolean d = below[x + 1];
+
+        boolean up = a != b;
+        boolean left = a != c;
+        boolean down = c != d;
+        boolean right = b != d;
+
+        int downChain = -1;
+        int rightChain = -1;
+
+        if (up || left || down || right) {
+          // Determine whether each edge enters this corner (vs leaving it)
+          boolean upIn = a;
+          boolean leftIn = c;
+
+          if (up && left && down && right) {
+            // Saddle; pair the edges so the diagonal pixels are connected or
+            // separated according to the connectivity
+            if (a != conn8) {
+              joinOld(pendingDown[x], upIn, pendingRight, x, y);
+              downChain = rightChain = newChain(x, y);
+            } else {
+              rightChain = extend(pendingDown[x], upIn, x, y);
+              downChain = extend(pendingRight, leftIn, x, y);
+            }
+          } else if (up) {
+            if (left)
+              joinOld(pendingDown[x], upIn, pendingRight, x, y);
+            else if (down)
+              downChain = find(pendingDown[x]);
+            else
+              rightChain = extend(pendingDown[x], upIn, x, y);
+          } else if (left) {
+            if (right)
+              rightChain = find(pendingRight);
+            else
+              downChain = extend(pendingRight, leftIn, x, y);
+          } else
+            downChain = rightChain = newChain(x, y);
+        }
+        pendingDown[x] = downChain;
+        pendingRight = rightChain;
+      }
+    }
+  }
+
+  private void readRow(int y, boolean[] dest) {
+    int width = mSize.x;
+    if (mMask != null) {
+      long[] words = mMask.words();
+      int offset = y * mMask.wordsPerRow();
+      for (int x = 0; x < width; x++)
+        dest[x + 1] = (words[offset + (x >> 6)] & (1L << x)) != 0;
+    } else {
+      short[] pixels = mImage.pixels();
+      int offset = y * width;
+      for (int x = 0; x < width; x++)
+        dest[x + 1] = pixels[offset + x] != 0;
+    }
+  }
+
+  /**
+   * Start a new chain consisting of a single vertex
+   */
+  private int newChain(int x, int y) {
+    int node = newNode(x, y);
+    if (mChainCount == mChainHead.length) {
+      int n = mChainCount * 2;
+      mChainHead = Arrays.copyOf(mChainHead, n);
+      mChainTail = Arrays.copyOf(mChainTail, n);
+      mChainAlias = Arrays.copyOf(mChainAlias, n);
+    }
+    int chain = mChainCount++;
+    mChainHead[chain] = node;
+    mChainTail[chain] = node;
+    mChainAlias[chain] = chain;
+    return chain;
+  }
+
+  /**
+   * Add a (turning) vertex to a chain at the end where an existing edge meets
+   * the corner, so it can be extended by a new edge; return the chain
+   */
+  private int extend(int chain, boolean edgeEntersCorner, int x, int y) {
+    chain = find(chain);
+    int node = newNode(x, y);
+    if (edgeEntersCorner) {
+      mNodeNext[mChainTail[chain]] = node;
+      mChainTail[chain] = node;
+    } else {
+      mNodeNext[node] = mChainHead[chain];
+      mChainHead[chain] = node;
+    }
+    return chain;
+  }
+
+  /**
+   * Join two chains whose edges meet at a (turning) corner; if they are the
+   * same chain, the contour is closed
+   */
+  private void joinOld(int chainA, boolean aEntersCorner, int chainB, int x, int y) {
+    chainA = find(chainA);
+    chainB = find(chainB);
+    // Let 'in' be the chain ending at this corner, 'out' the one starting here
+    int in = aEntersCorner ? chainA : chainB;
+    int out = aEntersCorner ? chainB : chainA;
+    int node = newNode(x, y);
+    mNodeNext[mChainTail[in]] = node;
+    if (in == out) {
+      emitContour(mChainHead[in]);
+      return;
+    }
+    mNodeNext[node] = mChainHead[out];
+    mChainTail[in] = mChainTail[out];
+    mChainAlias[out] = in;
+  }
+
+  private int find(int chain) {
+    while (mChainAlias[chain] != chain) {
+      mChainAlias[chain] = mChainAlias[mChainAlias[chain]];
+      chain = mChainAlias[chain];
+    }
+    return chain;
+  }
+
+  private int newNode(int x, int y) {
+    if (mNodeCount == mNodeX.length) {
+      int n = mNodeCount * 2;
+      mNodeX = Arrays.copyOf(mNodeX, n);
+      mNodeY = Arrays.copyOf(mNodeY, n);
+      mNodeNext = Arrays.copyOf(mNodeNext, n);
+    }
+    int node = mNodeCount++;
+    mNodeX[node] = x;
+    mNodeY[node] = y;
+    mNodeNext[node] = -1;
+    return node;
+  }
+
+  private void emitContour(int headNode) {
+    // Start the polygon at its first vertex in row-major order, which is the
+    // one that was created first
+    int count = 0;
+    int first = headNode;
+    int firstPosition = 0;
+    for (int n = headNode; n >= 0; n = mNodeNext[n], count++) {
+      if (n < first) {
+        first = n;
+        firstPosition = count;
+      }
+    }
+    int[] xs = new int[count];
+    int[] ys = new int[count];
+    int i = count - firstPosition;
+    for (int n = headNode; n >= 0; n = mNodeNext[n], i++) {
+      if (i == count)
+        i = 0;
+      xs[i] = mNodeX[n];
+      ys[i] = mNodeY[n];
+    }
+
+    long twiceArea = 0;
+    for (i = 0; i < count; i++) {
+      int j = (i + 1 == count) ? 0 : i + 1;
+      twiceArea += (long) xs[i] * ys[j] - (long) xs[j] * ys[i];
+    }
+
+    boolean[] keep = simplify(xs, ys);
+    List<IPoint> vertices = arrayList();
+    for (i = 0; i < count; i++)
+      if (keep == null || keep[i])
+        vertices.add(new IPoint(xs[i], ys[i]));
+
+    Contour c = new Contour();
+    c.mPolygon = new Polygon(vertices);
+    c.mSignedArea = twiceArea / 2f;
+    mContours.add(c);
+  }
+
+  /**
+   * Determine which vertices of a closed polygon to keep, using the
+   * Douglas-Peucker algorithm; returns null if all are to be kept
+   */
+  private boolean[] simplify(int[] xs, int[] ys) {
+    int count = xs.length;
+    if (mTolerance <= 0 || count <= 4)
+      return null;
+    double tolSq = (double) mTolerance * mTolerance;
+    boolean[] keep = new boolean[count + 1];
+
+    // Treat the polygon as a path from vertex 0 around to vertex 0 again,
+    // split at the vertex farthest from vertex 0
+    int far = 0;
+    long farDist = -1;
+    for (int i = 1; i < count; i++) {
+      long dx = xs[i] - xs[0];
+      long dy = ys[i] - ys[0];
+      long d = dx * dx + dy * dy;
+      if (d > farDist) {
+        farDist = d;
+        far = i;
+      }
+    }
+    keep[0] = true;
+    keep[far] = true;
+    keep[count] = true;
+
+    int[] stack = new int[2 * count + 4];
+    int sp = 0;
+    stack[sp++] = 0;
+    stack[sp++] = far;
+    stack[sp++] = far;
+    stack[sp++] = count;
+    while (sp > 0) {
+      int j = stack[--sp];
+      int i = stack[--sp];
+      int ax = xs[i], ay = ys[i];
+      int bx = xs[j % count], by = ys[j % count];
+      double maxDist = -1;
+      int maxIndex = -1;
+      for (int k = i + 1; k < j; k++) {
+        double d = segmentDistanceSq(xs[k], ys[k], ax, ay, bx, by);
+        if (d > maxDist) {
+          maxDist = d;
+          maxIndex = k;
+        }
+      }
+      if (maxIndex >= 0 && maxDist > tolSq) {
+        keep[maxIndex] = true;
+        stack[sp++] = i;
+        stack[sp++] = maxIndex;
+        stack[sp++] = maxIndex;
+        stack[sp++] = j;
+      }
+    }
+    return keep;
+  }
+
+  private static double segmentDistanceSq(int px, int py, int ax, int ay, int bx, int by) {
+    double dx = bx - ax;
+    double dy = by - ay;
+    double lenSq = dx * dx + dy * dy;
+    double t = 0;
+    if (lenSq > 0)
+      t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lenSq));
+    double ex = ax + t * dx - px;
+    double ey = ay + t * dy - py;
+    return ex * ex + ey * ey;
+  }
+
+  private BinaryMask mMask;
+  private MonoImage mImage;
+  private IPoint mSize;
+  private int mConnectivity = 8;
+  private float mTolerance;
+  private List<Contour> mContours;
+
+  // Pool of vertices, each belonging to a singly-linked list
+  private int mNodeCount;
+  private int[] mNodeX = new int[64];
+  private int[] mNodeY = new int[64];
+  private int[] mNodeNext = new int[64];
+
+  // Partial contours (chains of vertices); chains that have been appended to
+  // others are aliased to them
+  private int mChainCount;
+  private int[] mChainHead = new int[16];
+  private int[] mChainTail = new int[16];
+  private int[] mChainAlias = new int[16];
+}
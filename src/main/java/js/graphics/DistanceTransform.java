@@ -0,0 +1,269 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Exact Euclidean distance transform, using the linear-time algorithm of
+ * Felzenszwalb and Huttenlocher ("Distance Transforms of Sampled Functions").
+ * 
+ * The transform assigns to each foreground pixel the squared distance to the
+ * nearest background pixel (background pixels are assigned zero). A column
+ * pass determines, for each pixel, the vertical distance to the nearest
+ * background pixel in its column; a row pass then computes the lower envelope
+ * of the parabolas rooted at each pixel of the row. Each pass is performed in
+ * parallel.
+ * 
+ * Thresholding the result yields an erosion (or dilation) by a disc of any
+ * radius, at a cost that is independent of that radius.
+ */
+public final class DistanceTransform {
+
+  /**
+   * Squared distance assigned to pixels if there are no background pixels at
+   * all
+   */
+  public static final int INFINITE = Integer.MAX_VALUE;
+
+  /**
+   * Calculate squared distances from each nonzero pixel of a MonoImage to the
+   * nearest zero pixel
+   * 
+   * @param outsideIsBackground
+   *          if true, pixels outside of the image are treated as background;
+   *          otherwise, they are ignored
+   */
+  public static int[] squaredDistances(MonoImage image, boolean outsideIsBackground) {
+    IPoint size = image.size();
+    short[] pixels = image.pixels();
+    checkArgument(pixels.length == size.product(), "unexpected pixel count");
+    int width = size.x;
+    return transform(size, outsideIsBackground, (x0, x1, y, dest) -> {
+      int i = y * width + x0;
+      for (int x = x0; x < x1; x++, i++)
+        dest[x] = pixels[i] == 0;
+    });
+  }
+
+  /**
+   * Calculate squared distances from each set pixel of a mask to the nearest
+   * unset pixel
+   * 
+   * @param outsideIsBackground
+   *          if true, pixels outside of the mask are treated as unset;
+   *          otherwise, they are ignored
+   */
+  public static int[] squaredDistances(BinaryMask mask, boolean outsideIsBackground) {
+    return transform(mask.size(), outsideIsBackground, (x0, x1, y, dest) -> {
+      for (int x = x0; x < x1; x++)
+        dest[x] = !mask.get(x, y);
+    });
+  }
+
+  /**
+   * Erode a MonoImage by a disc of a particular radius: set to zero every pixel
+   * whose distance to a zero pixel is at most that radius. Pixels outside of
+   * the image are ignored (consistent with
+   * MonoImageUtil.erodeMonochromeImage, which this can replace for any number
+   * of passes)
+   */
+  public static MonoImage erode(MonoImage image, float radius) {
+    int[] dist = squaredDistances(image, false);
+    long limit = squaredRadius(radius);
+    MonoImage result = MonoImageUtil.construct(image);
+    short[] pixels = result.pixels();
+    for (int i = 0; i < pixels.length; i++)
+      if (dist[i] <= limit)
+        pixels[i] = 0;
+    return result;
+  }
+
+  /**
+   * Erode a mask by a disc of a particular radius: clear every pixel whose
+   * distance to an unset pixel is at most that radius. Pixels outside of the
+   * mask are ignored. For integer radii, this is equivalent to
+   * mask.erode(StructuringElement.disc(radius))
+   */
+  public static BinaryMask erode(BinaryMask mask, float radius) {
+    return threshold(mask.size(), squaredDistances(mask, false), radius);
+  }
+
+  /**
+   * Dilate a mask by a disc of a particular radius: set every pixel whose
+   * distance to a set pixel is at most that radius. For integer radii, this is
+   * equivalent to mask.dilate(StructuringElement.disc(radius))
+   */
+  public static BinaryMask dilate(BinaryMask mask, float radius) {
+    BinaryMask inverse = mask.copy().invert();
+    return threshold(mask.size(), squaredDistances(inverse, false), radius).invert();
+  }
+
+  /**
+   * Convert squared distances to a MonoImage of (rounded) distances, clamped to
+   * MonoImageUtil.MAX_PIXEL_VALUE
+   */
+  public static MonoImage toMonoImage(IPoint size, int[] squaredDistances) {
+    checkArgument(squaredDistances.length == size.product(), "unexpected pixel count");
+    short[] pixels = new short[squaredDistances.length];
+    RowBands.forEach(size.y, MIN_ROWS_PER_BAND, (y0, y1) -> {
+      for (int i = y0 * size.x; i < y1 * size.x; i++)
+        pixels[i] = (short) Math.min(MonoImageUtil.MAX_PIXEL_VALUE,
+            Math.round(Math.sqrt(squaredDistances[i])));
+    });
+    return MonoImageUtil.construct(size, pixels);
+  }
+
+  // ------------------------------------------------------------------
+  // Implementation
+  // ------------------------------------------------------------------
+
+  /**
+   * Reads background flags for a portion [x0,x1) of a row
+   */
+  private interface BackgroundReader {
+    void read(int x0, int x1, int y, boolean[] dest);
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private static long squaredRadius(float radius) {
+    checkArgument(radius >= 0, "bad radius:", radius);
+    return (long) Math.floor((double) radius * radius);
+  }
+
+  private static int increment(int distance) {
+    return (distance == INFINITE) ? INFINITE : distance + 1;
+  }
+
+  private static BinaryMask threshold(IPoint size, int[] dist, float radius) {
+    long limit = squaredRadius(radius);
+    BinaryMask result = new BinaryMask(size);
+    int i = 0;
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++, i++)
+        if (dist[i] > limit)
+          result.set(x, y);
+    return result;
+  }
+
+  private static int[] transform(IPoint size, boolean outsideIsBackground, BackgroundReader reader) {
+    int width = size.x;
+    int height = size.y;
+    int[] dist = new int[size.product()];
+
+    // Column pass: store vertical distance to nearest background pixel, by
+    // sweeping down and then up; bands of columns are processed concurrently
+    //
+    RowBands.forEach(width, MIN_ROWS_PER_BAND, (x0, x1) -> {
+      boolean[] background = new boolean[width];
+      int outside = outsideIsBackground ? 0 : INFINITE;
+      for (int y = 0; y < height; y++) {
+        reader.read(x0, x1, y, background);
+        int i = y * width;
+        for (int x = x0; x < x1; x++) {
+          if (background[x])
+            dist[i + x] = 0;
+          else
+            dist[i + x] = increment((y == 0) ? outside : dist[i + x - width]);
+        }
+      }
+      // Store squared distances during the upward sweep, keeping the unsquared
+      // distances of the row below in a separate buffer
+      int[] below = new int[width];
+      Arrays.fill(below, outside);
+      for (int y = height - 1; y >= 0; y--) {
+        int i = y * width;
+        for (int x = x0; x < x1; x++) {
+          int d = Math.min(dist[i + x], increment(below[x]));
+          below[x] = d;
+          dist[i + x] = (d == INFINITE) ? INFINITE : d * d;
+        }
+      }
+    });
+
+    // Row pass: lower envelope of parabolas rooted at each column
+    //
+    RowBands.forEach(height, MIN_ROWS_PER_BAND, (y0, y1) -> {
+      int[] f = new int[width];
+      int[] v = new int[width];
+      double[] z = new double[width + 1];
+      for (int y = y0; y < y1; y++) {
+        int i = y * width;
+        System.arraycopy(dist, i, f, 0, width);
+        transformRow(f, width, v, z, dist, i);
+        if (outsideIsBackground) {
+          for (int x = 0; x < width; x++) {
+            int edge = Math.min(x + 1, width - x);
+            dist[i + x] = Math.min(dist[i + x], edge * edge);
+          }
+        }
+      }
+    });
+    return dist;
+  }
+
+  /**
+   * Compute d(x) = min over q of (x-q)^2 + f(q), ignoring any q where f(q) is
+   * infinite, and store in dest[offset + x]
+   */
+  private static void transformRow(int[] f, int n, int[] v, double[] z, int[] dest, int offset) {
+    int k = -1;
+    for (int q = 0; q < n; q++) {
+      long fq = f[q];
+      if (fq == INFINITE)
+        continue;
+      double s = 0;
+      while (k >= 0) {
+        int p = v[k];
+        s = ((fq + (long) q * q) - ((long) f[p] + (long) p * p)) / (2.0 * (q - p));
+        if (s > z[k])
+          break;
+        k--;
+      }
+      k++;
+      v[k] = q;
+      z[k] = (k == 0) ? Double.NEGATIVE_INFINITY : s;
+      z[k + 1] = Double.POSITIVE_INFINITY;
+    }
+    if (k < 0) {
+      Arrays.fill(dest, offset, offset + n, INFINITE);
+      return;
+    }
+    int j = 0;
+    for (int x = 0; x < n; x++) {
+      while (z[j + 1] < x)
+        j++;
+      int p = v[j];
+      long d = (long) (x - p) * (x - p) + f[p];
+      dest[offset + x] = (int) Math.min(d, INFINITE - 1);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A plan for computing one-dimensional complex discrete Fourier transforms of
+ * a particular (power of two) length, using an iterative radix-2 algorithm.
+ * 
+ * Plans hold only immutable tables, and are cached and shared; a single plan
+ * can be used by multiple threads concurrently.
+ */
+public final class Fft {
+
+  /**
+   * Get the plan for a length, which must be a power of two
+   */
+  public static Fft forLength(int length) {
+    checkArgument(length > 0 && Integer.bitCount(length) == 1, "length isn't a power of two:", length);
+    return sPlans.computeIfAbsent(length, Fft::new);
+  }
+
+  /**
+   * Get the smallest power of two that is at least a particular length
+   */
+  public static int paddedLength(int length) {
+    checkArgument(length > 0 && length <= (1 << 30), "bad length:", length);
+    return (length == 1) ? 1 : Integer.highestOneBit(length - 1) << 1;
+  }
+
+  private Fft(int length) {
+    mLength = length;
+    int half = length / 2;
+    mCos = new float[half];
+    mSin = new float[half];
+    for (int k = 0; k < half; k++) {
+      double angle = 2 * Math.PI * k / length;
+      mCos[k] = (float) Math.cos(angle);
+      mSin[k] = (float) Math.sin(angle);
+    }
+    mReversed = new int[length];
+    int bits = Integer.numberOfTrailingZeros(length);
+    for (int i = 0; i < length; i++)
+      mReversed[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+  }
+
+  public int length() {
+    return mLength;
+  }
+
+  /**
+   * Transform a sequence in place. The sequence's real and imaginary parts are
+   * stored in two arrays, starting at an offset. The forward transform uses
+   * the kernel exp(-2 pi i jk / n); the inverse transform is not scaled (i.e.,
+   * applying both multiplies the sequence by n)
+   */
+  public void transform(float[] re, float[] im, int offset, boolean inverse) {
+    int n = mLength;
+    for (int i = 0; i < n; i++) {
+      int j = mReversed[i];
+      if (j > i) {
+        float t = re[offset + i];
+        re[offset + i] = re[offset + j];
+        re[offset + j] = t;
+        t = im[offset + i];
+        im[offset + i] = im[offset + j];
+        im[offset + j] = t;
+      }
+    }
+
+    float sign = inverse ? -1 : 1;
+    for (int size = 2; size <= n; size <<= 1) {
+      int half = size >> 1;
+      int tableStep = n / size;
+      for (int start = offset; start < offset + n; start += size) {
+        for (int j = 0, k = 0; j < half; j++, k += tableStep) {
+          int a = start + j;
+          int b = a + half;
+          float c = mCos[k];
+          float s = sign * mSin[k];
+          float tr = re[b] * c + im[b] * s;
+          float ti = im[b] * c - re[b] * s;
+          re[b] = re[a] - tr;
+          im[b] = im[a] - ti;
+          re[a] += tr;
+          im[a] += ti;
+        }
+      }
+    }
+  }
+
+  private static final Map<Integer, Fft> sPlans = new ConcurrentHashMap<>();
+
+  private final int mLength;
+  private final float[] mCos;
+  private final float[] mSin;
+  private final int[] mReversed;
+}
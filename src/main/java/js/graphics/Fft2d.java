@@ -0,0 +1,197 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+
+import js.geometry.IPoint;
+
+/**
+ * Two-dimensional discrete Fourier transforms of real images whose width and
+ * height are powers of two.
+ * 
+ * As the spectrum of a real image is conjugate symmetric, only its columns 0
+ * ... width/2 are stored (in row-major order, in the arrays returned by
+ * spectrumRe() and spectrumIm()). Pairs of rows are transformed together, as
+ * the real and imaginary parts of a single complex sequence; rows, and then
+ * columns, are processed in parallel bands.
+ * 
+ * The spectrum buffers are retained between calls; an instance should not be
+ * used by more than one thread at a time.
+ */
+public final class Fft2d {
+
+  public Fft2d(IPoint size) {
+    checkArgument(size.x >= 2 && size.y >= 1, "bad size:", size);
+    mWidth = size.x;
+    mHeight = size.y;
+    mRowPlan = Fft.forLength(mWidth);
+    mColumnPlan = Fft.forLength(mHeight);
+    mSpectrumWidth = mWidth / 2 + 1;
+    mRe = new float[mSpectrumWidth * mHeight];
+    mIm = new float[mSpectrumWidth * mHeight];
+  }
+
+  public IPoint size() {
+    return new IPoint(mWidth, mHeight);
+  }
+
+  public int spectrumWidth() {
+    return mSpectrumWidth;
+  }
+
+  public float[] spectrumRe() {
+    return mRe;
+  }
+
+  public float[] spectrumIm() {
+    return mIm;
+  }
+
+  /**
+   * Compute the spectrum of an image, stored in row-major order
+   */
+  public void forward(float[] image) {
+    checkArgument(image.length == mWidth * mHeight, "image length mismatch");
+    int w = mWidth;
+    int sw = mSpectrumWidth;
+    RowBands.forEach((mHeight + 1) / 2, MIN_ROWS_PER_BAND, (pairStart, pairEnd) -> {
+      float[] zr = new float[w];
+      float[] zi = new float[w];
+      for (int pair = pairStart; pair < pairEnd; pair++) {
+        int a = pair * 2;
+        int b = a + 1;
+        System.arraycopy(image, a * w, zr, 0, w);
+        if (b < mHeight)
+          System.arraycopy(image, b * w, zi, 0, w);
+        else
+          Arrays.fill(zi, 0);
+        mRowPlan.transform(zr, zi, 0, false);
+
+        // Separate the spectra of the two rows, using their conjugate symmetry
+        for (int k = 0; k < sw; k++) {
+          int kc = (w - k) & (w - 1);
+          float r0 = zr[k];
+          float i0 = zi[k];
+          float r1 = zr[kc];
+          float i1 = zi[kc];
+          mRe[a * sw + k] = (r0 + r1) * 0.5f;
+          mIm[a * sw + k] = (i0 - i1) * 0.5f;
+          if (b < mHeight) {
+            mRe[b * sw + k] = (i0 + i1) * 0.5f;
+            mIm[b * sw + k] = (r1 - r0) * 0.5f;
+          }
+        }
+      }
+    });
+    transformColumns(false);
+  }
+
+  /**
+   * Compute the image whose spectrum is stored in the spectrum buffers (which
+   * are overwritten), scaled so that inverse(forward(x)) = x
+   */
+  public void inverse(float[] image) {
+    checkArgument(image.length == mWidth * mHeight, "image length mismatch");
+    transformColumns(true);
+    int w = mWidth;
+    int sw = mSpectrumWidth;
+    float scale = 1f / (mWidth * (float) mHeight);
+    RowBands.forEach((mHeight + 1) / 2, MIN_ROWS_PER_BAND, (pairStart, pairEnd) -> {
+      float[] zr = new float[w];
+      float[] zi = new float[w];
+      for (int pair = pairStart; pair < pairEnd; pair++) {
+        int a = pair * 2;
+        int b = a + 1;
+        boolean hasB = b < mHeight;
+
+        // Combine the two rows' spectra as Xa + i Xb, restoring the columns
+        // beyond width/2 by conjugate symmetry
+        for (int k = 0; k < w; k++) {
+          int index;
+          float conjugate;
+          if (k < sw) {
+            index = k;
+            conjugate = 1;
+          } else {
+            index = w - k;
+            conjugate = -1;
+          }
+          float ar = mRe[a * sw + index];
+          float ai = conjugate * mIm[a * sw + index];
+          float br = 0;
+          float bi = 0;
+          if (hasB) {
+            br = mRe[b * sw + index];
+            bi = conjugate * mIm[b * sw + index];
+          }
+          zr[k] = ar - bi;
+          zi[k] = ai + br;
+        }
+        mRowPlan.transform(zr, zi, 0, true);
+        for (int x = 0; x < w; x++)
+          image[a * w + x] = zr[x] * scale;
+        if (hasB)
+          for (int x = 0; x < w; x++)
+            image[b * w + x] = zi[x] * scale;
+      }
+    });
+  }
+
+  private void transformColumns(boolean inverse) {
+    int h = mHeight;
+    int sw = mSpectrumWidth;
+    if (h == 1)
+      return;
+    RowBands.forEach(sw, MIN_COLUMNS_PER_BAND, (columnStart, columnEnd) -> {
+      float[] cr = new float[h];
+      float[] ci = new float[h];
+      for (int c = columnStart; c < columnEnd; c++) {
+        for (int y = 0, i = c; y < h; y++, i += sw) {
+          cr[y] = mRe[i];
+          ci[y] = mIm[i];
+        }
+        mColumnPlan.transform(cr, ci, 0, inverse);
+        for (int y = 0, i = c; y < h; y++, i += sw) {
+          mRe[i] = cr[y];
+          mIm[i] = ci[y];
+        }
+      }
+    });
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 8;
+  private static final int MIN_COLUMNS_PER_BAND = 8;
+
+  private final int mWidth;
+  private final int mHeight;
+  private final int mSpectrumWidth;
+  private final Fft mRowPlan;
+  private final Fft mColumnPlan;
+  private final float[] mRe;
+  private final float[] mIm;
+}
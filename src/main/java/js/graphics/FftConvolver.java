@@ -0,0 +1,169 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Convolves images of a particular size with a (typically large) kernel, by
+ * multiplying their Fourier transforms.
+ * 
+ * The kernel's center is the pixel at (width/2, height/2). Images are padded
+ * to power-of-two dimensions large enough that the convolution doesn't wrap
+ * around; the padding replicates the images' edge pixels. The kernel's
+ * spectrum is computed once, and the transform buffers are reused; an
+ * instance should not be used by more than one thread at a time.
+ */
+public final class FftConvolver {
+
+  public FftConvolver(IPoint imageSize, float[] kernel, IPoint kernelSize) {
+    checkArgument(kernel.length == kernelSize.x * kernelSize.y, "kernel length mismatch");
+    mImageSize = imageSize;
+    int w = Math.max(2, Fft.paddedLength(imageSize.x + kernelSize.x - 1));
+    int h = Fft.paddedLength(imageSize.y + kernelSize.y - 1);
+    mPaddedWidth = w;
+    mPaddedHeight = h;
+    mFft = new Fft2d(new IPoint(w, h));
+    mPadded = new float[w * h];
+
+    // Place the kernel with its center at the origin, wrapping around
+    int cx = kernelSize.x / 2;
+    int cy = kernelSize.y / 2;
+    for (int ky = 0; ky < kernelSize.y; ky++) {
+      int y = (ky - cy + h) % h;
+      for (int kx = 0; kx < kernelSize.x; kx++) {
+        int x = (kx - cx + w) % w;
+        mPadded[y * w + x] = kernel[ky * kernelSize.x + kx];
+      }
+    }
+    mFft.forward(mPadded);
+    mKernelRe = mFft.spectrumRe().clone();
+    mKernelIm = mFft.spectrumIm().clone();
+  }
+
+  public IPoint imageSize() {
+    return mImageSize;
+  }
+
+  /**
+   * Convolve an image, storing the results in an array (allocating one if
+   * null)
+   */
+  public float[] apply(MonoImage image, float[] outputOrNull) {
+    checkArgument(image.size().equals(mImageSize), "image size", image.size(), "differs from", mImageSize);
+    short[] pixels = image.pixels();
+    int width = mImageSize.x;
+    loadPadded((x, y) -> pixels[y * width + x] & 0xffff);
+    return convolve(outputOrNull);
+  }
+
+  /**
+   * Convolve an image whose pixels are stored as floats in row-major order,
+   * storing the results in an array (allocating one if null); the array may
+   * be the same as the input
+   */
+  public float[] apply(float[] image, float[] outputOrNull) {
+    checkArgument(image.length == mImageSize.x * mImageSize.y, "image length mismatch");
+    int width = mImageSize.x;
+    loadPadded((x, y) -> image[y * width + x]);
+    return convolve(outputOrNull);
+  }
+
+  private interface PixelSource {
+    float get(int x, int y);
+  }
+
+  /**
+   * Fill the padded buffer from an image. Padding to the right of (or below)
+   * the image replicates its last column (or row) for the first half of the
+   * padding, and its first column (or row) for the remainder, which wraps
+   * around to the left (or top) edge
+   */
+  private void loadPadded(PixelSource source) {
+    int width = mImageSize.x;
+    int height = mImageSize.y;
+    int w = mPaddedWidth;
+    int[] sourceX = new int[w];
+    for (int x = 0; x < w; x++)
+      sourceX[x] = clampPadded(x, width, w);
+    RowBands.forEach(mPaddedHeight, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        int sy = clampPadded(y, height, mPaddedHeight);
+        int offset = y * w;
+        for (int x = 0; x < w; x++)
+          mPadded[offset + x] = source.get(sourceX[x], sy);
+      }
+    });
+  }
+
+  private static int clampPadded(int i, int length, int paddedLength) {
+    if (i < length)
+      return i;
+    return (i - length < (paddedLength - length + 1) / 2) ? length - 1 : 0;
+  }
+
+  private float[] convolve(float[] outputOrNull) {
+    int width = mImageSize.x;
+    int height = mImageSize.y;
+    float[] output = outputOrNull;
+    if (output == null)
+      output = new float[width * height];
+    checkArgument(output.length == width * height, "output length mismatch");
+
+    mFft.forward(mPadded);
+    float[] re = mFft.spectrumRe();
+    float[] im = mFft.spectrumIm();
+    RowBands.forEach(mPaddedHeight, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      int sw = mFft.spectrumWidth();
+      for (int i = rowStart * sw; i < rowEnd * sw; i++) {
+        float ar = re[i];
+        float ai = im[i];
+        float br = mKernelRe[i];
+        float bi = mKernelIm[i];
+        re[i] = ar * br - ai * bi;
+        im[i] = ar * bi + ai * br;
+      }
+    });
+    mFft.inverse(mPadded);
+
+    int w = mPaddedWidth;
+    for (int y = 0; y < height; y++)
+      System.arraycopy(mPadded, y * w, output, y * width, width);
+    return output;
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private final IPoint mImageSize;
+  private final int mPaddedWidth;
+  private final int mPaddedHeight;
+  private final Fft2d mFft;
+  private final float[] mPadded;
+  private final float[] mKernelRe;
+  private final float[] mKernelIm;
+}
@@ -0,0 +1,188 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.List;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Per-pixel gain and offset (non-uniformity) correction for frames from a
+ * sensor.
+ * 
+ * Two-point calibration uses reference frames of two uniform scenes (e.g., a
+ * cold and a hot blackbody): each pixel's gain and offset are chosen to map
+ * its mean responses to the two scenes to the mean responses of all pixels.
+ * One-point calibration uses frames of a single uniform scene, and corrects
+ * offsets only.
+ * 
+ * Corrections are applied using fixed-point arithmetic, and results are
+ * clamped to the range of unsigned 16-bit values.
+ */
+public final class FlatFieldCorrector implements RowCorrector {
+
+  public static final int GAIN_BITS = 14;
+
+  /**
+   * Build a two-point calibration from frames of a cold and a hot uniform scene
+   */
+  public static FlatFieldCorrector calibrate(List<MonoImage> coldFrames, List<MonoImage> hotFrames) {
+    double[] cold = meanFrame(coldFrames);
+    double[] hot = meanFrame(hotFrames);
+    checkArgument(cold.length == hot.length, "cold and hot frames have different sizes");
+    IPoint size = coldFrames.get(0).size();
+    double coldMean = mean(cold);
+    double hotMean = mean(hot);
+    checkArgument(hotMean > coldMean, "hot frames aren't hotter than cold frames");
+
+    int n = cold.length;
+    int[] gains = new int[n];
+    int[] offsets = new int[n];
+    for (int i = 0; i < n; i++) {
+      double response = hot[i] - cold[i];
+      double gain = (response > 0) ? (hotMean - coldMean) / response : 1;
+      gain = Math.min(gain, MAX_GAIN);
+      gains[i] = (int) Math.round(gain * GAIN_ONE);
+      offsets[i] = (int) Math.round(coldMean - cold[i] * gain);
+    }
+    return new FlatFieldCorrector(size, gains, offsets);
+  }
+
+  /**
+   * Build a one-point (offset only) calibration from frames of a uniform scene
+   */
+  public static FlatFieldCorrector calibrateOffsets(List<MonoImage> frames) {
+    double[] scene = meanFrame(frames);
+    double sceneMean = mean(scene);
+    int n = scene.length;
+    int[] gains = new int[n];
+    int[] offsets = new int[n];
+    for (int i = 0; i < n; i++) {
+      gains[i] = GAIN_ONE;
+      offsets[i] = (int) Math.round(sceneMean - scene[i]);
+    }
+    return new FlatFieldCorrector(frames.get(0).size(), gains, offsets);
+  }
+
+  /**
+   * Construct a corrector from existing tables; each gain is a fixed-point
+   * value with GAIN_BITS fractional bits
+   */
+  public FlatFieldCorrector(IPoint size, int[] gains, int[] offsets) {
+    int n = size.x * size.y;
+    checkArgument(gains.length == n && offsets.length == n, "table lengths don't match size", size);
+    mSize = size;
+    mGains = gains;
+    mOffsets = offsets;
+  }
+
+  public IPoint size() {
+    return mSize;
+  }
+
+  public int[] gains() {
+    return mGains;
+  }
+
+  public int[] offsets() {
+    return mOffsets;
+  }
+
+  /**
+   * Correct a frame's pixels in place
+   */
+  public void apply(MonoImage frame) {
+    apply(frame, frame.pixels());
+  }
+
+  /**
+   * Correct a frame, storing the results in an array (which may be the frame's
+   * own pixels)
+   */
+  public void apply(MonoImage frame, short[] output) {
+    checkArgument(frame.size().equals(mSize), "frame size", frame.size(), "differs from", mSize);
+    short[] pixels = frame.pixels();
+    checkArgument(output.length == pixels.length, "output length mismatch");
+    int width = mSize.x;
+    RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND,
+        (rowStart, rowEnd) -> correct(pixels, output, rowStart * width, rowEnd * width));
+  }
+
+  @Override
+  public void correctRow(int rowNumber, short[] pixels, int offset) {
+    int tableOffset = rowNumber * mSize.x;
+    correct(pixels, offset, pixels, offset, tableOffset, mSize.x);
+  }
+
+  private void correct(short[] source, short[] dest, int start, int end) {
+    correct(source, start, dest, start, start, end - start);
+  }
+
+  private void correct(short[] source, int sourceOffset, short[] dest, int destOffset, int tableOffset,
+      int count) {
+    int[] gains = mGains;
+    int[] offsets = mOffsets;
+    for (int k = 0; k < count; k++) {
+      int t = tableOffset + k;
+      long v = source[sourceOffset + k] & 0xffff;
+      int corrected = (int) ((v * gains[t] + GAIN_ROUND) >> GAIN_BITS) + offsets[t];
+      dest[destOffset + k] = (short) Math.max(0, Math.min(0xffff, corrected));
+    }
+  }
+
+  private static double[] meanFrame(List<MonoImage> frames) {
+    checkArgument(!frames.isEmpty(), "no frames");
+    IPoint size = frames.get(0).size();
+    double[] sum = new double[size.x * size.y];
+    for (MonoImage frame : frames) {
+      checkArgument(frame.size().equals(size), "frame sizes differ");
+      short[] pixels = frame.pixels();
+      for (int i = 0; i < sum.length; i++)
+        sum[i] += pixels[i] & 0xffff;
+    }
+    for (int i = 0; i < sum.length; i++)
+      sum[i] /= frames.size();
+    return sum;
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double v : values)
+      sum += v;
+    return sum / values.length;
+  }
+
+  private static final int GAIN_ONE = 1 << GAIN_BITS;
+  private static final int GAIN_ROUND = 1 << (GAIN_BITS - 1);
+  private static final double MAX_GAIN = 16;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private final IPoint mSize;
+  private final int[] mGains;
+  private final int[] mOffsets;
+}
@@ -0,0 +1,202 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.image.BufferedImage;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+
+/**
+ * Renders images whose pixels are floats (e.g. neural network tensors, in
+ * interleaved channel order) to RGB pixels, into caller-supplied images or
+ * arrays so that repeated rendering needn't allocate.
+ * 
+ * Each float is mapped from a range (by default, 0...1) to one of 256 levels,
+ * which indexes a per-channel colormap of RGB colors; the colors of a pixel's
+ * channels are summed (saturating each component). The colormaps are the only
+ * lookup tables: the level is computed directly, since a table of levels would
+ * itself have to be indexed by a quantized float, which costs the same
+ * subtract and multiply. By default, a single
+ * channel is rendered in gray, and three channels as red, green and blue; with
+ * the default range, the results match ImgUtil.floatsToBufferedImage().
+ * 
+ * Once configured, a renderer can be used by multiple threads concurrently.
+ * Rows are rendered in parallel bands.
+ */
+public final class FloatRenderer extends BaseObject {
+
+  public static final int LEVELS = 256;
+
+  /**
+   * Set the range of float values mapped to the first and last colormap levels
+   * (values beyond the range are clamped)
+   */
+  public FloatRenderer withRange(float min, float max) {
+    checkArgument(max > min, "bad range:", min, max);
+    mMin = min;
+    mMax = max;
+    return this;
+  }
+
+  /**
+   * Set the colormaps (each with LEVELS RGB colors) for each channel; if
+   * empty, the default colormaps are used
+   */
+  public FloatRenderer withColormaps(int[]... colormaps) {
+    for (int[] map : colormaps)
+      checkArgument(map.length == LEVELS, "colormap length isn't", LEVELS);
+    mColormaps = colormaps.clone();
+    return this;
+  }
+
+  /**
+   * Construct a colormap that ramps linearly from black to a color
+   */
+  public static int[] rampColormap(int rgb) {
+    int[] map = new int[LEVELS];
+    int r = (rgb >> 16) & 0xff;
+    int g = (rgb >> 8) & 0xff;
+    int b = rgb & 0xff;
+    for (int i = 0; i < LEVELS; i++)
+      map[i] = ImgUtil.compileRGB(scaleComponent(r, i), scaleComponent(g, i), scaleComponent(b, i));
+    return map;
+  }
+
+  public static int[] grayColormap() {
+    return rampColormap(0xffffff);
+  }
+
+  /**
+   * Construct a colormap running from black through red and yellow to white
+   */
+  public static int[] heatColormap() {
+    int[] map = new int[LEVELS];
+    for (int i = 0; i < LEVELS; i++) {
+      int t = i * 3;
+      int r = Math.min(255, t);
+      int g = Math.max(0, Math.min(255, t - 255));
+      int b = Math.max(0, Math.min(255, t - 510));
+      map[i] = ImgUtil.compileRGB(r, g, b);
+    }
+    return map;
+  }
+
+  /**
+   * Render floats into a TYPE_INT_RGB image, constructing one if the supplied
+   * image is null or has the wrong size or type; return the image rendered to
+   */
+  public BufferedImage render(float[] floats, IPoint size, int channels, BufferedImage targetOrNull) {
+    BufferedImage target = targetOrNull;
+    if (target == null || target.getType() != BufferedImage.TYPE_INT_RGB || !ImgUtil.size(target).equals(size))
+      target = ImgUtil.build(size, BufferedImage.TYPE_INT_RGB);
+    renderPixels(floats, size, channels, ImgUtil.rgbPixels(target));
+    return target;
+  }
+
+  /**
+   * Render floats into an array of RGB pixels
+   */
+  public void renderPixels(float[] floats, IPoint size, int channels, int[] target) {
+    int pixelCount = size.product();
+    checkArgument(channels >= 1, "bad channels:", channels);
+    checkArgument(floats.length == pixelCount * channels, "wrong length for floats:", floats.length);
+    checkArgument(target.length == pixelCount, "wrong length for target:", target.length);
+    int[][] maps = colormaps(channels);
+    float min = mMin;
+    // Computed this way (rather than (LEVELS - 1) / range) to match ImgUtil's rounding
+    float scale = 1 / ((mMax - mMin) / (LEVELS - 1));
+    int width = size.x;
+
+    RowBands.forEach(size.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      int start = rowStart * width;
+      int end = rowEnd * width;
+      if (channels == 1) {
+        int[] map = maps[0];
+        for (int i = start; i < end; i++)
+          target[i] = map[level(floats[i], min, scale)];
+        return;
+      }
+      if (maps == DEFAULT_RGB) {
+        for (int i = start, j = start * 3; i < end; i++, j += 3)
+          target[i] = ImgUtil.compileRGB(level(floats[j], min, scale), level(floats[j + 1], min, scale),
+              level(floats[j + 2], min, scale));
+        return;
+      }
+      for (int i = start, j = start * channels; i < end; i++) {
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int c = 0; c < channels; c++, j++) {
+          int color = maps[c][level(floats[j], min, scale)];
+          r += (color >> 16) & 0xff;
+          g += (color >> 8) & 0xff;
+          b += color & 0xff;
+        }
+        target[i] = ImgUtil.compileRGB(Math.min(r, 255), Math.min(g, 255), Math.min(b, 255));
+      }
+    });
+  }
+
+  /**
+   * Map a float to a colormap level, clamping it to the range (NaN maps to
+   * level 0)
+   */
+  private static int level(float value, float min, float scale) {
+    float f = (value - min) * scale;
+    if (!(f > 0))
+      return 0;
+    if (f >= LEVELS - 1)
+      return LEVELS - 1;
+    return (int) (f + 0.5f);
+  }
+
+  private int[][] colormaps(int channels) {
+    if (mColormaps.length != 0) {
+      checkArgument(mColormaps.length == channels, "expected", mColormaps.length, "channels, got", channels);
+      return mColormaps;
+    }
+    if (channels == 1)
+      return DEFAULT_GRAY;
+    if (channels == 3)
+      return DEFAULT_RGB;
+    throw badArg("no default colormaps for channels:", channels);
+  }
+
+  private static int scaleComponent(int component, int level) {
+    return (component * level + (LEVELS - 1) / 2) / (LEVELS - 1);
+  }
+
+  private static final int[][] DEFAULT_GRAY = { grayColormap() };
+  private static final int[][] DEFAULT_RGB = { rampColormap(0xff0000), rampColormap(0x00ff00),
+      rampColormap(0x0000ff) };
+  private static final int MIN_ROWS_PER_BAND = 32;
+
+  private float mMin = 0;
+  private float mMax = 1;
+  private int[][] mColormaps = new int[0][];
+}
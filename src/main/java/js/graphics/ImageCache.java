@@ -0,0 +1,204 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import js.file.Files;
+import js.geometry.IRect;
+import js.graphics.gen.JImage;
+import js.graphics.gen.MonoImage;
+import js.json.JSMap;
+
+/**
+ * A cache of decoded images, keyed by their files' identities (path,
+ * modification time and length) and the decoding parameters, whose total size
+ * in bytes is bounded by a budget (least recently used images are evicted).
+ * 
+ * Concurrent requests for an image that isn't cached share a single decode.
+ * Cached images are shared between callers, so they must not be modified.
+ */
+public final class ImageCache {
+
+  /**
+   * Get the cache shared by the whole process, whose budget is a quarter of the
+   * maximum heap size
+   */
+  public static ImageCache sharedInstance() {
+    return sSharedInstance;
+  }
+
+  public ImageCache(long budgetBytes) {
+    mCache = new WeightedLruCache<>(budgetBytes, ImageCache::weight);
+  }
+
+  public BufferedImage read(File file) {
+    return (BufferedImage) get(file, "buffered", () -> ImgUtil.read(file));
+  }
+
+  /**
+   * Read a region of an image, subsampled; see ImgUtil.read(File, IRect, int)
+   */
+  public BufferedImage read(File file, IRect regionOrNull, int subsampling) {
+    String params = "buffered " + subsampling;
+    if (regionOrNull != null)
+      params += " " + regionOrNull.x + " " + regionOrNull.y + " " + regionOrNull.width + " "
+          + regionOrNull.height;
+    return (BufferedImage) get(file, params, () -> ImgUtil.read(file, regionOrNull, subsampling));
+  }
+
+  public MonoImage readMonoImage(File file) {
+    return (MonoImage) get(file, "mono", () -> ImgUtil.readMonoImage(file));
+  }
+
+  public JImage readJImage(File file) {
+    return (JImage) get(file, "jimage", () -> JImageUtil.decode(Files.toByteArray(file, "ImageCache")));
+  }
+
+  public void clear() {
+    mCache.clear();
+  }
+
+  /**
+   * Get the cache's hits, misses and evictions, its size and budget, the number
+   * of images decoded, and the number of requests that waited for another's
+   * decode
+   */
+  public JSMap metrics() {
+    JSMap m = mCache.metrics();
+    m.put("decodes", mDecodes.get());
+    m.put("shared_decodes", mSharedDecodes.get());
+    return m;
+  }
+
+  /**
+   * Get an image from the cache, decoding it if necessary. If the decode
+   * fails, the failure is passed to any requests waiting for it (and nothing
+   * is cached)
+   */
+  Object get(File file, String params, Supplier<Object> decoder) {
+    Key key = new Key(file, params);
+    Object value = mCache.get(key);
+    if (value != null)
+      return value;
+
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    CompletableFuture<Object> inFlight = mInFlight.putIfAbsent(key, future);
+    if (inFlight != null) {
+      mSharedDecodes.incrementAndGet();
+      try {
+        return inFlight.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof Error)
+          throw (Error) e.getCause();
+        throw asRuntimeException(e.getCause());
+      }
+    }
+
+    try {
+      // Another thread may have completed the decode since we looked
+      value = mCache.peek(key);
+      if (value == null) {
+        mDecodes.incrementAndGet();
+        value = decoder.get();
+        if (value != null)
+          mCache.put(key, value);
+      }
+      future.complete(value);
+      return value;
+    } catch (Throwable t) {
+      // Complete the future even for Errors (e.g. OutOfMemoryError), or waiters would hang
+      future.completeExceptionally(t);
+      throw t;
+    } finally {
+      mInFlight.remove(key);
+    }
+  }
+
+  /**
+   * Estimate the number of bytes occupied by an image's pixels
+   */
+  private static long weight(Object image) {
+    if (image instanceof BufferedImage) {
+      DataBuffer db = ((BufferedImage) image).getRaster().getDataBuffer();
+      return (long) db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+    if (image instanceof MonoImage)
+      return ((MonoImage) image).pixels().length * (long) Short.BYTES;
+    if (image instanceof JImage) {
+      JImage j = (JImage) image;
+      return j.size().product() * (long) j.depth() * (j.wPixels() != null ? Short.BYTES : 1);
+    }
+    throw badArg("unsupported image:", image.getClass());
+  }
+
+  private static final class Key {
+
+    Key(File file, String params) {
+      mPath = file.getAbsolutePath();
+      mModified = file.lastModified();
+      mLength = file.length();
+      mParams = params;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object)
+        return true;
+      if (!(object instanceof Key))
+        return false;
+      Key other = (Key) object;
+      return mModified == other.mModified && mLength == other.mLength && mPath.equals(other.mPath)
+          && mParams.equals(other.mParams);
+    }
+
+    @Override
+    public int hashCode() {
+      return ((mPath.hashCode() * 37 + Long.hashCode(mModified)) * 37 + Long.hashCode(mLength)) * 37
+          + mParams.hashCode();
+    }
+
+    private final String mPath;
+    private final long mModified;
+    private final long mLength;
+    private final String mParams;
+  }
+
+  private static final ImageCache sSharedInstance = new ImageCache(Runtime.getRuntime().maxMemory() / 4);
+
+  private final WeightedLruCache<Key, Object> mCache;
+  private final Map<Key, CompletableFuture<Object>> mInFlight = concurrentHashMap();
+  private final AtomicLong mDecodes = new AtomicLong();
+  private final AtomicLong mSharedDecodes = new AtomicLong();
+}
@@ -0,0 +1,198 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+
+/**
+ * Converts BufferedImages between types by reading and writing their rasters
+ * directly, rather than drawing them with Graphics.drawImage().
+ * 
+ * Direct conversion is performed if the target type is one of TYPE_INT_RGB,
+ * TYPE_INT_ARGB, TYPE_INT_BGR, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR,
+ * TYPE_BYTE_GRAY or TYPE_USHORT_GRAY, and the source can be read directly by
+ * a RasterReader; otherwise, drawImage() is used. The results match those of
+ * drawImage(): translucent pixels are composited over black when converting
+ * to an opaque type, and gray levels are computed with the same integer
+ * weights. (Conversion between translucent types is exact, whereas drawImage()
+ * can lose precision.) Large images are converted in parallel row bands.
+ */
+public final class ImageConverter {
+
+  /**
+   * Determine if a conversion will be performed directly
+   */
+  public static boolean isDirect(BufferedImage source, int targetType) {
+    return isDirectTarget(targetType) && RasterReader.of(source).isDirect();
+  }
+
+  /**
+   * Construct a copy of an image, with a particular type
+   */
+  public static BufferedImage convert(BufferedImage source, int targetType) {
+    BufferedImage target = ImgUtil.imageOfSameSize(source, targetType);
+    if (targetType == source.getType() && isDirectTarget(targetType)) {
+      // Copy the samples, as reading 16-bit gray as ARGB would lose precision
+      target.setData(source.getRaster());
+      return target;
+    }
+    RasterReader reader = RasterReader.of(source);
+    if (!isDirectTarget(targetType) || !reader.isDirect()) {
+      Graphics g = target.createGraphics();
+      g.drawImage(source, 0, 0, null);
+      g.dispose();
+      return target;
+    }
+
+    int width = source.getWidth();
+    RowBands.forEach(source.getHeight(), MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      int[] row = new int[width];
+      for (int y = rowStart; y < rowEnd; y++) {
+        reader.readArgbRow(y, row, 0);
+        writeRow(target, targetType, y, row);
+      }
+    });
+    return target;
+  }
+
+  private static boolean isDirectTarget(int type) {
+    switch (type) {
+    case BufferedImage.TYPE_INT_RGB:
+    case BufferedImage.TYPE_INT_ARGB:
+    case BufferedImage.TYPE_INT_BGR:
+    case BufferedImage.TYPE_3BYTE_BGR:
+    case BufferedImage.TYPE_4BYTE_ABGR:
+    case BufferedImage.TYPE_BYTE_GRAY:
+    case BufferedImage.TYPE_USHORT_GRAY:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Write a row of ARGB pixels to a (newly constructed, so contiguous) image
+   */
+  private static void writeRow(BufferedImage target, int targetType, int y, int[] row) {
+    int w = row.length;
+    int start = y * w;
+    switch (targetType) {
+
+    case BufferedImage.TYPE_INT_RGB: {
+      int[] data = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+      for (int x = 0; x < w; x++)
+        data[start + x] = opaque(row[x]);
+    }
+      break;
+
+    case BufferedImage.TYPE_INT_ARGB: {
+      int[] data = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+      System.arraycopy(row, 0, data, start, w);
+    }
+      break;
+
+    case BufferedImage.TYPE_INT_BGR: {
+      int[] data = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+      for (int x = 0; x < w; x++) {
+        int p = opaque(row[x]);
+        data[start + x] = ((p & 0xff) << 16) | (p & 0xff00) | ((p >> 16) & 0xff);
+      }
+    }
+      break;
+
+    case BufferedImage.TYPE_3BYTE_BGR: {
+      byte[] data = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+      for (int x = 0, j = start * 3; x < w; x++, j += 3) {
+        int p = opaque(row[x]);
+        data[j] = (byte) p;
+        data[j + 1] = (byte) (p >> 8);
+        data[j + 2] = (byte) (p >> 16);
+      }
+    }
+      break;
+
+    case BufferedImage.TYPE_4BYTE_ABGR: {
+      byte[] data = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+      for (int x = 0, j = start * 4; x < w; x++, j += 4) {
+        int p = row[x];
+        data[j] = (byte) (p >>> 24);
+        data[j + 1] = (byte) p;
+        data[j + 2] = (byte) (p >> 8);
+        data[j + 3] = (byte) (p >> 16);
+      }
+    }
+      break;
+
+    case BufferedImage.TYPE_BYTE_GRAY: {
+      byte[] data = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+      for (int x = 0; x < w; x++) {
+        int p = row[x];
+        int gray = (77 * ((p >> 16) & 0xff) + 150 * ((p >> 8) & 0xff) + 29 * (p & 0xff) + 128) >> 8;
+        data[start + x] = (byte) multiplyAlpha(p >>> 24, gray);
+      }
+    }
+      break;
+
+    case BufferedImage.TYPE_USHORT_GRAY: {
+      short[] data = ((DataBufferUShort) target.getRaster().getDataBuffer()).getData();
+      for (int x = 0; x < w; x++) {
+        int p = row[x];
+        int gray = (19672 * ((p >> 16) & 0xff) + 38621 * ((p >> 8) & 0xff) + 7500 * (p & 0xff)) >> 8;
+        int alpha = p >>> 24;
+        if (alpha != 0xff)
+          gray = gray * alpha / 255;
+        data[start + x] = (short) gray;
+      }
+    }
+      break;
+
+    default:
+      throw new IllegalArgumentException("unsupported type: " + targetType);
+    }
+  }
+
+  /**
+   * Composite an ARGB pixel over black, yielding an RGB pixel
+   */
+  private static int opaque(int argb) {
+    int alpha = argb >>> 24;
+    if (alpha == 0xff)
+      return argb & 0xffffff;
+    return (multiplyAlpha(alpha, (argb >> 16) & 0xff) << 16) | (multiplyAlpha(alpha, (argb >> 8) & 0xff) << 8)
+        | multiplyAlpha(alpha, argb & 0xff);
+  }
+
+  private static int multiplyAlpha(int alpha, int value) {
+    if (alpha == 0xff)
+      return value;
+    return (alpha * value + 127) / 255;
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 64;
+}
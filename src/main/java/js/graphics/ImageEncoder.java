@@ -0,0 +1,305 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Encodes images as JPEGs or PNGs, with control of JPEG quality and
+ * progressive mode, and of PNG deflate level and scanline filter.
+ * 
+ * Each thread has its own cached JPEG writer and PNG encoder, which are reused
+ * across calls (and across ImageEncoders), and output streams are memory
+ * cached (ImageIO's default may cache to a temporary file). PNGs are written
+ * with a PngEncoder if it supports the image, else with ImageIO's writer.
+ * Images written to files are encoded straight to the file, without an
+ * intermediate copy in memory.
+ * 
+ * Once configured, an encoder can be used by multiple threads concurrently.
+ */
+public final class ImageEncoder extends BaseObject {
+
+  /**
+   * A reusable buffer for encoded images, whose contents can be accessed
+   * without copying
+   */
+  public static final class Output extends ByteArrayOutputStream {
+
+    public byte[] array() {
+      return buf;
+    }
+
+    public ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+
+  /**
+   * Set JPEG quality, from (0...1]; if null, the writer's default is used
+   */
+  public ImageEncoder withJpegQuality(Float quality) {
+    checkArgument(quality == null || (quality > 0 && quality <= 1), "bad quality:", quality);
+    mJpegQuality = quality;
+    return this;
+  }
+
+  public ImageEncoder withJpegProgressive(boolean progressive) {
+    mJpegProgressive = progressive;
+    return this;
+  }
+
+  /**
+   * Set PNG deflate level, 0...9 (e.g., PngEncoder.LEVEL_SPEED)
+   */
+  public ImageEncoder withPngLevel(int level) {
+    checkArgument(level >= 0 && level <= 9, "bad level:", level);
+    mPngLevel = level;
+    return this;
+  }
+
+  /**
+   * Set PNG scanline filter. Images not supported by PngEncoder (e.g., indexed
+   * ones) are written unfiltered
+   */
+  public ImageEncoder withPngFilter(PngEncoder.Filter filter) {
+    mPngFilter = checkNotNull(filter);
+    return this;
+  }
+
+  public byte[] toJPEG(BufferedImage image) {
+    return toBytes(image, ImgUtil.EXT_JPEG);
+  }
+
+  public byte[] toPNG(BufferedImage image) {
+    return toBytes(image, ImgUtil.EXT_PNG);
+  }
+
+  public byte[] toBytes(BufferedImage image, String extension) {
+    Output output = new Output();
+    encode(image, extension, output);
+    return output.toByteArray();
+  }
+
+  /**
+   * Encode an image into a buffer, replacing its previous contents
+   */
+  public Output encode(BufferedImage image, String extension, Output output) {
+    output.reset();
+    encode(image, extension, (OutputStream) output);
+    return output;
+  }
+
+  /**
+   * Encode an image to a stream, in the format indicated by a file extension
+   * (EXT_JPEG or EXT_PNG)
+   */
+  public void encode(BufferedImage image, String extension, OutputStream output) {
+    checkExtension(extension);
+    try {
+      if (usesImageIO(image, extension))
+        writeWithImageIO(image, extension, new MemoryCacheImageOutputStream(output));
+      else
+        encodePNG(image, output);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  /**
+   * Write an image to a file, in the format indicated by its extension. The
+   * image is encoded once, straight to a temporary file in the same directory,
+   * which then replaces the file (atomically, where the filesystem supports
+   * it)
+   */
+  public void write(BufferedImage image, File file) {
+    String extension = Files.getExtension(file);
+    checkExtension(extension);
+    File temp = null;
+    try {
+      temp = File.createTempFile("." + file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+        if (usesImageIO(image, extension))
+          writeWithImageIO(image, extension, new FileImageOutputStream(raf));
+        else {
+          OutputStream output = new BufferedOutputStream(Channels.newOutputStream(raf.getChannel()),
+              FILE_BUFFER_SIZE);
+          encodePNG(image, output);
+          output.flush();
+        }
+      }
+      try {
+        java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      temp = null;
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } finally {
+      if (temp != null)
+        temp.delete();
+    }
+  }
+
+  /**
+   * Encode a list of images in parallel, an image per thread. If outputsOrNull
+   * is not null, it must have an Output per image, which are reused
+   */
+  public List<Output> encodeAll(List<BufferedImage> images, String extension, List<Output> outputsOrNull) {
+    List<Output> outputs = outputsOrNull;
+    if (outputs == null) {
+      outputs = arrayList();
+      for (int i = 0; i < images.size(); i++)
+        outputs.add(new Output());
+    }
+    checkArgument(outputs.size() == images.size(), "expected", images.size(), "outputs");
+    List<Output> result = outputs;
+    IntStream.range(0, images.size()).parallel().forEach(i -> encode(images.get(i), extension, result.get(i)));
+    return result;
+  }
+
+  public static boolean isJpeg(String extension) {
+    return extension.equals(ImgUtil.EXT_JPEG) || extension.equals("jpeg");
+  }
+
+  private static void checkExtension(String extension) {
+    if (!(isJpeg(extension) || extension.equals(ImgUtil.EXT_PNG)))
+      throw badArg("unsupported extension:", extension);
+  }
+
+  private static boolean usesImageIO(BufferedImage image, String extension) {
+    return isJpeg(extension) || !PngEncoder.supports(image);
+  }
+
+  private void encodePNG(BufferedImage image, OutputStream output) {
+    sWorkspace.get().pngEncoder().withLevel(mPngLevel).withFilter(mPngFilter).encode(image, output);
+  }
+
+  /**
+   * Write a JPEG, or a PNG not supported by PngEncoder, using the thread's
+   * ImageIO writer; closes the stream
+   */
+  private void writeWithImageIO(BufferedImage image, String extension, ImageOutputStream stream)
+      throws IOException {
+    Workspace w = sWorkspace.get();
+    ImageWriter writer;
+    ImageWriteParam params = null;
+    if (isJpeg(extension)) {
+      writer = w.jpegWriter();
+      if (!writer.getOriginatingProvider().canEncodeImage(image))
+        throw die("No writer found for image:", image);
+      if (mJpegQuality != null || mJpegProgressive) {
+        JPEGImageWriteParam jpegParams = new JPEGImageWriteParam(null);
+        jpegParams.setProgressiveMode(
+            mJpegProgressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+        if (mJpegQuality != null) {
+          jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+          jpegParams.setOptimizeHuffmanTables(true);
+          jpegParams.setCompressionQuality(mJpegQuality);
+        }
+        params = jpegParams;
+      }
+    } else {
+      writer = w.pngWriter();
+      params = writer.getDefaultWriteParam();
+      params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      // ImageIO's writer maps quality q to level 9 - round(9q)
+      params.setCompressionQuality((9 - mPngLevel) / 9f);
+    }
+
+    try {
+      writer.setOutput(stream);
+      writer.write(null, new IIOImage(image, null, null), params);
+      stream.flush();
+    } finally {
+      writer.reset();
+      stream.close();
+    }
+  }
+
+  /**
+   * Per-thread writers and encoders
+   */
+  private static final class Workspace {
+
+    ImageWriter jpegWriter() {
+      if (mJpegWriter == null)
+        mJpegWriter = ImageIO.getImageWritersByFormatName("jpg").next();
+      return mJpegWriter;
+    }
+
+    ImageWriter pngWriter() {
+      if (mPngWriter == null)
+        mPngWriter = ImageIO.getImageWritersByFormatName(ImgUtil.EXT_PNG).next();
+      return mPngWriter;
+    }
+
+    PngEncoder pngEncoder() {
+      if (mPngEncoder == null)
+        mPngEncoder = new PngEncoder();
+      return mPngEncoder;
+    }
+
+    private ImageWriter mJpegWriter;
+    private ImageWriter mPngWriter;
+    private PngEncoder mPngEncoder;
+  }
+
+  private static final int FILE_BUFFER_SIZE = 1 << 16;
+
+  private static final ThreadLocal<Workspace> sWorkspace = ThreadLocal.withInitial(Workspace::new);
+
+  private Float mJpegQuality;
+  private boolean mJpegProgressive;
+  private int mPngLevel = PngEncoder.LEVEL_DEFAULT;
+  private PngEncoder.Filter mPngFilter = PngEncoder.Filter.NONE;
+}
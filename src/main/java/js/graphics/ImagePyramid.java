@@ -0,0 +1,299 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.geometry.Matrix;
+import js.graphics.gen.MonoImage;
+
+/**
+ * A sequence of successively downsampled versions of an image (a MonoImage,
+ * or a color BufferedImage).
+ * 
+ * Level 0 is the original image; each subsequent level is smaller than its
+ * predecessor by a particular ratio (2 by default), and is computed from it
+ * using a separable tent (triangle) filter whose width is proportional to the
+ * ratio; for a ratio of 2, this is the [1 3 3 1] / 8 filter. Levels are built
+ * only when requested.
+ * 
+ * Color images are processed (and produced) as BufferedImage.TYPE_INT_RGB.
+ */
+public final class ImagePyramid extends BaseObject {
+
+  public static ImagePyramid with(MonoImage image) {
+    ImagePyramid p = new ImagePyramid();
+    p.mMonoLevels.add(image);
+    p.mSizes.add(image.size());
+    return p;
+  }
+
+  public static ImagePyramid with(BufferedImage image) {
+    ImagePyramid p = new ImagePyramid();
+    BufferedImage rgb = ImgUtil.imageAsType(image, BufferedImage.TYPE_INT_RGB);
+    p.mColorLevels.add(rgb);
+    p.mSizes.add(ImgUtil.size(rgb));
+    return p;
+  }
+
+  /**
+   * Set the ratio between the sizes of successive levels; must be greater
+   * than 1, and can only be changed before any levels are built
+   */
+  public ImagePyramid withRatio(float ratio) {
+    checkArgument(ratio > 1, "bad ratio:", ratio);
+    checkState(mSizes.size() == 1, "levels already built");
+    mRatio = ratio;
+    return this;
+  }
+
+  public float ratio() {
+    return mRatio;
+  }
+
+  /**
+   * Get the size of a level's image (without building it)
+   */
+  public IPoint size(int level) {
+    checkArgument(level >= 0, "bad level:", level);
+    while (mSizes.size() <= level) {
+      IPoint prev = mSizes.get(mSizes.size() - 1);
+      mSizes.add(new IPoint(Math.max(1, Math.round(prev.x / mRatio)), Math.max(1, Math.round(prev.y / mRatio))));
+    }
+    return mSizes.get(level);
+  }
+
+  /**
+   * Determine the number of levels whose width and height are both at least
+   * some minimum
+   */
+  public int levelCount(int minimumDimension) {
+    int level = 0;
+    while (true) {
+      IPoint size = size(level);
+      if (Math.min(size.x, size.y) < minimumDimension)
+        return level;
+      if (size.x == 1 && size.y == 1)
+        return level + 1;
+      level++;
+    }
+  }
+
+  /**
+   * Get a level of a MonoImage pyramid, building it (and any preceding levels)
+   * if necessary
+   */
+  public MonoImage monoImage(int level) {
+    checkState(!mMonoLevels.isEmpty(), "not a MonoImage pyramid");
+    while (mMonoLevels.size() <= level) {
+      int prevLevel = mMonoLevels.size() - 1;
+      MonoImage prev = mMonoLevels.get(prevLevel);
+      IPoint srcSize = prev.size();
+      IPoint dstSize = size(prevLevel + 1);
+      short[] src = prev.pixels();
+      int[] plane = new int[src.length];
+      for (int i = 0; i < src.length; i++)
+        plane[i] = src[i] & 0xffff;
+      int[] out = resample(plane, srcSize, dstSize);
+      short[] pixels = new short[out.length];
+      for (int i = 0; i < out.length; i++)
+        pixels[i] = (short) out[i];
+      mMonoLevels.add(MonoImageUtil.construct(dstSize, pixels));
+    }
+    return mMonoLevels.get(level);
+  }
+
+  /**
+   * Get a level of a color image pyramid, building it (and any preceding
+   * levels) if necessary
+   */
+  public BufferedImage image(int level) {
+    checkState(!mColorLevels.isEmpty(), "not a color image pyramid");
+    while (mColorLevels.size() <= level) {
+      int prevLevel = mColorLevels.size() - 1;
+      BufferedImage prev = mColorLevels.get(prevLevel);
+      IPoint srcSize = ImgUtil.size(prev);
+      IPoint dstSize = size(prevLevel + 1);
+      int[] rgb = ImgUtil.rgbPixels(prev);
+      int[] red = new int[rgb.length];
+      int[] green = new int[rgb.length];
+      int[] blue = new int[rgb.length];
+      for (int i = 0; i < rgb.length; i++) {
+        int p = rgb[i];
+        red[i] = (p >> 16) & 0xff;
+        green[i] = (p >> 8) & 0xff;
+        blue[i] = p & 0xff;
+      }
+      red = resample(red, srcSize, dstSize);
+      green = resample(green, srcSize, dstSize);
+      blue = resample(blue, srcSize, dstSize);
+      BufferedImage result = ImgUtil.buildRGBImage(dstSize);
+      int[] out = ImgUtil.rgbPixels(result);
+      for (int i = 0; i < out.length; i++)
+        out[i] = ImgUtil.compileRGB(red[i], green[i], blue[i]);
+      mColorLevels.add(result);
+    }
+    return mColorLevels.get(level);
+  }
+
+  /**
+   * Get the transformation that maps coordinates within one level to another
+   */
+  public Matrix transform(int fromLevel, int toLevel) {
+    IPoint from = size(fromLevel);
+    IPoint to = size(toLevel);
+    return Matrix.getScale(to.x / (float) from.x, to.y / (float) from.y);
+  }
+
+  /**
+   * Transform script elements from one level's coordinates to another's
+   */
+  public List<ScriptElement> transform(List<ScriptElement> elements, int fromLevel, int toLevel) {
+    if (fromLevel == toLevel)
+      return elements;
+    return ScriptUtil.transform(elements, transform(fromLevel, toLevel));
+  }
+
+  // ------------------------------------------------------------------
+  // Resampling
+  // ------------------------------------------------------------------
+
+  private static final int WEIGHT_BITS = 14;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  /**
+   * Precomputed filter taps for resampling along one axis
+   */
+  private static final class Kernel {
+    int[] first;
+    int[] count;
+    int[] weights;
+    int stride;
+  }
+
+  private Kernel kernel(int srcLength, int dstLength) {
+    double scale = srcLength / (double) dstLength;
+    double radius = Math.max(1, scale);
+    int stride = (int) Math.ceil(2 * radius) + 1;
+    Kernel k = new Kernel();
+    k.first = new int[dstLength];
+    k.count = new int[dstLength];
+    k.weights = new int[dstLength * stride];
+    k.stride = stride;
+    double[] w = new double[stride];
+    for (int i = 0; i < dstLength; i++) {
+      double center = (i + 0.5) * scale - 0.5;
+      int t0 = Math.max(0, (int) Math.ceil(center - radius));
+      int t1 = Math.min(srcLength - 1, (int) Math.floor(center + radius));
+      double total = 0;
+      int n = 0;
+      for (int t = t0; t <= t1; t++, n++) {
+        w[n] = Math.max(0, 1 - Math.abs(t - center) / radius);
+        total += w[n];
+      }
+      // Convert to fixed point, assigning any rounding error to the largest
+      // weight so they sum exactly to 1
+      int sum = 0;
+      int largest = 0;
+      int base = i * stride;
+      for (int j = 0; j < n; j++) {
+        int fixed = (int) Math.round(w[j] / total * (1 << WEIGHT_BITS));
+        k.weights[base + j] = fixed;
+        sum += fixed;
+        if (fixed > k.weights[base + largest])
+          largest = j;
+      }
+      k.weights[base + largest] += (1 << WEIGHT_BITS) - sum;
+      k.first[i] = t0;
+      k.count[i] = n;
+    }
+    return k;
+  }
+
+  /**
+   * Resample a plane of (nonnegative) values, horizontally and then
+   * vertically
+   */
+  private int[] resample(int[] src, IPoint srcSize, IPoint dstSize) {
+    int sw = srcSize.x;
+    int sh = srcSize.y;
+    int dw = dstSize.x;
+    int dh = dstSize.y;
+    Kernel kx = kernel(sw, dw);
+    Kernel ky = kernel(sh, dh);
+
+    // Horizontal pass; results have WEIGHT_BITS fractional bits
+    int[] tmp = new int[dw * sh];
+    RowBands.forEach(sh, MIN_ROWS_PER_BAND, (y0, y1) -> {
+      for (int y = y0; y < y1; y++) {
+        int srcRow = y * sw;
+        int destRow = y * dw;
+        for (int i = 0; i < dw; i++) {
+          int base = i * kx.stride;
+          int s = srcRow + kx.first[i];
+          long sum = 0;
+          for (int j = 0; j < kx.count[i]; j++)
+            sum += (long) kx.weights[base + j] * src[s + j];
+          tmp[destRow + i] = (int) sum;
+        }
+      }
+    });
+
+    // Vertical pass
+    int[] dst = new int[dw * dh];
+    long round = 1L << (2 * WEIGHT_BITS - 1);
+    RowBands.forEach(dh, MIN_ROWS_PER_BAND, (y0, y1) -> {
+      long[] acc = new long[dw];
+      for (int y = y0; y < y1; y++) {
+        Arrays.fill(acc, round);
+        int base = y * ky.stride;
+        for (int j = 0; j < ky.count[y]; j++) {
+          long weight = ky.weights[base + j];
+          int srcRow = (ky.first[y] + j) * dw;
+          for (int i = 0; i < dw; i++)
+            acc[i] += weight * tmp[srcRow + i];
+        }
+        int destRow = y * dw;
+        for (int i = 0; i < dw; i++)
+          dst[destRow + i] = (int) (acc[i] >> (2 * WEIGHT_BITS));
+      }
+    });
+    return dst;
+  }
+
+  private ImagePyramid() {
+  }
+
+  private float mRatio = 2;
+  private final List<IPoint> mSizes = arrayList();
+  private final List<MonoImage> mMonoLevels = arrayList();
+  private final List<BufferedImage> mColorLevels = arrayList();
+}
@@ -28,6 +28,7 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.*;
 import java.io.*;
 import java.util.Arrays;
@@ -36,10 +37,9 @@ import java.util.List;
 import java.util.Map;
 
 import javax.imageio.*;
-import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import static js.base.Tools.*;
 
@@ -49,7 +49,6 @@ import js.base.Tools;
 import js.data.DataUtil;
 import js.geometry.IPoint;
 import js.geometry.IRect;
-import js.geometry.MyMath;
 import js.graphics.gen.MonoImage;
 import js.json.JSList;
 import js.json.JSMap;
@@ -91,17 +90,29 @@ public final class ImgUtil {
       MonoImage monoImage = readRax(src);
       return MonoImageUtil.toBufferedImage(monoImage);
     }
+    if (ext.equals(EXT_PNG))
+      return read(Files.toByteArray(src, "ImgUtil.read"));
     return read(Files.openInputStream(src));
   }
 
+  /**
+   * Read an image from its encoded bytes. PNGs are decoded with a PngDecoder
+   * if it supports them
+   */
   public static BufferedImage read(byte[] bytes) {
+    if (PngDecoder.isPng(bytes)) {
+      BufferedImage img = sPngDecoder.get().decode(bytes);
+      if (img != null)
+        return register(img);
+    }
     ByteArrayInputStream input = new ByteArrayInputStream(bytes);
     return read(input);
   }
 
   public static BufferedImage read(InputStream inputStream) {
     try {
-      BufferedImage img = register(ImageIO.read(inputStream));
+      // Cache the stream in memory, rather than (by default) a temporary file
+      BufferedImage img = register(ImageIO.read(new MemoryCacheImageInputStream(inputStream)));
       inputStream.close();
       return img;
     } catch (IOException e) {
@@ -109,6 +120,75 @@ public final class ImgUtil {
     }
   }
 
+  /**
+   * Read a MonoImage from a .rax file, or from a 16-bit grayscale image file;
+   * PNGs are decoded directly to the MonoImage's pixels where possible
+   */
+  public static MonoImage readMonoImage(File src) {
+    if (Files.getExtension(src).equals(EXT_RAX))
+      return readRax(src);
+    byte[] bytes = Files.toByteArray(src, "ImgUtil.readMonoImage");
+    MonoImage img = null;
+    if (PngDecoder.isPng(bytes))
+      img = sPngDecoder.get().decodeMono(bytes);
+    if (img == null)
+      img = MonoImageUtil.construct(read(bytes));
+    return img;
+  }
+
+  /**
+   * Read a region of an image, subsampled: the result contains every
+   * subsampling'th pixel (horizontally and vertically) of the region, starting
+   * with its first. Only the pixels needed are decoded where possible (for
+   * ImageIO formats, via the source region and subsampling of ImageReadParam;
+   * for .rax files, rows following the region aren't decompressed)
+   */
+  public static BufferedImage read(File src, IRect regionOrNull, int subsampling) {
+    checkArgument(subsampling >= 1, "bad subsampling:", subsampling);
+    if (Files.getExtension(src).equals(EXT_RAX))
+      return MonoImageUtil.toBufferedImage(readRax(src, regionOrNull, subsampling));
+
+    ImageInputStream input = null;
+    ImageReader reader = null;
+    try {
+      input = new FileImageInputStream(src);
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext())
+        throw badArg("no reader for file:", src);
+      reader = readers.next();
+      reader.setInput(input, true, true);
+      ImageReadParam param = reader.getDefaultReadParam();
+      if (regionOrNull != null) {
+        IPoint size = new IPoint(reader.getWidth(0), reader.getHeight(0));
+        checkArgument(new IRect(size).contains(regionOrNull), "region not within image:", regionOrNull);
+        param.setSourceRegion(
+            new Rectangle(regionOrNull.x, regionOrNull.y, regionOrNull.width, regionOrNull.height));
+      }
+      if (subsampling > 1)
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+      return register(reader.read(0, param));
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } finally {
+      if (reader != null)
+        reader.dispose();
+      Files.close(input);
+    }
+  }
+
+  /**
+   * Read an image, subsampled (so without smoothing) just enough that neither
+   * of its dimensions exceeds a maximum
+   */
+  public static BufferedImage readThumbnail(File src, int maxDimension) {
+    checkArgument(maxDimension >= 1, "bad max dimension:", maxDimension);
+    IPoint size = size(src);
+    int largest = Math.max(size.x, size.y);
+    return read(src, null, (largest + maxDimension - 1) / maxDimension);
+  }
+
+  private static final ThreadLocal<PngDecoder> sPngDecoder = ThreadLocal.withInitial(PngDecoder::new);
+
   // ------------------------------------------------------------------
   // Support for .rax files
   // ------------------------------------------------------------------
@@ -116,6 +196,11 @@ public final class ImgUtil {
   private static final int RAX_COMPRESS_HEADER_LENGTH = 6;
   private static final byte RAX_COMPRESS_FLAG = (byte) 0xfd;
   private static final int RAX_VERSION_1 = 1;
+  private static final int RAX_VERSION_2 = 2;
+  private static final int RAX_V2_HEADER_LENGTH = 10;
+  // Largest width or height that version 1 headers are expected to hold
+  private static final int RAX_V1_MAX_DIMENSION = 2048;
+  private static final int RAX_STREAM_BUFFER_SIZE = 1 << 16;
 
   /**
    * Read .rax from input stream
@@ -127,8 +212,23 @@ public final class ImgUtil {
   }
 
   public static MonoImage readRax(File file) {
+    return readRax(file, null);
+  }
+
+  /**
+   * Read .rax file, applying a correction to each row as it is decompressed
+   */
+  public static MonoImage readRax(File file, RowCorrector correctorOrNull) {
     byte[] content = Files.toByteArray(file, "ImgUtil.readRax");
-    return decompressRAX(content, null);
+    return decompressRAX(content, null, correctorOrNull);
+  }
+
+  /**
+   * Read a region of a .rax file, subsampled; see read(File, IRect, int)
+   */
+  public static MonoImage readRax(File file, IRect regionOrNull, int subsampling) {
+    byte[] content = Files.toByteArray(file, "ImgUtil.readRax");
+    return decompressRAX(content, regionOrNull, subsampling);
   }
 
   private static final int RAX_DEFAULT_PIXEL_VALUE = 20000;
@@ -149,132 +249,314 @@ public final class ImgUtil {
   public static byte[] compressRAX(IPoint imageSize, short[] iPixels) {
     int imageWidth = imageSize.x;
     int imageHeight = imageSize.y;
-    ByteArrayOutputStream output = new ByteArrayOutputStream((imageSize.product() * 3) / 2);
+    ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8,
+        ((long) imageWidth * imageHeight * 3) / 2));
+    try {
+      writeRaxHeader(output, imageSize);
+      int[] deltaValues = new int[imageWidth];
+      int rowOffset = 0;
+      for (int rowNumber = 0; rowNumber < imageHeight; rowNumber++, rowOffset += imageWidth)
+        compressRAXRow(output, rowNumber, imageWidth, deltaValues, iPixels, rowOffset, iPixels,
+            rowOffset - imageWidth, iPixels, rowOffset - 2 * imageWidth);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return output.toByteArray();
+  }
 
-    // Write header
-    output.write(FLIR_COMPRESS_FLAG);
-    output.write(FLIR_VERSION_1);
-    output.write(imageWidth);
-    output.write(imageWidth >> 8);
-    output.write(imageHeight);
-    output.write(imageHeight >> 8);
+  /**
+   * Write an OffHeapMonoImage to a .rax file, compressing it a row at a time
+   * (so neither the pixels nor the compressed data are held in the heap)
+   */
+  public static void writeRAX(OffHeapMonoImage image, File dest) {
+    checkArgumentsEqual(Files.getExtension(dest), ImgUtil.EXT_RAX);
+    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(dest), RAX_STREAM_BUFFER_SIZE)) {
+      compressRAX(image, output);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
 
+  /**
+   * Compress an OffHeapMonoImage to .rax format, reading it a row at a time and
+   * writing it to a stream
+   */
+  public static void compressRAX(OffHeapMonoImage image, OutputStream output) throws IOException {
+    IPoint imageSize = image.size();
+    int imageWidth = imageSize.x;
+    writeRaxHeader(output, imageSize);
     int[] deltaValues = new int[imageWidth];
+    // Rolling window of the current row and the two preceding it
+    short[][] rows = new short[3][imageWidth];
+    for (int rowNumber = 0; rowNumber < imageSize.y; rowNumber++) {
+      short[] row = rows[rowNumber % 3];
+      image.readRow(rowNumber, row, 0);
+      compressRAXRow(output, rowNumber, imageWidth, deltaValues, row, 0, rows[(rowNumber + 2) % 3], 0,
+          rows[(rowNumber + 1) % 3], 0);
+    }
+  }
 
-    int rowOffset = 0;
-    for (int rowNumber = 0; rowNumber < imageHeight; rowNumber++, rowOffset += imageWidth) {
-      int rowOffsetM1 = rowOffset - imageWidth;
-      int rowOffsetM2 = rowOffsetM1 - imageWidth;
-      int prevH1, prevH2;
-      if (rowNumber == 0) {
-        prevH1 = RAX_DEFAULT_PIXEL_VALUE;
-        prevH2 = RAX_DEFAULT_PIXEL_VALUE;
-        for (int x = 0; x < imageWidth; x++) {
-          deltaValues[x] = v1Scale(prevH1 - prevH2) + prevH1;
-          prevH2 = prevH1;
-          prevH1 = iPixels[rowOffset + x];
-        }
-      } else if (rowNumber == 1) {
-        prevH1 = iPixels[0];
+  /**
+   * Write a .rax header. Images whose dimensions don't fit a version 1 header
+   * get a version 2 header, which has 32-bit dimensions
+   */
+  private static void writeRaxHeader(OutputStream output, IPoint imageSize) throws IOException {
+    int imageWidth = imageSize.x;
+    int imageHeight = imageSize.y;
+    checkArgument(imageWidth > 0 && imageHeight > 0, "bad image size:", imageSize);
+    output.write(FLIR_COMPRESS_FLAG);
+    if (imageWidth <= RAX_V1_MAX_DIMENSION && imageHeight <= RAX_V1_MAX_DIMENSION) {
+      output.write(FLIR_VERSION_1);
+      output.write(imageWidth);
+      output.write(imageWidth >> 8);
+      output.write(imageHeight);
+      output.write(imageHeight >> 8);
+    } else {
+      output.write(RAX_VERSION_2);
+      for (int value : new int[] { imageWidth, imageHeight })
+        for (int shift = 0; shift < 32; shift += 8)
+          output.write(value >> shift);
+    }
+  }
+
+  /**
+   * Read a .rax header, leaving the stream at the start of the pixel data;
+   * return the image size
+   */
+  private static IPoint readRaxHeader(InputStream input) throws IOException {
+    byte[] header = new byte[RAX_V2_HEADER_LENGTH];
+    int length = input.readNBytes(header, 0, RAX_COMPRESS_HEADER_LENGTH);
+    if (length == RAX_COMPRESS_HEADER_LENGTH && header[1] == RAX_VERSION_2)
+      length += input.readNBytes(header, length, RAX_V2_HEADER_LENGTH - length);
+    IPoint imageSize = looksLikeCompressedRawImage(Arrays.copyOf(header, length));
+    if (imageSize == null)
+      throw new IllegalArgumentException("does not look like a compressed RawImage");
+    byte version = header[1];
+    checkArgument(version == RAX_VERSION_1 || version == RAX_VERSION_2, "unexpected version: " + version);
+    return imageSize;
+  }
+
+  /**
+   * Compress a single row of pixels, given the two preceding rows (which are
+   * ignored for the first rows of the image)
+   */
+  private static void compressRAXRow(OutputStream output, int rowNumber, int imageWidth,
+      int[] deltaValues, short[] row, int rowOffset, short[] rowM1, int rowOffsetM1, short[] rowM2,
+      int rowOffsetM2) throws IOException {
+    int prevH1, prevH2;
+    if (rowNumber == 0) {
+      prevH1 = RAX_DEFAULT_PIXEL_VALUE;
+      prevH2 = RAX_DEFAULT_PIXEL_VALUE;
+      for (int x = 0; x < imageWidth; x++) {
+        deltaValues[x] = v1Scale(prevH1 - prevH2) + prevH1;
         prevH2 = prevH1;
-        for (int x = 0; x < imageWidth; x++) {
-          int prevV1 = iPixels[rowOffsetM1 + x];
-          deltaValues[x] = (v1Scale(prevH1 - prevH2) + (prevH1 + prevV1)) / 2;
-          prevH2 = prevH1;
-          prevH1 = iPixels[rowOffset + x];
-        }
-      } else {
-        prevH1 = iPixels[rowOffsetM1];
-        prevH2 = iPixels[rowOffsetM2];
-        for (int x = 0; x < imageWidth; x++) {
-          int prevV1 = iPixels[rowOffsetM1 + x];
-          int prevV2 = iPixels[rowOffsetM2 + x];
-          deltaValues[x] = (v1Scale((prevH1 - prevH2) + (prevV1 - prevV2)) + (prevH1 + prevV1)) / 2;
-          prevH2 = prevH1;
-          prevH1 = iPixels[rowOffset + x];
-        }
+        prevH1 = row[rowOffset + x];
       }
-
+    } else if (rowNumber == 1) {
+      prevH1 = rowM1[rowOffsetM1];
+      prevH2 = prevH1;
+      for (int x = 0; x < imageWidth; x++) {
+        int prevV1 = rowM1[rowOffsetM1 + x];
+        deltaValues[x] = (v1Scale(prevH1 - prevH2) + (prevH1 + prevV1)) / 2;
+        prevH2 = prevH1;
+        prevH1 = row[rowOffset + x];
+      }
+    } else {
+      prevH1 = rowM1[rowOffsetM1];
+      prevH2 = rowM2[rowOffsetM2];
       for (int x = 0; x < imageWidth; x++) {
-        int prediction = deltaValues[x];
-        int pixel = iPixels[rowOffset + x];
-        int error = pixel - prediction;
-
-        if (error != (byte) error || error == JUMP_SIGNAL) {
-          output.write(JUMP_SIGNAL);
-          output.write(pixel);
-          output.write(pixel >> 8);
-        } else
-          output.write(error);
+        int prevV1 = rowM1[rowOffsetM1 + x];
+        int prevV2 = rowM2[rowOffsetM2 + x];
+        deltaValues[x] = (v1Scale((prevH1 - prevH2) + (prevV1 - prevV2)) + (prevH1 + prevV1)) / 2;
+        prevH2 = prevH1;
+        prevH1 = row[rowOffset + x];
       }
     }
 
-    return output.toByteArray();
+    for (int x = 0; x < imageWidth; x++) {
+      int prediction = deltaValues[x];
+      int pixel = row[rowOffset + x];
+      int error = pixel - prediction;
+
+      if (error != (byte) error || error == JUMP_SIGNAL) {
+        output.write(JUMP_SIGNAL);
+        output.write(pixel);
+        output.write(pixel >> 8);
+      } else
+        output.write(error);
+    }
   }
 
   /**
    * Decompress .rax image
    */
   public static MonoImage decompressRAX(byte[] byteBuffer, short[] outputPixelsOrNull) {
+    return decompressRAX(byteBuffer, outputPixelsOrNull, null);
+  }
+
+  /**
+   * Decompress .rax image, optionally applying a correction to each row. As
+   * each row's decompression depends upon the two preceding (uncorrected)
+   * rows, rows are corrected two rows behind the decompression
+   */
+  public static MonoImage decompressRAX(byte[] byteBuffer, short[] outputPixelsOrNull,
+      RowCorrector correctorOrNull) {
     MonoImage.Builder monoImage = MonoImage.newBuilder();
-    IPoint imageSize = looksLikeCompressedRawImage(byteBuffer);
-    if (imageSize == null)
-      throw new IllegalArgumentException("does not look like a compressed RawImage");
-    monoImage.size(imageSize);
-    byte version = byteBuffer[1];
-    checkArgument(version == RAX_VERSION_1, "unexpected version: " + version);
+    ByteArrayInputStream input = new ByteArrayInputStream(byteBuffer);
+    try {
+      IPoint imageSize = readRaxHeader(input);
+      monoImage.size(imageSize);
+
+      int imageWidth = imageSize.x;
+      int imageHeight = imageSize.y;
+
+      int expectedLength = imageWidth * imageHeight;
+      short[] outputPixels = DataUtil.shortArray(expectedLength, outputPixelsOrNull);
+      monoImage.pixels(outputPixels);
+      int rowOffset = 0;
+      for (int rowNumber = 0; rowNumber < imageHeight; rowNumber++, rowOffset += imageWidth) {
+        decompressRAXRow(input, rowNumber, imageWidth, outputPixels, rowOffset, outputPixels,
+            rowOffset - imageWidth, outputPixels, rowOffset - 2 * imageWidth);
+        if (correctorOrNull != null && rowNumber >= 2)
+          correctorOrNull.correctRow(rowNumber - 2, outputPixels, rowOffset - 2 * imageWidth);
+      }
+      if (correctorOrNull != null) {
+        for (int rowNumber = Math.max(0, imageHeight - 2); rowNumber < imageHeight; rowNumber++)
+          correctorOrNull.correctRow(rowNumber, outputPixels, rowNumber * imageWidth);
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return monoImage.build();
+  }
 
-    ByteArrayInputStream input = new ByteArrayInputStream(byteBuffer, RAX_COMPRESS_HEADER_LENGTH,
-        byteBuffer.length - RAX_COMPRESS_HEADER_LENGTH);
+  /**
+   * Decompress a region of a .rax image, subsampled. As each row's
+   * decompression depends upon the preceding ones, all rows up to the last one
+   * sampled are decompressed (into a rolling window of three rows), but only
+   * the sampled pixels are stored. If the image isn't subsampled, its offset is
+   * set to the region's location
+   */
+  public static MonoImage decompressRAX(byte[] byteBuffer, IRect regionOrNull, int subsampling) {
+    checkArgument(subsampling >= 1, "bad subsampling:", subsampling);
+    ByteArrayInputStream input = new ByteArrayInputStream(byteBuffer);
+    IPoint imageSize;
+    try {
+      imageSize = readRaxHeader(input);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    IRect region = regionOrNull;
+    if (region == null)
+      region = new IRect(imageSize);
+    checkArgument(new IRect(imageSize).contains(region), "region not within image:", region);
+    int outputWidth = (region.width + subsampling - 1) / subsampling;
+    int outputHeight = (region.height + subsampling - 1) / subsampling;
+    short[] outputPixels = new short[outputWidth * outputHeight];
 
     int imageWidth = imageSize.x;
-    int imageHeight = imageSize.y;
+    short[][] rows = new short[3][imageWidth];
+    int lastRow = region.y + (outputHeight - 1) * subsampling;
+    try {
+      for (int rowNumber = 0; rowNumber <= lastRow; rowNumber++) {
+        short[] row = rows[rowNumber % 3];
+        decompressRAXRow(input, rowNumber, imageWidth, row, 0, rows[(rowNumber + 2) % 3], 0,
+            rows[(rowNumber + 1) % 3], 0);
+        int regionRow = rowNumber - region.y;
+        if (regionRow < 0 || regionRow % subsampling != 0)
+          continue;
+        int j = (regionRow / subsampling) * outputWidth;
+        for (int i = 0, x = region.x; i < outputWidth; i++, x += subsampling)
+          outputPixels[j + i] = row[x];
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    MonoImage.Builder result = MonoImage.newBuilder().size(new IPoint(outputWidth, outputHeight))
+        .pixels(outputPixels);
+    // A subsampled image's pixels don't correspond to those of the original, so it has no offset
+    if (subsampling == 1)
+      result.offset(region.location());
+    return result.build();
+  }
 
-    int expectedLength = imageWidth * imageHeight;
-    short[] outputPixels = DataUtil.shortArray(expectedLength, outputPixelsOrNull);
-    monoImage.pixels(outputPixels);
-    int rowOffset = 0;
-    for (int rowNumber = 0; rowNumber < imageHeight; rowNumber++, rowOffset += imageWidth) {
-      int rowOffsetM2 = rowOffset - 2 * imageWidth;
-      int rowOffsetM1 = rowOffset - imageWidth;
-      int prevH1, prevH2;
-
-      if (rowNumber == 0) {
-        prevH1 = RAX_DEFAULT_PIXEL_VALUE;
-        prevH2 = RAX_DEFAULT_PIXEL_VALUE;
-        for (int x = 0; x < imageWidth; x++) {
-          int prediction = v1Scale(prevH1 - prevH2) + prevH1;
-          int pixel = extractIntegerFromStream(input, prediction);
-          outputPixels[rowOffset + x] = (short) pixel;
-          prevH2 = prevH1;
-          prevH1 = pixel;
-        }
-      } else if (rowNumber == 1) {
-        prevH1 = outputPixels[0];
+  /**
+   * Read a .rax file into a new OffHeapMonoImage, decompressing it a row at a
+   * time (so neither the compressed data nor the pixels are held in the heap)
+   */
+  public static OffHeapMonoImage readRaxOffHeap(File src) {
+    try (InputStream input = new BufferedInputStream(Files.openInputStream(src), RAX_STREAM_BUFFER_SIZE)) {
+      return decompressRAXOffHeap(input, null);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  /**
+   * Decompress .rax image from a stream into an OffHeapMonoImage, a row at a
+   * time. If the destination is null, one is allocated; otherwise, it must have
+   * the same size as the image
+   */
+  public static OffHeapMonoImage decompressRAXOffHeap(InputStream input, OffHeapMonoImage destinationOrNull)
+      throws IOException {
+    IPoint imageSize = readRaxHeader(input);
+    OffHeapMonoImage destination = destinationOrNull;
+    if (destination == null)
+      destination = OffHeapMonoImage.allocate(imageSize);
+    checkArgument(imageSize.equals(destination.size()), "destination size:", destination.size(),
+        "differs from image:", imageSize);
+    int imageWidth = imageSize.x;
+    short[][] rows = new short[3][imageWidth];
+    for (int rowNumber = 0; rowNumber < imageSize.y; rowNumber++) {
+      short[] row = rows[rowNumber % 3];
+      decompressRAXRow(input, rowNumber, imageWidth, row, 0, rows[(rowNumber + 2) % 3], 0,
+          rows[(rowNumber + 1) % 3], 0);
+      destination.writeRow(rowNumber, row, 0);
+    }
+    return destination;
+  }
+
+  /**
+   * Decompress a single row of pixels, given the two preceding (decompressed)
+   * rows
+   */
+  private static void decompressRAXRow(InputStream input, int rowNumber, int imageWidth, short[] row,
+      int rowOffset, short[] rowM1, int rowOffsetM1, short[] rowM2, int rowOffsetM2) throws IOException {
+    int prevH1, prevH2;
+    if (rowNumber == 0) {
+      prevH1 = RAX_DEFAULT_PIXEL_VALUE;
+      prevH2 = RAX_DEFAULT_PIXEL_VALUE;
+      for (int x = 0; x < imageWidth; x++) {
+        int prediction = v1Scale(prevH1 - prevH2) + prevH1;
+        int pixel = extractIntegerFromStream(input, prediction);
+        row[rowOffset + x] = (short) pixel;
         prevH2 = prevH1;
-        for (int x = 0; x < imageWidth; x++) {
-          int prevV1 = outputPixels[rowOffsetM1 + x];
-          int prediction = (v1Scale(prevH1 - prevH2) + (prevH1 + prevV1)) / 2;
-          int pixel = extractIntegerFromStream(input, prediction);
-          outputPixels[rowOffset + x] = (short) pixel;
-          prevH2 = prevH1;
-          prevH1 = pixel;
-        }
-      } else {
-        prevH1 = outputPixels[rowOffsetM1];
-        prevH2 = outputPixels[rowOffsetM2];
-        for (int x = 0; x < imageWidth; x++) {
-          int prevV1 = outputPixels[rowOffsetM1 + x];
-          int prevV2 = outputPixels[rowOffsetM2 + x];
-          int prediction = (v1Scale((prevH1 - prevH2) + (prevV1 - prevV2)) + (prevH1 + prevV1)) / 2;
-          int pixel = extractIntegerFromStream(input, prediction);
-          outputPixels[rowOffset + x] = (short) pixel;
-          prevH2 = prevH1;
-          prevH1 = pixel;
-        }
+        prevH1 = pixel;
+      }
+    } else if (rowNumber == 1) {
+      prevH1 = rowM1[rowOffsetM1];
+      prevH2 = prevH1;
+      for (int x = 0; x < imageWidth; x++) {
+        int prevV1 = rowM1[rowOffsetM1 + x];
+        int prediction = (v1Scale(prevH1 - prevH2) + (prevH1 + prevV1)) / 2;
+        int pixel = extractIntegerFromStream(input, prediction);
+        row[rowOffset + x] = (short) pixel;
+        prevH2 = prevH1;
+        prevH1 = pixel;
+      }
+    } else {
+      prevH1 = rowM1[rowOffsetM1];
+      prevH2 = rowM2[rowOffsetM2];
+      for (int x = 0; x < imageWidth; x++) {
+        int prevV1 = rowM1[rowOffsetM1 + x];
+        int prevV2 = rowM2[rowOffsetM2 + x];
+        int prediction = (v1Scale((prevH1 - prevH2) + (prevV1 - prevV2)) + (prevH1 + prevV1)) / 2;
+        int pixel = extractIntegerFromStream(input, prediction);
+        row[rowOffset + x] = (short) pixel;
+        prevH2 = prevH1;
+        prevH1 = pixel;
       }
     }
-    return monoImage.build();
   }
 
   private static int v1Scale(int value) {
@@ -282,12 +564,17 @@ public final class ImgUtil {
     return (value * 7) / 25;
   }
 
-  private static int extractIntegerFromStream(ByteArrayInputStream stream, int prediction) {
+  private static int extractIntegerFromStream(InputStream stream, int prediction) throws IOException {
     int result;
-    byte value = (byte) stream.read();
+    int next = stream.read();
+    if (next < 0)
+      throw badArg("rax data is truncated");
+    byte value = (byte) next;
     if (value == JUMP_SIGNAL) {
       int lb = stream.read();
       int hb = stream.read();
+      if (hb < 0)
+        throw badArg("rax data is truncated");
       int value2 = lb + (hb << 8);
       result = (value2 & 0xffff);
     } else {
@@ -307,15 +594,31 @@ public final class ImgUtil {
         break;
       if (byteBuffer[0] != RAX_COMPRESS_FLAG)
         break;
+      if (byteBuffer[1] == RAX_VERSION_2) {
+        if (byteBuffer.length < RAX_V2_HEADER_LENGTH)
+          break;
+        int imageWidth = getIntLittleEndian(byteBuffer, 2);
+        int imageHeight = getIntLittleEndian(byteBuffer, 6);
+        if (imageWidth < 1 || imageHeight < 1)
+          break;
+        result = new IPoint(imageWidth, imageHeight);
+        break;
+      }
       int imageWidth = toInt(byteBuffer[2]) + (toInt(byteBuffer[3]) << 8);
       int imageHeight = toInt(byteBuffer[4]) + (toInt(byteBuffer[5]) << 8);
-      if (imageWidth < 1 || imageWidth > 2048 || imageHeight < 1 || imageHeight > 2048)
+      if (imageWidth < 1 || imageWidth > RAX_V1_MAX_DIMENSION || imageHeight < 1
+          || imageHeight > RAX_V1_MAX_DIMENSION)
         break;
       result = new IPoint(imageWidth, imageHeight);
     } while (false);
     return result;
   }
 
+  private static int getIntLittleEndian(byte[] bytes, int offset) {
+    return toInt(bytes[offset]) | (toInt(bytes[offset + 1]) << 8) | (toInt(bytes[offset + 2]) << 16)
+        | (toInt(bytes[offset + 3]) << 24);
+  }
+
   private static final byte[] PNG_HEADER = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
 
   public static boolean looksLikePngImage(byte[] byteBuffer) {
@@ -342,72 +645,67 @@ public final class ImgUtil {
   public static byte[] toJPEG(BufferedImage img, Integer requiredTypeOrNull, Float requiredQualityOrNull) {
     if (requiredTypeOrNull != null)
       assertImageType(img, requiredTypeOrNull);
-
-    ByteArrayOutputStream outStream = null;
-    try {
-      outStream = new ByteArrayOutputStream();
-      if (requiredQualityOrNull == null) {
-        boolean wrote = ImageIO.write(img, EXT_JPEG, outStream);
-        if (!wrote)
-          throw die("No writer found for image:", img);
-      } else {
-        JPEGImageWriteParam jpegParams = new JPEGImageWriteParam(null);
-        jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-
-        jpegParams.setProgressiveMode(JPEGImageWriteParam.MODE_DISABLED);
-        jpegParams.setOptimizeHuffmanTables(true);
-
-        checkArgument(requiredQualityOrNull > 0 && requiredQualityOrNull <= 1.0f);
-        jpegParams.setCompressionQuality(requiredQualityOrNull);
-        ImageOutputStream outputStream = ImageIO.createImageOutputStream(outStream);
-        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
-        writer.setOutput(outputStream);
-        writer.write(null, new IIOImage(img, null, null), jpegParams);
-      }
-      return outStream.toByteArray();
-    } catch (IOException e) {
-      throw Files.asFileException(e);
-    } finally {
-      Files.close(outStream);
-    }
+    return new ImageEncoder().withJpegQuality(requiredQualityOrNull).toJPEG(img);
   }
 
+  /**
+   * Encode an image as a PNG, using the default settings of ImageEncoder
+   */
   public static byte[] toPNG(BufferedImage img) {
-    try {
-      ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-      ImageIO.write(img, EXT_PNG, outStream);
-      return outStream.toByteArray();
-    } catch (IOException e) {
-      throw Files.asFileException(e);
-    }
+    return DEFAULT_ENCODER.toPNG(img);
   }
 
+  private static final ImageEncoder DEFAULT_ENCODER = new ImageEncoder();
+
   //------------------------------------------------------------------
   // Writing images
   // ------------------------------------------------------------------
 
+  /**
+   * Write an image to a file, encoded as a JPEG or PNG according to its
+   * extension. The file is written by the Files object, so its options (e.g.
+   * dry runs) apply; this requires encoding the image into memory first. If
+   * that isn't needed, use writeImage(BufferedImage, File), which streams
+   */
   public static void writeImage(Files files, BufferedImage img, File dest) {
-    String ext = Files.getExtension(dest);
-    byte[] bytes = null;
-    if (ext.equals(EXT_JPEG)) {
-      int type = img.getType();
-      if (type != BufferedImage.TYPE_3BYTE_BGR && type != BufferedImage.TYPE_INT_RGB)
-        badArg("image has unexpected type:", type);
-      bytes = toJPEG(img, null);
-    } else if (ext.equals(EXT_PNG))
-      bytes = toPNG(img);
-    checkState(bytes != null, "Unsupported image type:", dest);
-    files.write(toPNG(img), dest);
+    String ext = checkWritable(img, dest);
+    files.write(DEFAULT_ENCODER.toBytes(img, ext), dest);
+  }
+
+  /**
+   * Write an image to a file, encoded as a JPEG or PNG according to its
+   * extension. The image is encoded once, streaming to a temporary file that
+   * then replaces the destination; see ImageEncoder.write()
+   */
+  public static void writeImage(BufferedImage img, File dest) {
+    checkWritable(img, dest);
+    DEFAULT_ENCODER.write(img, dest);
   }
 
   public static void writeJPG(Files files, BufferedImage img, File dest, Integer requiredTypeOrNull) {
     checkArgument(Files.getExtension(dest).equals(EXT_JPEG), "unsupported extension:", dest);
-    files.write(toJPEG(img, requiredTypeOrNull), dest);
+    if (requiredTypeOrNull != null)
+      assertImageType(img, requiredTypeOrNull);
+    files.write(DEFAULT_ENCODER.toJPEG(img), dest);
   }
 
   public static void writeRAX(Files files, MonoImage img, File dest) {
     checkArgumentsEqual(Files.getExtension(dest), ImgUtil.EXT_RAX);
-    Files.S.write(ImgUtil.compressRAX(img), dest);
+    files.write(ImgUtil.compressRAX(img), dest);
+  }
+
+  /**
+   * Verify that an image can be written to a file; return the file's extension
+   */
+  private static String checkWritable(BufferedImage img, File dest) {
+    String ext = Files.getExtension(dest);
+    if (ext.equals(EXT_JPEG)) {
+      int type = img.getType();
+      if (type != BufferedImage.TYPE_3BYTE_BGR && type != BufferedImage.TYPE_INT_RGB)
+        badArg("image has unexpected type:", type);
+    } else
+      checkState(ext.equals(EXT_PNG), "Unsupported image type:", dest);
+    return ext;
   }
 
   // ------------------------------------------------------------------
@@ -432,6 +730,13 @@ public final class ImgUtil {
    */
   public static IPoint size(File imageFile) {
     String suffix = Files.getExtension(imageFile);
+    if (suffix.equals(EXT_RAX)) {
+      try (InputStream input = Files.openInputStream(imageFile)) {
+        return readRaxHeader(input);
+      } catch (IOException e) {
+        throw Files.asFileException(e);
+      }
+    }
     for (ImageReader reader : in(ImageIO.getImageReadersBySuffix(suffix))) {
       try {
         reader.setInput(new FileImageInputStream(imageFile));
@@ -509,16 +814,12 @@ public final class ImgUtil {
 
   /**
    * Return copy of image, with a new type, or the original if types are the
-   * same
+   * same (see ImageConverter)
    */
   public static BufferedImage imageAsType(BufferedImage sourceImage, int targetType) {
     if (sourceImage.getType() == targetType)
       return sourceImage;
-    BufferedImage targetImage = imageOfSameSize(sourceImage, targetType);
-    Graphics g = targetImage.createGraphics();
-    g.drawImage(sourceImage, 0, 0, null);
-    g.dispose();
-    return targetImage;
+    return ImageConverter.convert(sourceImage, targetType);
   }
 
   /**
@@ -586,73 +887,20 @@ public final class ImgUtil {
   }
 
   /**
-   * Convert image pixels to array of float; only some image types are supported
+   * Convert image pixels to array of float, from 0...1 (interleaved, if
+   * numChannels is 3); see TensorPacker for other layouts, normalization and
+   * resizing
    * 
    * If numChannels is 1, and image is color, it uses only the green channel
    */
   public static float[] floatPixels(BufferedImage sourceImage, int numChannels, float[] destinationOrNull) {
-
-    int pixCount = ImgUtil.size(sourceImage).product();
-
-    float[] result;
-    switch (sourceImage.getType()) {
-
-    default:
-      throw badArg("unsupported image type:", INDENT, sourceImage);
-
-    case BufferedImage.TYPE_INT_RGB: {
-      int[] sourcePixels = ImgUtil.rgbPixels(sourceImage);
-      result = DataUtil.floatArray(pixCount * numChannels, destinationOrNull);
-      if (numChannels == 1) {
-        int j = 0;
-        for (int pixel : sourcePixels) {
-          int green = (pixel >> 8) & 0xff;
-          result[j] = green * RGB_TO_FLOAT;
-          j++;
-        }
-      } else {
-        int[] rgb = new int[3];
-        int j = 0;
-        for (int pixel : sourcePixels) {
-          parseRGB(pixel, rgb);
-          result[j] = rgb[0] * RGB_TO_FLOAT;
-          result[j + 1] = rgb[1] * RGB_TO_FLOAT;
-          result[j + 2] = rgb[2] * RGB_TO_FLOAT;
-          j += 3;
-        }
-      }
-    }
-      break;
-
-    case BufferedImage.TYPE_3BYTE_BGR: {
-      byte[] sourcePixels = ImgUtil.bgrPixels(sourceImage);
-      result = DataUtil.floatArray(pixCount * numChannels, destinationOrNull);
-      if (numChannels == 1) {
-        int len = sourcePixels.length;
-        int i = 0;
-        for (int j = 0; j < len; j += 3) {
-          float f = bytePixelValueToFloat(sourcePixels[j + 1]);
-          result[i] = f;
-          i++;
-        }
-      } else {
-        int len = sourcePixels.length;
-        for (int j = 0; j < len; j += 3) {
-          result[j] = bytePixelValueToFloat(sourcePixels[j + 2]);
-          result[j + 1] = bytePixelValueToFloat(sourcePixels[j + 1]);
-          result[j + 2] = bytePixelValueToFloat(sourcePixels[j + 0]);
-        }
-      }
-    }
-      break;
-    }
-
-    return result;
+    float[] result = DataUtil.floatArray(ImgUtil.size(sourceImage).product() * numChannels, destinationOrNull);
+    TensorPacker packer = (numChannels == 1) ? MONO_FLOAT_PACKER : RGB_FLOAT_PACKER;
+    return packer.pack(sourceImage, result);
   }
 
-  private static float bytePixelValueToFloat(byte b) {
-    return (((int) b) & 0xff) * RGB_TO_FLOAT;
-  }
+  private static final TensorPacker MONO_FLOAT_PACKER = new TensorPacker().withChannels(1);
+  private static final TensorPacker RGB_FLOAT_PACKER = new TensorPacker().withChannels(3);
 
   // ------------------------------------------------------------------
   // Construct BufferedImage from pixels
@@ -673,7 +921,8 @@ public final class ImgUtil {
   /**
    * Convert an image from an array of floats to a BufferedImage.TYPE_INT_RGB.
    * Assumes each float represents a color component (red, green, blue, or
-   * grayscale) from 0...1
+   * grayscale) from 0...1. See FloatRenderer for rendering into an existing
+   * image
    */
   public static BufferedImage floatsToBufferedImage(float[] floats, IPoint imageSize, int imageChannels) {
     int expectedLength;
@@ -687,28 +936,7 @@ public final class ImgUtil {
 
     DataUtil.assertLength(floats, expectedLength, "floatsToBufferedImage");
 
-    BufferedImage result = build(imageSize, BufferedImage.TYPE_INT_RGB);
-    int[] targetPixels = rgbPixels(result);
-    if (imageChannels == 1) {
-      for (int i = 0; i < floats.length; i++) {
-        int gray = floatToClampInt(floats[i]);
-        targetPixels[i] = compileRGB(gray, gray, gray);
-      }
-    } else {
-      int j = 0;
-      for (int i = 0; i < floats.length; i += 3, j++) {
-        int red = floatToClampInt(floats[i]);
-        int green = floatToClampInt(floats[i + 1]);
-        int blue = floatToClampInt(floats[i + 2]);
-        targetPixels[j] = compileRGB(red, green, blue);
-      }
-    }
-    return result;
-  }
-
-  private static int floatToClampInt(float f) {
-    f = MyMath.clamp(f * FLOAT_TO_RGB, 0, 255);
-    return (int) (f + 0.5f);
+    return new FloatRenderer().render(floats, imageSize, imageChannels, (BufferedImage) null);
   }
 
   /**
@@ -716,60 +944,7 @@ public final class ImgUtil {
    */
   public static float[] bufferedImageToFloat(BufferedImage sourceImage, int numChannels,
       float[] destinationOrNull) {
-
-    int[] pixels;
-
-    switch (sourceImage.getType()) {
-
-    case BufferedImage.TYPE_INT_RGB:
-      pixels = ImgUtil.rgbPixels(sourceImage);
-      break;
-
-    default:
-      throw die("unsupported image type:", INDENT, toJson(sourceImage));
-    }
-
-    float[] destination = destinationOrNull;
-    int requiredLength = pixels.length * numChannels;
-    if (destination == null) {
-      destination = new float[requiredLength];
-    } else if (destination.length != requiredLength) {
-      pr("sourceImage:", INDENT, ImgUtil.toJson(sourceImage));
-      pr("numChannels:", numChannels);
-      pr("destinationOrNull:", destinationOrNull);
-      pr("pixels.length:", pixels.length);
-      pr("requiredLength:", requiredLength);
-      throw die("unexpected length", destination.length, "!=", requiredLength);
-    }
-
-    switch (sourceImage.getType()) {
-    case BufferedImage.TYPE_INT_RGB: {
-      if (numChannels == 1) {
-        int j = 0;
-        for (int pixel : pixels) {
-          int green = (pixel >> 8) & 0xff;
-          destination[j] = green * RGB_TO_FLOAT;
-          j++;
-        }
-      } else {
-        int[] rgb = new int[3];
-        int j = 0;
-        for (int pixel : pixels) {
-          ImgUtil.parseRGB(pixel, rgb);
-          destination[j] = rgb[0] * RGB_TO_FLOAT;
-          destination[j + 1] = rgb[1] * RGB_TO_FLOAT;
-          destination[j + 2] = rgb[2] * RGB_TO_FLOAT;
-          j += 3;
-        }
-      }
-    }
-      break;
-
-    default:
-      throw die("unsupported");
-    }
-
-    return destination;
+    return floatPixels(sourceImage, numChannels, destinationOrNull);
   }
 
   // ------------------------------------------------------------------
@@ -777,7 +952,6 @@ public final class ImgUtil {
   // ------------------------------------------------------------------
 
   private static final float RGB_TO_FLOAT = 1.0f / 255;
-  private static final float FLOAT_TO_RGB = 1 / RGB_TO_FLOAT;
 
   // ------------------------------------------------------------------
   // Encoding and decoding pixels to color componenets
@@ -1096,7 +1270,7 @@ public final class ImgUtil {
       name = Files.setExtension(name, EXT_JPEG);
     File path = Files.getDesktopFile(name);
     pr("...saving image to desktop:", path.getName());
-    writeImage(Files.S, img, path);
+    writeImage(img, path);
     return img;
   }
 
@@ -309,7 +309,8 @@ public final class Inspector extends BaseObject {
           BufferedImage img = optBufferedImage();
           if (img != null) {
             log("write image:", imageFile.getName());
-            ImgUtil.writeImage(files(), img, imageFile);
+            // Files.S has no options to honor, so stream the image rather than buffering it
+            ImgUtil.writeImage(img, imageFile);
           }
         }
         mActiveSample.addFile(imageFile);
@@ -433,19 +434,29 @@ public final class Inspector extends BaseObject {
     return this;
   }
 
+  /**
+   * Get the current item's image. An image rendered from floats is reused for
+   * later items, so a copy of it is returned
+   */
   public BufferedImage bufferedImage() {
-    optBufferedImage();
-    if (mBufferedImage == null)
+    BufferedImage img = optBufferedImage();
+    if (img == null)
       throw badState("no BufferedImage available");
-    return mBufferedImage;
+    if (img == mFloatRenderTarget)
+      img = ImgUtil.deepCopy(img);
+    return img;
   }
 
   private BufferedImage optBufferedImage() {
     assertValidInspector();
     if (mBufferedImage == null) {
       if (mImageFloats != null) {
-        // Construct an 8-bit, RGB image from image floats
-        mBufferedImage = ImgUtil.floatsToBufferedImage(mImageFloats, imageSize(), mImageChannels);
+        // Render an 8-bit, RGB image from image floats, reusing the previous item's image if possible
+        if (mFloatRenderer == null)
+          mFloatRenderer = new FloatRenderer();
+        mFloatRenderTarget = mFloatRenderer.render(mImageFloats, imageSize(), mImageChannels,
+            mFloatRenderTarget);
+        mBufferedImage = mFloatRenderTarget;
       }
       if (mBufferedImage != null)
         mBufferedImage = applyImageEffects(mBufferedImage);
@@ -594,6 +605,8 @@ public final class Inspector extends BaseObject {
   private boolean mSharpen;
   private List<ScriptElement> mElements = arrayList();
   private BufferedImage mBufferedImage;
+  private FloatRenderer mFloatRenderer;
+  private BufferedImage mFloatRenderTarget;
   private JSObject mJsonObject;
   private MonoImage mMonoImage;
   private JSMap mUserMap;
@@ -0,0 +1,229 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Summed-area tables for a MonoImage, supporting constant-time queries of the
+ * sum, mean and variance of pixel values within any rectangle.
+ * 
+ * Entry (x,y) of each table (with 0 <= x <= width, 0 <= y <= height) holds the
+ * sum of the pixels (or squared pixels) within the rectangle [0,x) x [0,y).
+ * The tables are built by a parallel pass over rows, then one over columns.
+ * 
+ * Queries clip the rectangle to the image bounds, so the bounds of
+ * ScriptElements can be used directly. Pixels are treated as unsigned values.
+ */
+public final class IntegralImage {
+
+  /**
+   * Build tables for the sums of pixels and squared pixels
+   */
+  public static IntegralImage build(MonoImage image) {
+    return build(image, true);
+  }
+
+  /**
+   * Build tables for the sums of pixels and, optionally, squared pixels (which
+   * are required for variance queries)
+   */
+  public static IntegralImage build(MonoImage image, boolean includeSquares) {
+    return new IntegralImage(image, includeSquares);
+  }
+
+  public IPoint size() {
+    return mSize;
+  }
+
+  /**
+   * Get the sum of the pixels within a rectangle
+   */
+  public long sum(IRect rect) {
+    return query(mSum, rect);
+  }
+
+  /**
+   * Get the sum of the squares of the pixels within a rectangle
+   */
+  public long squaredSum(IRect rect) {
+    checkState(mSquaredSum != null, "squared sums weren't built");
+    return query(mSquaredSum, rect);
+  }
+
+  /**
+   * Get the number of pixels within a rectangle (after clipping to the image)
+   */
+  public int area(IRect rect) {
+    int x0 = clampX(rect.x);
+    int x1 = clampX(rect.endX());
+    int y0 = clampY(rect.y);
+    int y1 = clampY(rect.endY());
+    return (x1 > x0 && y1 > y0) ? (x1 - x0) * (y1 - y0) : 0;
+  }
+
+  /**
+   * Get the mean of the pixels within a rectangle, or zero if it contains no
+   * pixels
+   */
+  public float mean(IRect rect) {
+    int area = area(rect);
+    if (area == 0)
+      return 0;
+    return (float) (sum(rect) / (double) area);
+  }
+
+  /**
+   * Get the (population) variance of the pixels within a rectangle, or zero if
+   * it contains no pixels
+   */
+  public float variance(IRect rect) {
+    int area = area(rect);
+    if (area == 0)
+      return 0;
+    double mean = sum(rect) / (double) area;
+    double meanSq = squaredSum(rect) / (double) area;
+    return (float) Math.max(0, meanSq - mean * mean);
+  }
+
+  /**
+   * Get the mean of the pixels within a script element's bounds
+   */
+  public float mean(ScriptElement element) {
+    return mean(element.bounds());
+  }
+
+  /**
+   * Construct an image where each pixel is the (rounded) mean of the pixels
+   * within a square window centered on it, of side 2 * radius + 1 (clipped to
+   * the image)
+   */
+  public MonoImage boxMean(int radius) {
+    checkArgument(radius >= 0, "bad radius:", radius);
+    int width = mSize.x;
+    int height = mSize.y;
+    int stride = width + 1;
+    long[] t = mSum;
+    short[] pixels = new short[mSize.product()];
+    RowBands.forEach(height, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        int y0 = Math.max(0, y - radius);
+        int y1 = Math.min(height, y + radius + 1);
+        int r0 = y0 * stride;
+        int r1 = y1 * stride;
+        int i = y * width;
+        for (int x = 0; x < width; x++, i++) {
+          int x0 = Math.max(0, x - radius);
+          int x1 = Math.min(width, x + radius + 1);
+          long sum = t[r1 + x1] - t[r1 + x0] - t[r0 + x1] + t[r0 + x0];
+          int area = (x1 - x0) * (y1 - y0);
+          pixels[i] = (short) ((sum + area / 2) / area);
+        }
+      }
+    });
+    return MonoImageUtil.construct(mSize, pixels);
+  }
+
+  private IntegralImage(MonoImage image, boolean includeSquares) {
+    IPoint size = image.size();
+    short[] pixels = image.pixels();
+    checkArgument(pixels.length == size.product(), "unexpected pixel count");
+    mSize = size;
+    int width = size.x;
+    int height = size.y;
+    int stride = width + 1;
+    long[] sum = new long[stride * (height + 1)];
+    long[] sqSum = includeSquares ? new long[sum.length] : null;
+
+    // Row pass: prefix sums within each row (stored in table row y + 1)
+    //
+    RowBands.forEach(height, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        int src = y * width;
+        int dest = (y + 1) * stride + 1;
+        long s = 0;
+        long sq = 0;
+        for (int x = 0; x < width; x++) {
+          long v = pixels[src + x] & 0xffff;
+          s += v;
+          sum[dest + x] = s;
+          if (sqSum != null) {
+            sq += v * v;
+            sqSum[dest + x] = sq;
+          }
+        }
+      }
+    });
+
+    // Column pass: accumulate the row sums down each column, for bands of
+    // columns concurrently
+    //
+    RowBands.forEach(width, MIN_ROWS_PER_BAND, (colStart, colEnd) -> {
+      for (int y = 2; y <= height; y++) {
+        int dest = y * stride + 1;
+        int prev = dest - stride;
+        for (int x = colStart; x < colEnd; x++) {
+          sum[dest + x] += sum[prev + x];
+          if (sqSum != null)
+            sqSum[dest + x] += sqSum[prev + x];
+        }
+      }
+    });
+
+    mSum = sum;
+    mSquaredSum = sqSum;
+  }
+
+  private long query(long[] table, IRect rect) {
+    int x0 = clampX(rect.x);
+    int x1 = clampX(rect.endX());
+    int y0 = clampY(rect.y);
+    int y1 = clampY(rect.endY());
+    if (x1 <= x0 || y1 <= y0)
+      return 0;
+    int stride = mSize.x + 1;
+    int r0 = y0 * stride;
+    int r1 = y1 * stride;
+    return table[r1 + x1] - table[r1 + x0] - table[r0 + x1] + table[r0 + x0];
+  }
+
+  private int clampX(int x) {
+    return Math.max(0, Math.min(mSize.x, x));
+  }
+
+  private int clampY(int y) {
+    return Math.max(0, Math.min(mSize.y, y));
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 32;
+
+  private final IPoint mSize;
+  private final long[] mSum;
+  private final long[] mSquaredSum;
+}
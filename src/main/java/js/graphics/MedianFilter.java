@@ -0,0 +1,256 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Square-window median filter for MonoImages, whose cost per pixel is
+ * independent of the window radius (Perreault and Hebert's algorithm).
+ * 
+ * Each band of rows maintains a histogram for every column of the window,
+ * updated by one pixel per column as the window moves down; the window's
+ * histogram is updated by adding and subtracting column histograms as it moves
+ * across. Histograms are two-tiered (coarse and fine), and fine segments of
+ * the window's histogram are only brought up to date when the median falls
+ * within them.
+ * 
+ * To keep the histograms small, pixel values are quantized to a number of
+ * levels spread across the image's range of values; if the range is no larger
+ * than this, the results are exact. Pixels beyond the image edges are
+ * replicated from the nearest edge.
+ */
+public final class MedianFilter extends BaseObject {
+
+  public static final int DEFAULT_RADIUS = 1;
+  public static final int DEFAULT_LEVEL_BITS = 10;
+
+  public MedianFilter withRadius(int radius) {
+    checkArgument(radius >= 0 && radius <= 127, "bad radius:", radius);
+    mRadius = radius;
+    return this;
+  }
+
+  /**
+   * Set the number of quantization levels, as a power of two
+   */
+  public MedianFilter withLevelBits(int bits) {
+    checkArgument(bits >= 2 && bits <= 16, "bad level bits:", bits);
+    mLevelBits = bits;
+    return this;
+  }
+
+  public MonoImage apply(MonoImage image) {
+    short[] output = new short[image.pixels().length];
+    apply(image, output);
+    return MonoImageUtil.construct(image.size(), output);
+  }
+
+  /**
+   * Filter an image, storing the results in an array (which must not be the
+   * image's own pixels)
+   */
+  public void apply(MonoImage image, short[] output) {
+    short[] pixels = image.pixels();
+    checkArgument(output.length == pixels.length && output != pixels, "bad output array");
+    IPoint size = image.size();
+    if (pixels.length == 0)
+      return;
+    if (mRadius == 0) {
+      System.arraycopy(pixels, 0, output, 0, pixels.length);
+      return;
+    }
+
+    int min = MAX_UNSIGNED_PIXEL;
+    int max = 0;
+    for (short p : pixels) {
+      int v = p & 0xffff;
+      if (v < min)
+        min = v;
+      if (v > max)
+        max = v;
+    }
+    int minValue = min;
+    int range = max + 1 - min;
+    int levels = Math.min(range, 1 << mLevelBits);
+
+    char[] levelOf = new char[range];
+    for (int i = 0; i < range; i++)
+      levelOf[i] = (char) ((long) i * levels / range);
+    short[] valueOf = new short[levels];
+    for (int level = 0; level < levels; level++) {
+      // Use the middle of the values that map to this level
+      long first = ((long) level * range + levels - 1) / levels;
+      long last = ((long) (level + 1) * range + levels - 1) / levels - 1;
+      valueOf[level] = (short) (min + (first + last) / 2);
+    }
+
+    int fineBits = (32 - Integer.numberOfLeadingZeros(levels - 1) + 1) / 2;
+    int minRows = Math.max(MIN_ROWS_PER_BAND, 4 * (2 * mRadius + 1));
+    int radius = mRadius;
+    RowBands.forEach(size.y, minRows, (rowStart, rowEnd) -> {
+      new Band(size, radius, levels, fineBits).filter(pixels, minValue, levelOf, valueOf, output, rowStart,
+          rowEnd);
+    });
+  }
+
+  /**
+   * Histograms for filtering a band of rows
+   */
+  private static final class Band {
+
+    Band(IPoint size, int radius, int levels, int fineBits) {
+      mWidth = size.x;
+      mHeight = size.y;
+      mRadius = radius;
+      mFineBits = fineBits;
+      mFineSize = 1 << fineBits;
+      mCoarseSize = (levels + mFineSize - 1) >> fineBits;
+      mColumnFine = new char[mWidth * mCoarseSize * mFineSize];
+      mColumnCoarse = new char[mWidth * mCoarseSize];
+      mFine = new int[mCoarseSize * mFineSize];
+      mCoarse = new int[mCoarseSize];
+      mStamp = new int[mCoarseSize];
+    }
+
+    void filter(short[] pixels, int min, char[] levelOf, short[] valueOf, short[] output, int rowStart,
+        int rowEnd) {
+      int r = mRadius;
+      int w = mWidth;
+      int span = 2 * r + 1;
+      int target = (span * span) / 2;
+
+      for (int dy = -r; dy <= r; dy++)
+        addRow(pixels, min, levelOf, clampRow(rowStart + dy), 1);
+
+      for (int y = rowStart; y < rowEnd; y++) {
+        if (y > rowStart) {
+          addRow(pixels, min, levelOf, clampRow(y - r - 1), -1);
+          addRow(pixels, min, levelOf, clampRow(y + r), 1);
+        }
+
+        Arrays.fill(mCoarse, 0);
+        for (int j = -r; j <= r; j++)
+          addColumnCoarse(clampColumn(j), 1);
+        Arrays.fill(mStamp, STALE);
+
+        int outIndex = y * w;
+        for (int x = 0; x < w; x++) {
+          if (x > 0) {
+            addColumnCoarse(clampColumn(x + r), 1);
+            addColumnCoarse(clampColumn(x - r - 1), -1);
+          }
+
+          // Find the coarse bucket containing the median
+          int remaining = target;
+          int k = 0;
+          while (mCoarse[k] <= remaining) {
+            remaining -= mCoarse[k];
+            k++;
+          }
+
+          // Bring that bucket's fine histogram up to date
+          int last = mStamp[k];
+          if (x - last > span) {
+            Arrays.fill(mFine, k << mFineBits, (k + 1) << mFineBits, 0);
+            for (int j = x - r; j <= x + r; j++)
+              addColumnFine(clampColumn(j), k, 1);
+          } else {
+            for (int j = last + 1; j <= x; j++) {
+              addColumnFine(clampColumn(j + r), k, 1);
+              addColumnFine(clampColumn(j - r - 1), k, -1);
+            }
+          }
+          mStamp[k] = x;
+
+          int f = k << mFineBits;
+          while (mFine[f] <= remaining) {
+            remaining -= mFine[f];
+            f++;
+          }
+          output[outIndex + x] = valueOf[f];
+        }
+      }
+    }
+
+    private void addRow(short[] pixels, int min, char[] levelOf, int row, int delta) {
+      int w = mWidth;
+      int fineStride = mCoarseSize << mFineBits;
+      int offset = row * w;
+      for (int x = 0; x < w; x++) {
+        int level = levelOf[(pixels[offset + x] & 0xffff) - min];
+        mColumnFine[x * fineStride + level] += delta;
+        mColumnCoarse[x * mCoarseSize + (level >> mFineBits)] += delta;
+      }
+    }
+
+    private void addColumnCoarse(int column, int sign) {
+      int base = column * mCoarseSize;
+      for (int k = 0; k < mCoarseSize; k++)
+        mCoarse[k] += sign * mColumnCoarse[base + k];
+    }
+
+    private void addColumnFine(int column, int k, int sign) {
+      int base = column * (mCoarseSize << mFineBits) + (k << mFineBits);
+      int dest = k << mFineBits;
+      for (int i = 0; i < mFineSize; i++)
+        mFine[dest + i] += sign * mColumnFine[base + i];
+    }
+
+    private int clampRow(int y) {
+      return Math.max(0, Math.min(mHeight - 1, y));
+    }
+
+    private int clampColumn(int x) {
+      return Math.max(0, Math.min(mWidth - 1, x));
+    }
+
+    private static final int STALE = Integer.MIN_VALUE / 2;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRadius;
+    private final int mFineBits;
+    private final int mFineSize;
+    private final int mCoarseSize;
+    private final char[] mColumnFine;
+    private final char[] mColumnCoarse;
+    private final int[] mFine;
+    private final int[] mCoarse;
+    private final int[] mStamp;
+  }
+
+  private static final int MAX_UNSIGNED_PIXEL = 0xffff;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private int mRadius = DEFAULT_RADIUS;
+  private int mLevelBits = DEFAULT_LEVEL_BITS;
+}
@@ -164,43 +164,175 @@ public final class MonoImageUtil {
     b.minLoc(locationOfPixelWithIndex(img, minPixelIndex));
     b.maxLoc(locationOfPixelWithIndex(img, maxPixelIndex));
 
-    {
-      short[] cdf = new short[100];
-      int percent = 0;
-      int pixelCount = pixels.length;
+    auxGenerateCDF(b, hist, pixels.length);
+  }
 
-      int pixelsProcessed = 0;
+  /**
+   * Generate stats for an OffHeapMonoImage, reading its rows (in parallel) a
+   * band at a time rather than copying its pixels
+   */
+  public static ImageStats generateStats(OffHeapMonoImage img) {
+    ImageStats.Builder b = ImageStats.newBuilder();
+    IPoint size = img.size();
 
-      for (int pixelValue = min; pixelValue <= max; pixelValue++) {
-        int pixelFrequency = hist[pixelValue - min];
-        if (pixelFrequency == 0)
-          continue;
-        cdf[percent] = (short) pixelValue;
+    // First pass: determine count, min, max, sum
+    //
+    RowStats total = new RowStats();
+    for (RowStats band : rowStats(img, null, 0))
+      total.include(band);
+    checkState(total.count <= Integer.MAX_VALUE, "too many pixels for stats:", size);
+    b.count((int) total.count);
+    if (b.count() == 0) {
+      b.problem("no unfiltered pixels");
+      return b.build();
+    }
+    b.max(total.max);
+    b.min(total.min);
+    b.mean(Math.round(total.sum / (float) b.count()));
+    int range = range(b);
+    if (range == 1) {
+      b.problem("unreasonable range");
+      return b.build();
+    }
 
-        pixelsProcessed += pixelFrequency;
+    // Second pass: build histogram, and find (last) locations of min and max
+    //
+    int[] hist = new int[range];
+    for (RowStats band : rowStats(img, total, range)) {
+      for (int i = 0; i < range; i++)
+        hist[i] += band.histogram[i];
+      if (band.minLoc != null)
+        b.minLoc(new IPoint(band.minLoc.x + img.offset().x, band.minLoc.y + img.offset().y));
+      if (band.maxLoc != null)
+        b.maxLoc(new IPoint(band.maxLoc.x + img.offset().x, band.maxLoc.y + img.offset().y));
+    }
+    b.histogram(hist);
+    auxGenerateCDF(b, hist, b.count());
+    return b.build();
+  }
 
-        while (pixelsProcessed >= ((1 + percent) * pixelCount) / 100.0f) {
-          percent++;
-          if (percent < 100)
-            cdf[percent] = (short) pixelValue;
+  /**
+   * Determine only the min and max pixel values of an OffHeapMonoImage
+   */
+  public static ImageStats generateRangeStatsOnly(OffHeapMonoImage img) {
+    RowStats total = new RowStats();
+    for (RowStats band : rowStats(img, null, 0))
+      total.include(band);
+    int min = (total.count == 0) ? 0x10000 : total.min;
+    int max = (total.count == 0) ? -1 : total.max;
+    return ImageStats.newBuilder() //
+        .min(min) //
+        .max(max) //
+        .count((int) Math.min(Integer.MAX_VALUE, total.count)) //
+        .range(max - min) //
+        .build();
+  }
+
+  /**
+   * Statistics of the nonzero pixels of a band of rows
+   */
+  private static class RowStats {
+    long count;
+    long sum;
+    int min = 0x10000;
+    int max = -1;
+    int[] histogram;
+    IPoint minLoc;
+    IPoint maxLoc;
+
+    void include(RowStats s) {
+      count += s.count;
+      sum += s.sum;
+      min = Math.min(min, s.min);
+      max = Math.max(max, s.max);
+    }
+  }
+
+  /**
+   * Calculate stats for bands of rows concurrently. If range is nonzero, the
+   * bands' histograms (and the locations of the previously determined min and
+   * max values) are calculated as well. Returns stats for each band, ordered
+   * by row
+   */
+  private static List<RowStats> rowStats(OffHeapMonoImage img, RowStats totals, int range) {
+    IPoint size = img.size();
+    RowStats[] bandForRow = new RowStats[size.y];
+    RowBands.forEach(size.y, 64, (y0, y1) -> {
+      RowStats s = new RowStats();
+      if (range != 0)
+        s.histogram = new int[range];
+      short[] row = new short[size.x];
+      for (int y = y0; y < y1; y++) {
+        img.readRow(y, row, 0);
+        for (int x = 0; x < size.x; x++) {
+          int pix = unsignedShortToInt(row[x]);
+          if (pix == 0)
+            continue;
+          if (range == 0) {
+            s.count++;
+            s.sum += pix;
+            if (pix < s.min)
+              s.min = pix;
+            if (pix > s.max)
+              s.max = pix;
+          } else {
+            s.histogram[pix - totals.min]++;
+            if (pix == totals.min)
+              s.minLoc = new IPoint(x, y);
+            if (pix == totals.max)
+              s.maxLoc = new IPoint(x, y);
+          }
         }
       }
+      bandForRow[y0] = s;
+    });
+    List<RowStats> result = arrayList();
+    for (RowStats s : bandForRow)
+      if (s != null)
+        result.add(s);
+    return result;
+  }
+
+  /**
+   * Generate the cdf and the stats derived from it, given the histogram
+   */
+  private static void auxGenerateCDF(ImageStats.Builder b, int[] hist, int pixelCount) {
+    int min = b.min();
+    int max = b.max();
+    short[] cdf = new short[100];
+    int percent = 0;
+
+    int pixelsProcessed = 0;
+
+    for (int pixelValue = min; pixelValue <= max; pixelValue++) {
+      int pixelFrequency = hist[pixelValue - min];
+      if (pixelFrequency == 0)
+        continue;
+      cdf[percent] = (short) pixelValue;
+
+      pixelsProcessed += pixelFrequency;
 
-      while (percent < 100) {
-        cdf[percent] = (short) max;
+      while (pixelsProcessed >= ((1 + percent) * (long) pixelCount) / 100.0f) {
         percent++;
+        if (percent < 100)
+          cdf[percent] = (short) pixelValue;
       }
+    }
+
+    while (percent < 100) {
+      cdf[percent] = (short) max;
+      percent++;
+    }
 
-      b.cdf(cdf);
+    b.cdf(cdf);
 
-      b.range(b.max() + 1 - b.min());
-      b.median(readCDFValue(b, 50));
+    b.range(b.max() + 1 - b.min());
+    b.median(readCDFValue(b, 50));
 
-      final int CLIP_PCT = 2;
-      int minClipped = readCDFValue(b, CLIP_PCT);
-      int maxClipped = readCDFValue(b, 100 - 1 - CLIP_PCT);
-      b.clippedRange(maxClipped + 1 - minClipped);
-    }
+    final int CLIP_PCT = 2;
+    int minClipped = readCDFValue(b, CLIP_PCT);
+    int maxClipped = readCDFValue(b, 100 - 1 - CLIP_PCT);
+    b.clippedRange(maxClipped + 1 - minClipped);
   }
 
   /**
@@ -362,6 +494,37 @@ public final class MonoImageUtil {
     }
   }
 
+  /**
+   * Construct a MonoImage from a portion of an OffHeapMonoImage; its offset is
+   * set to the location of that portion within the original image
+   */
+  public static MonoImage constructClipped(OffHeapMonoImage srcImage, IRect bounds) {
+    IRect source = new IRect(srcImage.size());
+    checkArgument(source.contains(bounds), "source image doesn't contain desired clip region");
+    MonoImage destImage = MonoImageUtil.construct(bounds.size());
+    copyPortion(srcImage, destImage, bounds, IPoint.ZERO);
+    IPoint offset = srcImage.offset();
+    return destImage.toBuilder().offset(new IPoint(bounds.x + offset.x, bounds.y + offset.y)).build();
+  }
+
+  public static void copyPortion(OffHeapMonoImage srcImage, MonoImage destImage, IRect sourceRect,
+      IPoint destLoc) {
+    int destIndex = destLoc.y * destImage.size().x + destLoc.x;
+    for (int y = 0; y < sourceRect.height; y++) {
+      srcImage.readRow(sourceRect.y + y, sourceRect.x, sourceRect.width, destImage.pixels(), destIndex);
+      destIndex += destImage.size().x;
+    }
+  }
+
+  public static void copyPortion(MonoImage srcImage, OffHeapMonoImage destImage, IRect sourceRect,
+      IPoint destLoc) {
+    int sourceIndex = sourceRect.y * srcImage.size().x + sourceRect.x;
+    for (int y = 0; y < sourceRect.height; y++) {
+      destImage.writeRow(destLoc.y + y, destLoc.x, sourceRect.width, srcImage.pixels(), sourceIndex);
+      sourceIndex += srcImage.size().x;
+    }
+  }
+
   public static MonoImage verifyNonEmpty(MonoImage image) {
     if (image == null || image.size().isZero())
       throw badArg("MonoImage is null or empty:", INDENT, image);
@@ -438,6 +601,7 @@ public final class MonoImageUtil {
 
   private static short clampTo15BitRange(short monoPixel) {
     // clamp any extremely hot pixels to the maximum 15-bit range
+    // (BadPixelCorrector can replace such pixels, if a DefectMap is available)
     if (monoPixel < 0)
       monoPixel = MAX_PIXEL_VALUE - 1;
     return monoPixel;
@@ -523,7 +687,8 @@ public final class MonoImageUtil {
   }
 
   /**
-   * Construct version of image with equalized histogram
+   * Construct version of image with equalized histogram (see
+   * AdaptiveEqualizer for a local, contrast-limited alternative)
    */
   public static MonoImage equalizeHistogram(MonoImage image) {
     ImageStats stats = generateStats(image);
@@ -615,6 +780,9 @@ public final class MonoImageUtil {
    * 
    * Pixels on the image boundary will not be affected
    * 
+   * To erode by more than a few pixels, DistanceTransform.erode() is faster
+   * (and uses Euclidean, rather than city block, distances)
+   * 
    * @param frontierStack
    *          array containing pixels eroded in previous pass, or null if this
    *          is the first pass
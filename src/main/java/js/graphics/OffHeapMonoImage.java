@@ -0,0 +1,231 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import js.file.Files;
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+
+/**
+ * A monochrome image whose 16-bit pixels are stored outside of the Java heap,
+ * either in direct buffers or in a memory-mapped file; for images too large
+ * to be stored in a MonoImage's short[] array.
+ * 
+ * The pixels are stored in row-major order, divided into segments of whole
+ * rows (since a single buffer is limited to 2^31 bytes). Mapped files contain
+ * only the pixels, in little-endian order.
+ * 
+ * MonoImageUtil and ImgUtil support generating stats, clipping, copying and
+ * RAX compression for these images, by processing a row at a time.
+ */
+public final class OffHeapMonoImage {
+
+  /**
+   * Maximum number of bytes per segment
+   */
+  private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+  /**
+   * Allocate an image (with pixels initialized to zero) in direct buffers
+   */
+  public static OffHeapMonoImage allocate(IPoint size) {
+    OffHeapMonoImage image = new OffHeapMonoImage(size);
+    for (int i = 0; i < image.mSegments.length; i++) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(image.segmentRowCount(i) * size.x * Short.BYTES);
+      image.mSegments[i] = buffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+    return image;
+  }
+
+  /**
+   * Map an image to a file. If writable, the file is created (or extended) if
+   * necessary; otherwise, it must already contain the pixels
+   */
+  public static OffHeapMonoImage map(File file, IPoint size, boolean writable) {
+    OffHeapMonoImage image = new OffHeapMonoImage(size);
+    long bytesPerRow = (long) size.x * Short.BYTES;
+    try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r")) {
+      FileChannel channel = raf.getChannel();
+      long requiredLength = bytesPerRow * size.y;
+      if (!writable)
+        checkArgument(channel.size() >= requiredLength, "file is too short for image:", file, size);
+      FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+      long position = 0;
+      for (int i = 0; i < image.mSegments.length; i++) {
+        long length = image.segmentRowCount(i) * bytesPerRow;
+        image.mSegments[i] = channel.map(mode, position, length).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        position += length;
+      }
+      // (mappings remain valid after the channel is closed)
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return image;
+  }
+
+  /**
+   * Construct an image in direct buffers, with a copy of a MonoImage's pixels
+   */
+  public static OffHeapMonoImage from(MonoImage source) {
+    OffHeapMonoImage image = allocate(source.size());
+    image.mOffset = source.offset();
+    short[] pixels = source.pixels();
+    int width = source.size().x;
+    for (int y = 0; y < source.size().y; y++)
+      image.writeRow(y, pixels, y * width);
+    return image;
+  }
+
+  private OffHeapMonoImage(IPoint size) {
+    checkArgument(size.x > 0 && size.y > 0, "bad size:", size);
+    mSize = size;
+    long bytesPerRow = (long) size.x * Short.BYTES;
+    mRowsPerSegment = (int) Math.max(1, Math.min(size.y, MAX_SEGMENT_BYTES / bytesPerRow));
+    mSegments = new ShortBuffer[(size.y + mRowsPerSegment - 1) / mRowsPerSegment];
+    mOffset = IPoint.ZERO;
+  }
+
+  public IPoint size() {
+    return mSize;
+  }
+
+  /**
+   * Offset within original image of first pixel
+   */
+  public IPoint offset() {
+    return mOffset;
+  }
+
+  public OffHeapMonoImage withOffset(IPoint offset) {
+    mOffset = offset;
+    return this;
+  }
+
+  public long pixelCount() {
+    return (long) mSize.x * mSize.y;
+  }
+
+  public int get(int x, int y) {
+    return segment(y).get(indexWithinSegment(x, y));
+  }
+
+  public void set(int x, int y, int value) {
+    segment(y).put(indexWithinSegment(x, y), (short) value);
+  }
+
+  /**
+   * Read a row of pixels
+   */
+  public short[] readRow(int y, short[] dest, int destOffset) {
+    return readRow(y, 0, mSize.x, dest, destOffset);
+  }
+
+  /**
+   * Read a portion of a row of pixels
+   */
+  public short[] readRow(int y, int x, int length, short[] dest, int destOffset) {
+    checkRowPortion(x, length);
+    positioned(y, x).get(dest, destOffset, length);
+    return dest;
+  }
+
+  /**
+   * Write a row of pixels
+   */
+  public void writeRow(int y, short[] src, int srcOffset) {
+    writeRow(y, 0, mSize.x, src, srcOffset);
+  }
+
+  /**
+   * Write a portion of a row of pixels
+   */
+  public void writeRow(int y, int x, int length, short[] src, int srcOffset) {
+    checkRowPortion(x, length);
+    positioned(y, x).put(src, srcOffset, length);
+  }
+
+  /**
+   * Fill a rectangle with a single value
+   */
+  public void fill(IRect rect, int value) {
+    checkArgument(new IRect(mSize).contains(rect), "rect not within image:", rect);
+    short[] row = new short[rect.width];
+    Arrays.fill(row, (short) value);
+    for (int y = rect.y; y < rect.endY(); y++)
+      writeRow(y, rect.x, rect.width, row, 0);
+  }
+
+  /**
+   * Construct a MonoImage containing a copy of these pixels
+   */
+  public MonoImage toMonoImage() {
+    checkState(pixelCount() <= Integer.MAX_VALUE, "image is too large for MonoImage:", mSize);
+    return MonoImageUtil.constructClipped(this, new IRect(mSize));
+  }
+
+  private void checkRowPortion(int x, int length) {
+    if (x < 0 || length < 0 || x + length > mSize.x)
+      throw badArg("row portion out of range; x:", x, "length:", length, "width:", mSize.x);
+  }
+
+  private ShortBuffer segment(int y) {
+    return mSegments[y / mRowsPerSegment];
+  }
+
+  private int indexWithinSegment(int x, int y) {
+    return (y % mRowsPerSegment) * mSize.x + x;
+  }
+
+  /**
+   * Get a view of the segment containing a row, positioned at a pixel; the
+   * view is private to the caller, so concurrent rows can be accessed safely
+   */
+  private ShortBuffer positioned(int y, int x) {
+    ShortBuffer view = segment(y).duplicate();
+    view.position(indexWithinSegment(x, y));
+    return view;
+  }
+
+  private int segmentRowCount(int segmentIndex) {
+    return Math.min(mRowsPerSegment, mSize.y - segmentIndex * mRowsPerSegment);
+  }
+
+  private final IPoint mSize;
+  private final int mRowsPerSegment;
+  private final ShortBuffer[] mSegments;
+  private IPoint mOffset;
+}
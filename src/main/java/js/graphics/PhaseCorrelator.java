@@ -0,0 +1,218 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+
+import js.geometry.FPoint;
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Estimates the translation between images of a particular size by phase
+ * correlation.
+ * 
+ * Each image has its mean subtracted and is multiplied by a Hann window
+ * (to suppress the edges' contribution), then is zero-padded to power-of-two
+ * dimensions and transformed. The normalized cross-power spectrum of two
+ * images is transformed back, and the location of its peak (refined to
+ * sub-pixel accuracy by fitting parabolas) is the translation.
+ * 
+ * For aligning a stream of frames, next() compares each frame with its
+ * predecessor, transforming each frame only once. The buffers are reused; an
+ * instance should not be used by more than one thread at a time.
+ */
+public final class PhaseCorrelator {
+
+  public PhaseCorrelator(IPoint imageSize) {
+    checkArgument(imageSize.x >= 2 && imageSize.y >= 2, "bad size:", imageSize);
+    mImageSize = imageSize;
+    mPaddedWidth = Fft.paddedLength(imageSize.x);
+    mPaddedHeight = Fft.paddedLength(imageSize.y);
+    mFft = new Fft2d(new IPoint(mPaddedWidth, mPaddedHeight));
+    mPadded = new float[mPaddedWidth * mPaddedHeight];
+    mWindowX = hannWindow(imageSize.x);
+    mWindowY = hannWindow(imageSize.y);
+    int spectrumLength = mFft.spectrumRe().length;
+    mPreviousRe = new float[spectrumLength];
+    mPreviousIm = new float[spectrumLength];
+  }
+
+  /**
+   * Estimate the translation t such that image b(p) ~ a(p - t)
+   */
+  public FPoint translation(MonoImage a, MonoImage b) {
+    transform(a);
+    System.arraycopy(mFft.spectrumRe(), 0, mPreviousRe, 0, mPreviousRe.length);
+    System.arraycopy(mFft.spectrumIm(), 0, mPreviousIm, 0, mPreviousIm.length);
+    mHasPrevious = true;
+    return next(b);
+  }
+
+  /**
+   * Estimate the translation of a frame relative to the previous frame passed
+   * to this method (or to translation()); for the first frame, returns zero
+   */
+  public FPoint next(MonoImage frame) {
+    transform(frame);
+    FPoint result = new FPoint(0, 0);
+    float[] re = mFft.spectrumRe();
+    float[] im = mFft.spectrumIm();
+    if (mHasPrevious) {
+      // Save this frame's spectrum for the next call, while replacing it with
+      // the normalized cross-power spectrum
+      for (int i = 0; i < re.length; i++) {
+        float br = re[i];
+        float bi = im[i];
+        float ar = mPreviousRe[i];
+        float ai = mPreviousIm[i];
+        mPreviousRe[i] = br;
+        mPreviousIm[i] = bi;
+        // b * conj(a)
+        float cr = br * ar + bi * ai;
+        float ci = bi * ar - br * ai;
+        float magnitude = (float) Math.sqrt(cr * cr + ci * ci);
+        if (magnitude < 1e-20f) {
+          re[i] = 0;
+          im[i] = 0;
+        } else {
+          re[i] = cr / magnitude;
+          im[i] = ci / magnitude;
+        }
+      }
+      mFft.inverse(mPadded);
+      result = locatePeak();
+    } else {
+      System.arraycopy(re, 0, mPreviousRe, 0, re.length);
+      System.arraycopy(im, 0, mPreviousIm, 0, im.length);
+      mHasPrevious = true;
+      mPeakValue = 0;
+    }
+    return result;
+  }
+
+  /**
+   * Get the height of the correlation peak found by the most recent
+   * estimate; values near 1 indicate a confident match
+   */
+  public float peakValue() {
+    return mPeakValue;
+  }
+
+  /**
+   * Forget the previous frame
+   */
+  public void reset() {
+    mHasPrevious = false;
+  }
+
+  private void transform(MonoImage image) {
+    checkArgument(image.size().equals(mImageSize), "image size", image.size(), "differs from", mImageSize);
+    short[] pixels = image.pixels();
+    int width = mImageSize.x;
+    int height = mImageSize.y;
+    long sum = 0;
+    for (short p : pixels)
+      sum += p & 0xffff;
+    float mean = sum / (float) pixels.length;
+    int w = mPaddedWidth;
+    RowBands.forEach(mPaddedHeight, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        int offset = y * w;
+        if (y >= height) {
+          Arrays.fill(mPadded, offset, offset + w, 0);
+          continue;
+        }
+        float wy = mWindowY[y];
+        for (int x = 0; x < width; x++)
+          mPadded[offset + x] = ((pixels[y * width + x] & 0xffff) - mean) * wy * mWindowX[x];
+        Arrays.fill(mPadded, offset + width, offset + w, 0);
+      }
+    });
+    mFft.forward(mPadded);
+  }
+
+  private FPoint locatePeak() {
+    int w = mPaddedWidth;
+    int h = mPaddedHeight;
+    int best = 0;
+    for (int i = 1; i < mPadded.length; i++)
+      if (mPadded[i] > mPadded[best])
+        best = i;
+    int px = best % w;
+    int py = best / w;
+    mPeakValue = mPadded[best];
+
+    float left = mPadded[py * w + (px + w - 1) % w];
+    float right = mPadded[py * w + (px + 1) % w];
+    float up = mPadded[((py + h - 1) % h) * w + px];
+    float down = mPadded[((py + 1) % h) * w + px];
+    float dx = parabolaOffset(left, mPeakValue, right);
+    float dy = parabolaOffset(up, mPeakValue, down);
+
+    // Peaks beyond the halfway point represent negative translations
+    float tx = px + dx;
+    float ty = py + dy;
+    if (tx > w / 2)
+      tx -= w;
+    if (ty > h / 2)
+      ty -= h;
+    return new FPoint(tx, ty);
+  }
+
+  /**
+   * Get the offset of the vertex of the parabola through three equally spaced
+   * samples, relative to the middle one
+   */
+  private static float parabolaOffset(float before, float middle, float after) {
+    float denom = before - 2 * middle + after;
+    if (denom >= 0)
+      return 0;
+    return Math.max(-0.5f, Math.min(0.5f, 0.5f * (before - after) / denom));
+  }
+
+  private static float[] hannWindow(int length) {
+    float[] window = new float[length];
+    for (int i = 0; i < length; i++)
+      window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * (i + 0.5) / length));
+    return window;
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private final IPoint mImageSize;
+  private final int mPaddedWidth;
+  private final int mPaddedHeight;
+  private final Fft2d mFft;
+  private final float[] mPadded;
+  private final float[] mWindowX;
+  private final float[] mWindowY;
+  private final float[] mPreviousRe;
+  private final float[] mPreviousIm;
+  private boolean mHasPrevious;
+  private float mPeakValue;
+}
@@ -240,7 +240,7 @@ public final class Plotter extends BaseObject {
     File imageFile = new File(getParentDirectory(),
         String.format("%02d.%s", mNextImageIndex, mImageExtension));
     log("target file:", imageFile);
-    ImgUtil.writeImage(Files.S, image(), imageFile);
+    ImgUtil.writeImage(image(), imageFile);
 
     mGraphics.dispose();
     mGraphics = null;
@@ -0,0 +1,332 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Decodes common PNGs without ImageIO, unfiltering rows directly into the
+ * arrays of the resulting images.
+ * 
+ * Non-interlaced 8- and 16-bit gray, and 8-bit RGB and RGBA PNGs, are
+ * supported. The images produced have the same types that ImageIO produces
+ * (TYPE_BYTE_GRAY, TYPE_USHORT_GRAY, TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR). For
+ * other PNGs (e.g., indexed, interlaced, or with transparency or ICC profile
+ * chunks), or malformed ones, the decode methods return null, so callers can
+ * fall back to ImageIO. Chunk CRCs aren't verified.
+ * 
+ * A decoder reuses its inflater and row buffers, so it shouldn't be used by more
+ * than one thread at a time.
+ */
+public final class PngDecoder {
+
+  /**
+   * Determine if bytes start with the PNG signature
+   */
+  public static boolean isPng(byte[] bytes) {
+    if (bytes.length < SIGNATURE.length)
+      return false;
+    for (int i = 0; i < SIGNATURE.length; i++)
+      if (bytes[i] != SIGNATURE[i])
+        return false;
+    return true;
+  }
+
+  /**
+   * Decode a PNG to a BufferedImage; return null if it isn't supported
+   */
+  public BufferedImage decode(byte[] png) {
+    if (!parse(png))
+      return null;
+    int type;
+    if (mColorType == COLOR_GRAY)
+      type = (mBitDepth == 8) ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_USHORT_GRAY;
+    else
+      type = (mColorType == COLOR_RGB) ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_4BYTE_ABGR;
+    BufferedImage image = ImgUtil.build(new IPoint(mWidth, mHeight), type);
+    boolean success;
+    if (mBitDepth == 16)
+      success = decodeRows(png, null, ((DataBufferUShort) image.getRaster().getDataBuffer()).getData());
+    else
+      success = decodeRows(png, ((DataBufferByte) image.getRaster().getDataBuffer()).getData(), null);
+    return success ? image : null;
+  }
+
+  /**
+   * Decode a 16-bit gray PNG to a MonoImage; return null if it isn't supported
+   * (or isn't 16-bit gray)
+   */
+  public MonoImage decodeMono(byte[] png) {
+    if (!parse(png) || mColorType != COLOR_GRAY || mBitDepth != 16)
+      return null;
+    short[] pixels = new short[mWidth * mHeight];
+    if (!decodeRows(png, null, pixels))
+      return null;
+    return MonoImage.newBuilder().size(new IPoint(mWidth, mHeight)).pixels(pixels).build();
+  }
+
+  // ------------------------------------------------------------------
+  // Chunks
+  // ------------------------------------------------------------------
+
+  /**
+   * Parse the chunks of a PNG, reading its header and locating its first IDAT
+   * chunk; return false if it isn't supported
+   */
+  private boolean parse(byte[] png) {
+    if (!isPng(png))
+      return false;
+    int pos = SIGNATURE.length;
+    if (!validChunk(png, pos) || getInt(png, pos + 4) != CHUNK_IHDR || getInt(png, pos) != 13)
+      return false;
+    int h = pos + 8;
+    mWidth = getInt(png, h);
+    mHeight = getInt(png, h + 4);
+    mBitDepth = png[h + 8];
+    mColorType = png[h + 9];
+    int compression = png[h + 10];
+    int filterMethod = png[h + 11];
+    int interlace = png[h + 12];
+    if (mWidth <= 0 || mHeight <= 0 || compression != 0 || filterMethod != 0 || interlace != 0)
+      return false;
+    if (mColorType == COLOR_GRAY) {
+      if (mBitDepth != 8 && mBitDepth != 16)
+        return false;
+      mBytesPerPixel = mBitDepth / 8;
+    } else if (mColorType == COLOR_RGB || mColorType == COLOR_RGBA) {
+      if (mBitDepth != 8)
+        return false;
+      mBytesPerPixel = (mColorType == COLOR_RGB) ? 3 : 4;
+    } else
+      return false;
+    if ((long) mWidth * mHeight * mBytesPerPixel > Integer.MAX_VALUE - mHeight)
+      return false;
+
+    mFirstDataChunk = -1;
+    pos = nextChunk(png, pos);
+    while (validChunk(png, pos)) {
+      int type = getInt(png, pos + 4);
+      if (type == CHUNK_IDAT) {
+        if (mFirstDataChunk < 0)
+          mFirstDataChunk = pos;
+      } else if (type == CHUNK_IEND)
+        return mFirstDataChunk >= 0;
+      else if (type == CHUNK_TRNS || type == CHUNK_ICCP)
+        return false;
+      else if (type != CHUNK_PLTE && (type & ANCILLARY_BIT) == 0)
+        // Unknown critical chunk
+        return false;
+      pos = nextChunk(png, pos);
+    }
+    return false;
+  }
+
+  private static boolean validChunk(byte[] png, int pos) {
+    if (pos < 0 || pos + 12 > png.length)
+      return false;
+    int length = getInt(png, pos);
+    return length >= 0 && length <= png.length - pos - 12;
+  }
+
+  private static int nextChunk(byte[] png, int pos) {
+    return pos + 12 + getInt(png, pos);
+  }
+
+  private static int getInt(byte[] b, int offset) {
+    return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) | ((b[offset + 2] & 0xff) << 8)
+        | (b[offset + 3] & 0xff);
+  }
+
+  // ------------------------------------------------------------------
+  // Image data
+  // ------------------------------------------------------------------
+
+  /**
+   * Inflate and unfilter the rows, storing pixels in one of the arrays (in the
+   * layout of the corresponding BufferedImage type); return false if the data
+   * is malformed
+   */
+  private boolean decodeRows(byte[] png, byte[] bytePixels, short[] shortPixels) {
+    int length = mWidth * mBytesPerPixel + 1;
+    if (mRow == null || mRow.length != length) {
+      mRow = new byte[length];
+      mPreviousRow = new byte[length];
+    }
+    byte[] row = mRow;
+    byte[] prev = mPreviousRow;
+    Arrays.fill(prev, (byte) 0);
+
+    if (mInflater == null)
+      mInflater = new Inflater();
+    Inflater inflater = mInflater;
+    inflater.reset();
+    mChunk = mFirstDataChunk;
+    inflater.setInput(png, mChunk + 8, getInt(png, mChunk));
+
+    try {
+      for (int y = 0; y < mHeight; y++) {
+        if (!inflateRow(png, row))
+          return false;
+        if (!unfilter(row, prev))
+          return false;
+        storeRow(y, row, bytePixels, shortPixels);
+        byte[] tmp = prev;
+        prev = row;
+        row = tmp;
+      }
+    } catch (DataFormatException e) {
+      return false;
+    } finally {
+      mRow = row;
+      mPreviousRow = prev;
+    }
+    return true;
+  }
+
+  /**
+   * Inflate the next row, moving to following IDAT chunks as necessary
+   */
+  private boolean inflateRow(byte[] png, byte[] row) throws DataFormatException {
+    Inflater inflater = mInflater;
+    int filled = 0;
+    while (filled < row.length) {
+      int n = inflater.inflate(row, filled, row.length - filled);
+      filled += n;
+      if (n != 0)
+        continue;
+      if (inflater.finished() || inflater.needsDictionary())
+        return false;
+      if (inflater.needsInput()) {
+        mChunk = nextChunk(png, mChunk);
+        if (!validChunk(png, mChunk) || getInt(png, mChunk + 4) != CHUNK_IDAT)
+          return false;
+        inflater.setInput(png, mChunk + 8, getInt(png, mChunk));
+      }
+    }
+    return true;
+  }
+
+  private boolean unfilter(byte[] row, byte[] prev) {
+    int n = row.length - 1;
+    int bpp = mBytesPerPixel;
+    switch (row[0]) {
+    case FILTER_NONE:
+      break;
+    case FILTER_SUB:
+      for (int i = 1 + bpp; i <= n; i++)
+        row[i] += row[i - bpp];
+      break;
+    case FILTER_UP:
+      for (int i = 1; i <= n; i++)
+        row[i] += prev[i];
+      break;
+    case FILTER_AVERAGE:
+      for (int i = 1; i <= bpp; i++)
+        row[i] += (prev[i] & 0xff) >> 1;
+      for (int i = 1 + bpp; i <= n; i++)
+        row[i] += ((row[i - bpp] & 0xff) + (prev[i] & 0xff)) >> 1;
+      break;
+    case FILTER_PAETH:
+      for (int i = 1; i <= bpp; i++)
+        row[i] += prev[i];
+      for (int i = 1 + bpp; i <= n; i++)
+        row[i] += PngEncoder.paeth(row[i - bpp] & 0xff, prev[i] & 0xff, prev[i - bpp] & 0xff);
+      break;
+    default:
+      return false;
+    }
+    return true;
+  }
+
+  private void storeRow(int y, byte[] row, byte[] bytePixels, short[] shortPixels) {
+    int w = mWidth;
+    if (shortPixels != null) {
+      for (int x = 0, j = y * w, k = 1; x < w; x++, k += 2)
+        shortPixels[j++] = (short) (((row[k] & 0xff) << 8) | (row[k + 1] & 0xff));
+      return;
+    }
+    int j = y * w * mBytesPerPixel;
+    switch (mColorType) {
+    case COLOR_GRAY:
+      System.arraycopy(row, 1, bytePixels, j, w);
+      break;
+    case COLOR_RGB:
+      for (int x = 0, k = 1; x < w; x++, k += 3) {
+        bytePixels[j++] = row[k + 2];
+        bytePixels[j++] = row[k + 1];
+        bytePixels[j++] = row[k];
+      }
+      break;
+    default:
+      for (int x = 0, k = 1; x < w; x++, k += 4) {
+        bytePixels[j++] = row[k + 3];
+        bytePixels[j++] = row[k + 2];
+        bytePixels[j++] = row[k + 1];
+        bytePixels[j++] = row[k];
+      }
+      break;
+    }
+  }
+
+  private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+  private static final int CHUNK_IHDR = 0x49484452;
+  private static final int CHUNK_PLTE = 0x504c5445;
+  private static final int CHUNK_IDAT = 0x49444154;
+  private static final int CHUNK_IEND = 0x49454e44;
+  private static final int CHUNK_TRNS = 0x74524e53;
+  private static final int CHUNK_ICCP = 0x69434350;
+  private static final int ANCILLARY_BIT = 0x20000000;
+
+  private static final int COLOR_GRAY = 0;
+  private static final int COLOR_RGB = 2;
+  private static final int COLOR_RGBA = 6;
+
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  private int mWidth;
+  private int mHeight;
+  private int mBitDepth;
+  private int mColorType;
+  private int mBytesPerPixel;
+  private int mFirstDataChunk;
+  private int mChunk;
+  private Inflater mInflater;
+  private byte[] mRow;
+  private byte[] mPreviousRow;
+}
@@ -0,0 +1,585 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Encodes BufferedImages as PNGs, with explicit control of the deflate level
+ * and of the scanline filter (ImageIO's PNG writer leaves non-palette rows
+ * unfiltered).
+ * 
+ * 8- and 16-bit gray images are written as gray PNGs, read directly from their
+ * rasters; other images that a RasterReader can read directly, with components
+ * of at most 8 bits, are written as 8-bit RGB (or RGBA, if they have alpha).
+ * Use supports() to determine if an image can be encoded.
+ * 
+ * Images of more than a few hundred KB are divided into bands of rows, which
+ * are filtered and compressed in parallel, and the compressed bands are joined
+ * into a single (standard) zlib stream; smaller images are compressed by the
+ * calling thread, and written as they are compressed.
+ * 
+ * An encoder reuses its deflater and row buffers, so it shouldn't be used by
+ * more than one thread at a time.
+ */
+public final class PngEncoder extends BaseObject {
+
+  public enum Filter {
+    NONE, SUB, UP, AVERAGE, PAETH,
+
+    /**
+     * Choose a filter for each row, using the minimum sum of absolute
+     * differences heuristic
+     */
+    ADAPTIVE,
+  }
+
+  /**
+   * The deflate level that favors speed over size
+   */
+  public static final int LEVEL_SPEED = Deflater.BEST_SPEED;
+
+  /**
+   * The default deflate level (that of ImageIO's writer)
+   */
+  public static final int LEVEL_DEFAULT = 4;
+
+  public PngEncoder withLevel(int level) {
+    checkArgument(level >= 0 && level <= 9, "bad level:", level);
+    mLevel = level;
+    return this;
+  }
+
+  public PngEncoder withFilter(Filter filter) {
+    mFilter = checkNotNull(filter);
+    return this;
+  }
+
+  /**
+   * Determine if an image can be encoded
+   */
+  public static boolean supports(BufferedImage image) {
+    return colorType(image) >= 0;
+  }
+
+  public void encode(BufferedImage image, OutputStream output) {
+    int colorType = colorType(image);
+    checkArgument(colorType >= 0, "unsupported image type:", image.getType());
+    try {
+      prepare(image, colorType);
+      writeSignatureAndHeader(output);
+      writeImageData(output);
+      writeChunk(output, CHUNK_IEND, mChunk, 0);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } finally {
+      mImage = null;
+      mReader = null;
+    }
+  }
+
+  // ------------------------------------------------------------------
+  // Image layout
+  // ------------------------------------------------------------------
+
+  private static final int COLOR_GRAY = 0;
+  private static final int COLOR_RGB = 2;
+  private static final int COLOR_RGBA = 6;
+
+  private static int colorType(BufferedImage image) {
+    if (grayBitDepth(image) != 0)
+      return COLOR_GRAY;
+    ColorModel cm = image.getColorModel();
+    for (int size : cm.getComponentSize())
+      if (size > 8)
+        return -1;
+    if (!RasterReader.of(image).isDirect())
+      return -1;
+    return cm.hasAlpha() ? COLOR_RGBA : COLOR_RGB;
+  }
+
+  /**
+   * Get the bit depth of an image's pixels if it is an (alpha-less) 8- or
+   * 16-bit gray image whose raster can be read directly; else, zero
+   */
+  private static int grayBitDepth(BufferedImage image) {
+    ColorModel cm = image.getColorModel();
+    Raster raster = image.getRaster();
+    DataBuffer db = raster.getDataBuffer();
+    if (!(cm instanceof ComponentColorModel) || cm.hasAlpha() || cm.getNumComponents() != 1
+        || cm.getColorSpace().getType() != ColorSpace.TYPE_GRAY)
+      return 0;
+    if (!(raster.getSampleModel() instanceof ComponentSampleModel) || db.getNumBanks() != 1)
+      return 0;
+    int bits = cm.getComponentSize(0);
+    if (bits == 8 && db instanceof DataBufferByte)
+      return 8;
+    if (bits == 16 && db instanceof DataBufferUShort)
+      return 16;
+    return 0;
+  }
+
+  private void prepare(BufferedImage image, int colorType) {
+    mImage = image;
+    mColorType = colorType;
+    mWidth = image.getWidth();
+    mHeight = image.getHeight();
+    if (colorType == COLOR_GRAY) {
+      mBitDepth = grayBitDepth(image);
+      mBytesPerPixel = mBitDepth / 8;
+      mReader = null;
+    } else {
+      mBitDepth = 8;
+      mBytesPerPixel = (colorType == COLOR_RGBA) ? 4 : 3;
+      mReader = RasterReader.of(image);
+    }
+    mRowBytes = mWidth * mBytesPerPixel;
+  }
+
+  // ------------------------------------------------------------------
+  // Chunks
+  // ------------------------------------------------------------------
+
+  private void writeSignatureAndHeader(OutputStream output) throws IOException {
+    output.write(SIGNATURE);
+    byte[] h = mChunk;
+    putInt(h, 0, mWidth);
+    putInt(h, 4, mHeight);
+    h[8] = (byte) mBitDepth;
+    h[9] = (byte) mColorType;
+    // compression, filter and interlace methods
+    h[10] = 0;
+    h[11] = 0;
+    h[12] = 0;
+    writeChunk(output, CHUNK_IHDR, h, 13);
+  }
+
+  private void writeChunk(OutputStream output, int type, byte[] data, int length) throws IOException {
+    byte[] b = mChunkHeader;
+    putInt(b, 0, length);
+    putInt(b, 4, type);
+    output.write(b, 0, 8);
+    output.write(data, 0, length);
+    CRC32 crc = mCrc;
+    crc.reset();
+    crc.update(b, 4, 4);
+    crc.update(data, 0, length);
+    putInt(b, 0, (int) crc.getValue());
+    output.write(b, 0, 4);
+  }
+
+  private static void putInt(byte[] b, int offset, int value) {
+    b[offset] = (byte) (value >>> 24);
+    b[offset + 1] = (byte) (value >>> 16);
+    b[offset + 2] = (byte) (value >>> 8);
+    b[offset + 3] = (byte) value;
+  }
+
+  // ------------------------------------------------------------------
+  // Image data
+  // ------------------------------------------------------------------
+
+  private void writeImageData(OutputStream output) throws IOException {
+    int rowLength = mRowBytes + 1;
+    int bandCount = RowBands.bandCount(mHeight, Math.max(1, MIN_BAND_BYTES / rowLength));
+    if (bandCount > 1)
+      writeImageDataInBands(output, bandCount);
+    else
+      writeImageDataSequentially(output);
+  }
+
+  /**
+   * Filter and compress the rows in a single zlib stream, writing IDAT chunks
+   * as they fill
+   */
+  private void writeImageDataSequentially(OutputStream output) throws IOException {
+    if (mRows == null || !mRows.fits())
+      mRows = new Rows();
+    Rows rows = mRows;
+    if (mDeflater == null)
+      mDeflater = new Deflater(mLevel);
+    Deflater deflater = mDeflater;
+    deflater.reset();
+    deflater.setLevel(mLevel);
+
+    mChunkLength = 0;
+    int length = mRowBytes + 1;
+    rows.start(0);
+    for (int y = 0; y < mHeight; y++) {
+      deflater.setInput(rows.next(y), 0, length);
+      while (!deflater.needsInput())
+        deflateToChunk(deflater, output);
+    }
+    deflater.finish();
+    while (!deflater.finished())
+      deflateToChunk(deflater, output);
+    if (mChunkLength > 0)
+      writeChunk(output, CHUNK_IDAT, mChunk, mChunkLength);
+  }
+
+  private void deflateToChunk(Deflater deflater, OutputStream output) throws IOException {
+    mChunkLength += deflater.deflate(mChunk, mChunkLength, mChunk.length - mChunkLength);
+    if (mChunkLength == mChunk.length) {
+      writeChunk(output, CHUNK_IDAT, mChunk, mChunkLength);
+      mChunkLength = 0;
+    }
+  }
+
+  /**
+   * Filter and compress bands of rows in parallel, as independent raw deflate
+   * streams, and join them (pigz-style) into a single zlib stream.
+   * 
+   * Each band's stream is primed with the preceding 32K of filtered data as its
+   * dictionary (so compression barely suffers), and all but the last end with a
+   * sync flush (so they end on a byte boundary, without a final block). The
+   * zlib header is written ahead of the first band, and the adler32 checksum,
+   * combined from the bands', after the last. Each band is written as an IDAT
+   * chunk
+   */
+  private void writeImageDataInBands(OutputStream output, int bandCount) throws IOException {
+    Band[] bands = new Band[bandCount];
+    IntStream.range(0, bandCount).parallel().forEach(b -> {
+      int rowStart = (int) ((long) mHeight * b / bandCount);
+      int rowEnd = (int) ((long) mHeight * (b + 1) / bandCount);
+      bands[b] = compressBand(rowStart, rowEnd, b == bandCount - 1);
+    });
+
+    long adler = 1;
+    for (Band band : bands)
+      adler = adler32Combine(adler, band.adler, band.length);
+    ImageEncoder.Output last = bands[bandCount - 1].output;
+    putInt(mChunkHeader, 0, (int) adler);
+    last.write(mChunkHeader, 0, 4);
+
+    for (Band band : bands)
+      writeChunk(output, CHUNK_IDAT, band.output.array(), band.output.size());
+  }
+
+  private static final class Band {
+    ImageEncoder.Output output = new ImageEncoder.Output();
+    long adler;
+    long length;
+  }
+
+  private Band compressBand(int rowStart, int rowEnd, boolean last) {
+    Band band = new Band();
+    Rows rows = new Rows();
+    Deflater deflater = new Deflater(mLevel, true);
+    try {
+      int length = mRowBytes + 1;
+      if (rowStart == 0) {
+        band.output.write(ZLIB_CMF);
+        band.output.write(zlibFlags(mLevel));
+        rows.start(0);
+      } else {
+        int dictionaryRows = Math.min(rowStart, (DICTIONARY_SIZE + length - 1) / length);
+        byte[] dictionary = new byte[dictionaryRows * length];
+        rows.start(rowStart - dictionaryRows);
+        for (int i = 0; i < dictionaryRows; i++)
+          System.arraycopy(rows.next(rowStart - dictionaryRows + i), 0, dictionary, i * length, length);
+        int n = Math.min(dictionary.length, DICTIONARY_SIZE);
+        deflater.setDictionary(dictionary, dictionary.length - n, n);
+      }
+
+      Adler32 adler = new Adler32();
+      byte[] buffer = rows.deflateBuffer;
+      for (int y = rowStart; y < rowEnd; y++) {
+        byte[] filtered = rows.next(y);
+        adler.update(filtered, 0, length);
+        deflater.setInput(filtered, 0, length);
+        while (!deflater.needsInput())
+          band.output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished())
+          band.output.write(buffer, 0, deflater.deflate(buffer));
+      } else {
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          band.output.write(buffer, 0, n);
+        } while (n == buffer.length);
+      }
+      band.adler = adler.getValue();
+      band.length = (long) (rowEnd - rowStart) * length;
+    } finally {
+      deflater.end();
+    }
+    return band;
+  }
+
+  private static int zlibFlags(int level) {
+    // Compression level hint, as written by zlib
+    int levelFlags = level < 2 ? 0 : (level < 6 ? 1 : (level == 6 ? 2 : 3));
+    int flags = levelFlags << 6;
+    return flags + 31 - ((ZLIB_CMF << 8) + flags) % 31;
+  }
+
+  /**
+   * Combine the adler32 checksums of two sequences, given the second's length
+   * (as zlib's adler32_combine())
+   */
+  static long adler32Combine(long adler1, long adler2, long length2) {
+    final long base = 65521;
+    long rem = length2 % base;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % base;
+    sum1 += (adler2 & 0xffff) + base - 1;
+    sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+    if (sum1 >= base)
+      sum1 -= base;
+    if (sum1 >= base)
+      sum1 -= base;
+    if (sum2 >= (base << 1))
+      sum2 -= (base << 1);
+    if (sum2 >= base)
+      sum2 -= base;
+    return sum1 | (sum2 << 16);
+  }
+
+  // ------------------------------------------------------------------
+  // Reading and filtering rows
+  // ------------------------------------------------------------------
+
+  /**
+   * Buffers for reading and filtering consecutive rows; row buffers have a
+   * leading filter type byte
+   */
+  private final class Rows {
+
+    Rows() {
+      int length = mRowBytes + 1;
+      raw = new byte[length];
+      prev = new byte[length];
+      filtered = new byte[Filter.ADAPTIVE.ordinal()][length];
+      argb = new int[mWidth];
+    }
+
+    boolean fits() {
+      return raw.length == mRowBytes + 1 && argb.length == mWidth;
+    }
+
+    /**
+     * Prepare to filter rows starting with a particular one
+     */
+    void start(int y) {
+      if (y == 0)
+        Arrays.fill(prev, (byte) 0);
+      else
+        readRow(y - 1, prev);
+    }
+
+    /**
+     * Read and filter the next row, returning the buffer containing the
+     * result; it is valid until the following call
+     */
+    byte[] next(int y) {
+      readRow(y, raw);
+      byte[] result = filterRow(raw, prev);
+      byte[] tmp = prev;
+      prev = raw;
+      raw = tmp;
+      return result;
+    }
+
+    /**
+     * Read a row of pixels as big-endian samples following the filter type byte
+     */
+    private void readRow(int y, byte[] row) {
+      int w = mWidth;
+      if (mColorType == COLOR_GRAY) {
+        Raster raster = mImage.getRaster();
+        ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        int ps = sm.getPixelStride();
+        int j = db.getOffset() + (y - raster.getSampleModelTranslateY()) * sm.getScanlineStride()
+            - raster.getSampleModelTranslateX() * ps + sm.getBandOffsets()[0];
+        if (mBitDepth == 8) {
+          byte[] data = ((DataBufferByte) db).getData();
+          if (ps == 1)
+            System.arraycopy(data, j, row, 1, w);
+          else
+            for (int x = 0, k = 1; x < w; x++, j += ps)
+              row[k++] = data[j];
+        } else {
+          short[] data = ((DataBufferUShort) db).getData();
+          for (int x = 0, k = 1; x < w; x++, j += ps) {
+            short v = data[j];
+            row[k++] = (byte) (v >> 8);
+            row[k++] = (byte) v;
+          }
+        }
+        return;
+      }
+
+      if (mColorType == COLOR_RGBA) {
+        mReader.readArgbRow(y, argb, 0);
+        for (int x = 0, k = 1; x < w; x++) {
+          int p = argb[x];
+          row[k++] = (byte) (p >> 16);
+          row[k++] = (byte) (p >> 8);
+          row[k++] = (byte) p;
+          row[k++] = (byte) (p >>> 24);
+        }
+      } else {
+        mReader.readRow(y, argb, 0);
+        for (int x = 0, k = 1; x < w; x++) {
+          int p = argb[x];
+          row[k++] = (byte) (p >> 16);
+          row[k++] = (byte) (p >> 8);
+          row[k++] = (byte) p;
+        }
+      }
+    }
+
+    private byte[] filterRow(byte[] raw, byte[] prev) {
+      if (mFilter != Filter.ADAPTIVE)
+        return filterRow(mFilter, raw, prev);
+
+      byte[] best = null;
+      long bestSum = Long.MAX_VALUE;
+      for (Filter f : ADAPTIVE_CANDIDATES) {
+        byte[] result = filterRow(f, raw, prev);
+        long sum = 0;
+        for (int i = 1; i <= mRowBytes; i++)
+          sum += Math.abs((int) result[i]);
+        if (sum < bestSum) {
+          bestSum = sum;
+          best = result;
+        }
+      }
+      return best;
+    }
+
+    private byte[] filterRow(Filter filter, byte[] raw, byte[] prev) {
+      if (filter == Filter.NONE) {
+        raw[0] = 0;
+        return raw;
+      }
+      byte[] out = filtered[filter.ordinal()];
+      out[0] = (byte) filter.ordinal();
+      int n = mRowBytes;
+      int bpp = mBytesPerPixel;
+      switch (filter) {
+      case SUB:
+        for (int i = 1; i <= n; i++)
+          out[i] = (byte) (raw[i] - (i > bpp ? raw[i - bpp] : 0));
+        break;
+      case UP:
+        for (int i = 1; i <= n; i++)
+          out[i] = (byte) (raw[i] - prev[i]);
+        break;
+      case AVERAGE:
+        for (int i = 1; i <= n; i++) {
+          int left = i > bpp ? raw[i - bpp] & 0xff : 0;
+          out[i] = (byte) (raw[i] - ((left + (prev[i] & 0xff)) >> 1));
+        }
+        break;
+      case PAETH:
+        for (int i = 1; i <= n; i++) {
+          int a = 0;
+          int c = 0;
+          if (i > bpp) {
+            a = raw[i - bpp] & 0xff;
+            c = prev[i - bpp] & 0xff;
+          }
+          out[i] = (byte) (raw[i] - paeth(a, prev[i] & 0xff, c));
+        }
+        break;
+      default:
+        throw notSupported(filter);
+      }
+      return out;
+    }
+
+    final byte[] deflateBuffer = new byte[CHUNK_CAPACITY];
+    private byte[] raw;
+    private byte[] prev;
+    private final byte[][] filtered;
+    private final int[] argb;
+  }
+
+  static int paeth(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc)
+      return a;
+    if (pb <= pc)
+      return b;
+    return c;
+  }
+
+  private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+  private static final int CHUNK_IHDR = 0x49484452;
+  private static final int CHUNK_IDAT = 0x49444154;
+  private static final int CHUNK_IEND = 0x49454e44;
+  private static final int CHUNK_CAPACITY = 1 << 16;
+  private static final int ZLIB_CMF = 0x78;
+  private static final int DICTIONARY_SIZE = 1 << 15;
+  private static final int MIN_BAND_BYTES = 1 << 18;
+  private static final Filter[] ADAPTIVE_CANDIDATES = { Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE,
+      Filter.PAETH };
+
+  private int mLevel = LEVEL_DEFAULT;
+  private Filter mFilter = Filter.NONE;
+
+  private final CRC32 mCrc = new CRC32();
+  private final byte[] mChunkHeader = new byte[8];
+  private final byte[] mChunk = new byte[CHUNK_CAPACITY];
+  private int mChunkLength;
+  private Deflater mDeflater;
+  private Rows mRows;
+  private BufferedImage mImage;
+  private int mColorType;
+  private int mBitDepth;
+  private int mBytesPerPixel;
+  private int mWidth;
+  private int mHeight;
+  private int mRowBytes;
+  private RasterReader mReader;
+}
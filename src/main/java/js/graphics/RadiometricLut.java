@@ -0,0 +1,230 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.graphics.gen.RadiometricCalibration;
+
+/**
+ * Lookup tables converting a sensor's raw counts (unsigned 16-bit pixel
+ * values) to temperatures, as floating point Kelvin or as fixed-point
+ * centi-Kelvin (hundredths of a degree, stored as unsigned shorts).
+ * 
+ * The tables are built from a RadiometricCalibration's Planck parameters, and
+ * are cached, so calls to forCalibration() with equal calibrations share the
+ * same tables. Counts for which the Planck formula is undefined convert to NaN
+ * (or zero, in centi-Kelvin); temperatures beyond the range of centi-Kelvin
+ * values are clamped.
+ * 
+ * Converting frames to centi-Kelvin MonoImages allows temperature statistics
+ * to be gathered by integer code, e.g. IntegralImage or MonoImageUtil.
+ */
+public final class RadiometricLut {
+
+  public static final int TABLE_SIZE = 0x10000;
+  public static final float CENTI_KELVIN_SCALE = 100;
+
+  /**
+   * Get the tables for a calibration, building them if they aren't cached
+   */
+  public static RadiometricLut forCalibration(RadiometricCalibration calibration) {
+    return sCache.get(calibration.build(), RadiometricLut::new);
+  }
+
+  private RadiometricLut(RadiometricCalibration calibration) {
+    mCalibration = calibration;
+    mKelvin = new float[TABLE_SIZE];
+    mCentiKelvin = new short[TABLE_SIZE];
+    double r = calibration.planckR();
+    double b = calibration.planckB();
+    double f = calibration.planckF();
+    double o = calibration.planckO();
+    for (int counts = 0; counts < TABLE_SIZE; counts++) {
+      double kelvin = Double.NaN;
+      double signal = counts - o;
+      if (signal > 0) {
+        double arg = r / signal + f;
+        if (arg > 1)
+          kelvin = b / Math.log(arg);
+      }
+      mKelvin[counts] = (float) kelvin;
+      int centiKelvin = 0;
+      if (!Double.isNaN(kelvin))
+        centiKelvin = (int) Math.max(0, Math.min(0xffff, Math.round(kelvin * CENTI_KELVIN_SCALE)));
+      mCentiKelvin[counts] = (short) centiKelvin;
+    }
+  }
+
+  public RadiometricCalibration calibration() {
+    return mCalibration;
+  }
+
+  /**
+   * Convert raw counts to Kelvin
+   */
+  public float kelvin(int counts) {
+    return mKelvin[counts & 0xffff];
+  }
+
+  /**
+   * Convert raw counts to centi-Kelvin
+   */
+  public int centiKelvin(int counts) {
+    return mCentiKelvin[counts & 0xffff] & 0xffff;
+  }
+
+  /**
+   * Get the table mapping raw counts to Kelvin; it must not be modified
+   */
+  public float[] kelvinTable() {
+    return mKelvin;
+  }
+
+  /**
+   * Get the table mapping raw counts to (unsigned) centi-Kelvin; it must not be
+   * modified
+   */
+  public short[] centiKelvinTable() {
+    return mCentiKelvin;
+  }
+
+  /**
+   * Convert a frame to Kelvin, storing the results in an array (allocating
+   * one if null)
+   */
+  public float[] toKelvin(MonoImage frame, float[] outputOrNull) {
+    short[] pixels = frame.pixels();
+    float[] output = outputOrNull;
+    if (output == null)
+      output = new float[pixels.length];
+    checkArgument(output.length == pixels.length, "output length mismatch");
+    float[] table = mKelvin;
+    float[] dest = output;
+    forEachBand(frame.size(), (start, end) -> {
+      for (int i = start; i < end; i++)
+        dest[i] = table[pixels[i] & 0xffff];
+    });
+    return output;
+  }
+
+  /**
+   * Convert a rectangle of a frame to Kelvin, storing the results (in
+   * row-major order) in an array (allocating one if null)
+   */
+  public float[] toKelvin(MonoImage frame, IRect rect, float[] outputOrNull) {
+    checkWithin(frame, rect);
+    float[] output = outputOrNull;
+    if (output == null)
+      output = new float[rect.width * rect.height];
+    checkArgument(output.length == rect.width * rect.height, "output length mismatch");
+    short[] pixels = frame.pixels();
+    int width = frame.size().x;
+    int cursor = 0;
+    for (int y = rect.y; y < rect.endY(); y++) {
+      int offset = y * width;
+      for (int x = rect.x; x < rect.endX(); x++)
+        output[cursor++] = mKelvin[pixels[offset + x] & 0xffff];
+    }
+    return output;
+  }
+
+  /**
+   * Convert a frame to centi-Kelvin, storing the results in an array
+   * (allocating one if null); the array may be the frame's own pixels
+   */
+  public short[] toCentiKelvin(MonoImage frame, short[] outputOrNull) {
+    short[] pixels = frame.pixels();
+    short[] output = outputOrNull;
+    if (output == null)
+      output = new short[pixels.length];
+    checkArgument(output.length == pixels.length, "output length mismatch");
+    short[] table = mCentiKelvin;
+    short[] dest = output;
+    forEachBand(frame.size(), (start, end) -> {
+      for (int i = start; i < end; i++)
+        dest[i] = table[pixels[i] & 0xffff];
+    });
+    return output;
+  }
+
+  /**
+   * Convert a rectangle of a frame to centi-Kelvin, storing the results (in
+   * row-major order) in an array (allocating one if null)
+   */
+  public short[] toCentiKelvin(MonoImage frame, IRect rect, short[] outputOrNull) {
+    checkWithin(frame, rect);
+    short[] output = outputOrNull;
+    if (output == null)
+      output = new short[rect.width * rect.height];
+    checkArgument(output.length == rect.width * rect.height, "output length mismatch");
+    short[] pixels = frame.pixels();
+    int width = frame.size().x;
+    int cursor = 0;
+    for (int y = rect.y; y < rect.endY(); y++) {
+      int offset = y * width;
+      for (int x = rect.x; x < rect.endX(); x++)
+        output[cursor++] = mCentiKelvin[pixels[offset + x] & 0xffff];
+    }
+    return output;
+  }
+
+  /**
+   * Construct a MonoImage of a frame converted to centi-Kelvin
+   */
+  public MonoImage toCentiKelvinImage(MonoImage frame) {
+    return MonoImageUtil.construct(frame.size(), toCentiKelvin(frame, null));
+  }
+
+  private static void checkWithin(MonoImage frame, IRect rect) {
+    IPoint size = frame.size();
+    checkArgument(rect.x >= 0 && rect.y >= 0 && rect.endX() <= size.x && rect.endY() <= size.y,
+        "rect", rect, "not within image of size", size);
+  }
+
+  private interface IndexRangeTask {
+    void apply(int start, int end);
+  }
+
+  private static void forEachBand(IPoint size, IndexRangeTask task) {
+    int width = size.x;
+    RowBands.forEach(size.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> task.apply(rowStart * width, rowEnd * width));
+  }
+
+  private static final int MIN_ROWS_PER_BAND = 32;
+  // Allow a few dozen calibrations' tables to be cached
+  private static final long CACHE_BUDGET = 16L << 20;
+  private static final int TABLE_BYTES = TABLE_SIZE * (Float.BYTES + Short.BYTES);
+
+  private static final WeightedLruCache<RadiometricCalibration, RadiometricLut> sCache = new WeightedLruCache<>(
+      CACHE_BUDGET, lut -> TABLE_BYTES);
+
+  private final RadiometricCalibration mCalibration;
+  private final float[] mKelvin;
+  private final short[] mCentiKelvin;
+}
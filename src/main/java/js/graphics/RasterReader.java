@@ -0,0 +1,294 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import js.geometry.IPoint;
+
+/**
+ * Reads rows of a BufferedImage's pixels as packed 0x00RRGGBB ints, directly
+ * from its DataBuffer where possible.
+ * 
+ * Direct access is supported for images with packed int pixels (e.g.,
+ * TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_INT_BGR) and with 8- or 16-bit component
+ * pixels, gray or RGB, with or without alpha (e.g., TYPE_BYTE_GRAY,
+ * TYPE_USHORT_GRAY, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, and the custom types
+ * produced by the PNG reader). The rasters' scanline and pixel strides and
+ * offsets are respected, so subimages needn't be copied first. 16-bit
+ * components are reduced to their high 8 bits. Alpha is ignored, unless rows
+ * are read with readArgbRow(). Other
+ * images (e.g., indexed or premultiplied ones) are read via
+ * BufferedImage.getRGB().
+ * 
+ * Gray values are replicated to the red, green and blue components; they
+ * aren't gamma corrected (unlike getRGB()).
+ */
+public final class RasterReader {
+
+  public static RasterReader of(BufferedImage image) {
+    return new RasterReader(image);
+  }
+
+  private RasterReader(BufferedImage image) {
+    mImage = image;
+    mWidth = image.getWidth();
+    mHeight = image.getHeight();
+    Raster raster = image.getRaster();
+    mOriginX = -raster.getSampleModelTranslateX();
+    mOriginY = -raster.getSampleModelTranslateY();
+    ColorModel cm = image.getColorModel();
+    SampleModel sm = raster.getSampleModel();
+    DataBuffer db = raster.getDataBuffer();
+    if (cm.isAlphaPremultiplied() || db.getNumBanks() != 1)
+      return;
+
+    if (sm instanceof SinglePixelPackedSampleModel && db instanceof DataBufferInt
+        && cm instanceof DirectColorModel) {
+      DirectColorModel dcm = (DirectColorModel) cm;
+      SinglePixelPackedSampleModel psm = (SinglePixelPackedSampleModel) sm;
+      mIntData = ((DataBufferInt) db).getData();
+      mScanlineStride = psm.getScanlineStride();
+      mDataOffset = db.getOffset();
+      mPixelStride = 1;
+      mRedShift = maskShift(dcm.getRedMask());
+      mGreenShift = maskShift(dcm.getGreenMask());
+      mBlueShift = maskShift(dcm.getBlueMask());
+      mAlphaShift = dcm.hasAlpha() ? maskShift(dcm.getAlphaMask()) : -1;
+      if (dcm.hasAlpha() && mAlphaShift < 0)
+        return;
+      if (mRedShift >= 0 && mGreenShift >= 0 && mBlueShift >= 0)
+        mMode = (mRedShift == 16 && mGreenShift == 8 && mBlueShift == 0) ? MODE_INT_RGB : MODE_INT_MASKED;
+      return;
+    }
+
+    if (sm instanceof ComponentSampleModel && cm instanceof ComponentColorModel) {
+      ComponentSampleModel csm = (ComponentSampleModel) sm;
+      int colorType = cm.getColorSpace().getType();
+      int colorComponents = cm.getNumColorComponents();
+      boolean gray = colorType == ColorSpace.TYPE_GRAY && colorComponents == 1;
+      boolean rgb = colorType == ColorSpace.TYPE_RGB && colorComponents == 3;
+      if (!(gray || rgb))
+        return;
+      int[] bandOffsets = csm.getBandOffsets();
+      mScanlineStride = csm.getScanlineStride();
+      mPixelStride = csm.getPixelStride();
+      mDataOffset = db.getOffset();
+      mRedOffset = bandOffsets[0];
+      mGreenOffset = gray ? bandOffsets[0] : bandOffsets[1];
+      mBlueOffset = gray ? bandOffsets[0] : bandOffsets[2];
+      mAlphaOffset = cm.hasAlpha() ? bandOffsets[colorComponents] : -1;
+      if (db instanceof DataBufferByte && cm.getComponentSize(0) == 8) {
+        mByteData = ((DataBufferByte) db).getData();
+        mMode = gray ? MODE_BYTE_GRAY : MODE_BYTE_RGB;
+      } else if (db instanceof DataBufferUShort && cm.getComponentSize(0) == 16) {
+        mShortData = ((DataBufferUShort) db).getData();
+        mMode = gray ? MODE_USHORT_GRAY : MODE_USHORT_RGB;
+      }
+    }
+  }
+
+  public IPoint size() {
+    return new IPoint(mWidth, mHeight);
+  }
+
+  /**
+   * Determine if pixels are read directly from the DataBuffer (rather than via
+   * getRGB())
+   */
+  public boolean isDirect() {
+    return mMode != MODE_GENERIC;
+  }
+
+  /**
+   * Read a row of pixels into an array, starting at an offset. Multiple
+   * threads can read (different rows, or into different arrays) concurrently
+   */
+  public void readRow(int y, int[] destination, int offset) {
+    checkArgument(y >= 0 && y < mHeight, "bad row:", y);
+    int w = mWidth;
+    int start = mDataOffset + (y + mOriginY) * mScanlineStride + (mOriginX * mPixelStride);
+    switch (mMode) {
+    case MODE_INT_RGB: {
+      int[] data = mIntData;
+      for (int x = 0; x < w; x++)
+        destination[offset + x] = data[start + x] & 0xffffff;
+    }
+      break;
+    case MODE_INT_MASKED: {
+      int[] data = mIntData;
+      int rs = mRedShift;
+      int gs = mGreenShift;
+      int bs = mBlueShift;
+      for (int x = 0; x < w; x++) {
+        int p = data[start + x];
+        destination[offset + x] = (((p >>> rs) & 0xff) << 16) | (((p >>> gs) & 0xff) << 8) | ((p >>> bs) & 0xff);
+      }
+    }
+      break;
+    case MODE_BYTE_GRAY: {
+      byte[] data = mByteData;
+      int ps = mPixelStride;
+      for (int x = 0, j = start + mRedOffset; x < w; x++, j += ps) {
+        int v = data[j] & 0xff;
+        destination[offset + x] = (v << 16) | (v << 8) | v;
+      }
+    }
+      break;
+    case MODE_BYTE_RGB: {
+      byte[] data = mByteData;
+      int ps = mPixelStride;
+      int ro = mRedOffset;
+      int go = mGreenOffset;
+      int bo = mBlueOffset;
+      for (int x = 0, j = start; x < w; x++, j += ps)
+        destination[offset + x] = ((data[j + ro] & 0xff) << 16) | ((data[j + go] & 0xff) << 8)
+            | (data[j + bo] & 0xff);
+    }
+      break;
+    case MODE_USHORT_GRAY: {
+      short[] data = mShortData;
+      int ps = mPixelStride;
+      for (int x = 0, j = start + mRedOffset; x < w; x++, j += ps) {
+        int v = (data[j] >> 8) & 0xff;
+        destination[offset + x] = (v << 16) | (v << 8) | v;
+      }
+    }
+      break;
+    case MODE_USHORT_RGB: {
+      short[] data = mShortData;
+      int ps = mPixelStride;
+      int ro = mRedOffset;
+      int go = mGreenOffset;
+      int bo = mBlueOffset;
+      for (int x = 0, j = start; x < w; x++, j += ps)
+        destination[offset + x] = (((data[j + ro] >> 8) & 0xff) << 16) | (data[j + go] & 0xff00)
+            | ((data[j + bo] >> 8) & 0xff);
+    }
+      break;
+    default:
+      mImage.getRGB(0, y, w, 1, destination, offset, w);
+      for (int x = 0; x < w; x++)
+        destination[offset + x] &= 0xffffff;
+      break;
+    }
+  }
+
+  /**
+   * Read a row of pixels as packed (non-premultiplied) 0xAARRGGBB ints; pixels
+   * of images without alpha are opaque
+   */
+  public void readArgbRow(int y, int[] destination, int offset) {
+    int w = mWidth;
+    if (mMode == MODE_GENERIC) {
+      checkArgument(y >= 0 && y < mHeight, "bad row:", y);
+      mImage.getRGB(0, y, w, 1, destination, offset, w);
+      return;
+    }
+    readRow(y, destination, offset);
+    int start = mDataOffset + (y + mOriginY) * mScanlineStride + (mOriginX * mPixelStride);
+    if (mMode == MODE_INT_RGB || mMode == MODE_INT_MASKED) {
+      if (mAlphaShift < 0) {
+        for (int x = 0; x < w; x++)
+          destination[offset + x] |= 0xff000000;
+      } else {
+        int[] data = mIntData;
+        int as = mAlphaShift;
+        for (int x = 0; x < w; x++)
+          destination[offset + x] |= ((data[start + x] >>> as) & 0xff) << 24;
+      }
+      return;
+    }
+    if (mAlphaOffset < 0) {
+      for (int x = 0; x < w; x++)
+        destination[offset + x] |= 0xff000000;
+      return;
+    }
+    int ps = mPixelStride;
+    if (mByteData != null) {
+      byte[] data = mByteData;
+      for (int x = 0, j = start + mAlphaOffset; x < w; x++, j += ps)
+        destination[offset + x] |= (data[j] & 0xff) << 24;
+    } else {
+      short[] data = mShortData;
+      for (int x = 0, j = start + mAlphaOffset; x < w; x++, j += ps)
+        destination[offset + x] |= (data[j] & 0xff00) << 16;
+    }
+  }
+
+  /**
+   * Get the shift that moves an 8-bit mask to the low byte, or -1 if the mask
+   * isn't 8 contiguous bits
+   */
+  private static int maskShift(int mask) {
+    int shift = Integer.numberOfTrailingZeros(mask);
+    if (shift > 24 || (mask >>> shift) != 0xff)
+      return -1;
+    return shift;
+  }
+
+  private static final int MODE_GENERIC = 0;
+  private static final int MODE_INT_RGB = 1;
+  private static final int MODE_INT_MASKED = 2;
+  private static final int MODE_BYTE_GRAY = 3;
+  private static final int MODE_BYTE_RGB = 4;
+  private static final int MODE_USHORT_GRAY = 5;
+  private static final int MODE_USHORT_RGB = 6;
+
+  private final BufferedImage mImage;
+  private final int mWidth;
+  private final int mHeight;
+  private final int mOriginX;
+  private final int mOriginY;
+  private int mMode = MODE_GENERIC;
+  private int mScanlineStride;
+  private int mPixelStride;
+  private int mDataOffset;
+  private int[] mIntData;
+  private byte[] mByteData;
+  private short[] mShortData;
+  private int mRedShift;
+  private int mGreenShift;
+  private int mBlueShift;
+  private int mAlphaShift;
+  private int mRedOffset;
+  private int mGreenOffset;
+  private int mBlueOffset;
+  private int mAlphaOffset;
+}
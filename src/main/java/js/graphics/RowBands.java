@@ -0,0 +1,67 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import java.util.stream.IntStream;
+
+/**
+ * Utility for processing the rows of an image in parallel, by dividing them
+ * into contiguous bands that are processed concurrently
+ */
+public final class RowBands {
+
+  /**
+   * Processes a band of rows [rowStart, rowEnd)
+   */
+  public interface Task {
+    void apply(int rowStart, int rowEnd);
+  }
+
+  /**
+   * Divide rows [0, rowCount) into bands of at least minRowsPerBand rows, and
+   * apply a task to each (concurrently, if there is more than one band)
+   */
+  public static void forEach(int rowCount, int minRowsPerBand, Task task) {
+    int bandCount = bandCount(rowCount, minRowsPerBand);
+    if (bandCount <= 1) {
+      if (rowCount > 0)
+        task.apply(0, rowCount);
+      return;
+    }
+    IntStream.range(0, bandCount).parallel().forEach(band -> {
+      int rowStart = (int) ((long) rowCount * band / bandCount);
+      int rowEnd = (int) ((long) rowCount * (band + 1) / bandCount);
+      task.apply(rowStart, rowEnd);
+    });
+  }
+
+  /**
+   * Determine the number of bands to divide rows into
+   */
+  public static int bandCount(int rowCount, int minRowsPerBand) {
+    int maxBands = rowCount / Math.max(1, minRowsPerBand);
+    return Math.max(1, Math.min(maxBands, Runtime.getRuntime().availableProcessors() * 4));
+  }
+}
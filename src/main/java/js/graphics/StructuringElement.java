@@ -0,0 +1,128 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.List;
+
+import js.geometry.IPoint;
+
+/**
+ * A set of pixel offsets (relative to an origin pixel) that defines the
+ * neighborhood used by morphological operations on BinaryMasks
+ */
+public final class StructuringElement {
+
+  /**
+   * Construct a structuring element from a list of offsets
+   */
+  public static StructuringElement with(List<IPoint> offsets) {
+    checkArgument(!offsets.isEmpty(), "no offsets");
+    int[] dx = new int[offsets.size()];
+    int[] dy = new int[offsets.size()];
+    int i = INIT_INDEX;
+    for (IPoint offset : offsets) {
+      i++;
+      dx[i] = offset.x;
+      dy[i] = offset.y;
+    }
+    return new StructuringElement(dx, dy);
+  }
+
+  /**
+   * Construct a rectangle of a particular size, centered on the origin (if a
+   * dimension is even, the extra pixel lies to the left or above)
+   */
+  public static StructuringElement rect(int width, int height) {
+    checkArgument(width > 0 && height > 0, "bad dimensions:", width, height);
+    List<IPoint> offsets = arrayList();
+    int x0 = -(width / 2);
+    int y0 = -(height / 2);
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        offsets.add(new IPoint(x0 + x, y0 + y));
+    return with(offsets);
+  }
+
+  /**
+   * Construct a square with sides of length (2 * radius + 1)
+   */
+  public static StructuringElement square(int radius) {
+    return rect(2 * radius + 1, 2 * radius + 1);
+  }
+
+  /**
+   * Construct a 'plus' shape, with arms of a particular length; a radius of 1
+   * yields the north/south/east/west neighborhood
+   */
+  public static StructuringElement cross(int radius) {
+    checkArgument(radius >= 0);
+    List<IPoint> offsets = arrayList();
+    offsets.add(IPoint.ZERO);
+    for (int i = 1; i <= radius; i++) {
+      offsets.add(new IPoint(-i, 0));
+      offsets.add(new IPoint(i, 0));
+      offsets.add(new IPoint(0, -i));
+      offsets.add(new IPoint(0, i));
+    }
+    return with(offsets);
+  }
+
+  /**
+   * Construct a (digital) disc, containing every pixel whose distance from the
+   * origin is at most radius
+   */
+  public static StructuringElement disc(int radius) {
+    checkArgument(radius >= 0);
+    List<IPoint> offsets = arrayList();
+    int r2 = radius * radius;
+    for (int y = -radius; y <= radius; y++)
+      for (int x = -radius; x <= radius; x++)
+        if (x * x + y * y <= r2)
+          offsets.add(new IPoint(x, y));
+    return with(offsets);
+  }
+
+  private StructuringElement(int[] dx, int[] dy) {
+    mDx = dx;
+    mDy = dy;
+  }
+
+  public int size() {
+    return mDx.length;
+  }
+
+  public int dx(int index) {
+    return mDx[index];
+  }
+
+  public int dy(int index) {
+    return mDy[index];
+  }
+
+  private final int[] mDx;
+  private final int[] mDy;
+}
@@ -0,0 +1,233 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+
+/**
+ * Temporal noise reduction for a stream of frames from a stationary camera.
+ * 
+ * Each pixel's output is either a recursive (exponential moving) average of
+ * its values, or the mean of its values in the most recent frames. If a
+ * pixel's value differs from its current average by more than a threshold, it
+ * is considered to be in motion: its average is restarted from the new value,
+ * and it is set in the motion mask.
+ * 
+ * Each frame is processed in a single (parallel) pass; all state is held in
+ * arrays that are allocated when the first frame is seen, so no memory is
+ * allocated per frame. An instance should not be used by more than one thread
+ * at a time.
+ */
+public final class TemporalDenoiser extends BaseObject {
+
+  /**
+   * Use a recursive average, in which each new frame has a particular weight
+   */
+  public TemporalDenoiser withRecursiveWeight(float weight) {
+    checkArgument(weight > 0 && weight <= 1, "bad weight:", weight);
+    checkState(mSize == null, "already started");
+    mWindowLength = 0;
+    mWeight = Math.round(weight * WEIGHT_ONE);
+    return this;
+  }
+
+  /**
+   * Use the mean of the most recent frames
+   */
+  public TemporalDenoiser withWindow(int frameCount) {
+    checkArgument(frameCount >= 1 && frameCount <= MAX_WINDOW_LENGTH, "bad frame count:", frameCount);
+    checkState(mSize == null, "already started");
+    mWindowLength = frameCount;
+    return this;
+  }
+
+  /**
+   * Set the difference from the average beyond which a pixel is considered in
+   * motion; zero disables motion detection
+   */
+  public TemporalDenoiser withMotionThreshold(int threshold) {
+    checkArgument(threshold >= 0, "bad threshold:", threshold);
+    mMotionThreshold = threshold;
+    return this;
+  }
+
+  /**
+   * Discard the state, so the next frame starts a new average
+   */
+  public TemporalDenoiser reset() {
+    mFrameCount = 0;
+    return this;
+  }
+
+  public int frameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * Add a frame, and return the denoised frame. The returned image (and its
+   * pixels) are reused by subsequent calls
+   */
+  public MonoImage apply(MonoImage frame) {
+    prepare(frame.size());
+    short[] pixels = frame.pixels();
+    boolean first = (mFrameCount == 0);
+    int slot = (mWindowLength == 0) ? 0 : mFrameCount % mWindowLength;
+    int width = mSize.x;
+    RowBands.forEach(mSize.y, MIN_ROWS_PER_BAND, (rowStart, rowEnd) -> {
+      for (int y = rowStart; y < rowEnd; y++) {
+        if (mWindowLength == 0)
+          updateRecursive(pixels, y * width, first);
+        else
+          updateWindow(pixels, y * width, first, slot);
+        storeMotionRow(y);
+      }
+    });
+    mFrameCount++;
+    return mOutputImage;
+  }
+
+  /**
+   * Get the motion mask for the most recent frame (reused by subsequent calls)
+   */
+  public BinaryMask motionMask() {
+    checkState(mMotionMask != null, "no frames added");
+    return mMotionMask;
+  }
+
+  private void prepare(IPoint size) {
+    if (mSize != null) {
+      checkArgument(size.equals(mSize), "frame size", size, "differs from", mSize);
+      return;
+    }
+    mSize = size;
+    int n = size.x * size.y;
+    mOutput = new short[n];
+    mOutputImage = MonoImage.newBuilder().size(size).pixels(mOutput).build();
+    mMotion = new boolean[n];
+    mMotionMask = new BinaryMask(size);
+    if (mWindowLength == 0)
+      mAverage = new int[n];
+    else {
+      mHistory = new short[mWindowLength * n];
+      mSum = new int[n];
+      mCount = new byte[n];
+    }
+  }
+
+  private void updateRecursive(short[] pixels, int start, boolean first) {
+    int[] average = mAverage;
+    int weight = mWeight;
+    long threshold = ((long) mMotionThreshold) << AVERAGE_BITS;
+    for (int i = start; i < start + mSize.x; i++) {
+      int v = (pixels[i] & 0xffff) << AVERAGE_BITS;
+      int a = average[i];
+      int delta = v - a;
+      boolean motion = !first && threshold != 0 && Math.abs(delta) > threshold;
+      if (first || motion)
+        a = v;
+      else
+        a += (int) (((long) delta * weight) >> WEIGHT_BITS);
+      average[i] = a;
+      mMotion[i] = motion;
+      mOutput[i] = (short) ((a + AVERAGE_ROUND) >> AVERAGE_BITS);
+    }
+  }
+
+  private void updateWindow(short[] pixels, int start, boolean first, int slot) {
+    int n = mOutput.length;
+    int historyOffset = slot * n;
+    int windowLength = mWindowLength;
+    int threshold = mMotionThreshold;
+    for (int i = start; i < start + mSize.x; i++) {
+      int v = pixels[i] & 0xffff;
+      int sum = mSum[i];
+      int count = first ? 0 : mCount[i];
+      boolean motion = false;
+      if (count != 0 && threshold != 0) {
+        int mean = sum / count;
+        motion = Math.abs(v - mean) > threshold;
+      }
+      if (count == 0 || motion) {
+        sum = v;
+        count = 1;
+      } else {
+        // If the window is full, the slot holds the oldest value
+        if (count == windowLength)
+          sum -= mHistory[historyOffset + i] & 0xffff;
+        else
+          count++;
+        sum += v;
+      }
+      mHistory[historyOffset + i] = (short) v;
+      mSum[i] = sum;
+      mCount[i] = (byte) count;
+      mMotion[i] = motion;
+      mOutput[i] = (short) ((sum + (count >> 1)) / count);
+    }
+  }
+
+  private void storeMotionRow(int y) {
+    long[] words = mMotionMask.words();
+    int wordsPerRow = mMotionMask.wordsPerRow();
+    int width = mSize.x;
+    int rowStart = y * width;
+    for (int w = 0; w < wordsPerRow; w++) {
+      long word = 0;
+      int x0 = w << 6;
+      int x1 = Math.min(width, x0 + 64);
+      for (int x = x0; x < x1; x++)
+        if (mMotion[rowStart + x])
+          word |= 1L << x;
+      words[y * wordsPerRow + w] = word;
+    }
+  }
+
+  private static final int WEIGHT_BITS = 16;
+  private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+  // Recursive averages are stored with this many fractional bits
+  private static final int AVERAGE_BITS = 8;
+  private static final int AVERAGE_ROUND = 1 << (AVERAGE_BITS - 1);
+  private static final int MAX_WINDOW_LENGTH = 127;
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private int mWeight = WEIGHT_ONE / 4;
+  private int mWindowLength;
+  private int mMotionThreshold;
+
+  private IPoint mSize;
+  private int mFrameCount;
+  private short[] mOutput;
+  private MonoImage mOutputImage;
+  private boolean[] mMotion;
+  private BinaryMask mMotionMask;
+  private int[] mAverage;
+  private short[] mHistory;
+  private int[] mSum;
+  private byte[] mCount;
+}
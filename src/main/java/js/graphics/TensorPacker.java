@@ -0,0 +1,437 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import js.base.BaseObject;
+import js.geometry.IPoint;
+import js.geometry.IRect;
+
+/**
+ * Converts images to the float tensors expected by neural network inference
+ * engines, in a single pass per image.
+ * 
+ * Each 8-bit channel value v is normalized to (v / 255 - mean) / std, using
+ * per-channel lookup tables. Output is in NHWC (interleaved) or NCHW (planar)
+ * layout, with channels in RGB or BGR order; a single channel output uses the
+ * green channel. If the tensor size differs from an image's, the image is
+ * resized (bilinearly), either stretched to fill the tensor or letterboxed
+ * (scaled to fit, preserving its aspect ratio, and centered, with the margins
+ * filled with a particular value). Pixels are read with a RasterReader, so
+ * most image types (and subimages) are read directly from their rasters.
+ * 
+ * Once configured, a packer can be used by multiple threads concurrently.
+ * Batches are packed in parallel, an image per thread; single images are
+ * packed in parallel row bands.
+ */
+public final class TensorPacker extends BaseObject {
+
+  public enum Layout {
+    NHWC, NCHW
+  }
+
+  /**
+   * Set the tensor's width and height; if null, the size of the images is used
+   * (and all images in a batch must have the same size)
+   */
+  public TensorPacker withSize(IPoint size) {
+    checkArgument(size == null || (size.x > 0 && size.y > 0), "bad size:", size);
+    mSize = size;
+    return this;
+  }
+
+  public TensorPacker withLayout(Layout layout) {
+    mLayout = checkNotNull(layout);
+    return this;
+  }
+
+  /**
+   * Set the number of channels (1 or 3)
+   */
+  public TensorPacker withChannels(int channels) {
+    checkArgument(channels == 1 || channels == 3, "unsupported channels:", channels);
+    mChannels = channels;
+    mTables = null;
+    return this;
+  }
+
+  /**
+   * Set the per-channel means and standard deviations (in RGB order, and in
+   * units where the channel values range from 0 to 1)
+   */
+  public TensorPacker withNormalization(float[] mean, float[] std) {
+    checkArgument(mean.length == std.length && (mean.length == 1 || mean.length == 3),
+        "bad normalization lengths");
+    for (float s : std)
+      checkArgument(s != 0, "zero standard deviation");
+    mMean = mean.clone();
+    mStd = std.clone();
+    mTables = null;
+    return this;
+  }
+
+  /**
+   * Output color channels in BGR (rather than RGB) order
+   */
+  public TensorPacker withBgr(boolean bgr) {
+    mBgr = bgr;
+    return this;
+  }
+
+  /**
+   * Preserve images' aspect ratios when resizing them, filling the margins
+   * with a particular 8-bit channel value
+   */
+  public TensorPacker withLetterbox(boolean letterbox, int fillValue) {
+    checkArgument(fillValue >= 0 && fillValue <= 255, "bad fill value:", fillValue);
+    mLetterbox = letterbox;
+    mFillValue = fillValue;
+    return this;
+  }
+
+  public int channels() {
+    return mChannels;
+  }
+
+  /**
+   * Get the number of floats in a tensor for an image of a particular size
+   */
+  public int tensorLength(IPoint imageSize) {
+    IPoint size = tensorSize(imageSize);
+    return size.x * size.y * mChannels;
+  }
+
+  /**
+   * Determine the rectangle, in tensor coordinates, that an image of a
+   * particular size is mapped to
+   */
+  public IRect placement(IPoint imageSize) {
+    IPoint size = tensorSize(imageSize);
+    if (!mLetterbox || size.equals(imageSize))
+      return new IRect(0, 0, size.x, size.y);
+    double scale = Math.min(size.x / (double) imageSize.x, size.y / (double) imageSize.y);
+    int w = Math.max(1, Math.min(size.x, (int) Math.round(imageSize.x * scale)));
+    int h = Math.max(1, Math.min(size.y, (int) Math.round(imageSize.y * scale)));
+    return new IRect((size.x - w) / 2, (size.y - h) / 2, w, h);
+  }
+
+  /**
+   * Pack an image into an array (allocating one if null)
+   */
+  public float[] pack(BufferedImage image, float[] destinationOrNull) {
+    IPoint imageSize = ImgUtil.size(image);
+    float[] destination = destinationOrNull;
+    if (destination == null)
+      destination = new float[tensorLength(imageSize)];
+    pack(image, destination, 0, true);
+    return destination;
+  }
+
+  /**
+   * Pack an image into an array, starting at an offset
+   */
+  public void pack(BufferedImage image, float[] destination, int offset) {
+    pack(image, destination, offset, true);
+  }
+
+  /**
+   * Pack a batch of images into an array, consecutively from its start; return
+   * the number of floats written
+   */
+  public int pack(List<BufferedImage> images, float[] destination) {
+    int[] offsets = batchOffsets(images);
+    checkArgument(destination.length >= offsets[images.size()], "destination too short:",
+        destination.length, "<", offsets[images.size()]);
+    IntStream.range(0, images.size()).parallel()
+        .forEach(i -> pack(images.get(i), destination, offsets[i], false));
+    return offsets[images.size()];
+  }
+
+  /**
+   * Pack a batch of images into a FloatBuffer, starting at its position (which
+   * is advanced past the floats written)
+   */
+  public void pack(List<BufferedImage> images, FloatBuffer destination) {
+    if (destination.hasArray()) {
+      int start = destination.position();
+      int[] offsets = batchOffsets(images);
+      checkArgument(destination.remaining() >= offsets[images.size()], "destination too short");
+      float[] array = destination.array();
+      int base = destination.arrayOffset() + start;
+      IntStream.range(0, images.size()).parallel()
+          .forEach(i -> pack(images.get(i), array, base + offsets[i], false));
+      destination.position(start + offsets[images.size()]);
+      return;
+    }
+    // Pack each image into a scratch array, then copy it in bulk
+    float[] scratch = null;
+    for (BufferedImage image : images) {
+      int length = tensorLength(ImgUtil.size(image));
+      if (scratch == null || scratch.length != length)
+        scratch = new float[length];
+      pack(image, scratch, 0, true);
+      destination.put(scratch);
+    }
+  }
+
+  private int[] batchOffsets(List<BufferedImage> images) {
+    int[] offsets = new int[images.size() + 1];
+    for (int i = 0; i < images.size(); i++) {
+      IPoint imageSize = ImgUtil.size(images.get(i));
+      if (mSize == null && i > 0)
+        checkArgument(imageSize.equals(ImgUtil.size(images.get(0))), "batch images differ in size");
+      offsets[i + 1] = offsets[i] + tensorLength(imageSize);
+    }
+    return offsets;
+  }
+
+  private IPoint tensorSize(IPoint imageSize) {
+    return (mSize == null) ? imageSize : mSize;
+  }
+
+  // ------------------------------------------------------------------
+  // Packing
+  // ------------------------------------------------------------------
+
+  private void pack(BufferedImage image, float[] destination, int offset, boolean parallel) {
+    IPoint imageSize = ImgUtil.size(image);
+    IPoint size = tensorSize(imageSize);
+    int length = size.x * size.y * mChannels;
+    checkArgument(offset >= 0 && destination.length - offset >= length, "destination too short");
+    RasterReader reader = RasterReader.of(image);
+    float[][] tables = tables();
+    IRect place = placement(imageSize);
+    boolean resize = place.width != imageSize.x || place.height != imageSize.y;
+
+    // Precompute the source columns and weights for each tensor column
+    int[] sourceX = null;
+    int[] weightX = null;
+    if (resize) {
+      sourceX = new int[place.width];
+      weightX = new int[place.width];
+      resamplingTable(imageSize.x, place.width, sourceX, weightX);
+    }
+    int[] sx = sourceX;
+    int[] wx = weightX;
+
+    RowBands.Task task = (rowStart, rowEnd) -> {
+      int[] scratch0 = new int[imageSize.x];
+      int[] scratch1 = new int[imageSize.x];
+      int[] row = new int[place.width];
+      int[] ySource = new int[1];
+      int[] yWeight = new int[1];
+      int[] cachedRows = { -1, -1 };
+      for (int ty = rowStart; ty < rowEnd; ty++) {
+        int py = ty - place.y;
+        if (py < 0 || py >= place.height) {
+          fillRow(destination, offset, size, ty, 0, size.x, tables);
+          continue;
+        }
+        int[] pixels;
+        if (!resize) {
+          reader.readRow(py, scratch0, 0);
+          pixels = scratch0;
+        } else {
+          resamplingEntry(imageSize.y, place.height, py, ySource, yWeight);
+          int y0 = ySource[0];
+          int y1 = Math.min(y0 + 1, imageSize.y - 1);
+          // Avoid rereading source rows that were read for the previous tensor row
+          if (y0 != cachedRows[0]) {
+            reader.readRow(y0, scratch0, 0);
+            cachedRows[0] = y0;
+          }
+          if (y1 != cachedRows[1]) {
+            reader.readRow(y1, scratch1, 0);
+            cachedRows[1] = y1;
+          }
+          resampleRow(scratch0, scratch1, yWeight[0], sx, wx, imageSize.x, row);
+          pixels = row;
+        }
+        fillRow(destination, offset, size, ty, 0, place.x, tables);
+        writeRow(destination, offset, size, ty, place.x, pixels, place.width, tables);
+        fillRow(destination, offset, size, ty, place.endX(), size.x, tables);
+      }
+    };
+    if (parallel)
+      RowBands.forEach(size.y, MIN_ROWS_PER_BAND, task);
+    else
+      task.apply(0, size.y);
+  }
+
+  /**
+   * Write a row of packed RGB pixels to the tensor
+   */
+  private void writeRow(float[] dest, int offset, IPoint size, int ty, int tx, int[] pixels, int count,
+      float[][] tables) {
+    int planeSize = size.x * size.y;
+    int channels = mChannels;
+    if (channels == 1) {
+      float[] t = tables[0];
+      int j = offset + ty * size.x + tx;
+      for (int x = 0; x < count; x++)
+        dest[j + x] = t[(pixels[x] >> 8) & 0xff];
+      return;
+    }
+    float[] tr = tables[0];
+    float[] tg = tables[1];
+    float[] tb = tables[2];
+    // Channel indices of red and blue within the output
+    int ir = mBgr ? 2 : 0;
+    int ib = 2 - ir;
+    if (mLayout == Layout.NHWC) {
+      int j = offset + (ty * size.x + tx) * 3;
+      for (int x = 0; x < count; x++, j += 3) {
+        int p = pixels[x];
+        dest[j + ir] = tr[(p >> 16) & 0xff];
+        dest[j + 1] = tg[(p >> 8) & 0xff];
+        dest[j + ib] = tb[p & 0xff];
+      }
+    } else {
+      int j = offset + ty * size.x + tx;
+      int jr = j + ir * planeSize;
+      int jg = j + planeSize;
+      int jb = j + ib * planeSize;
+      for (int x = 0; x < count; x++) {
+        int p = pixels[x];
+        dest[jr + x] = tr[(p >> 16) & 0xff];
+        dest[jg + x] = tg[(p >> 8) & 0xff];
+        dest[jb + x] = tb[p & 0xff];
+      }
+    }
+  }
+
+  /**
+   * Fill part of a tensor row with the (normalized) fill value
+   */
+  private void fillRow(float[] dest, int offset, IPoint size, int ty, int x0, int x1, float[][] tables) {
+    if (x0 >= x1)
+      return;
+    int planeSize = size.x * size.y;
+    for (int c = 0; c < mChannels; c++) {
+      // Tables are in RGB order; find the table for output channel c
+      int tableIndex = (mChannels == 3 && mBgr) ? 2 - c : c;
+      float value = tables[tableIndex][mFillValue];
+      if (mLayout == Layout.NHWC || mChannels == 1) {
+        int stride = mChannels;
+        for (int x = x0, j = offset + (ty * size.x + x0) * stride + c; x < x1; x++, j += stride)
+          dest[j] = value;
+      } else {
+        int j = offset + c * planeSize + ty * size.x;
+        for (int x = x0; x < x1; x++)
+          dest[j + x] = value;
+      }
+    }
+  }
+
+  /**
+   * Bilinearly interpolate a row from two source rows
+   */
+  private static void resampleRow(int[] row0, int[] row1, int wy, int[] sourceX, int[] weightX, int width,
+      int[] output) {
+    int wy0 = WEIGHT_ONE - wy;
+    for (int x = 0; x < output.length; x++) {
+      int x0 = sourceX[x];
+      int x1 = Math.min(x0 + 1, width - 1);
+      int wx = weightX[x];
+      int wx0 = WEIGHT_ONE - wx;
+      int a = row0[x0];
+      int b = row0[x1];
+      int c = row1[x0];
+      int d = row1[x1];
+      int result = 0;
+      for (int shift = 0; shift <= 16; shift += 8) {
+        int top = ((a >> shift) & 0xff) * wx0 + ((b >> shift) & 0xff) * wx;
+        int bottom = ((c >> shift) & 0xff) * wx0 + ((d >> shift) & 0xff) * wx;
+        int v = (top * wy0 + bottom * wy + WEIGHT_ROUND) >> (2 * WEIGHT_BITS);
+        result |= v << shift;
+      }
+      output[x] = result;
+    }
+  }
+
+  private static void resamplingTable(int sourceLength, int targetLength, int[] source, int[] weight) {
+    int[] s = new int[1];
+    int[] w = new int[1];
+    for (int i = 0; i < targetLength; i++) {
+      resamplingEntry(sourceLength, targetLength, i, s, w);
+      source[i] = s[0];
+      weight[i] = w[0];
+    }
+  }
+
+  /**
+   * Determine the source pixel preceding a target pixel's center, and the
+   * fixed-point weight of the pixel following it
+   */
+  private static void resamplingEntry(int sourceLength, int targetLength, int i, int[] source, int[] weight) {
+    double pos = (i + 0.5) * sourceLength / targetLength - 0.5;
+    pos = Math.max(0, Math.min(sourceLength - 1, pos));
+    int s = (int) pos;
+    source[0] = s;
+    weight[0] = (int) Math.round((pos - s) * WEIGHT_ONE);
+  }
+
+  /**
+   * Get the normalization tables, one per channel (in RGB order)
+   */
+  private float[][] tables() {
+    float[][] tables = mTables;
+    if (tables == null) {
+      tables = new float[mChannels][256];
+      for (int c = 0; c < mChannels; c++) {
+        // A single-channel tensor uses the green channel
+        int k = Math.min(mMean.length - 1, (mChannels == 1) ? 1 : c);
+        float mean = mMean[k];
+        float std = mStd[k];
+        for (int v = 0; v < 256; v++)
+          tables[c][v] = (v * RGB_TO_FLOAT - mean) / std;
+      }
+      mTables = tables;
+    }
+    return tables;
+  }
+
+  private static final float RGB_TO_FLOAT = 1.0f / 255;
+  private static final int WEIGHT_BITS = 8;
+  private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+  private static final int WEIGHT_ROUND = 1 << (2 * WEIGHT_BITS - 1);
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  private IPoint mSize;
+  private Layout mLayout = Layout.NHWC;
+  private int mChannels = 3;
+  private float[] mMean = { 0 };
+  private float[] mStd = { 1 };
+  private boolean mBgr;
+  private boolean mLetterbox;
+  private int mFillValue;
+  private volatile float[][] mTables;
+}
@@ -0,0 +1,291 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.stream.IntStream;
+
+import js.base.BaseObject;
+import js.data.DataUtil;
+import js.file.Files;
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.JImage;
+import js.graphics.gen.MonoImage;
+import js.graphics.gen.TileSetInfo;
+import js.json.JSMap;
+
+/**
+ * A (potentially very large) monochrome image that is stored as a grid of
+ * MonoImage tiles, each in its own .rax or .jmg file within a directory.
+ * 
+ * Tiles are read only when needed, and are kept in an LRU cache whose size is
+ * limited by a memory budget. Each tile's offset is its location within the
+ * large image.
+ */
+public final class TiledMonoImage extends BaseObject {
+
+  /**
+   * Name of the file (within the tiles directory) describing the tiles
+   */
+  public static final String INFO_FILENAME = "tiles.json";
+
+  public static final long DEFAULT_CACHE_BUDGET = 256L << 20;
+
+  /**
+   * Open a tiled image that was previously written to a directory
+   */
+  public static TiledMonoImage open(File directory) {
+    File infoFile = new File(directory, INFO_FILENAME);
+    checkArgument(infoFile.exists(), "no tiles found in:", directory);
+    TileSetInfo info = Files.parseAbstractDataOpt(TileSetInfo.DEFAULT_INSTANCE, infoFile);
+    return new TiledMonoImage(directory, info);
+  }
+
+  /**
+   * Write an image to a directory as tiles
+   */
+  public static TiledMonoImage write(Files files, MonoImage image, File directory, IPoint tileSize,
+      String extension) {
+    TileSetInfo info = prepareWrite(files, image.size(), directory, tileSize, extension);
+    TiledMonoImage tiled = new TiledMonoImage(directory, info);
+    tiled.forEachTileIndex((col, row) -> {
+      MonoImage tile = MonoImageUtil.constructClipped(image, tiled.tileBounds(col, row));
+      files.write(encodeTile(tile, extension), tiled.tileFile(col, row));
+    });
+    return tiled;
+  }
+
+  /**
+   * Write an OffHeapMonoImage to a directory as tiles
+   */
+  public static TiledMonoImage write(Files files, OffHeapMonoImage image, File directory, IPoint tileSize,
+      String extension) {
+    TileSetInfo info = prepareWrite(files, image.size(), directory, tileSize, extension);
+    TiledMonoImage tiled = new TiledMonoImage(directory, info);
+    tiled.forEachTileIndex((col, row) -> {
+      MonoImage tile = MonoImageUtil.constructClipped(image, tiled.tileBounds(col, row));
+      files.write(encodeTile(tile, extension), tiled.tileFile(col, row));
+    });
+    return tiled;
+  }
+
+  private static TileSetInfo prepareWrite(Files files, IPoint size, File directory, IPoint tileSize,
+      String extension) {
+    checkArgument(extension.equals(ImgUtil.EXT_RAX) || extension.equals(ImgUtil.EXT_JMG),
+        "unsupported extension:", extension);
+    checkArgument(tileSize.x > 0 && tileSize.y > 0, "bad tile size:", tileSize);
+    TileSetInfo info = TileSetInfo.newBuilder().size(size).tileSize(tileSize).extension(extension).build();
+    files.mkdirs(directory);
+    files.write(new File(directory, INFO_FILENAME), info);
+    return info;
+  }
+
+  private TiledMonoImage(File directory, TileSetInfo info) {
+    checkArgument(!info.size().isZero() && !info.tileSize().isZero(), "bad tile set info:", INDENT, info);
+    mDirectory = directory;
+    mInfo = info;
+    IPoint size = info.size();
+    IPoint tileSize = info.tileSize();
+    mGridSize = new IPoint((size.x + tileSize.x - 1) / tileSize.x, (size.y + tileSize.y - 1) / tileSize.y);
+    withCacheBudget(DEFAULT_CACHE_BUDGET);
+  }
+
+  /**
+   * Set the maximum number of bytes of tile pixels to keep in memory (this
+   * discards any tiles currently in the cache)
+   */
+  public TiledMonoImage withCacheBudget(long bytes) {
+    mCache = new WeightedLruCache<>(bytes, (tile) -> tile.pixels().length * (long) Short.BYTES);
+    return this;
+  }
+
+  public IPoint size() {
+    return mInfo.size();
+  }
+
+  public IPoint tileSize() {
+    return mInfo.tileSize();
+  }
+
+  /**
+   * Get the number of columns and rows of tiles
+   */
+  public IPoint gridSize() {
+    return mGridSize;
+  }
+
+  public TileSetInfo info() {
+    return mInfo;
+  }
+
+  /**
+   * Get the bounds of a tile within the image
+   */
+  public IRect tileBounds(int column, int row) {
+    checkTileIndex(column, row);
+    IPoint tileSize = mInfo.tileSize();
+    IPoint size = mInfo.size();
+    int x = column * tileSize.x;
+    int y = row * tileSize.y;
+    return new IRect(x, y, Math.min(tileSize.x, size.x - x), Math.min(tileSize.y, size.y - y));
+  }
+
+  /**
+   * Get a tile, reading it if it's not in the cache. Its offset is its
+   * location within the image
+   */
+  public MonoImage tile(int column, int row) {
+    checkTileIndex(column, row);
+    return mCache.get(column + row * mGridSize.x, (key) -> readTile(column, row));
+  }
+
+  /**
+   * Read a region of the image, which must lie within the image; its offset
+   * is its location within the image
+   */
+  public MonoImage read(IRect region) {
+    checkArgument(new IRect(size()).contains(region), "region not within image:", region);
+    MonoImage result = MonoImageUtil.construct(region.size()).toBuilder().offset(region.location()).build();
+    IRect tiles = tilesCovering(region);
+    for (int row = tiles.y; row < tiles.endY(); row++) {
+      for (int col = tiles.x; col < tiles.endX(); col++) {
+        IRect bounds = tileBounds(col, row);
+        int x0 = Math.max(bounds.x, region.x);
+        int y0 = Math.max(bounds.y, region.y);
+        int x1 = Math.min(bounds.endX(), region.endX());
+        int y1 = Math.min(bounds.endY(), region.endY());
+        MonoImageUtil.copyPortion(tile(col, row), result, new IRect(x0 - bounds.x, y0 - bounds.y, x1 - x0, y1 - y0),
+            new IPoint(x0 - region.x, y0 - region.y));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Performs an operation on a tile
+   */
+  public interface TileTask {
+    void apply(MonoImage tile);
+  }
+
+  /**
+   * Apply an operation to every tile, processing tiles concurrently
+   */
+  public void forEachTile(TileTask task) {
+    forEachTile(new IRect(size()), task);
+  }
+
+  /**
+   * Apply an operation to every tile that intersects a region, processing
+   * tiles concurrently
+   */
+  public void forEachTile(IRect region, TileTask task) {
+    IRect tiles = tilesCovering(region);
+    IntStream.range(0, tiles.width * tiles.height).parallel()
+        .forEach(i -> task.apply(tile(tiles.x + i % tiles.width, tiles.y + i / tiles.width)));
+  }
+
+  /**
+   * Determine the range of tile columns and rows that intersect a region
+   */
+  private IRect tilesCovering(IRect region) {
+    IRect clipped = clip(region);
+    if (clipped == null)
+      return new IRect(0, 0, 0, 0);
+    IPoint tileSize = mInfo.tileSize();
+    int col0 = clipped.x / tileSize.x;
+    int col1 = (clipped.endX() - 1) / tileSize.x;
+    int row0 = clipped.y / tileSize.y;
+    int row1 = (clipped.endY() - 1) / tileSize.y;
+    return new IRect(col0, row0, col1 + 1 - col0, row1 + 1 - row0);
+  }
+
+  /**
+   * Clip a rectangle to the image bounds, returning null if it's empty
+   */
+  private IRect clip(IRect r) {
+    IPoint size = size();
+    int x0 = Math.max(0, r.x);
+    int y0 = Math.max(0, r.y);
+    int x1 = Math.min(size.x, r.endX());
+    int y1 = Math.min(size.y, r.endY());
+    if (x1 <= x0 || y1 <= y0)
+      return null;
+    return new IRect(x0, y0, x1 - x0, y1 - y0);
+  }
+
+  public JSMap cacheMetrics() {
+    return mCache.metrics();
+  }
+
+  public File tileFile(int column, int row) {
+    return new File(mDirectory, String.format("%04d_%04d.%s", row, column, mInfo.extension()));
+  }
+
+  private interface TileIndexTask {
+    void apply(int column, int row);
+  }
+
+  private void forEachTileIndex(TileIndexTask task) {
+    int columns = mGridSize.x;
+    IntStream.range(0, mGridSize.product()).parallel().forEach(i -> task.apply(i % columns, i / columns));
+  }
+
+  private void checkTileIndex(int column, int row) {
+    if (column < 0 || row < 0 || column >= mGridSize.x || row >= mGridSize.y)
+      throw badArg("tile index out of range:", column, row, "grid:", mGridSize);
+  }
+
+  private MonoImage readTile(int column, int row) {
+    File file = tileFile(column, row);
+    byte[] bytes = Files.toByteArray(file, "TiledMonoImage.readTile");
+    MonoImage tile;
+    if (mInfo.extension().equals(ImgUtil.EXT_JMG)) {
+      JImage jimg = JImageUtil.decode(bytes);
+      checkArgument(jimg.depth() == 1 && jimg.wPixels() != null, "unsupported tile format:", file);
+      tile = MonoImage.newBuilder().size(jimg.size()).pixels(jimg.wPixels()).build();
+    } else
+      tile = ImgUtil.decompressRAX(bytes, null);
+    IRect bounds = tileBounds(column, row);
+    checkArgument(tile.size().equals(bounds.size()), "unexpected tile size:", tile.size(), file);
+    return tile.toBuilder().offset(bounds.location()).build();
+  }
+
+  private static byte[] encodeTile(MonoImage tile, String extension) {
+    if (extension.equals(ImgUtil.EXT_JMG)) {
+      JImage jimg = JImage.newBuilder().depth(1).size(tile.size()).wPixels(tile.pixels()).build();
+      return DataUtil.intsToBytesBigEndian(JImageUtil.encode(jimg, null));
+    }
+    return ImgUtil.compressRAX(tile);
+  }
+
+  private final File mDirectory;
+  private final TileSetInfo mInfo;
+  private final IPoint mGridSize;
+  private WeightedLruCache<Integer, MonoImage> mCache;
+}
@@ -0,0 +1,151 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import js.json.JSMap;
+
+/**
+ * A thread-safe cache that evicts its least recently used entries once the
+ * total weight of its values (e.g. their size in bytes) exceeds a budget.
+ * 
+ * The most recently used entry is never evicted, so a single value heavier
+ * than the budget can still be cached.
+ */
+public final class WeightedLruCache<K, V> {
+
+  public WeightedLruCache(long budget, ToLongFunction<V> weigher) {
+    checkArgument(budget > 0, "bad budget:", budget);
+    mBudget = budget;
+    mWeigher = weigher;
+  }
+
+  /**
+   * Get a value, or null if it's not in the cache
+   */
+  public synchronized V get(K key) {
+    V value = mMap.get(key);
+    if (value == null)
+      mMisses++;
+    else
+      mHits++;
+    return value;
+  }
+
+  /**
+   * Get a value, or null if it's not in the cache, without counting it as a
+   * hit or miss
+   */
+  public synchronized V peek(K key) {
+    return mMap.get(key);
+  }
+
+  /**
+   * Get a value, loading it (and adding it to the cache) if it's not in the
+   * cache. The loader is called without holding the cache's lock, so
+   * concurrent requests for the same key may each load the value
+   */
+  public V get(K key, Function<K, V> loader) {
+    V value = get(key);
+    if (value == null) {
+      value = loader.apply(key);
+      put(key, value);
+    }
+    return value;
+  }
+
+  public synchronized void put(K key, V value) {
+    checkNotNull(value);
+    V previous = mMap.put(key, value);
+    if (previous != null)
+      mWeight -= mWeigher.applyAsLong(previous);
+    mWeight += mWeigher.applyAsLong(value);
+    evict();
+  }
+
+  public synchronized V remove(K key) {
+    V value = mMap.remove(key);
+    if (value != null)
+      mWeight -= mWeigher.applyAsLong(value);
+    return value;
+  }
+
+  public synchronized void clear() {
+    mMap.clear();
+    mWeight = 0;
+  }
+
+  public synchronized int size() {
+    return mMap.size();
+  }
+
+  /**
+   * Get the total weight of the cached values
+   */
+  public synchronized long weight() {
+    return mWeight;
+  }
+
+  public long budget() {
+    return mBudget;
+  }
+
+  public synchronized JSMap metrics() {
+    JSMap m = map();
+    m.put("entries", mMap.size());
+    m.put("weight", mWeight);
+    m.put("budget", mBudget);
+    m.put("hits", mHits);
+    m.put("misses", mMisses);
+    m.put("evictions", mEvictions);
+    return m;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<K, V>> iter = mMap.entrySet().iterator();
+    while (mWeight > mBudget && mMap.size() > 1) {
+      Map.Entry<K, V> entry = iter.next();
+      mWeight -= mWeigher.applyAsLong(entry.getValue());
+      iter.remove();
+      mEvictions++;
+    }
+  }
+
+  private final long mBudget;
+  private final ToLongFunction<V> mWeigher;
+  // Ordered from least to most recently accessed
+  private final LinkedHashMap<K, V> mMap = new LinkedHashMap<>(16, 0.75f, true);
+  private long mWeight;
+  private long mHits;
+  private long mMisses;
+  private long mEvictions;
+}
@@ -0,0 +1,173 @@
+package js.graphics.gen;
+
+import java.util.Arrays;
+import js.data.AbstractData;
+import js.data.DataUtil;
+import js.geometry.IPoint;
+import js.json.JSMap;
+
+public class DefectMap implements AbstractData {
+
+  public IPoint size() {
+    return mSize;
+  }
+
+  public int[] indices() {
+    return mIndices;
+  }
+
+  public int[] neighbors() {
+    return mNeighbors;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "size";
+  protected static final String _1 = "indices";
+  protected static final String _2 = "neighbors";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mSize.toJson());
+    m.putUnsafe(_1, DataUtil.encodeBase64Maybe(mIndices));
+    m.putUnsafe(_2, DataUtil.encodeBase64Maybe(mNeighbors));
+    return m;
+  }
+
+  @Override
+  public DefectMap build() {
+    return this;
+  }
+
+  @Override
+  public DefectMap parse(Object obj) {
+    return new DefectMap((JSMap) obj);
+  }
+
+  private DefectMap(JSMap m) {
+    {
+      mSize = IPoint.DEFAULT_INSTANCE;
+      Object x = m.optUnsafe(_0);
+      if (x != null) {
+        mSize = IPoint.DEFAULT_INSTANCE.parse(x);
+      }
+    }
+    {
+      mIndices = DataUtil.EMPTY_INT_ARRAY;
+      Object x = m.optUnsafe(_1);
+      if (x != null) {
+        mIndices = DataUtil.parseIntsFromArrayOrBase64(x);
+      }
+    }
+    {
+      mNeighbors = DataUtil.EMPTY_INT_ARRAY;
+      Object x = m.optUnsafe(_2);
+      if (x != null) {
+        mNeighbors = DataUtil.parseIntsFromArrayOrBase64(x);
+      }
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof DefectMap))
+      return false;
+    DefectMap other = (DefectMap) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mSize.equals(other.mSize)))
+      return false;
+    if (!(Arrays.equals(mIndices, other.mIndices)))
+      return false;
+    if (!(Arrays.equals(mNeighbors, other.mNeighbors)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + mSize.hashCode();
+      r = r * 37 + Arrays.hashCode(mIndices);
+      r = r * 37 + Arrays.hashCode(mNeighbors);
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected IPoint mSize;
+  protected int[] mIndices;
+  protected int[] mNeighbors;
+  protected int m__hashcode;
+
+  public static final class Builder extends DefectMap {
+
+    private Builder(DefectMap m) {
+      mSize = m.mSize;
+      mIndices = m.mIndices;
+      mNeighbors = m.mNeighbors;
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public DefectMap build() {
+      DefectMap r = new DefectMap();
+      r.mSize = mSize;
+      r.mIndices = mIndices;
+      r.mNeighbors = mNeighbors;
+      return r;
+    }
+
+    public Builder size(IPoint x) {
+      mSize = (x == null) ? IPoint.DEFAULT_INSTANCE : x.build();
+      return this;
+    }
+
+    public Builder indices(int[] x) {
+      mIndices = (x == null) ? DataUtil.EMPTY_INT_ARRAY : x;
+      return this;
+    }
+
+    public Builder neighbors(int[] x) {
+      mNeighbors = (x == null) ? DataUtil.EMPTY_INT_ARRAY : x;
+      return this;
+    }
+
+  }
+
+  public static final DefectMap DEFAULT_INSTANCE = new DefectMap();
+
+  private DefectMap() {
+    mSize = IPoint.DEFAULT_INSTANCE;
+    mIndices = DataUtil.EMPTY_INT_ARRAY;
+    mNeighbors = DataUtil.EMPTY_INT_ARRAY;
+  }
+
+}
@@ -0,0 +1,168 @@
+package js.graphics.gen;
+
+import js.data.AbstractData;
+import js.json.JSMap;
+
+public class RadiometricCalibration implements AbstractData {
+
+  public float planckR() {
+    return mPlanckR;
+  }
+
+  public float planckB() {
+    return mPlanckB;
+  }
+
+  public float planckF() {
+    return mPlanckF;
+  }
+
+  public float planckO() {
+    return mPlanckO;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "planck_r";
+  protected static final String _1 = "planck_b";
+  protected static final String _2 = "planck_f";
+  protected static final String _3 = "planck_o";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mPlanckR);
+    m.putUnsafe(_1, mPlanckB);
+    m.putUnsafe(_2, mPlanckF);
+    m.putUnsafe(_3, mPlanckO);
+    return m;
+  }
+
+  @Override
+  public RadiometricCalibration build() {
+    return this;
+  }
+
+  @Override
+  public RadiometricCalibration parse(Object obj) {
+    return new RadiometricCalibration((JSMap) obj);
+  }
+
+  private RadiometricCalibration(JSMap m) {
+    mPlanckR = m.opt(_0, 0f);
+    mPlanckB = m.opt(_1, 0f);
+    mPlanckF = m.opt(_2, 1f);
+    mPlanckO = m.opt(_3, 0f);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof RadiometricCalibration))
+      return false;
+    RadiometricCalibration other = (RadiometricCalibration) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mPlanckR == other.mPlanckR))
+      return false;
+    if (!(mPlanckB == other.mPlanckB))
+      return false;
+    if (!(mPlanckF == other.mPlanckF))
+      return false;
+    if (!(mPlanckO == other.mPlanckO))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + (int)mPlanckR;
+      r = r * 37 + (int)mPlanckB;
+      r = r * 37 + (int)mPlanckF;
+      r = r * 37 + (int)mPlanckO;
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected float mPlanckR;
+  protected float mPlanckB;
+  protected float mPlanckF;
+  protected float mPlanckO;
+  protected int m__hashcode;
+
+  public static final class Builder extends RadiometricCalibration {
+
+    private Builder(RadiometricCalibration m) {
+      mPlanckR = m.mPlanckR;
+      mPlanckB = m.mPlanckB;
+      mPlanckF = m.mPlanckF;
+      mPlanckO = m.mPlanckO;
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public RadiometricCalibration build() {
+      RadiometricCalibration r = new RadiometricCalibration();
+      r.mPlanckR = mPlanckR;
+      r.mPlanckB = mPlanckB;
+      r.mPlanckF = mPlanckF;
+      r.mPlanckO = mPlanckO;
+      return r;
+    }
+
+    public Builder planckR(float x) {
+      mPlanckR = x;
+      return this;
+    }
+
+    public Builder planckB(float x) {
+      mPlanckB = x;
+      return this;
+    }
+
+    public Builder planckF(float x) {
+      mPlanckF = x;
+      return this;
+    }
+
+    public Builder planckO(float x) {
+      mPlanckO = x;
+      return this;
+    }
+
+  }
+
+  public static final RadiometricCalibration DEFAULT_INSTANCE = new RadiometricCalibration();
+
+  private RadiometricCalibration() {
+    mPlanckF = 1f;
+  }
+
+}
@@ -0,0 +1,165 @@
+package js.graphics.gen;
+
+import js.data.AbstractData;
+import js.geometry.IPoint;
+import js.json.JSMap;
+
+public class TileSetInfo implements AbstractData {
+
+  public IPoint size() {
+    return mSize;
+  }
+
+  public IPoint tileSize() {
+    return mTileSize;
+  }
+
+  public String extension() {
+    return mExtension;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "size";
+  protected static final String _1 = "tile_size";
+  protected static final String _2 = "extension";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mSize.toJson());
+    m.putUnsafe(_1, mTileSize.toJson());
+    m.putUnsafe(_2, mExtension);
+    return m;
+  }
+
+  @Override
+  public TileSetInfo build() {
+    return this;
+  }
+
+  @Override
+  public TileSetInfo parse(Object obj) {
+    return new TileSetInfo((JSMap) obj);
+  }
+
+  private TileSetInfo(JSMap m) {
+    {
+      mSize = IPoint.DEFAULT_INSTANCE;
+      Object x = m.optUnsafe(_0);
+      if (x != null) {
+        mSize = IPoint.DEFAULT_INSTANCE.parse(x);
+      }
+    }
+    {
+      mTileSize = IPoint.DEFAULT_INSTANCE;
+      Object x = m.optUnsafe(_1);
+      if (x != null) {
+        mTileSize = IPoint.DEFAULT_INSTANCE.parse(x);
+      }
+    }
+    mExtension = m.opt(_2, "rax");
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof TileSetInfo))
+      return false;
+    TileSetInfo other = (TileSetInfo) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mSize.equals(other.mSize)))
+      return false;
+    if (!(mTileSize.equals(other.mTileSize)))
+      return false;
+    if (!(mExtension.equals(other.mExtension)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + mSize.hashCode();
+      r = r * 37 + mTileSize.hashCode();
+      r = r * 37 + mExtension.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected IPoint mSize;
+  protected IPoint mTileSize;
+  protected String mExtension;
+  protected int m__hashcode;
+
+  public static final class Builder extends TileSetInfo {
+
+    private Builder(TileSetInfo m) {
+      mSize = m.mSize;
+      mTileSize = m.mTileSize;
+      mExtension = m.mExtension;
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public TileSetInfo build() {
+      TileSetInfo r = new TileSetInfo();
+      r.mSize = mSize;
+      r.mTileSize = mTileSize;
+      r.mExtension = mExtension;
+      return r;
+    }
+
+    public Builder size(IPoint x) {
+      mSize = (x == null) ? IPoint.DEFAULT_INSTANCE : x.build();
+      return this;
+    }
+
+    public Builder tileSize(IPoint x) {
+      mTileSize = (x == null) ? IPoint.DEFAULT_INSTANCE : x.build();
+      return this;
+    }
+
+    public Builder extension(String x) {
+      mExtension = (x == null) ? "rax" : x;
+      return this;
+    }
+
+  }
+
+  public static final TileSetInfo DEFAULT_INSTANCE = new TileSetInfo();
+
+  private TileSetInfo() {
+    mSize = IPoint.DEFAULT_INSTANCE;
+    mTileSize = IPoint.DEFAULT_INSTANCE;
+    mExtension = "rax";
+  }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class AdaptiveEqualizerTest extends MyTestCase {
+
+  @Test
+  public void matchesReference() {
+    // Tall enough to be processed in several row bands
+    MonoImage image = randomImage(new IPoint(160, 128), 0.05f);
+    for (float clipLimit : new float[] { 0, 1, 2, 4 })
+      verify(image, AdaptiveEqualizer.DEFAULT_GRID, AdaptiveEqualizer.DEFAULT_GRID, clipLimit,
+          AdaptiveEqualizer.DEFAULT_BINS);
+  }
+
+  @Test
+  public void unevenGridsAndBins() {
+    MonoImage image = randomImage(new IPoint(97, 61), 0.1f);
+    verify(image, 3, 5, AdaptiveEqualizer.DEFAULT_CLIP_LIMIT, 37);
+    verify(image, 1, 1, 1.5f, AdaptiveEqualizer.DEFAULT_BINS);
+    // More tiles than pixels in one direction
+    verify(randomImage(new IPoint(13, 9), 0), 4, 200, AdaptiveEqualizer.DEFAULT_CLIP_LIMIT,
+        AdaptiveEqualizer.DEFAULT_BINS);
+  }
+
+  @Test
+  public void zeroPixelsOmitted() {
+    MonoImage image = randomImage(new IPoint(64, 48), 0.3f);
+    MonoImage result = verify(image, AdaptiveEqualizer.DEFAULT_GRID, AdaptiveEqualizer.DEFAULT_GRID,
+        AdaptiveEqualizer.DEFAULT_CLIP_LIMIT, AdaptiveEqualizer.DEFAULT_BINS);
+    for (int i = 0; i < image.pixels().length; i++) {
+      int v = result.pixels()[i] & 0xffff;
+      if (image.pixels()[i] == 0)
+        assertEquals(0, v);
+      else
+        assertTrue(v >= 1 && v < MonoImageUtil.MAX_PIXEL_VALUE);
+    }
+
+    // An image with no nonzero pixels stays zero
+    MonoImage blank = MonoImageUtil.construct(new IPoint(20, 20));
+    assertArrayEquals(blank.pixels(), new AdaptiveEqualizer().apply(blank).pixels());
+  }
+
+  @Test
+  public void clipLimitFlattensSpike() {
+    // Values spread evenly over a range, except that half the pixels have a
+    // single value
+    IPoint size = new IPoint(128, 64);
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) (i % 2 == 0 ? 3000 : 1000 + i % 4096);
+    MonoImage image = MonoImageUtil.construct(size, pixels);
+
+    // Without clipping, the spike takes up half the output range; with it,
+    // its share is limited
+    MonoImage unclipped = verify(image, 1, 1, 0, AdaptiveEqualizer.DEFAULT_BINS);
+    MonoImage clipped = verify(image, 1, 1, 2, AdaptiveEqualizer.DEFAULT_BINS);
+    int range = MonoImageUtil.MAX_PIXEL_VALUE;
+    assertTrue(mapped(unclipped, image, 3021) - mapped(unclipped, image, 2981) > range * 4 / 10);
+    assertTrue(mapped(clipped, image, 3021) - mapped(clipped, image, 2981) < range / 10);
+  }
+
+  @Test
+  public void reusedInstanceMatchesNewOne() {
+    AdaptiveEqualizer equalizer = new AdaptiveEqualizer();
+    for (int i = 0; i < 3; i++) {
+      MonoImage image = randomImage(new IPoint(80, 60), 0.1f);
+      assertArrayEquals(new AdaptiveEqualizer().apply(image).pixels(), equalizer.apply(image).pixels());
+    }
+  }
+
+  /**
+   * Apply an equalizer and compare the result with the reference
+   */
+  private static MonoImage verify(MonoImage image, int gridX, int gridY, float clipLimit, int bins) {
+    MonoImage result = new AdaptiveEqualizer().withGrid(gridX, gridY).withClipLimit(clipLimit).withBins(bins)
+        .apply(image);
+    assertArrayEquals(reference(image, gridX, gridY, clipLimit, bins), result.pixels());
+    return result;
+  }
+
+  private static int mapped(MonoImage result, MonoImage image, int value) {
+    short[] pixels = image.pixels();
+    for (int i = 0; i < pixels.length; i++)
+      if ((pixels[i] & 0xffff) == value)
+        return result.pixels()[i] & 0xffff;
+    throw new IllegalStateException("no pixel with value " + value);
+  }
+
+  // ------------------------------------------------------------------
+  // Reference implementation: each pixel's value is interpolated from
+  // lookup tables built directly from the tiles' pixels
+  // ------------------------------------------------------------------
+
+  private static short[] reference(MonoImage image, int columns, int rows, float clipLimit, int bins) {
+    int gridX = Math.min(columns, image.size().x);
+    int gridY = Math.min(rows, image.size().y);
+    int width = image.size().x;
+    int height = image.size().y;
+    short[] pixels = image.pixels();
+    short[] output = new short[pixels.length];
+
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    for (short p : pixels) {
+      int v = p & 0xffff;
+      if (v != 0) {
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+      }
+    }
+    if (max == 0)
+      return output;
+
+    int[][][] luts = new int[gridY][gridX][];
+    for (int ty = 0; ty < gridY; ty++)
+      for (int tx = 0; tx < gridX; tx++)
+        luts[ty][tx] = tileLut(pixels, width, start(tx, gridX, width), start(tx + 1, gridX, width),
+            start(ty, gridY, height), start(ty + 1, gridY, height), min, max, bins, clipLimit);
+
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++) {
+        int i = y * width + x;
+        int v = pixels[i] & 0xffff;
+        if (v == 0)
+          continue;
+        int bin = bin(v, min, max, bins);
+        int[] cx = bracket(x, gridX, width);
+        int[] cy = bracket(y, gridY, height);
+        long top = luts[cy[0]][cx[0]][bin] * (256L - cx[2]) + luts[cy[0]][cx[1]][bin] * (long) cx[2];
+        long bottom = luts[cy[1]][cx[0]][bin] * (256L - cx[2]) + luts[cy[1]][cx[1]][bin] * (long) cx[2];
+        output[i] = (short) ((top * (256 - cy[2]) + bottom * cy[2] + 32768) >> 16);
+      }
+    return output;
+  }
+
+  private static int bin(int v, int min, int max, int bins) {
+    return (int) ((long) (v - min) * bins / (max + 1 - min));
+  }
+
+  private static int start(int tile, int tiles, int length) {
+    return (int) ((long) length * tile / tiles);
+  }
+
+  /**
+   * Find the tiles whose centers bracket a pixel (the last tile whose center
+   * precedes it, and the next), and the weight (out of 256) of the second
+   */
+  private static int[] bracket(int i, int tiles, int length) {
+    float pos = i + 0.5f;
+    int t = 0;
+    while (t + 1 < tiles && center(t + 1, tiles, length) <= pos)
+      t++;
+    float c0 = center(t, tiles, length);
+    if (pos < c0 || t == tiles - 1)
+      return new int[] { t, t, 0 };
+    float c1 = center(t + 1, tiles, length);
+    return new int[] { t, t + 1, Math.round((pos - c0) / (c1 - c0) * 256) };
+  }
+
+  private static float center(int tile, int tiles, int length) {
+    return (start(tile, tiles, length) + start(tile + 1, tiles, length)) * 0.5f;
+  }
+
+  private static int[] tileLut(short[] pixels, int width, int x0, int x1, int y0, int y1, int min, int max,
+      int bins, float clipLimit) {
+    int outputRange = MonoImageUtil.MAX_PIXEL_VALUE - 2;
+    int[] hist = new int[bins];
+    int count = 0;
+    for (int y = y0; y < y1; y++)
+      for (int x = x0; x < x1; x++) {
+        int v = pixels[y * width + x] & 0xffff;
+        if (v != 0) {
+          hist[bin(v, min, max, bins)]++;
+          count++;
+        }
+      }
+    int[] lut = new int[bins];
+    if (count == 0) {
+      for (int b = 0; b < bins; b++)
+        lut[b] = 1 + b * outputRange / (bins - 1);
+      return lut;
+    }
+    if (clipLimit > 0) {
+      int limit = Math.max(1, (int) (clipLimit * count / bins));
+      int excess = 0;
+      for (int b = 0; b < bins; b++)
+        if (hist[b] > limit) {
+          excess += hist[b] - limit;
+          hist[b] = limit;
+        }
+      // Redistribute the excess evenly, with any remainder spread at regular
+      // intervals
+      for (int b = 0; b < bins; b++)
+        hist[b] += excess / bins;
+      int remainder = excess % bins;
+      for (int k = 0; k < remainder; k++)
+        hist[k * (bins / remainder)]++;
+    }
+    long cumulative = 0;
+    for (int b = 0; b < bins; b++) {
+      cumulative += hist[b];
+      lut[b] = 1 + (int) (cumulative * outputRange / count);
+    }
+    return lut;
+  }
+
+  /**
+   * Construct an image of smooth variation plus noise, with a fraction of
+   * zero (omitted) pixels
+   */
+  private MonoImage randomImage(IPoint size, float zeroFraction) {
+    short[] pixels = new short[size.product()];
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++) {
+        int v = 3000 + x * 40 + y * 25 + random().nextInt(2000);
+        if (random().nextFloat() < zeroFraction)
+          v = 0;
+        pixels[y * size.x + x] = (short) v;
+      }
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
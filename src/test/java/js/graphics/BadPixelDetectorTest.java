@@ -0,0 +1,164 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import js.file.Files;
+import js.geometry.IPoint;
+import js.graphics.gen.DefectMap;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class BadPixelDetectorTest extends MyTestCase {
+
+  @Test
+  public void findsPlantedDefects() {
+    DefectMap map = detect();
+    assertArrayEquals(sorted(ALL_DEFECTS), map.indices());
+    assertEquals(SIZE, map.size());
+  }
+
+  @Test
+  public void replacesDefectsWithNeighborMeans() {
+    DefectMap map = detect();
+    BadPixelCorrector corrector = new BadPixelCorrector(map);
+    assertEquals(ALL_DEFECTS.length, corrector.defectCount());
+
+    MonoImage frame = frame(12345);
+    short[] original = frame.pixels().clone();
+    corrector.apply(frame);
+
+    boolean[] defective = new boolean[SIZE.product()];
+    for (int i : ALL_DEFECTS)
+      defective[i] = true;
+    for (int i = 0; i < original.length; i++) {
+      if (!defective[i]) {
+        assertEquals(original[i], frame.pixels()[i]);
+        continue;
+      }
+      // The mean of the nearest nondefective pixel in each direction
+      int x = i % SIZE.x;
+      int y = i / SIZE.x;
+      int sum = 0;
+      int count = 0;
+      for (int[] d : new int[][] { { -1, 0 }, { 1, 0 }, { 0, -1 }, { 0, 1 } }) {
+        for (int dist = 1; dist <= 4; dist++) {
+          int nx = x + d[0] * dist;
+          int ny = y + d[1] * dist;
+          if (nx < 0 || ny < 0 || nx >= SIZE.x || ny >= SIZE.y)
+            break;
+          int j = ny * SIZE.x + nx;
+          if (!defective[j]) {
+            sum += original[j] & 0xffff;
+            count++;
+            break;
+          }
+        }
+      }
+      assertEquals("pixel " + i, (sum + count / 2) / count, frame.pixels()[i] & 0xffff);
+    }
+  }
+
+  @Test
+  public void defectMapJsonRoundTrip() {
+    DefectMap map = detect();
+    File file = generatedFile("defects.json");
+    files().write(file, map);
+    DefectMap read = Files.parseAbstractDataOpt(DefectMap.DEFAULT_INSTANCE, file);
+    assertEquals(map, read);
+    assertArrayEquals(map.neighbors(), read.neighbors());
+  }
+
+  @Test
+  public void noDefectsInCleanStream() {
+    BadPixelDetector detector = new BadPixelDetector();
+    for (int f = 0; f < FRAMES; f++)
+      detector.add(cleanFrame(f));
+    assertEquals(0, detector.build().indices().length);
+  }
+
+  private static final IPoint SIZE = new IPoint(40, 30);
+  private static final int FRAMES = 20;
+
+  // Hot pixels, including a corner, an edge and an adjacent pair
+  private static final int[] HOT = { 5 * 40 + 7, 0, 29 * 40 + 20, 12 * 40 + 30, 12 * 40 + 31 };
+  // Pixels that are negative as signed shorts
+  private static final int[] NEGATIVE = { 20 * 40 + 3, 3 * 40 + 39 };
+  // Pixels whose value never changes
+  private static final int[] STUCK = { 15 * 40 + 15, 25 * 40 + 8 };
+  private static final int[] ALL_DEFECTS = concat(HOT, NEGATIVE, STUCK);
+
+  private DefectMap detect() {
+    BadPixelDetector detector = new BadPixelDetector();
+    for (int f = 0; f < FRAMES; f++)
+      detector.add(frame(f));
+    assertEquals(FRAMES, detector.frameCount());
+    return detector.build();
+  }
+
+  private MonoImage frame(int seed) {
+    MonoImage frame = cleanFrame(seed);
+    short[] pixels = frame.pixels();
+    for (int i : HOT)
+      pixels[i] += 3000;
+    for (int i : NEGATIVE)
+      pixels[i] = (short) 0x9000;
+    for (int i : STUCK)
+      pixels[i] = (short) baseValue(i);
+    return frame;
+  }
+
+  /**
+   * Construct a frame of a smooth scene plus temporal noise
+   */
+  private MonoImage cleanFrame(int seed) {
+    Random random = new Random(seed);
+    short[] pixels = new short[SIZE.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) (baseValue(i) + random.nextInt(41) - 20);
+    return MonoImageUtil.construct(SIZE, pixels);
+  }
+
+  private static int baseValue(int i) {
+    return 8000 + (i % SIZE.x) * 10 + (i / SIZE.x) * 7;
+  }
+
+  private static int[] concat(int[]... arrays) {
+    return Arrays.stream(arrays).flatMapToInt(Arrays::stream).toArray();
+  }
+
+  private static int[] sorted(int[] values) {
+    int[] result = values.clone();
+    Arrays.sort(result);
+    return result;
+  }
+}
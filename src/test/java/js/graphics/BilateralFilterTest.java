@@ -0,0 +1,161 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class BilateralFilterTest extends MyTestCase {
+
+  @Test
+  public void matchesUnbandedFilter() {
+    // Tall enough to be filtered in several row bands
+    MonoImage image = randomImage(new IPoint(64, 200));
+    for (int radius : new int[] { 1, 3, 10 }) {
+      MonoImage result = new BilateralFilter().withRadius(radius).apply(image);
+      short[] expected = fastReference(image, radius, BilateralFilter.DEFAULT_RANGE_SIGMA,
+          BilateralFilter.DEFAULT_LEVELS);
+      assertEquals("radius " + radius, 0, maxDifference(expected, result.pixels()), 1);
+    }
+  }
+
+  @Test
+  public void approximatesExactFilter() {
+    MonoImage image = randomImage(new IPoint(64, 200));
+    for (int levels : new int[] { BilateralFilter.DEFAULT_LEVELS, 32 }) {
+      MonoImage result = new BilateralFilter().withLevels(levels).apply(image);
+      short[] exact = exactReference(image, BilateralFilter.DEFAULT_RADIUS, BilateralFilter.DEFAULT_RANGE_SIGMA);
+      // The error shrinks as the number of levels grows
+      int tolerance = levels == BilateralFilter.DEFAULT_LEVELS ? 60 : 8;
+      assertEquals("levels " + levels, 0, maxDifference(exact, result.pixels()), tolerance);
+    }
+  }
+
+  @Test
+  public void flatImageUnchanged() {
+    MonoImage image = MonoImageUtil.construct(new IPoint(20, 40));
+    Arrays.fill(image.pixels(), (short) 1234);
+    assertArrayEquals(image.pixels(), new BilateralFilter().apply(image).pixels());
+  }
+
+  private static int maxDifference(short[] a, short[] b) {
+    int max = 0;
+    for (int i = 0; i < a.length; i++)
+      max = Math.max(max, Math.abs((a[i] & 0xffff) - (b[i] & 0xffff)));
+    return max;
+  }
+
+  /**
+   * The exact bilateral filter, with a square spatial window (clipped to the
+   * image) and a Gaussian range kernel
+   */
+  private static short[] exactReference(MonoImage image, int radius, float sigma) {
+    int w = image.size().x;
+    int h = image.size().y;
+    short[] pixels = image.pixels();
+    short[] output = new short[pixels.length];
+    for (int y = 0; y < h; y++)
+      for (int x = 0; x < w; x++) {
+        int v = pixels[y * w + x] & 0xffff;
+        double weights = 0;
+        double sum = 0;
+        for (int yy = Math.max(0, y - radius); yy <= Math.min(h - 1, y + radius); yy++)
+          for (int xx = Math.max(0, x - radius); xx <= Math.min(w - 1, x + radius); xx++) {
+            int u = pixels[yy * w + xx] & 0xffff;
+            double weight = Math.exp(-(u - v) * (double) (u - v) / (2.0 * sigma * sigma));
+            weights += weight;
+            sum += weight * u;
+          }
+        output[y * w + x] = (short) Math.round(sum / weights);
+      }
+    return output;
+  }
+
+  /**
+   * The same approximation as BilateralFilter (range sampled at levels, with
+   * responses interpolated), with each window summed directly rather than by
+   * running sums in row bands
+   */
+  private static short[] fastReference(MonoImage image, int radius, float sigma, int levelCount) {
+    int w = image.size().x;
+    int h = image.size().y;
+    short[] pixels = image.pixels();
+    int min = 0xffff;
+    int max = 0;
+    for (short p : pixels) {
+      min = Math.min(min, p & 0xffff);
+      max = Math.max(max, p & 0xffff);
+    }
+    float levelScale = (levelCount - 1) / (float) (max - min);
+    double[][] responses = new double[levelCount][pixels.length];
+    for (int level = 0; level < levelCount; level++) {
+      int levelValue = min + Math.round(level / levelScale);
+      for (int y = 0; y < h; y++)
+        for (int x = 0; x < w; x++) {
+          double weights = 0;
+          double sum = 0;
+          for (int yy = Math.max(0, y - radius); yy <= Math.min(h - 1, y + radius); yy++)
+            for (int xx = Math.max(0, x - radius); xx <= Math.min(w - 1, x + radius); xx++) {
+              int u = pixels[yy * w + xx] & 0xffff;
+              double d = u - levelValue;
+              double weight = Math.max(1e-20, Math.exp(-d * d / (2.0 * sigma * sigma)));
+              weights += weight;
+              sum += weight * u;
+            }
+          responses[level][y * w + x] = sum / weights;
+        }
+    }
+    short[] output = new short[pixels.length];
+    for (int i = 0; i < pixels.length; i++) {
+      float t = ((pixels[i] & 0xffff) - min) * levelScale;
+      int lower = Math.min((int) t, levelCount - 2);
+      float frac = t - lower;
+      output[i] = (short) Math.round((1 - frac) * responses[lower][i] + frac * responses[lower + 1][i]);
+    }
+    return output;
+  }
+
+  /**
+   * Construct an image of smooth variation, noise and a step edge
+   */
+  private MonoImage randomImage(IPoint size) {
+    short[] pixels = new short[size.product()];
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++) {
+        int v = 5000 + x * 20 + y * 10 + random().nextInt(400);
+        if (x > size.x / 2)
+          v += 3000;
+        pixels[y * size.x + x] = (short) v;
+      }
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+import static js.base.Tools.*;
+
+public class BinaryMaskTest extends MyTestCase {
+
+  @Test
+  public void monoImageRoundTrip() {
+    BinaryMask mask = randomMask(new IPoint(150, 37), 0.4f);
+    MonoImage image = mask.toMonoImage(1000);
+    assertEquals(mask, BinaryMask.from(image));
+    assertEquals(mask, BinaryMask.from(image, 1000));
+    assertEquals(MonoImageUtil.nonMaskedPixelCount(image), mask.count());
+  }
+
+  @Test
+  public void rasterizeMaskElements() {
+    List<ScriptElement> elements = arrayList();
+    elements.add(new MaskElement(new IRect(60, 3, 10, 4)));
+    elements.add(new RectElement(null, new IRect(0, 0, 20, 20)));
+    elements.add(new MaskElement(new IRect(120, 10, 50, 2)));
+    BinaryMask mask = BinaryMask.rasterize(new IPoint(150, 37), elements);
+    assertEquals(40 + 30 * 2, mask.count());
+    assertEquals(new IRect(60, 3, 90, 9), mask.bounds());
+    assertTrue(mask.get(149, 11));
+    assertFalse(mask.get(59, 3));
+  }
+
+  @Test
+  public void logicalOperations() {
+    IPoint size = new IPoint(130, 9);
+    BinaryMask a = randomMask(size, 0.5f);
+    BinaryMask b = randomMask(size, 0.5f);
+    BinaryMask and = a.copy().and(b);
+    BinaryMask or = a.copy().or(b);
+    BinaryMask xor = a.copy().xor(b);
+    BinaryMask andNot = a.copy().andNot(b);
+    BinaryMask inverted = a.copy().invert();
+    for (int y = 0; y < size.y; y++) {
+      for (int x = 0; x < size.x; x++) {
+        boolean pa = a.get(x, y);
+        boolean pb = b.get(x, y);
+        assertEquals(pa && pb, and.get(x, y));
+        assertEquals(pa || pb, or.get(x, y));
+        assertEquals(pa ^ pb, xor.get(x, y));
+        assertEquals(pa && !pb, andNot.get(x, y));
+        assertEquals(!pa, inverted.get(x, y));
+      }
+    }
+    assertEquals(size.product(), a.count() + inverted.count());
+  }
+
+  @Test
+  public void erodeSquare() {
+    verifyMorphology(StructuringElement.square(2));
+  }
+
+  @Test
+  public void erodeCross() {
+    verifyMorphology(StructuringElement.cross(3));
+  }
+
+  @Test
+  public void erodeDisc() {
+    verifyMorphology(StructuringElement.disc(4));
+  }
+
+  @Test
+  public void erodeWideOffsets() {
+    List<IPoint> offsets = arrayList(new IPoint(-70, 1), new IPoint(0, 0), new IPoint(65, -2));
+    verifyMorphology(StructuringElement.with(offsets));
+  }
+
+  @Test
+  public void openAndClose() {
+    BinaryMask mask = randomMask(new IPoint(100, 40), 0.7f);
+    StructuringElement se = StructuringElement.square(1);
+    BinaryMask opened = mask.open(se);
+    BinaryMask closed = mask.close(se);
+    // Opening is anti-extensive, closing is extensive
+    assertEquals(opened, opened.copy().and(mask));
+    assertEquals(closed, closed.copy().or(mask));
+  }
+
+  private void verifyMorphology(StructuringElement se) {
+    BinaryMask mask = randomMask(new IPoint(200, 31), 0.85f);
+    BinaryMask eroded = mask.erode(se);
+    BinaryMask dilated = mask.dilate(se);
+    for (int y = 0; y < mask.height(); y++) {
+      for (int x = 0; x < mask.width(); x++) {
+        boolean all = true;
+        boolean any = false;
+        for (int i = 0; i < se.size(); i++) {
+          all &= pixel(mask, x + se.dx(i), y + se.dy(i), true);
+          any |= pixel(mask, x - se.dx(i), y - se.dy(i), false);
+        }
+        assertEquals(all, eroded.get(x, y));
+        assertEquals(any, dilated.get(x, y));
+      }
+    }
+  }
+
+  private static boolean pixel(BinaryMask mask, int x, int y, boolean outsideValue) {
+    if (x < 0 || y < 0 || x >= mask.width() || y >= mask.height())
+      return outsideValue;
+    return mask.get(x, y);
+  }
+
+  private BinaryMask randomMask(IPoint size, float density) {
+    BinaryMask mask = new BinaryMask(size);
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++)
+        if (random().nextFloat() < density)
+          mask.set(x, y);
+    return mask;
+  }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.graphics.gen.Script;
+import js.testutil.MyTestCase;
+import static js.base.Tools.*;
+
+public class ConnectedComponentsTest extends MyTestCase {
+
+  @Test
+  public void eightConnected() {
+    verifyLabels(randomMask(new IPoint(150, 200), 0.45f), 8);
+  }
+
+  @Test
+  public void fourConnected() {
+    verifyLabels(randomMask(new IPoint(150, 200), 0.55f), 4);
+  }
+
+  @Test
+  public void diagonalNeighbors() {
+    BinaryMask mask = new BinaryMask(new IPoint(10, 10));
+    mask.set(2, 2).set(3, 3).set(4, 4).set(4, 2);
+    assertEquals(1, new ConnectedComponents().withMask(mask).componentCount());
+    assertEquals(4, new ConnectedComponents().withMask(mask).withConnectivity(4).componentCount());
+  }
+
+  @Test
+  public void componentStatistics() {
+    short[] pixels = new short[20 * 8];
+    IPoint size = new IPoint(20, 8);
+    // A 3x2 rectangle with values 10..60, and a single pixel of value 7
+    int v = 10;
+    for (int y = 2; y < 4; y++)
+      for (int x = 5; x < 8; x++, v += 10)
+        pixels[y * size.x + x] = (short) v;
+    pixels[7 * size.x + 19] = 7;
+    MonoImage image = MonoImageUtil.construct(size, pixels);
+
+    List<ConnectedComponents.Component> components = new ConnectedComponents().withImage(image).components();
+    assertEquals(2, components.size());
+    ConnectedComponents.Component c = components.get(0);
+    assertEquals(6, c.area());
+    assertEquals(new IRect(5, 2, 3, 2), c.bounds());
+    assertEquals(6.5f, c.centroid().x, 1e-5f);
+    assertEquals(3f, c.centroid().y, 1e-5f);
+    assertEquals(10, c.minValue());
+    assertEquals(60, c.maxValue());
+    assertEquals(35f, c.meanValue(), 1e-5f);
+    assertEquals(7, components.get(1).maxValue());
+
+    List<ConnectedComponents.Component> filtered = new ConnectedComponents().withImage(image)
+        .withMinimumArea(2).components();
+    assertEquals(1, filtered.size());
+  }
+
+  @Test
+  public void scriptElements() {
+    BinaryMask mask = new BinaryMask(new IPoint(30, 20));
+    mask.fill(new IRect(2, 3, 5, 4));
+    mask.fill(new IRect(4, 7, 8, 2));
+    mask.fill(new IRect(20, 10, 3, 3));
+    ConnectedComponents cc = new ConnectedComponents().withMask(mask);
+    Script.Builder script = Script.newBuilder();
+    cc.appendRectElements(script, 3);
+    cc.appendPolygonElements(script, 5);
+    List<ScriptElement> items = script.items();
+    assertEquals(4, items.size());
+    assertEquals(new IRect(2, 3, 10, 6), items.get(0).bounds());
+    assertEquals(3, ScriptUtil.categoryOrZero(items.get(0)));
+    PolygonElement poly = (PolygonElement) items.get(2);
+    assertEquals(5, ScriptUtil.categoryOrZero(poly));
+    List<IPoint> expected = arrayList(new IPoint(2, 3), new IPoint(2, 7), new IPoint(4, 7),
+        new IPoint(4, 9), new IPoint(12, 9), new IPoint(12, 7), new IPoint(7, 7), new IPoint(7, 3));
+    assertEquals(expected, poly.polygon().vertices());
+    assertEquals(4, ((PolygonElement) items.get(3)).polygon().numVertices());
+  }
+
+  private void verifyLabels(BinaryMask mask, int connectivity) {
+    ConnectedComponents sequential = new ConnectedComponents().withMask(mask).withConnectivity(connectivity)
+        .withParallel(false);
+    ConnectedComponents parallel = new ConnectedComponents().withMask(mask).withConnectivity(connectivity);
+    int[] labels = sequential.labels();
+    assertArrayEquals(labels, parallel.labels());
+    assertArrayEquals(labels, new ConnectedComponents().withImage(mask.toMonoImage(1))
+        .withConnectivity(connectivity).labels());
+    assertArrayEquals(floodFillLabels(mask, connectivity), labels);
+
+    int totalArea = 0;
+    for (ConnectedComponents.Component c : parallel.components())
+      totalArea += c.area();
+    assertEquals(mask.count(), totalArea);
+  }
+
+  /**
+   * Reference labelling, assigning labels in order of first pixel
+   */
+  private static int[] floodFillLabels(BinaryMask mask, int connectivity) {
+    int w = mask.width();
+    int h = mask.height();
+    int[] labels = new int[w * h];
+    int next = 0;
+    int[] stack = new int[w * h * 8 + 1];
+    for (int start = 0; start < labels.length; start++) {
+      if (labels[start] != 0 || !mask.get(start % w, start / w))
+        continue;
+      next++;
+      int sp = 0;
+      stack[sp++] = start;
+      labels[start] = next;
+      while (sp > 0) {
+        int i = stack[--sp];
+        int x = i % w;
+        int y = i / w;
+        for (int dy = -1; dy <= 1; dy++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            if (connectivity == 4 && dx != 0 && dy != 0)
+              continue;
+            int nx = x + dx;
+            int ny = y + dy;
+            if (nx < 0 || ny < 0 || nx >= w || ny >= h)
+              continue;
+            int j = ny * w + nx;
+            if (labels[j] == 0 && mask.get(nx, ny)) {
+              labels[j] = next;
+              stack[sp++] = j;
+            }
+          }
+        }
+      }
+    }
+    return labels;
+  }
+
+  private BinaryMask randomMask(IPoint size, float density) {
+    BinaryMask mask = new BinaryMask(size);
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++)
+        if (random().nextFloat() < density)
+          mask.set(x, y);
+    return mask;
+  }
+}
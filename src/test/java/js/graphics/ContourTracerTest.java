@@ -0,0 +1,149 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.testutil.MyTestCase;
+import static js.base.Tools.*;
+
+public class ContourTracerTest extends MyTestCase {
+
+  @Test
+  public void rectangle() {
+    BinaryMask mask = new BinaryMask(new IPoint(70, 10));
+    mask.fill(new IRect(60, 2, 10, 8));
+    List<ContourTracer.Contour> contours = new ContourTracer().withMask(mask).contours();
+    assertEquals(1, contours.size());
+    ContourTracer.Contour c = contours.get(0);
+    assertFalse(c.isHole());
+    assertEquals(80f, c.signedArea(), 0);
+    List<IPoint> expected = arrayList(new IPoint(60, 2), new IPoint(70, 2), new IPoint(70, 10),
+        new IPoint(60, 10));
+    assertEquals(expected, c.polygon().vertices());
+  }
+
+  @Test
+  public void ringHasHole() {
+    BinaryMask mask = new BinaryMask(new IPoint(20, 20));
+    mask.fill(new IRect(2, 2, 10, 10));
+    BinaryMask hole = new BinaryMask(mask.size()).fill(new IRect(4, 5, 3, 2));
+    mask.andNot(hole);
+    List<ContourTracer.Contour> contours = new ContourTracer().withMask(mask).contours();
+    assertEquals(2, contours.size());
+    float area = 0;
+    int holes = 0;
+    for (ContourTracer.Contour c : contours) {
+      area += c.signedArea();
+      if (c.isHole()) {
+        holes++;
+        assertEquals(-6f, c.signedArea(), 0);
+      }
+    }
+    assertEquals(1, holes);
+    assertEquals(mask.count(), area, 0);
+  }
+
+  @Test
+  public void diagonalPixels() {
+    BinaryMask mask = new BinaryMask(new IPoint(5, 5));
+    mask.set(1, 1).set(2, 2);
+    assertEquals(1, new ContourTracer().withMask(mask).contours().size());
+    assertEquals(8, new ContourTracer().withMask(mask).contours().get(0).polygon().numVertices());
+    assertEquals(2, new ContourTracer().withMask(mask).withConnectivity(4).contours().size());
+    mask = new BinaryMask(new IPoint(5, 5));
+    mask.set(2, 1).set(1, 2);
+    assertEquals(1, new ContourTracer().withMask(mask).contours().size());
+    assertEquals(2, new ContourTracer().withMask(mask).withConnectivity(4).contours().size());
+  }
+
+  @Test
+  public void randomEightConnected() {
+    verifyRandom(8);
+  }
+
+  @Test
+  public void randomFourConnected() {
+    verifyRandom(4);
+  }
+
+  @Test
+  public void simplification() {
+    // A staircase-edged triangle
+    BinaryMask mask = new BinaryMask(new IPoint(60, 60));
+    for (int y = 0; y < 50; y++)
+      mask.fill(new IRect(5, 5 + y, y + 1, 1));
+    ContourTracer exact = new ContourTracer().withMask(mask);
+    ContourTracer simplified = new ContourTracer().withMask(mask).withTolerance(1.5f);
+    assertEquals(1, simplified.contours().size());
+    int exactCount = exact.contours().get(0).polygon().numVertices();
+    int simplifiedCount = simplified.contours().get(0).polygon().numVertices();
+    assertEquals(102, exactCount);
+    assertTrue("vertices:" + simplifiedCount, simplifiedCount <= 4);
+    assertEquals(1, simplified.polygonElements(2, false).size());
+  }
+
+  private void verifyRandom(int connectivity) {
+    BinaryMask mask = new BinaryMask(new IPoint(90, 70));
+    for (int y = 0; y < mask.height(); y++)
+      for (int x = 0; x < mask.width(); x++)
+        if (random().nextFloat() < 0.5f)
+          mask.set(x, y);
+
+    List<ContourTracer.Contour> contours = new ContourTracer().withMask(mask).withConnectivity(connectivity)
+        .contours();
+    assertEquals(contours.size(),
+        new ContourTracer().withImage(mask.toMonoImage(1)).withConnectivity(connectivity).contours().size());
+
+    float area = 0;
+    int outer = 0;
+    int holes = 0;
+    for (ContourTracer.Contour c : contours) {
+      area += c.signedArea();
+      if (c.isHole())
+        holes++;
+      else
+        outer++;
+    }
+    assertEquals(mask.count(), area, 0);
+    assertEquals(new ConnectedComponents().withMask(mask).withConnectivity(connectivity).componentCount(), outer);
+
+    // Holes are background components (with the complementary connectivity) not touching the border
+    int expectedHoles = 0;
+    for (ConnectedComponents.Component c : new ConnectedComponents().withMask(mask.copy().invert())
+        .withConnectivity(12 - connectivity).components()) {
+      IRect b = c.bounds();
+      if (b.x > 0 && b.y > 0 && b.endX() < mask.width() && b.endY() < mask.height())
+        expectedHoles++;
+    }
+    assertEquals(expectedHoles, holes);
+  }
+}
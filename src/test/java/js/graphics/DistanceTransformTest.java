@@ -0,0 +1,116 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class DistanceTransformTest extends MyTestCase {
+
+  @Test
+  public void matchesBruteForce() {
+    verifyDistances(randomMask(new IPoint(70, 45), 0.9f), false);
+  }
+
+  @Test
+  public void matchesBruteForceWithOutsideBackground() {
+    verifyDistances(randomMask(new IPoint(70, 45), 0.9f), true);
+  }
+
+  @Test
+  public void sparseBackground() {
+    BinaryMask mask = new BinaryMask(new IPoint(90, 60));
+    mask.invert();
+    mask.clear(5, 50);
+    mask.clear(80, 3);
+    verifyDistances(mask, false);
+    verifyDistances(mask, true);
+  }
+
+  @Test
+  public void noBackground() {
+    BinaryMask mask = new BinaryMask(new IPoint(20, 10)).invert();
+    int[] dist = DistanceTransform.squaredDistances(mask, false);
+    for (int d : dist)
+      assertEquals(DistanceTransform.INFINITE, d);
+    verifyDistances(mask, true);
+  }
+
+  @Test
+  public void monoImageMatchesMask() {
+    BinaryMask mask = randomMask(new IPoint(64, 33), 0.8f);
+    MonoImage image = mask.toMonoImage(500);
+    assertArrayEquals(DistanceTransform.squaredDistances(mask, true),
+        DistanceTransform.squaredDistances(image, true));
+    MonoImage eroded = DistanceTransform.erode(image, 2);
+    assertEquals(DistanceTransform.erode(mask, 2), BinaryMask.from(eroded));
+  }
+
+  @Test
+  public void erodeAndDilateMatchDisc() {
+    BinaryMask mask = randomMask(new IPoint(120, 50), 0.95f);
+    for (int radius = 0; radius <= 4; radius++) {
+      StructuringElement disc = StructuringElement.disc(radius);
+      assertEquals(mask.erode(disc), DistanceTransform.erode(mask, radius));
+      BinaryMask sparse = randomMask(mask.size(), 0.03f);
+      assertEquals(sparse.dilate(disc), DistanceTransform.dilate(sparse, radius));
+    }
+  }
+
+  private void verifyDistances(BinaryMask mask, boolean outsideIsBackground) {
+    int[] dist = DistanceTransform.squaredDistances(mask, outsideIsBackground);
+    int w = mask.width();
+    int h = mask.height();
+    int i = 0;
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++, i++) {
+        long best = DistanceTransform.INFINITE;
+        for (int y2 = -1; y2 <= h; y2++) {
+          for (int x2 = -1; x2 <= w; x2++) {
+            boolean outside = x2 < 0 || y2 < 0 || x2 >= w || y2 >= h;
+            boolean background = outside ? outsideIsBackground : !mask.get(x2, y2);
+            if (background)
+              best = Math.min(best, (long) (x - x2) * (x - x2) + (long) (y - y2) * (y - y2));
+          }
+        }
+        assertEquals("x:" + x + " y:" + y, best, dist[i]);
+      }
+    }
+  }
+
+  private BinaryMask randomMask(IPoint size, float density) {
+    BinaryMask mask = new BinaryMask(size);
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++)
+        if (random().nextFloat() < density)
+          mask.set(x, y);
+    return mask;
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import js.geometry.FPoint;
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class FftTest extends MyTestCase {
+
+  @Test
+  public void matchesDirectTransform() {
+    int n = 32;
+    float[] re = new float[n];
+    float[] im = new float[n];
+    for (int i = 0; i < n; i++) {
+      re[i] = random().nextFloat() - 0.5f;
+      im[i] = random().nextFloat() - 0.5f;
+    }
+    float[] fr = re.clone();
+    float[] fi = im.clone();
+    Fft.forLength(n).transform(fr, fi, 0, false);
+    for (int k = 0; k < n; k++) {
+      double sr = 0;
+      double si = 0;
+      for (int j = 0; j < n; j++) {
+        double angle = -2 * Math.PI * j * k / n;
+        sr += re[j] * Math.cos(angle) - im[j] * Math.sin(angle);
+        si += re[j] * Math.sin(angle) + im[j] * Math.cos(angle);
+      }
+      assertEquals(sr, fr[k], 1e-4);
+      assertEquals(si, fi[k], 1e-4);
+    }
+  }
+
+  @Test
+  public void paddedLength() {
+    assertEquals(1, Fft.paddedLength(1));
+    assertEquals(2, Fft.paddedLength(2));
+    assertEquals(4, Fft.paddedLength(3));
+    assertEquals(512, Fft.paddedLength(512));
+    assertEquals(1024, Fft.paddedLength(513));
+  }
+
+  @Test
+  public void realRoundTrip() {
+    roundTrip(new IPoint(64, 32));
+    roundTrip(new IPoint(16, 1));
+    roundTrip(new IPoint(2, 8));
+  }
+
+  private void roundTrip(IPoint size) {
+    float[] image = new float[size.x * size.y];
+    for (int i = 0; i < image.length; i++)
+      image[i] = random().nextInt(1000);
+    Fft2d fft = new Fft2d(size);
+    fft.forward(image);
+
+    // The DC term is the sum of the pixels
+    double sum = 0;
+    for (float v : image)
+      sum += v;
+    assertEquals(sum, fft.spectrumRe()[0], sum * 1e-5);
+
+    float[] result = new float[image.length];
+    fft.inverse(result);
+    for (int i = 0; i < image.length; i++)
+      assertEquals(image[i], result[i], 1e-2);
+  }
+
+  @Test
+  public void convolutionMatchesDirect() {
+    IPoint size = new IPoint(37, 29);
+    IPoint kernelSize = new IPoint(7, 5);
+    MonoImage image = randomImage(size);
+    float[] kernel = new float[kernelSize.x * kernelSize.y];
+    for (int i = 0; i < kernel.length; i++)
+      kernel[i] = random().nextFloat();
+
+    float[] result = new FftConvolver(size, kernel, kernelSize).apply(image, null);
+
+    int cx = kernelSize.x / 2;
+    int cy = kernelSize.y / 2;
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++) {
+        double sum = 0;
+        for (int ky = 0; ky < kernelSize.y; ky++)
+          for (int kx = 0; kx < kernelSize.x; kx++) {
+            int sx = clamp(x - (kx - cx), size.x);
+            int sy = clamp(y - (ky - cy), size.y);
+            sum += kernel[ky * kernelSize.x + kx] * (image.pixels()[sy * size.x + sx] & 0xffff);
+          }
+        assertEquals(sum, result[y * size.x + x], 1 + sum * 1e-4);
+      }
+  }
+
+  @Test
+  public void phaseCorrelation() {
+    IPoint size = new IPoint(96, 64);
+    int shiftX = 5;
+    int shiftY = -3;
+    MonoImage base = smoothImage(new IPoint(size.x + 20, size.y + 20));
+    MonoImage a = crop(base, 10, 10, size);
+    MonoImage b = crop(base, 10 - shiftX, 10 - shiftY, size);
+
+    PhaseCorrelator correlator = new PhaseCorrelator(size);
+    FPoint t = correlator.translation(a, b);
+    assertEquals(shiftX, t.x, 0.5);
+    assertEquals(shiftY, t.y, 0.5);
+
+    // Streaming: the next frame is shifted back
+    t = correlator.next(a);
+    assertEquals(-shiftX, t.x, 0.5);
+    assertEquals(-shiftY, t.y, 0.5);
+  }
+
+  private static int clamp(int v, int length) {
+    return Math.max(0, Math.min(length - 1, v));
+  }
+
+  private MonoImage randomImage(IPoint size) {
+    short[] pixels = new short[size.x * size.y];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) random().nextInt(5000);
+    return MonoImageUtil.construct(size, pixels);
+  }
+
+  private MonoImage smoothImage(IPoint size) {
+    short[] pixels = new short[size.x * size.y];
+    for (int i = 0; i < 30; i++) {
+      int cx = random().nextInt(size.x);
+      int cy = random().nextInt(size.y);
+      int radius = 3 + random().nextInt(8);
+      for (int y = 0; y < size.y; y++)
+        for (int x = 0; x < size.x; x++) {
+          int dx = x - cx;
+          int dy = y - cy;
+          if (dx * dx + dy * dy <= radius * radius)
+            pixels[y * size.x + x] += 500;
+        }
+    }
+    return MonoImageUtil.construct(size, pixels);
+  }
+
+  private static MonoImage crop(MonoImage image, int x0, int y0, IPoint size) {
+    short[] pixels = new short[size.x * size.y];
+    for (int y = 0; y < size.y; y++)
+      System.arraycopy(image.pixels(), (y + y0) * image.size().x + x0, pixels, y * size.x, size.x);
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class FlatFieldCorrectorTest extends MyTestCase {
+
+  @Test
+  public void correctionDuringDecodeMatchesCorrectionAfter() {
+    // Including heights of one and two rows, where correction can't lag the
+    // decompression by two rows
+    for (int height : new int[] { 1, 2, 3, 5, 40 }) {
+      IPoint size = new IPoint(17, height);
+      MonoImage image = randomImage(size, 1000, 20000);
+      File file = generatedFile("image_" + height + ".rax");
+      ImgUtil.writeRAX(files(), image, file);
+
+      FlatFieldCorrector corrector = randomCorrector(size);
+      MonoImage expected = ImgUtil.readRax(file);
+      corrector.apply(expected);
+      assertArrayEquals("height " + height, expected.pixels(), ImgUtil.readRax(file, corrector).pixels());
+    }
+  }
+
+  @Test
+  public void twoPointCalibrationFlattensScenes() {
+    Sensor sensor = new Sensor(new IPoint(32, 24));
+    FlatFieldCorrector corrector = FlatFieldCorrector.calibrate(sensor.frames(5000, 8), sensor.frames(15000, 8));
+    // Scenes between, and beyond, the calibration scenes
+    for (int radiance : new int[] { 5000, 10000, 18000 }) {
+      MonoImage frame = sensor.frame(radiance);
+      assertTrue(spread(frame) > 1000);
+      corrector.apply(frame);
+      assertTrue("radiance " + radiance, spread(frame) < 60);
+    }
+  }
+
+  @Test
+  public void onePointCalibrationFlattensScene() {
+    Sensor sensor = new Sensor(new IPoint(32, 24));
+    sensor.unitGains();
+    FlatFieldCorrector corrector = FlatFieldCorrector.calibrateOffsets(sensor.frames(8000, 8));
+    MonoImage frame = sensor.frame(8000);
+    corrector.apply(frame);
+    assertTrue(spread(frame) < 40);
+  }
+
+  @Test
+  public void clampsToUnsignedRange() {
+    IPoint size = new IPoint(2, 1);
+    int one = 1 << FlatFieldCorrector.GAIN_BITS;
+    FlatFieldCorrector corrector = new FlatFieldCorrector(size, new int[] { one, 2 * one },
+        new int[] { -500, 1000 });
+    MonoImage frame = MonoImageUtil.construct(size, new short[] { 100, (short) 40000 });
+    corrector.apply(frame);
+    assertEquals(0, frame.pixels()[0] & 0xffff);
+    assertEquals(0xffff, frame.pixels()[1] & 0xffff);
+  }
+
+  /**
+   * A simulated sensor, with per-pixel gains and offsets, and noise
+   */
+  private class Sensor {
+
+    Sensor(IPoint size) {
+      mSize = size;
+      int n = size.product();
+      mGains = new double[n];
+      mOffsets = new double[n];
+      for (int i = 0; i < n; i++) {
+        mGains[i] = 0.8 + 0.4 * random().nextDouble();
+        mOffsets[i] = random().nextInt(1001) - 500;
+      }
+    }
+
+    void unitGains() {
+      Arrays.fill(mGains, 1);
+    }
+
+    MonoImage frame(int radiance) {
+      short[] pixels = new short[mSize.product()];
+      for (int i = 0; i < pixels.length; i++)
+        pixels[i] = (short) Math.round(mGains[i] * radiance + mOffsets[i] + random().nextInt(11) - 5);
+      return MonoImageUtil.construct(mSize, pixels);
+    }
+
+    List<MonoImage> frames(int radiance, int count) {
+      List<MonoImage> frames = arrayList();
+      for (int i = 0; i < count; i++)
+        frames.add(frame(radiance));
+      return frames;
+    }
+
+    private final IPoint mSize;
+    private final double[] mGains;
+    private final double[] mOffsets;
+  }
+
+  private static int spread(MonoImage image) {
+    int min = 0xffff;
+    int max = 0;
+    for (short p : image.pixels()) {
+      min = Math.min(min, p & 0xffff);
+      max = Math.max(max, p & 0xffff);
+    }
+    return max - min;
+  }
+
+  private FlatFieldCorrector randomCorrector(IPoint size) {
+    int n = size.product();
+    int[] gains = new int[n];
+    int[] offsets = new int[n];
+    for (int i = 0; i < n; i++) {
+      gains[i] = (int) ((0.5 + random().nextDouble()) * (1 << FlatFieldCorrector.GAIN_BITS));
+      offsets[i] = random().nextInt(2001) - 1000;
+    }
+    return new FlatFieldCorrector(size, gains, offsets);
+  }
+
+  private MonoImage randomImage(IPoint size, int min, int max) {
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) (min + random().nextInt(max - min));
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.testutil.MyTestCase;
+
+public class FloatRendererTest extends MyTestCase {
+
+  @Test
+  public void grayMatchesScalarConversion() {
+    float[] floats = testValues(SIZE.product());
+    BufferedImage image = new FloatRenderer().render(floats, SIZE, 1, null);
+    assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+    for (int i = 0; i < floats.length; i++) {
+      int v = toByte(floats[i]);
+      assertEquals("value " + floats[i], 0xff000000 | (v << 16) | (v << 8) | v, pixel(image, i));
+    }
+  }
+
+  @Test
+  public void rgbMatchesScalarConversion() {
+    float[] floats = testValues(SIZE.product() * 3);
+    BufferedImage image = new FloatRenderer().render(floats, SIZE, 3, null);
+    for (int i = 0; i < SIZE.product(); i++) {
+      int expected = 0xff000000 | (toByte(floats[i * 3]) << 16) | (toByte(floats[i * 3 + 1]) << 8)
+          | toByte(floats[i * 3 + 2]);
+      assertEquals(expected, pixel(image, i));
+    }
+  }
+
+  @Test
+  public void matchesFloatsToBufferedImage() {
+    for (int channels : new int[] { 1, 3 }) {
+      float[] floats = testValues(SIZE.product() * channels);
+      BufferedImage expected = ImgUtil.floatsToBufferedImage(floats, SIZE, channels);
+      BufferedImage actual = new FloatRenderer().render(floats, SIZE, channels, null);
+      for (int i = 0; i < SIZE.product(); i++)
+        assertEquals(pixel(expected, i), pixel(actual, i));
+    }
+  }
+
+  @Test
+  public void rangeAndColormaps() {
+    int[][] maps = { FloatRenderer.heatColormap(), FloatRenderer.rampColormap(0x8040ff) };
+    float min = -2;
+    float max = 3;
+    FloatRenderer renderer = new FloatRenderer().withRange(min, max).withColormaps(maps);
+    float[] floats = new float[SIZE.product() * 2];
+    Random r = random();
+    for (int i = 0; i < floats.length; i++)
+      floats[i] = r.nextFloat() * 7 - 3;
+    int[] pixels = new int[SIZE.product()];
+    renderer.renderPixels(floats, SIZE, 2, pixels);
+    for (int i = 0; i < pixels.length; i++) {
+      int[] sum = new int[3];
+      for (int c = 0; c < 2; c++) {
+        double f = (floats[i * 2 + c] - min) / (max - min) * 255;
+        int level = (int) Math.round(Math.max(0, Math.min(255, f)));
+        int color = maps[c][level];
+        for (int k = 0; k < 3; k++)
+          sum[k] += (color >> (16 - 8 * k)) & 0xff;
+      }
+      int expected = (Math.min(255, sum[0]) << 16) | (Math.min(255, sum[1]) << 8) | Math.min(255, sum[2]);
+      assertEquals(expected, pixels[i] & 0xffffff);
+    }
+  }
+
+  @Test
+  public void colormapLevels() {
+    int[] gray = FloatRenderer.grayColormap();
+    int[] heat = FloatRenderer.heatColormap();
+    assertEquals(0, gray[0] & 0xffffff);
+    assertEquals(0xffffff, gray[255] & 0xffffff);
+    assertEquals(0x808080, gray[128] & 0xffffff);
+    assertEquals(0, heat[0] & 0xffffff);
+    assertEquals(0xffffff, heat[255] & 0xffffff);
+    assertEquals(0xff0000, heat[85] & 0xffffff);
+    assertEquals(0x7f0000, FloatRenderer.rampColormap(0xff0000)[127] & 0xffffff);
+  }
+
+  @Test
+  public void reusesTarget() {
+    FloatRenderer renderer = new FloatRenderer();
+    float[] floats = testValues(SIZE.product());
+    BufferedImage target = renderer.render(floats, SIZE, 1, null);
+    assertSame(target, renderer.render(floats, SIZE, 1, target));
+    BufferedImage other = renderer.render(new float[4], new IPoint(2, 2), 1, target);
+    assertNotSame(target, other);
+    assertEquals(new IPoint(2, 2), ImgUtil.size(other));
+  }
+
+  /**
+   * Convert a float to a byte the way ImgUtil.floatsToBufferedImage()
+   * originally did, one component at a time
+   */
+  private static int toByte(float f) {
+    if (Float.isNaN(f))
+      return 0;
+    f = Math.max(0, Math.min(255, f * FLOAT_TO_RGB));
+    return (int) (f + 0.5f);
+  }
+
+  /**
+   * Random values, including some beyond the range, and values at and near
+   * each level and the boundaries between levels
+   */
+  private float[] testValues(int count) {
+    Random r = random();
+    float[] floats = new float[count];
+    for (int i = 0; i < count; i++) {
+      float f;
+      int level = r.nextInt(256);
+      switch (r.nextInt(6)) {
+      default:
+        f = r.nextFloat() * 1.4f - 0.2f;
+        break;
+      case 1:
+        f = level / 255f;
+        break;
+      case 2:
+        f = (level + 0.5f) / 255f;
+        break;
+      case 3:
+        f = Math.nextUp((level + 0.5f) / 255f);
+        break;
+      case 4:
+        f = Math.nextDown((level + 0.5f) / 255f);
+        break;
+      case 5:
+        f = new float[] { Float.NaN, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, -0f, 1f,
+            Math.nextUp(1f) }[r.nextInt(6)];
+        break;
+      }
+      floats[i] = f;
+    }
+    return floats;
+  }
+
+  private static int pixel(BufferedImage image, int index) {
+    return image.getRGB(index % image.getWidth(), index / image.getWidth());
+  }
+
+  // As defined by ImgUtil (this differs slightly from 255)
+  private static final float FLOAT_TO_RGB = 1 / (1.0f / 255);
+  private static final IPoint SIZE = new IPoint(50, 70);
+}
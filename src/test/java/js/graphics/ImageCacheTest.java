@@ -0,0 +1,226 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.testutil.MyTestCase;
+
+public class ImageCacheTest extends MyTestCase {
+
+  @Test
+  public void concurrentCallersShareOneDecode() throws Exception {
+    ImageCache cache = new ImageCache(1 << 20);
+    File file = writeImage("a.png", 20);
+    AtomicInteger decodes = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    Supplier<Object> decoder = () -> {
+      decodes.incrementAndGet();
+      await(release);
+      return ImgUtil.read(file);
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    Object image;
+    try {
+      Future<Object> first = executor.submit(() -> cache.get(file, "p", decoder));
+      waitForDecodes(decodes, 1);
+      Future<Object> second = executor.submit(() -> cache.get(file, "p", decoder));
+      Future<Object> third = executor.submit(() -> cache.get(file, "p", decoder));
+      waitForMetric(cache, "shared_decodes", 2);
+      release.countDown();
+      image = first.get();
+      assertSame(image, second.get());
+      assertSame(image, third.get());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, decodes.get());
+    assertEquals(1, metric(cache, "decodes"));
+    assertSame(image, cache.get(file, "p", decoder));
+    assertEquals(1, decodes.get());
+  }
+
+  @Test
+  public void errorsReachWaitersAndAreNotCached() throws Exception {
+    ImageCache cache = new ImageCache(1 << 20);
+    File file = writeImage("a.png", 20);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger decodes = new AtomicInteger();
+    Supplier<Object> failingDecoder = () -> {
+      decodes.incrementAndGet();
+      await(release);
+      throw new OutOfMemoryError("simulated");
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Object> first = executor.submit(() -> cache.get(file, "p", failingDecoder));
+      waitForDecodes(decodes, 1);
+      Future<Object> second = executor.submit(() -> cache.get(file, "p", failingDecoder));
+      waitForMetric(cache, "shared_decodes", 1);
+      release.countDown();
+      for (Future<Object> f : new Future[] { first, second }) {
+        try {
+          // Time out rather than hang, if a waiter isn't told of the error
+          f.get(10, TimeUnit.SECONDS);
+          fail("expected an error");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof OutOfMemoryError);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // The failure isn't cached, so the next request decodes again
+    assertNotNull(cache.get(file, "p", () -> ImgUtil.read(file)));
+    assertEquals(2, metric(cache, "decodes"));
+  }
+
+  @Test
+  public void failedReadsAreNotCached() {
+    ImageCache cache = new ImageCache(1 << 20);
+    File file = new File(generatedFile("a.png").getParentFile(), "missing.png");
+    file.delete();
+    try {
+      cache.read(file);
+      fail("expected the read to fail");
+    } catch (RuntimeException e) {
+      // expected
+    }
+    assertEquals(0, metric(cache, "entries"));
+    writeImage("missing.png", 20);
+    assertNotNull(cache.read(file));
+    assertEquals(1, metric(cache, "entries"));
+  }
+
+  @Test
+  public void keysInvalidatedByChanges() {
+    ImageCache cache = new ImageCache(1 << 20);
+    File file = writeImage("a.png", 20);
+    BufferedImage image = cache.read(file);
+    assertSame(image, cache.read(file));
+    assertEquals(1, metric(cache, "decodes"));
+
+    // Different length
+    writeImage("a.png", 21);
+    BufferedImage image2 = cache.read(file);
+    assertNotSame(image, image2);
+    assertEquals(21, image2.getWidth());
+    assertEquals(2, metric(cache, "decodes"));
+
+    // Same length, different modification time
+    assertTrue(file.setLastModified(file.lastModified() - 10000));
+    assertNotSame(image2, cache.read(file));
+    assertEquals(3, metric(cache, "decodes"));
+
+    // Different parameters
+    assertEquals(11, cache.read(file, null, 2).getWidth());
+    assertEquals(4, metric(cache, "decodes"));
+  }
+
+  @Test
+  public void evictsUnderBudget() {
+    File a = writeImage("a.png", 20);
+    File b = writeImage("b.png", 20);
+    // Room for one image, but not two
+    long weight = 20 * 20 * 3;
+    ImageCache cache = new ImageCache(weight * 3 / 2);
+    BufferedImage imageA = cache.read(a);
+    assertEquals(BufferedImage.TYPE_3BYTE_BGR, imageA.getType());
+    assertEquals(weight, metric(cache, "weight"));
+    cache.read(b);
+    assertEquals(1, metric(cache, "evictions"));
+    assertEquals(1, metric(cache, "entries"));
+    assertEquals(weight, metric(cache, "weight"));
+    assertNotSame(imageA, cache.read(a));
+    assertEquals(3, metric(cache, "decodes"));
+    assertEquals(2, metric(cache, "evictions"));
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    ImageCache cache = new ImageCache(1 << 20);
+    File file = writeImage("a.png", 20);
+    cache.read(file);
+    cache.read(file);
+    cache.read(file);
+    cache.read(file, null, 2);
+    assertEquals(2, metric(cache, "hits"));
+    assertEquals(2, metric(cache, "misses"));
+    assertEquals(2, metric(cache, "decodes"));
+    assertEquals(2, metric(cache, "entries"));
+    cache.clear();
+    assertEquals(0, metric(cache, "entries"));
+    assertEquals(0, metric(cache, "weight"));
+  }
+
+  private File writeImage(String name, int width) {
+    File file = generatedFile(name);
+    BufferedImage image = new BufferedImage(width, 20, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < 20; y++)
+      for (int x = 0; x < width; x++)
+        image.setRGB(x, y, random().nextInt(0x1000000));
+    ImgUtil.writeImage(files(), image, file);
+    return file;
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void waitForDecodes(AtomicInteger decodes, int count) throws InterruptedException {
+    while (decodes.get() < count)
+      Thread.sleep(1);
+  }
+
+  private static void waitForMetric(ImageCache cache, String key, long value) throws InterruptedException {
+    while (metric(cache, key) < value)
+      Thread.sleep(1);
+  }
+
+  private static long metric(ImageCache cache, String key) {
+    return cache.metrics().opt(key, 0L);
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.testutil.MyTestCase;
+
+public class ImageConverterTest extends MyTestCase {
+
+  @Test
+  public void matchesDrawImage() {
+    for (int sourceType : TYPES) {
+      BufferedImage source = randomImage(new IPoint(53, 150), sourceType);
+      for (int targetType : TYPES) {
+        assertTrue(ImageConverter.isDirect(source, targetType));
+        BufferedImage converted = ImageConverter.convert(source, targetType);
+        assertEquals(targetType, converted.getType());
+        String pair = sourceType + " -> " + targetType;
+        if (source.getColorModel().hasAlpha() && converted.getColorModel().hasAlpha()) {
+          // Conversion between translucent types is exact (drawImage can lose precision)
+          assertArrayEquals(pair, argb(source), argb(converted));
+        } else
+          assertArrayEquals(pair, samples(drawImage(source, targetType)), samples(converted));
+      }
+    }
+  }
+
+  @Test
+  public void grayWeights() {
+    int r = 10, g = 200, b = 50;
+    BufferedImage source = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    source.setRGB(0, 0, (r << 16) | (g << 8) | b);
+
+    int gray8 = (77 * r + 150 * g + 29 * b + 128) >> 8;
+    BufferedImage converted = ImageConverter.convert(source, BufferedImage.TYPE_BYTE_GRAY);
+    assertEquals(gray8, converted.getRaster().getSample(0, 0, 0));
+    assertEquals(gray8, drawImage(source, BufferedImage.TYPE_BYTE_GRAY).getRaster().getSample(0, 0, 0));
+
+    int gray16 = (19672 * r + 38621 * g + 7500 * b) >> 8;
+    converted = ImageConverter.convert(source, BufferedImage.TYPE_USHORT_GRAY);
+    assertEquals(gray16, converted.getRaster().getSample(0, 0, 0));
+    assertEquals(gray16, drawImage(source, BufferedImage.TYPE_USHORT_GRAY).getRaster().getSample(0, 0, 0));
+  }
+
+  @Test
+  public void translucentToOpaqueCompositesOverBlack() {
+    BufferedImage source = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+    source.setRGB(0, 0, (128 << 24) | (200 << 16) | (100 << 8) | 50);
+    BufferedImage converted = ImageConverter.convert(source, BufferedImage.TYPE_INT_RGB);
+    int expected = (((128 * 200 + 127) / 255) << 16) | (((128 * 100 + 127) / 255) << 8) | ((128 * 50 + 127) / 255);
+    assertEquals(expected, converted.getRGB(0, 0) & 0xffffff);
+  }
+
+  private static final int[] TYPES = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+      BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY };
+
+  /**
+   * Convert an image the old way, by drawing it into an image of the target type
+   */
+  private static BufferedImage drawImage(BufferedImage source, int targetType) {
+    BufferedImage target = new BufferedImage(source.getWidth(), source.getHeight(), targetType);
+    Graphics g = target.createGraphics();
+    g.drawImage(source, 0, 0, null);
+    g.dispose();
+    return target;
+  }
+
+  private static int[] samples(BufferedImage image) {
+    Raster raster = image.getRaster();
+    return raster.getPixels(0, 0, raster.getWidth(), raster.getHeight(), (int[]) null);
+  }
+
+  private static int[] argb(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  /**
+   * Construct an image of random samples (including fully transparent, partly
+   * transparent and opaque pixels, if the image has alpha)
+   */
+  private BufferedImage randomImage(IPoint size, int type) {
+    BufferedImage image = new BufferedImage(size.x, size.y, type);
+    WritableRaster raster = image.getRaster();
+    int bands = raster.getNumBands();
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++)
+        for (int band = 0; band < bands; band++) {
+          int bits = raster.getSampleModel().getSampleSize(band);
+          int sample = random().nextInt(1 << bits);
+          if (band == 3 && x % 3 != 2)
+            sample = (x % 3 == 0) ? 0 : (1 << bits) - 1;
+          raster.setSample(x, y, band, sample);
+        }
+    return image;
+  }
+}
@@ -0,0 +1,214 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static js.base.Tools.*;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.Test;
+
+import js.file.Files;
+import js.geometry.IPoint;
+import js.testutil.MyTestCase;
+
+public class ImageEncoderTest extends MyTestCase {
+
+  @Test
+  public void jpegQualityApplied() throws Exception {
+    BufferedImage image = randomImage(BufferedImage.TYPE_3BYTE_BGR);
+    for (float quality : new float[] { 0.2f, 0.9f }) {
+      byte[] jpeg = new ImageEncoder().withJpegQuality(quality).toJPEG(image);
+      assertArrayEquals(imageIOJpeg(image, quality, false), jpeg);
+    }
+    assertTrue(new ImageEncoder().withJpegQuality(0.2f).toJPEG(image).length < new ImageEncoder()
+        .withJpegQuality(0.9f).toJPEG(image).length);
+  }
+
+  @Test
+  public void jpegProgressiveApplied() throws Exception {
+    BufferedImage image = randomImage(BufferedImage.TYPE_3BYTE_BGR);
+    byte[] baseline = new ImageEncoder().toJPEG(image);
+    byte[] progressive = new ImageEncoder().withJpegProgressive(true).toJPEG(image);
+    assertTrue(hasMarker(baseline, SOF0));
+    assertFalse(hasMarker(baseline, SOF2));
+    assertTrue(hasMarker(progressive, SOF2));
+    assertFalse(hasMarker(progressive, SOF0));
+    assertArrayEquals(imageIOJpeg(image, null, true), progressive);
+  }
+
+  @Test
+  public void encodeAllMatchesSequential() {
+    List<BufferedImage> images = arrayList();
+    for (int i = 0; i < 6; i++)
+      images.add(randomImage(i % 2 == 0 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_BYTE_GRAY));
+    ImageEncoder encoder = new ImageEncoder();
+    for (String ext : new String[] { ImgUtil.EXT_PNG, ImgUtil.EXT_JPEG }) {
+      List<ImageEncoder.Output> outputs = encoder.encodeAll(images, ext, null);
+      assertEquals(images.size(), outputs.size());
+      for (int i = 0; i < images.size(); i++)
+        assertArrayEquals(encoder.toBytes(images.get(i), ext), outputs.get(i).toByteArray());
+    }
+  }
+
+  @Test
+  public void reusedOutputsAreReset() {
+    BufferedImage image = randomImage(BufferedImage.TYPE_INT_RGB);
+    ImageEncoder encoder = new ImageEncoder();
+    byte[] expected = encoder.toPNG(image);
+
+    ImageEncoder.Output output = new ImageEncoder.Output();
+    output.write(new byte[5000], 0, 5000);
+    assertSame(output, encoder.encode(image, ImgUtil.EXT_PNG, output));
+    assertArrayEquals(expected, output.toByteArray());
+    assertArrayEquals(expected, Arrays.copyOf(output.array(), output.size()));
+
+    List<ImageEncoder.Output> outputs = arrayList(output, new ImageEncoder.Output());
+    encoder.encodeAll(arrayList(image, image), ImgUtil.EXT_PNG, outputs);
+    for (ImageEncoder.Output out : outputs)
+      assertArrayEquals(expected, out.toByteArray());
+  }
+
+  @Test
+  public void pngDecodesToSamePixels() throws Exception {
+    for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY }) {
+      BufferedImage image = randomImage(type);
+      BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(ImgUtil.toPNG(image)));
+      assertArrayEquals(samples(image), samples(decoded));
+      assertArrayEquals(samples(image), samples(ImgUtil.read(ImgUtil.toPNG(image))));
+    }
+  }
+
+  @Test
+  public void jpegDecodesToSamePixels() throws Exception {
+    BufferedImage image = randomImage(BufferedImage.TYPE_3BYTE_BGR);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", expected);
+    BufferedImage expectedImage = ImageIO.read(new ByteArrayInputStream(expected.toByteArray()));
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(ImgUtil.toJPEG(image, null)));
+    assertArrayEquals(samples(expectedImage), samples(decoded));
+  }
+
+  @Test
+  public void writeImageJpeg() {
+    BufferedImage image = randomImage(BufferedImage.TYPE_INT_RGB);
+    File dest = generatedFile("image.jpg");
+    ImgUtil.writeImage(files(), image, dest);
+    byte[] bytes = Files.toByteArray(dest, "image.jpg");
+    assertEquals(0xff, bytes[0] & 0xff);
+    assertEquals(0xd8, bytes[1] & 0xff);
+    assertArrayEquals(ImgUtil.toJPEG(image, null), bytes);
+
+    File streamed = generatedFile("streamed.jpg");
+    ImgUtil.writeImage(image, streamed);
+    assertArrayEquals(bytes, Files.toByteArray(streamed, "streamed.jpg"));
+  }
+
+  @Test
+  public void failedWriteLeavesDestinationAlone() {
+    File dest = generatedFile("image.jpg");
+    byte[] original = new ImageEncoder().toJPEG(randomImage(BufferedImage.TYPE_INT_RGB));
+    Files.S.write(original, dest);
+    File directory = dest.getParentFile();
+    int fileCount = directory.list().length;
+
+    // A translucent image can't be encoded as a JPEG
+    try {
+      new ImageEncoder().write(randomImage(BufferedImage.TYPE_INT_ARGB), dest);
+      fail("expected the encode to fail");
+    } catch (RuntimeException e) {
+      // expected
+    }
+    assertEquals(fileCount, directory.list().length);
+    assertArrayEquals(original, Files.toByteArray(dest, "image.jpg"));
+  }
+
+  private static final int SOF0 = 0xc0;
+  private static final int SOF2 = 0xc2;
+
+  private static boolean hasMarker(byte[] jpeg, int marker) {
+    for (int i = 0; i + 1 < jpeg.length; i++)
+      if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xff) == marker)
+        return true;
+    return false;
+  }
+
+  /**
+   * Encode a JPEG directly with ImageIO, with the given settings
+   */
+  private static byte[] imageIOJpeg(BufferedImage image, Float quality, boolean progressive) throws Exception {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+    JPEGImageWriteParam params = new JPEGImageWriteParam(null);
+    params.setProgressiveMode(progressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+    if (quality != null) {
+      params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      params.setOptimizeHuffmanTables(true);
+      params.setCompressionQuality(quality);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(bytes);
+    writer.setOutput(stream);
+    writer.write(null, new IIOImage(image, null, null), params);
+    stream.close();
+    writer.dispose();
+    return bytes.toByteArray();
+  }
+
+  private static int[] samples(BufferedImage image) {
+    return image.getRaster().getPixels(0, 0, image.getWidth(), image.getHeight(), (int[]) null);
+  }
+
+  /**
+   * Construct an image with smooth gradients and some noise, so JPEG settings
+   * make a difference
+   */
+  private BufferedImage randomImage(int type) {
+    IPoint size = new IPoint(120, 90);
+    BufferedImage image = new BufferedImage(size.x, size.y, type);
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++) {
+        int noise = random().nextInt(40);
+        int r = (x * 2 + noise) & 0xff;
+        int g = (y * 2 + noise) & 0xff;
+        int b = (x + y + noise) & 0xff;
+        image.setRGB(x, y, (random().nextInt(256) << 24) | (r << 16) | (g << 8) | b);
+      }
+    return image;
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.geometry.Matrix;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class ImagePyramidTest extends MyTestCase {
+
+  @Test
+  public void sizes() {
+    ImagePyramid p = ImagePyramid.with(monoImage(64, 48));
+    IPoint[] expected = { new IPoint(64, 48), new IPoint(32, 24), new IPoint(16, 12), new IPoint(8, 6),
+        new IPoint(4, 3), new IPoint(2, 2), new IPoint(1, 1), new IPoint(1, 1) };
+    for (int level = 0; level < expected.length; level++)
+      assertEquals(expected[level], p.size(level));
+    assertEquals(5, p.levelCount(3));
+    assertEquals(4, p.levelCount(4));
+    assertEquals(7, p.levelCount(1));
+  }
+
+  @Test
+  public void ratioTwoIsOneThreeThreeOne() {
+    MonoImage image = monoImage(32, 24);
+    MonoImage level = ImagePyramid.with(image).monoImage(1);
+    int[] taps = { 1, 3, 3, 1 };
+    // Interior pixels, whose taps lie entirely within the image
+    for (int y = 1; y < 11; y++) {
+      for (int x = 1; x < 15; x++) {
+        int sum = 0;
+        for (int j = 0; j < 4; j++)
+          for (int i = 0; i < 4; i++)
+            sum += taps[i] * taps[j] * pixel(image, 2 * x - 1 + i, 2 * y - 1 + j);
+        assertEquals((sum + 32) / 64, pixel(level, x, y));
+      }
+    }
+  }
+
+  @Test
+  public void monoLevelsMatchTentFilter() {
+    verifyMono(ImagePyramid.with(monoImage(64, 48)), 5);
+    verifyMono(ImagePyramid.with(monoImage(45, 31)), 4);
+    verifyMono(ImagePyramid.with(monoImage(50, 40)).withRatio(1.5f), 5);
+    verifyMono(ImagePyramid.with(monoImage(90, 20)).withRatio(3f), 3);
+  }
+
+  @Test
+  public void colorLevelsMatchTentFilter() {
+    for (float ratio : new float[] { 2, 1.7f }) {
+      ImagePyramid p = ImagePyramid.with(colorImage(45, 31)).withRatio(ratio);
+      for (int level = 1; level <= 4; level++) {
+        BufferedImage prev = p.image(level - 1);
+        BufferedImage image = p.image(level);
+        assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+        assertEquals(p.size(level), ImgUtil.size(image));
+        for (int shift = 0; shift <= 16; shift += 8) {
+          int[] plane = new int[prev.getWidth() * prev.getHeight()];
+          for (int i = 0; i < plane.length; i++)
+            plane[i] = (prev.getRGB(i % prev.getWidth(), i / prev.getWidth()) >> shift) & 0xff;
+          double[] expected = tentFilter(plane, ImgUtil.size(prev), p.size(level));
+          for (int i = 0; i < expected.length; i++) {
+            int actual = (image.getRGB(i % image.getWidth(), i / image.getWidth()) >> shift) & 0xff;
+            assertEquals(expected[i], actual, TOLERANCE);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void levelsAreCached() {
+    ImagePyramid p = ImagePyramid.with(monoImage(64, 48));
+    MonoImage level2 = p.monoImage(2);
+    assertSame(level2, p.monoImage(2));
+    assertSame(p.monoImage(1), p.monoImage(1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void ratioFixedOnceBuilt() {
+    ImagePyramid p = ImagePyramid.with(monoImage(64, 48));
+    p.monoImage(1);
+    p.withRatio(3);
+  }
+
+  @Test
+  public void transformsScriptElements() {
+    ImagePyramid p = ImagePyramid.with(monoImage(64, 48));
+    List<ScriptElement> elements = List.of(new PointElement(null, new IPoint(8, 4)),
+        new PointElement(null, new IPoint(60, 44)), new RectElement(null, new IRect(8, 12, 40, 20)));
+
+    assertSame(elements, p.transform(elements, 2, 2));
+
+    List<ScriptElement> down = p.transform(elements, 0, 2);
+    assertEquals(elements.size(), down.size());
+    assertEquals(new IPoint(2, 1), down.get(0).location());
+    assertEquals(new IPoint(15, 11), down.get(1).location());
+    Matrix quarter = Matrix.getScale(0.25f, 0.25f);
+    assertEquals(elements.get(2).applyTransform(quarter).bounds(), down.get(2).bounds());
+
+    List<ScriptElement> up = p.transform(down, 2, 0);
+    assertEquals(elements.get(0).location(), up.get(0).location());
+    assertEquals(elements.get(1).location(), up.get(1).location());
+  }
+
+  private void verifyMono(ImagePyramid p, int levels) {
+    for (int level = 1; level <= levels; level++) {
+      MonoImage prev = p.monoImage(level - 1);
+      MonoImage image = p.monoImage(level);
+      assertEquals(p.size(level), image.size());
+      int[] plane = new int[prev.pixels().length];
+      for (int i = 0; i < plane.length; i++)
+        plane[i] = prev.pixels()[i] & 0xffff;
+      double[] expected = tentFilter(plane, prev.size(), image.size());
+      for (int i = 0; i < expected.length; i++)
+        assertEquals("level " + level + " index " + i, expected[i], image.pixels()[i] & 0xffff, TOLERANCE);
+    }
+  }
+
+  /**
+   * Apply a two dimensional tent filter directly, in floating point, with
+   * the weights normalized to sum to 1 near the edges
+   */
+  private static double[] tentFilter(int[] src, IPoint srcSize, IPoint dstSize) {
+    double scaleX = srcSize.x / (double) dstSize.x;
+    double scaleY = srcSize.y / (double) dstSize.y;
+    double radiusX = Math.max(1, scaleX);
+    double radiusY = Math.max(1, scaleY);
+    double[] out = new double[dstSize.x * dstSize.y];
+    for (int y = 0; y < dstSize.y; y++) {
+      double cy = (y + 0.5) * scaleY - 0.5;
+      for (int x = 0; x < dstSize.x; x++) {
+        double cx = (x + 0.5) * scaleX - 0.5;
+        double sum = 0;
+        double total = 0;
+        for (int sy = 0; sy < srcSize.y; sy++) {
+          double wy = 1 - Math.abs(sy - cy) / radiusY;
+          if (wy <= 0)
+            continue;
+          for (int sx = 0; sx < srcSize.x; sx++) {
+            double wx = 1 - Math.abs(sx - cx) / radiusX;
+            if (wx <= 0)
+              continue;
+            sum += wx * wy * src[sy * srcSize.x + sx];
+            total += wx * wy;
+          }
+        }
+        out[y * dstSize.x + x] = sum / total;
+      }
+    }
+    return out;
+  }
+
+  private static int pixel(MonoImage image, int x, int y) {
+    return image.pixels()[y * image.size().x + x] & 0xffff;
+  }
+
+  private MonoImage monoImage(int width, int height) {
+    Random r = random();
+    short[] pixels = new short[width * height];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) r.nextInt(4096);
+    return MonoImageUtil.construct(new IPoint(width, height), pixels);
+  }
+
+  private BufferedImage colorImage(int width, int height) {
+    Random r = random();
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        image.setRGB(x, y, r.nextInt(0x1000000));
+    return image;
+  }
+
+  // Results are rounded, and computed with fixed point weights
+  private static final double TOLERANCE = 0.6;
+}
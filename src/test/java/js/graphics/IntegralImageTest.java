@@ -0,0 +1,94 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class IntegralImageTest extends MyTestCase {
+
+  @Test
+  public void rectangleQueries() {
+    MonoImage image = randomImage(new IPoint(97, 73));
+    IntegralImage integral = IntegralImage.build(image);
+    for (int i = 0; i < 200; i++) {
+      int x = random().nextInt(97);
+      int y = random().nextInt(73);
+      IRect r = new IRect(x, y, 1 + random().nextInt(97 - x), 1 + random().nextInt(73 - y));
+      long sum = 0;
+      long sqSum = 0;
+      for (int py = r.y; py < r.endY(); py++)
+        for (int px = r.x; px < r.endX(); px++) {
+          long v = image.pixels()[py * 97 + px] & 0xffff;
+          sum += v;
+          sqSum += v * v;
+        }
+      assertEquals(sum, integral.sum(r));
+      assertEquals(sqSum, integral.squaredSum(r));
+      int area = r.width * r.height;
+      double mean = sum / (double) area;
+      assertEquals(mean, integral.mean(r), 1e-2);
+      double variance = sqSum / (double) area - mean * mean;
+      assertEquals(variance, integral.variance(r), 1 + variance * 1e-6);
+    }
+  }
+
+  @Test
+  public void clipping() {
+    MonoImage image = MonoImageUtil.constantImage(new IPoint(10, 8), 40000);
+    IntegralImage integral = IntegralImage.build(image, false);
+    assertEquals(40000L * 80, integral.sum(new IRect(-5, -5, 30, 30)));
+    assertEquals(6, integral.area(new IRect(8, 5, 5, 3)));
+    assertEquals(0, integral.sum(new IRect(20, 0, 4, 4)));
+    assertEquals(0, integral.mean(new IRect(20, 0, 4, 4)), 0);
+    assertEquals(40000f, integral.mean(new RectElement(null, new IRect(3, 3, 2, 2))), 0);
+  }
+
+  @Test
+  public void boxMean() {
+    MonoImage image = randomImage(new IPoint(40, 30));
+    IntegralImage integral = IntegralImage.build(image, false);
+    MonoImage blurred = integral.boxMean(2);
+    for (int y = 0; y < 30; y++)
+      for (int x = 0; x < 40; x++) {
+        IRect window = new IRect(x - 2, y - 2, 5, 5);
+        int expected = Math.round(integral.sum(window) / (float) integral.area(window));
+        assertEquals(expected, blurred.pixels()[y * 40 + x] & 0xffff, 1);
+      }
+  }
+
+  private MonoImage randomImage(IPoint size) {
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) random().nextInt(65536);
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class MedianFilterTest extends MyTestCase {
+
+  @Test
+  public void matchesBruteForce() {
+    // Tall enough to be filtered in several row bands, with a range of values
+    // small enough to be exact
+    MonoImage image = randomImage(new IPoint(57, 150), 1000);
+    for (int radius : new int[] { 0, 1, 2, 5 })
+      assertArrayEquals("radius " + radius, bruteForce(image, radius),
+          new MedianFilter().withRadius(radius).apply(image).pixels());
+  }
+
+  @Test
+  public void radiusLargerThanImage() {
+    MonoImage image = randomImage(new IPoint(7, 5), 500);
+    assertArrayEquals(bruteForce(image, 9), new MedianFilter().withRadius(9).apply(image).pixels());
+  }
+
+  /**
+   * Find each pixel's median within its window, replicating edge pixels
+   */
+  private static short[] bruteForce(MonoImage image, int radius) {
+    int w = image.size().x;
+    int h = image.size().y;
+    short[] pixels = image.pixels();
+    short[] output = new short[pixels.length];
+    int side = 2 * radius + 1;
+    int[] window = new int[side * side];
+    for (int y = 0; y < h; y++)
+      for (int x = 0; x < w; x++) {
+        int n = 0;
+        for (int dy = -radius; dy <= radius; dy++)
+          for (int dx = -radius; dx <= radius; dx++) {
+            int yy = Math.max(0, Math.min(h - 1, y + dy));
+            int xx = Math.max(0, Math.min(w - 1, x + dx));
+            window[n++] = pixels[yy * w + xx] & 0xffff;
+          }
+        Arrays.sort(window);
+        output[y * w + x] = (short) window[n / 2];
+      }
+    return output;
+  }
+
+  private MonoImage randomImage(IPoint size, int range) {
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) (20000 + random().nextInt(range));
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
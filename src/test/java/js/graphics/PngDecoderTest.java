@@ -0,0 +1,114 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class PngDecoderTest extends MyTestCase {
+
+  @Test
+  public void matchesImageIO() throws Exception {
+    int[] types = { BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_INT_RGB,
+        BufferedImage.TYPE_4BYTE_ABGR };
+    PngDecoder decoder = new PngDecoder();
+    for (int type : types) {
+      BufferedImage source = randomImage(new IPoint(67, 41), type);
+      for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+        byte[] png = new ImageEncoder().withPngFilter(filter).toPNG(source);
+        BufferedImage expected = ImageIO.read(new ByteArrayInputStream(png));
+        BufferedImage decoded = decoder.decode(png);
+        assertNotNull(decoded);
+        assertSameImage(expected, decoded);
+      }
+    }
+  }
+
+  @Test
+  public void monoImage() {
+    MonoImage mono = randomMonoImage(new IPoint(53, 37));
+    byte[] png = ImgUtil.toPNG(MonoImageUtil.toBufferedImage(mono));
+    MonoImage decoded = new PngDecoder().decodeMono(png);
+    assertArrayEquals(mono.pixels(), decoded.pixels());
+    assertEquals(mono.size(), decoded.size());
+    assertArrayEquals(mono.pixels(), ImgUtil.grayPixels(ImgUtil.read(png)));
+  }
+
+  @Test
+  public void unsupportedFallsBack() throws Exception {
+    BufferedImage indexed = randomImage(new IPoint(20, 10), BufferedImage.TYPE_BYTE_INDEXED);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(indexed, ImgUtil.EXT_PNG, output);
+    byte[] png = output.toByteArray();
+    assertNull(new PngDecoder().decode(png));
+    assertNull(new PngDecoder().decodeMono(ImgUtil.toPNG(randomImage(new IPoint(5, 5),
+        BufferedImage.TYPE_BYTE_GRAY))));
+    assertSameImage(ImageIO.read(new ByteArrayInputStream(png)), ImgUtil.read(png));
+  }
+
+  private BufferedImage randomImage(IPoint size, int type) {
+    BufferedImage image = ImgUtil.build(size, type);
+    WritableRaster raster = image.getRaster();
+    for (int band = 0; band < raster.getNumBands(); band++) {
+      int range = 1 << image.getColorModel().getComponentSize(band);
+      for (int y = 0; y < size.y; y++)
+        for (int x = 0; x < size.x; x++)
+          raster.setSample(x, y, band, (x * 5 + y * 3 + random().nextInt(8)) % range);
+    }
+    return image;
+  }
+
+  private MonoImage randomMonoImage(IPoint size) {
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) random().nextInt(0x10000);
+    return MonoImage.newBuilder().size(size).pixels(pixels).build();
+  }
+
+  private void assertSameImage(BufferedImage expected, BufferedImage actual) {
+    assertEquals(expected.getType(), actual.getType());
+    assertEquals(ImgUtil.size(expected), ImgUtil.size(actual));
+    Raster a = expected.getRaster();
+    Raster b = actual.getRaster();
+    assertEquals(a.getNumBands(), b.getNumBands());
+    for (int band = 0; band < a.getNumBands(); band++)
+      for (int y = 0; y < a.getHeight(); y++)
+        for (int x = 0; x < a.getWidth(); x++)
+          assertEquals(a.getSample(x, y, band), b.getSample(x, y, band));
+  }
+}
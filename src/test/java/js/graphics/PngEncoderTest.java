@@ -0,0 +1,168 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Adler32;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.testutil.MyTestCase;
+
+public class PngEncoderTest extends MyTestCase {
+
+  @Test
+  public void roundTrips() throws Exception {
+    // Each image is large enough to be compressed in several bands
+    IPoint size = new IPoint(1500, 997);
+    for (int type : TYPES) {
+      BufferedImage image = randomImage(size, type);
+      for (PngEncoder.Filter filter : PngEncoder.Filter.values())
+        for (int level : new int[] { 0, 1, 6, 9 })
+          verifyRoundTrip(image, new PngEncoder().withFilter(filter).withLevel(level));
+    }
+  }
+
+  @Test
+  public void smallImages() throws Exception {
+    for (int type : TYPES)
+      for (IPoint size : new IPoint[] { new IPoint(1, 1), new IPoint(3, 200), new IPoint(200, 3) })
+        verifyRoundTrip(randomImage(size, type), new PngEncoder().withFilter(PngEncoder.Filter.ADAPTIVE));
+  }
+
+  @Test
+  public void bandBoundaryNotAlignedToDictionary() throws Exception {
+    // Rows of 3001 bytes (including the filter type byte) don't divide the 32K
+    // dictionary, and rows of 36001 bytes exceed it
+    for (IPoint size : new IPoint[] { new IPoint(1000, 1200), new IPoint(12000, 100) }) {
+      BufferedImage image = randomImage(size, BufferedImage.TYPE_INT_RGB);
+      for (PngEncoder.Filter filter : new PngEncoder.Filter[] { PngEncoder.Filter.NONE,
+          PngEncoder.Filter.PAETH })
+        verifyRoundTrip(image, new PngEncoder().withFilter(filter));
+    }
+  }
+
+  @Test
+  public void adler32Combine() {
+    byte[] data = new byte[100000];
+    random().nextBytes(data);
+    for (int split : new int[] { 0, 1, 5552, 65521, 65522, 70000, data.length }) {
+      Adler32 whole = new Adler32();
+      whole.update(data, 0, data.length);
+      Adler32 first = new Adler32();
+      first.update(data, 0, split);
+      Adler32 second = new Adler32();
+      second.update(data, split, data.length - split);
+      assertEquals(whole.getValue(),
+          PngEncoder.adler32Combine(first.getValue(), second.getValue(), data.length - split));
+    }
+  }
+
+  private static final int[] TYPES = { BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY,
+      BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB };
+
+  /**
+   * Verify that an image's PNG holds a single valid zlib stream (with the
+   * expected checksum), and decodes to the original pixels with ImageIO and
+   * ImgUtil
+   */
+  private static void verifyRoundTrip(BufferedImage image, PngEncoder encoder) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    encoder.encode(image, output);
+    byte[] png = output.toByteArray();
+    String label = image.getType() + " " + image.getWidth() + "x" + image.getHeight() + " " + encoder;
+
+    int bytesPerPixel = image.getColorModel().getNumComponents()
+        * (image.getType() == BufferedImage.TYPE_USHORT_GRAY ? 2 : 1);
+    assertEquals(label, (long) image.getHeight() * (image.getWidth() * bytesPerPixel + 1), inflatedLength(png));
+
+    int[] expected = samples(image);
+    assertArrayEquals(label, expected, samples(ImageIO.read(new ByteArrayInputStream(png))));
+    assertArrayEquals(label, expected, samples(ImgUtil.read(png)));
+  }
+
+  /**
+   * Inflate the concatenated IDAT chunks of a PNG, returning the length of the
+   * result; fails if the zlib stream's checksum is incorrect
+   */
+  private static long inflatedLength(byte[] png) throws Exception {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    int offset = 8;
+    while (offset < png.length) {
+      int length = ((png[offset] & 0xff) << 24) | ((png[offset + 1] & 0xff) << 16)
+          | ((png[offset + 2] & 0xff) << 8) | (png[offset + 3] & 0xff);
+      String type = new String(png, offset + 4, 4, "US-ASCII");
+      if (type.equals("IDAT"))
+        data.write(png, offset + 8, length);
+      offset += 12 + length;
+    }
+    Inflater inflater = new Inflater();
+    inflater.setInput(data.toByteArray());
+    byte[] buffer = new byte[1 << 16];
+    long total = 0;
+    while (!inflater.finished()) {
+      int n = inflater.inflate(buffer);
+      assertFalse(n == 0 && inflater.needsInput());
+      total += n;
+    }
+    inflater.end();
+    return total;
+  }
+
+  private static int[] samples(BufferedImage image) {
+    return image.getRaster().getPixels(0, 0, image.getWidth(), image.getHeight(), (int[]) null);
+  }
+
+  /**
+   * Construct an image of smooth gradients with noise (and some flat areas),
+   * so the filters and compression levels have something to work with
+   */
+  private BufferedImage randomImage(IPoint size, int type) {
+    BufferedImage image = new BufferedImage(size.x, size.y, type);
+    WritableRaster raster = image.getRaster();
+    int bands = raster.getNumBands();
+    int[] pixel = new int[bands];
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++) {
+        boolean flat = ((x / 64) + (y / 64)) % 3 == 0;
+        for (int band = 0; band < bands; band++) {
+          int max = (1 << raster.getSampleModel().getSampleSize(band)) - 1;
+          int value = flat ? max / 3 : (x * 7 + y * 3 * (band + 1)) * (max / 255) + random().nextInt(max / 64 + 1);
+          pixel[band] = Math.min(max, value % (max + 1));
+        }
+        raster.setPixel(x, y, pixel);
+      }
+    return image;
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.graphics.gen.RadiometricCalibration;
+import js.testutil.MyTestCase;
+
+public class RadiometricLutTest extends MyTestCase {
+
+  @Test
+  public void matchesPlanckFormula() {
+    RadiometricCalibration cal = calibration(1000, 1);
+    RadiometricLut lut = RadiometricLut.forCalibration(cal);
+    for (int counts = 0; counts < RadiometricLut.TABLE_SIZE; counts += 7) {
+      double expected = planck(cal, counts);
+      if (Double.isNaN(expected)) {
+        assertTrue(Float.isNaN(lut.kelvin(counts)));
+        assertEquals(0, lut.centiKelvin(counts));
+        continue;
+      }
+      assertEquals((float) expected, lut.kelvin(counts), 0);
+      long centiKelvin = Math.max(0, Math.min(0xffff, Math.round(expected * 100)));
+      assertEquals(centiKelvin, lut.centiKelvin(counts));
+    }
+  }
+
+  @Test
+  public void undefinedAndClampedCounts() {
+    // Counts at or below the offset are undefined
+    RadiometricLut lut = RadiometricLut.forCalibration(calibration(1000, 1));
+    assertTrue(Float.isNaN(lut.kelvin(0)));
+    assertTrue(Float.isNaN(lut.kelvin(1000)));
+    assertFalse(Float.isNaN(lut.kelvin(1001)));
+
+    // With F < 1, large signals make the logarithm's argument fall to 1 or
+    // below
+    RadiometricCalibration cal = calibration(-5000, 0.5f);
+    lut = RadiometricLut.forCalibration(cal);
+    assertTrue(Float.isNaN(lut.kelvin(0xffff)));
+    assertEquals(0, lut.centiKelvin(0xffff));
+
+    // Temperatures beyond 655.35 K are clamped
+    lut = RadiometricLut.forCalibration(calibration(-5753, 1));
+    assertTrue(lut.kelvin(0xffff) > 655.35f);
+    assertEquals(0xffff, lut.centiKelvin(0xffff));
+    assertEquals(0xffff, lut.centiKelvin(-1));
+  }
+
+  @Test
+  public void equalCalibrationsShareTables() {
+    RadiometricLut a = RadiometricLut.forCalibration(calibration(-4000, 1));
+    RadiometricLut b = RadiometricLut.forCalibration(calibration(-4000, 1).toBuilder());
+    assertSame(a, b);
+    assertSame(a.kelvinTable(), b.kelvinTable());
+    assertNotSame(a, RadiometricLut.forCalibration(calibration(-4001, 1)));
+  }
+
+  @Test
+  public void convertsFrames() {
+    RadiometricLut lut = RadiometricLut.forCalibration(calibration(-5753, 1));
+    IPoint size = new IPoint(30, 70);
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) (10000 + random().nextInt(20000));
+    MonoImage frame = MonoImageUtil.construct(size, pixels);
+
+    float[] kelvin = lut.toKelvin(frame, null);
+    short[] centiKelvin = lut.toCentiKelvin(frame, null);
+    for (int i = 0; i < pixels.length; i++) {
+      assertEquals(lut.kelvin(pixels[i]), kelvin[i], 0);
+      assertEquals(lut.centiKelvin(pixels[i]), centiKelvin[i] & 0xffff);
+    }
+
+    IRect rect = new IRect(5, 10, 20, 30);
+    float[] rectKelvin = lut.toKelvin(frame, rect, null);
+    short[] rectCentiKelvin = lut.toCentiKelvin(frame, rect, null);
+    for (int y = 0; y < rect.height; y++)
+      for (int x = 0; x < rect.width; x++) {
+        int i = (rect.y + y) * size.x + rect.x + x;
+        assertEquals(kelvin[i], rectKelvin[y * rect.width + x], 0);
+        assertEquals(centiKelvin[i], rectCentiKelvin[y * rect.width + x]);
+      }
+
+    // In place
+    lut.toCentiKelvin(frame, frame.pixels());
+    assertArrayEquals(centiKelvin, frame.pixels());
+  }
+
+  private static RadiometricCalibration calibration(float planckO, float planckF) {
+    return RadiometricCalibration.newBuilder().planckR(14364.633f).planckB(1385.4f).planckF(planckF)
+        .planckO(planckO).build();
+  }
+
+  /**
+   * Convert counts to Kelvin by the Planck formula, or NaN if it's undefined
+   */
+  private static double planck(RadiometricCalibration cal, int counts) {
+    double signal = counts - (double) cal.planckO();
+    if (signal <= 0)
+      return Double.NaN;
+    double arg = cal.planckR() / signal + cal.planckF();
+    if (arg <= 1)
+      return Double.NaN;
+    return cal.planckB() / Math.log(arg);
+  }
+}
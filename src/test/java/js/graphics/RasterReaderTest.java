@@ -0,0 +1,169 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.testutil.MyTestCase;
+
+public class RasterReaderTest extends MyTestCase {
+
+  @Test
+  public void standardTypes() {
+    for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+        BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY }) {
+      BufferedImage image = randomImage(new BufferedImage(37, 23, type));
+      assertTrue(RasterReader.of(image).isDirect());
+      verifyRows(image);
+    }
+  }
+
+  @Test
+  public void genericTypes() {
+    for (int type : new int[] { BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_BYTE_INDEXED }) {
+      BufferedImage image = randomImage(new BufferedImage(37, 23, type));
+      assertFalse(RasterReader.of(image).isDirect());
+      verifyRows(image);
+    }
+  }
+
+  @Test
+  public void sixteenBitRgba() {
+    ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), true, false,
+        Transparency.TRANSLUCENT, DataBuffer.TYPE_USHORT);
+    BufferedImage image = randomImage(new BufferedImage(cm, cm.createCompatibleWritableRaster(29, 17), false, null));
+    assertTrue(RasterReader.of(image).isDirect());
+    verifyRows(image);
+    verifyRows(image.getSubimage(3, 4, 20, 9));
+  }
+
+  @Test
+  public void subimages() {
+    for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+        BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY }) {
+      BufferedImage image = randomImage(new BufferedImage(41, 30, type));
+      BufferedImage sub = image.getSubimage(7, 5, 25, 19);
+      assertTrue(RasterReader.of(sub).isDirect());
+      verifyRows(sub);
+      // A subimage of a subimage
+      verifyRows(sub.getSubimage(3, 2, 10, 11));
+    }
+  }
+
+  @Test
+  public void rasterOffsets() {
+    IPoint size = new IPoint(19, 13);
+    int pixelStride = 3;
+    int scanlineStride = size.x * pixelStride + 5;
+    int bufferOffset = 11;
+    byte[] data = new byte[bufferOffset + scanlineStride * size.y];
+    random().nextBytes(data);
+    DataBuffer db = new DataBufferByte(data, data.length - bufferOffset, bufferOffset);
+    PixelInterleavedSampleModel sm = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, size.x, size.y,
+        pixelStride, scanlineStride, new int[] { 2, 1, 0 });
+    WritableRaster raster = Raster.createWritableRaster(sm, db, new Point(0, 0));
+    ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+        Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+    BufferedImage image = new BufferedImage(cm, raster, false, null);
+    assertTrue(RasterReader.of(image).isDirect());
+    verifyRows(image);
+
+    // A child raster, whose sample model is translated
+    WritableRaster child = raster.createWritableChild(4, 3, 10, 8, 0, 0, null);
+    verifyRows(new BufferedImage(cm, child, false, null));
+  }
+
+  /**
+   * Verify readRow() and readArgbRow(), including at a nonzero destination
+   * offset
+   */
+  private static void verifyRows(BufferedImage image) {
+    RasterReader reader = RasterReader.of(image);
+    int w = image.getWidth();
+    int[] row = new int[w + 5];
+    int[] argbRow = new int[w + 5];
+    for (int y = 0; y < image.getHeight(); y++) {
+      reader.readRow(y, row, 5);
+      reader.readArgbRow(y, argbRow, 5);
+      for (int x = 0; x < w; x++) {
+        int expected = expectedArgb(image, x, y);
+        String label = "type " + image.getType() + " at " + x + "," + y;
+        assertEquals(label, expected & 0xffffff, row[5 + x]);
+        assertEquals(label, expected, argbRow[5 + x]);
+      }
+    }
+  }
+
+  /**
+   * Determine a pixel's ARGB value from its raster samples (or, for packed,
+   * indexed or premultiplied images, getRGB())
+   */
+  private static int expectedArgb(BufferedImage image, int x, int y) {
+    ColorModel cm = image.getColorModel();
+    if (!(cm instanceof ComponentColorModel))
+      return image.getRGB(x, y);
+    Raster raster = image.getRaster();
+    int shift = cm.getComponentSize(0) - 8;
+    int[] c = new int[raster.getNumBands()];
+    for (int band = 0; band < c.length; band++)
+      c[band] = raster.getSample(x, y, band) >> shift;
+    boolean gray = cm.getNumColorComponents() == 1;
+    int r = c[0];
+    int g = gray ? c[0] : c[1];
+    int b = gray ? c[0] : c[2];
+    int a = cm.hasAlpha() ? c[cm.getNumColorComponents()] : 0xff;
+    return (a << 24) | (r << 16) | (g << 8) | b;
+  }
+
+  private BufferedImage randomImage(BufferedImage image) {
+    WritableRaster raster = image.getRaster();
+    boolean packed = image.getColorModel() instanceof DirectColorModel;
+    for (int y = 0; y < image.getHeight(); y++)
+      for (int x = 0; x < image.getWidth(); x++)
+        if (packed || image.getType() == BufferedImage.TYPE_BYTE_INDEXED)
+          image.setRGB(x, y, random().nextInt());
+        else
+          for (int band = 0; band < raster.getNumBands(); band++)
+            raster.setSample(x, y, band, random().nextInt(1 << raster.getSampleModel().getSampleSize(band)));
+    return image;
+  }
+}
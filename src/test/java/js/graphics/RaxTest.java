@@ -0,0 +1,133 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class RaxTest extends MyTestCase {
+
+  @Test
+  public void heapRoundTrip() {
+    MonoImage source = randomImage(new IPoint(73, 41));
+    MonoImage decoded = ImgUtil.decompressRAX(ImgUtil.compressRAX(source), null);
+    assertEquals(source.size(), decoded.size());
+    assertArrayEquals(source.pixels(), decoded.pixels());
+  }
+
+  @Test
+  public void heapRoundTripWideImage() {
+    MonoImage source = randomImage(new IPoint(3000, 10));
+    byte[] rax = ImgUtil.compressRAX(source);
+    MonoImage decoded = ImgUtil.decompressRAX(rax, null);
+    assertEquals(source.size(), decoded.size());
+    assertArrayEquals(source.pixels(), decoded.pixels());
+  }
+
+  @Test
+  public void offHeapRoundTripViaFile() {
+    offHeapRoundTrip(new IPoint(73, 41));
+  }
+
+  @Test
+  public void offHeapRoundTripWideImageViaFile() {
+    offHeapRoundTrip(new IPoint(3000, 10));
+  }
+
+  @Test
+  public void offHeapRoundTripTallImageViaFile() {
+    offHeapRoundTrip(new IPoint(7, 70000));
+  }
+
+  @Test
+  public void offHeapMatchesHeap() throws Exception {
+    MonoImage source = randomImage(new IPoint(2500, 12));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImgUtil.compressRAX(OffHeapMonoImage.from(source), output);
+    byte[] rax = output.toByteArray();
+    assertArrayEquals(ImgUtil.compressRAX(source), rax);
+
+    OffHeapMonoImage dest = OffHeapMonoImage.allocate(source.size());
+    assertSame(dest, ImgUtil.decompressRAXOffHeap(new ByteArrayInputStream(rax), dest));
+    assertArrayEquals(source.pixels(), dest.toMonoImage().pixels());
+  }
+
+  @Test
+  public void sizeOfFile() {
+    for (IPoint size : new IPoint[] { new IPoint(20, 30), new IPoint(4000, 3) }) {
+      File file = generatedFile("size_" + size.x + ".rax");
+      ImgUtil.writeRAX(OffHeapMonoImage.from(randomImage(size)), file);
+      assertEquals(size, ImgUtil.size(file));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void truncatedDataFails() {
+    byte[] rax = ImgUtil.compressRAX(randomImage(new IPoint(30, 30)));
+    byte[] truncated = new byte[rax.length / 2];
+    System.arraycopy(rax, 0, truncated, 0, truncated.length);
+    ImgUtil.decompressRAX(truncated, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void wrongSizedDestinationFails() throws Exception {
+    byte[] rax = ImgUtil.compressRAX(randomImage(new IPoint(30, 30)));
+    ImgUtil.decompressRAXOffHeap(new ByteArrayInputStream(rax), OffHeapMonoImage.allocate(new IPoint(30, 31)));
+  }
+
+  private void offHeapRoundTrip(IPoint size) {
+    MonoImage source = randomImage(size);
+    File file = generatedFile("image.rax");
+    ImgUtil.writeRAX(OffHeapMonoImage.from(source), file);
+    OffHeapMonoImage decoded = ImgUtil.readRaxOffHeap(file);
+    assertEquals(size, decoded.size());
+    assertArrayEquals(source.pixels(), decoded.toMonoImage().pixels());
+  }
+
+  /**
+   * Construct an image of smoothly varying values, with occasional large jumps
+   */
+  private MonoImage randomImage(IPoint size) {
+    short[] pixels = new short[size.x * size.y];
+    int value = 20000;
+    for (int i = 0; i < pixels.length; i++) {
+      if (random().nextInt(50) == 0)
+        value = random().nextInt(30000);
+      else
+        value = Math.max(0, Math.min(30000, value + random().nextInt(21) - 10));
+      pixels[i] = (short) value;
+    }
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class RegionReadTest extends MyTestCase {
+
+  @Test
+  public void rax() {
+    File file = generatedFile("image.rax");
+    MonoImage source = MonoImageUtil.construct(randomImage(IMAGE_SIZE, BufferedImage.TYPE_USHORT_GRAY));
+    ImgUtil.writeRAX(files(), source, file);
+    assertEquals(IMAGE_SIZE, ImgUtil.size(file));
+    verifyRegions(file, MonoImageUtil.toBufferedImage(ImgUtil.readRax(file)));
+
+    // Also verify the MonoImage variant
+    for (IRect region : regions())
+      for (int subsampling : SUBSAMPLINGS) {
+        MonoImage image = ImgUtil.readRax(file, region, subsampling);
+        assertArrayEquals(expectedSamples(MonoImageUtil.toBufferedImage(source), region, subsampling),
+            samples(MonoImageUtil.toBufferedImage(image)));
+        IPoint expectedOffset = (region == null || subsampling != 1) ? IPoint.ZERO : region.location();
+        assertEquals(expectedOffset, image.offset());
+      }
+  }
+
+  @Test
+  public void png16() {
+    verifyPng(BufferedImage.TYPE_USHORT_GRAY);
+  }
+
+  @Test
+  public void pngRgb() {
+    verifyPng(BufferedImage.TYPE_INT_RGB);
+  }
+
+  @Test
+  public void thumbnails() {
+    File file = generatedFile("image.png");
+    ImgUtil.writeImage(files(), randomImage(IMAGE_SIZE, BufferedImage.TYPE_INT_RGB), file);
+    File raxFile = generatedFile("image.rax");
+    ImgUtil.writeRAX(files(), MonoImageUtil.construct(randomImage(IMAGE_SIZE, BufferedImage.TYPE_USHORT_GRAY)),
+        raxFile);
+    for (File f : new File[] { file, raxFile })
+      for (int maxDimension : new int[] { 1, 16, 40, 41, 53, 1000 }) {
+        BufferedImage thumbnail = ImgUtil.readThumbnail(f, maxDimension);
+        assertTrue(Math.max(thumbnail.getWidth(), thumbnail.getHeight()) <= maxDimension);
+        int subsampling = (IMAGE_SIZE.x + maxDimension - 1) / maxDimension;
+        assertArrayEquals(samples(ImgUtil.read(f, null, subsampling)), samples(thumbnail));
+      }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void regionOutsideImageFails() {
+    File file = generatedFile("image.rax");
+    ImgUtil.writeRAX(files(), MonoImageUtil.construct(randomImage(IMAGE_SIZE, BufferedImage.TYPE_USHORT_GRAY)),
+        file);
+    ImgUtil.read(file, new IRect(IMAGE_SIZE.x - 5, 0, 6, 4), 1);
+  }
+
+  private static final IPoint IMAGE_SIZE = new IPoint(83, 61);
+
+  // Include factors that don't divide the regions, and that exceed them
+  private static final int[] SUBSAMPLINGS = { 1, 2, 3, 7, 100 };
+
+  private static IRect[] regions() {
+    int w = IMAGE_SIZE.x;
+    int h = IMAGE_SIZE.y;
+    return new IRect[] { null, new IRect(0, 0, w, h), new IRect(10, 12, 17, 11), //
+        new IRect(w - 20, 5, 20, 9), // right edge
+        new IRect(3, h - 13, 29, 13), // bottom edge
+        new IRect(w - 1, h - 1, 1, 1), // bottom right pixel
+        new IRect(0, 0, 1, h), //
+    };
+  }
+
+  private void verifyPng(int type) {
+    File file = generatedFile("image.png");
+    ImgUtil.writeImage(files(), randomImage(IMAGE_SIZE, type), file);
+    verifyRegions(file, ImgUtil.read(file));
+  }
+
+  /**
+   * Verify that reads of regions and subsamplings of a file match those
+   * extracted from its full decode
+   */
+  private static void verifyRegions(File file, BufferedImage full) {
+    for (IRect region : regions())
+      for (int subsampling : SUBSAMPLINGS) {
+        BufferedImage image = ImgUtil.read(file, region, subsampling);
+        IRect r = region == null ? new IRect(IMAGE_SIZE) : region;
+        String label = file.getName() + " " + r + " " + subsampling;
+        assertEquals(label, new IPoint((r.width + subsampling - 1) / subsampling,
+            (r.height + subsampling - 1) / subsampling), ImgUtil.size(image));
+        assertArrayEquals(label, expectedSamples(full, region, subsampling), samples(image));
+      }
+  }
+
+  /**
+   * Extract the samples of a subsampled region from a full image
+   */
+  private static int[] expectedSamples(BufferedImage full, IRect regionOrNull, int subsampling) {
+    IRect r = regionOrNull == null ? new IRect(ImgUtil.size(full)) : regionOrNull;
+    int bands = full.getRaster().getNumBands();
+    int outWidth = (r.width + subsampling - 1) / subsampling;
+    int outHeight = (r.height + subsampling - 1) / subsampling;
+    int[] result = new int[outWidth * outHeight * bands];
+    int[] pixel = new int[bands];
+    int i = 0;
+    for (int y = 0; y < outHeight; y++)
+      for (int x = 0; x < outWidth; x++) {
+        full.getRaster().getPixel(r.x + x * subsampling, r.y + y * subsampling, pixel);
+        for (int band = 0; band < bands; band++)
+          result[i++] = pixel[band];
+      }
+    return result;
+  }
+
+  private static int[] samples(BufferedImage image) {
+    return image.getRaster().getPixels(0, 0, image.getWidth(), image.getHeight(), (int[]) null);
+  }
+
+  private BufferedImage randomImage(IPoint size, int type) {
+    BufferedImage image = new BufferedImage(size.x, size.y, type);
+    WritableRaster raster = image.getRaster();
+    for (int y = 0; y < size.y; y++)
+      for (int x = 0; x < size.x; x++)
+        for (int band = 0; band < raster.getNumBands(); band++) {
+          int bits = raster.getSampleModel().getSampleSize(band);
+          // Keep 16-bit samples within the 15-bit range of .rax images
+          raster.setSample(x, y, band, random().nextInt(1 << Math.min(bits, 15)));
+        }
+    return image;
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class TemporalDenoiserTest extends MyTestCase {
+
+  @Test
+  public void windowMatchesReference() {
+    runWindow(4, 0);
+  }
+
+  @Test
+  public void windowRestartsOnMotion() {
+    runWindow(4, THRESHOLD);
+  }
+
+  @Test
+  public void singleFrameWindow() {
+    runWindow(1, THRESHOLD);
+  }
+
+  @Test
+  public void evictsOnlyValuesSinceRestart() {
+    // A pixel restarted by motion must not have values from before the
+    // restart subtracted when its window fills up again
+    TemporalDenoiser d = new TemporalDenoiser().withWindow(3).withMotionThreshold(THRESHOLD);
+    int[] values = { 100, 110, 120, 2000, 2010, 2020, 2030, 2040 };
+    int[] expected = { 100, 105, 110, 2000, 2005, 2010, 2020, 2030 };
+    for (int f = 0; f < values.length; f++) {
+      MonoImage out = d.apply(constant(values[f]));
+      assertEquals("frame " + f, expected[f], out.pixels()[0]);
+      assertEquals("frame " + f, f == 3, d.motionMask().get(0, 0));
+    }
+  }
+
+  @Test
+  public void recursiveMatchesReference() {
+    float weight = 0.25f;
+    TemporalDenoiser d = new TemporalDenoiser().withRecursiveWeight(weight).withMotionThreshold(THRESHOLD);
+    int n = SIZE.product();
+    double[] average = new double[n];
+    for (int f = 0; f < FRAMES; f++) {
+      MonoImage frame = frame(f);
+      MonoImage out = d.apply(frame);
+      BinaryMask mask = d.motionMask();
+      for (int i = 0; i < n; i++) {
+        int v = frame.pixels()[i];
+        boolean motion = f != 0 && Math.abs(v - average[i]) > THRESHOLD;
+        if (f == 0 || motion)
+          average[i] = v;
+        else
+          average[i] += (v - average[i]) * weight;
+        assertEquals(motion, mask.get(i % SIZE.x, i / SIZE.x));
+        assertEquals(average[i], out.pixels()[i], 1.0);
+      }
+      assertEquals(f == MOTION_START || f == MOTION_END ? MOTION_AREA : 0, mask.count());
+    }
+    assertEquals(FRAMES, d.frameCount());
+  }
+
+  @Test
+  public void resetStartsNewAverage() {
+    TemporalDenoiser d = new TemporalDenoiser().withWindow(5);
+    d.apply(constant(500));
+    d.apply(constant(700));
+    d.reset();
+    assertEquals(0, d.frameCount());
+    assertEquals(900, d.apply(constant(900)).pixels()[0]);
+    assertFalse(d.motionMask().get(0, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSizeChange() {
+    TemporalDenoiser d = new TemporalDenoiser();
+    d.apply(constant(500));
+    d.apply(MonoImage.newBuilder().size(new IPoint(3, 3)).pixels(new short[9]).build());
+  }
+
+  private void runWindow(int windowLength, int threshold) {
+    TemporalDenoiser d = new TemporalDenoiser().withWindow(windowLength).withMotionThreshold(threshold);
+    int n = SIZE.product();
+    @SuppressWarnings("unchecked")
+    ArrayDeque<Integer>[] windows = new ArrayDeque[n];
+    for (int i = 0; i < n; i++)
+      windows[i] = new ArrayDeque<>();
+    for (int f = 0; f < FRAMES; f++) {
+      MonoImage frame = frame(f);
+      MonoImage out = d.apply(frame);
+      BinaryMask mask = d.motionMask();
+      for (int i = 0; i < n; i++) {
+        ArrayDeque<Integer> w = windows[i];
+        int v = frame.pixels()[i];
+        boolean motion = false;
+        if (!w.isEmpty() && threshold != 0)
+          motion = Math.abs(v - sum(w) / w.size()) > threshold;
+        if (motion)
+          w.clear();
+        if (w.size() == windowLength)
+          w.removeFirst();
+        w.addLast(v);
+        int expected = (sum(w) + (w.size() >> 1)) / w.size();
+        assertEquals("frame " + f + " pixel " + i, expected, out.pixels()[i]);
+        assertEquals(motion, mask.get(i % SIZE.x, i / SIZE.x));
+      }
+      int motionPixels = (threshold != 0 && (f == MOTION_START || f == MOTION_END)) ? MOTION_AREA : 0;
+      assertEquals(motionPixels, mask.count());
+    }
+  }
+
+  private static int sum(ArrayDeque<Integer> values) {
+    int sum = 0;
+    for (int v : values)
+      sum += v;
+    return sum;
+  }
+
+  /**
+   * Build a frame: a fixed background plus small noise, with a rectangle that
+   * is brighter from MOTION_START until MOTION_END
+   */
+  private MonoImage frame(int index) {
+    Random background = new Random(1965);
+    Random noise = new Random(index * 31 + 7);
+    short[] pixels = new short[SIZE.product()];
+    for (int y = 0; y < SIZE.y; y++) {
+      for (int x = 0; x < SIZE.x; x++) {
+        int v = 1000 + background.nextInt(2000) + noise.nextInt(41) - 20;
+        if (index >= MOTION_START && index < MOTION_END && x >= MOTION.x && x < MOTION.endX() && y >= MOTION.y && y < MOTION.endY())
+          v += 1500;
+        pixels[y * SIZE.x + x] = (short) v;
+      }
+    }
+    return MonoImage.newBuilder().size(SIZE).pixels(pixels).build();
+  }
+
+  private static MonoImage constant(int value) {
+    IPoint size = new IPoint(2, 2);
+    short[] pixels = new short[size.product()];
+    Arrays.fill(pixels, (short) value);
+    return MonoImage.newBuilder().size(size).pixels(pixels).build();
+  }
+
+  // Wide enough that the mask spans more than one word per row, and tall
+  // enough to be split into several row bands
+  private static final IPoint SIZE = new IPoint(70, 40);
+  private static final IRect MOTION = new IRect(60, 10, 8, 25);
+  private static final int MOTION_AREA = MOTION.width * MOTION.height;
+  private static final int FRAMES = 14;
+  private static final int MOTION_START = 5;
+  private static final int MOTION_END = 11;
+  private static final int THRESHOLD = 200;
+}
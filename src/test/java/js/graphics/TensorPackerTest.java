@@ -0,0 +1,258 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.TensorPacker.Layout;
+import js.testutil.MyTestCase;
+
+public class TensorPackerTest extends MyTestCase {
+
+  @Test
+  public void nhwcRgb() {
+    verify(new Config(), image(40, 30, BufferedImage.TYPE_3BYTE_BGR));
+  }
+
+  @Test
+  public void nchwRgb() {
+    verify(new Config().layout(Layout.NCHW), image(40, 30, BufferedImage.TYPE_INT_RGB));
+  }
+
+  @Test
+  public void nhwcBgr() {
+    verify(new Config().bgr(), image(40, 30, BufferedImage.TYPE_INT_ARGB));
+  }
+
+  @Test
+  public void nchwBgr() {
+    verify(new Config().layout(Layout.NCHW).bgr(), image(40, 30, BufferedImage.TYPE_3BYTE_BGR));
+  }
+
+  @Test
+  public void singleChannel() {
+    for (Layout layout : Layout.values()) {
+      verify(new Config().layout(layout).channels(1), image(40, 30, BufferedImage.TYPE_INT_RGB));
+      Config c = new Config().layout(layout).channels(1);
+      c.mean = new float[] { 0.5f };
+      c.std = new float[] { 0.25f };
+      verify(c, image(40, 30, BufferedImage.TYPE_INT_RGB));
+    }
+  }
+
+  @Test
+  public void stretched() {
+    for (Layout layout : Layout.values())
+      verify(new Config().layout(layout).size(17, 45), image(40, 30, BufferedImage.TYPE_3BYTE_BGR));
+  }
+
+  @Test
+  public void letterboxWide() {
+    Config c = new Config().size(32, 32).letterbox(114);
+    assertEquals(new IRect(0, 8, 32, 16), c.build().placement(new IPoint(40, 20)));
+    for (Layout layout : Layout.values())
+      verify(c.layout(layout), image(40, 20, BufferedImage.TYPE_INT_RGB));
+    verify(c.bgr(), image(40, 20, BufferedImage.TYPE_INT_RGB));
+  }
+
+  @Test
+  public void letterboxTall() {
+    Config c = new Config().size(48, 24).letterbox(0);
+    assertEquals(new IRect(18, 0, 12, 24), c.build().placement(new IPoint(15, 30)));
+    for (Layout layout : Layout.values())
+      verify(c.layout(layout), image(15, 30, BufferedImage.TYPE_3BYTE_BGR));
+  }
+
+  @Test
+  public void letterboxSameSize() {
+    Config c = new Config().size(40, 30).letterbox(114);
+    assertEquals(new IRect(0, 0, 40, 30), c.build().placement(new IPoint(40, 30)));
+    verify(c, image(40, 30, BufferedImage.TYPE_INT_RGB));
+  }
+
+  @Test
+  public void batches() {
+    TensorPacker p = new Config().layout(Layout.NCHW).size(24, 20).letterbox(114).build();
+    List<BufferedImage> images = List.of(image(40, 30, BufferedImage.TYPE_INT_RGB),
+        image(13, 37, BufferedImage.TYPE_3BYTE_BGR), image(24, 20, BufferedImage.TYPE_INT_ARGB));
+    int length = p.tensorLength(new IPoint(1, 1));
+    float[] expected = new float[length * images.size()];
+    for (int i = 0; i < images.size(); i++)
+      p.pack(images.get(i), expected, i * length);
+
+    float[] array = new float[expected.length];
+    assertEquals(expected.length, p.pack(images, array));
+    assertArrayEquals(expected, array, 0f);
+
+    // Heap and direct buffers, starting at a nonzero position
+    for (FloatBuffer buffer : new FloatBuffer[] { FloatBuffer.allocate(expected.length + 5),
+        ByteBuffer.allocateDirect((expected.length + 5) * 4).asFloatBuffer() }) {
+      buffer.position(5);
+      p.pack(images, buffer);
+      assertEquals(expected.length + 5, buffer.position());
+      float[] actual = new float[expected.length];
+      buffer.position(5);
+      buffer.get(actual);
+      assertArrayEquals(expected, actual, 0f);
+    }
+  }
+
+  /**
+   * Packer settings, kept so the reference implementation can use them
+   */
+  private static final class Config {
+
+    Config layout(Layout value) {
+      layout = value;
+      return this;
+    }
+
+    Config bgr() {
+      bgr = true;
+      return this;
+    }
+
+    Config channels(int value) {
+      channels = value;
+      return this;
+    }
+
+    Config size(int width, int height) {
+      size = new IPoint(width, height);
+      return this;
+    }
+
+    Config letterbox(int fillValue) {
+      letterbox = true;
+      fill = fillValue;
+      return this;
+    }
+
+    TensorPacker build() {
+      return new TensorPacker().withLayout(layout).withBgr(bgr).withChannels(channels).withSize(size)
+          .withLetterbox(letterbox, fill).withNormalization(mean, std);
+    }
+
+    Layout layout = Layout.NHWC;
+    boolean bgr;
+    int channels = 3;
+    IPoint size;
+    boolean letterbox;
+    int fill;
+    float[] mean = { 0.485f, 0.456f, 0.406f };
+    float[] std = { 0.229f, 0.224f, 0.225f };
+  }
+
+  /**
+   * Compare a packer's output with a straightforward floating point
+   * implementation
+   */
+  private void verify(Config config, BufferedImage image) {
+    float[] actual = config.build().pack(image, null);
+    IPoint imageSize = ImgUtil.size(image);
+    IPoint size = config.size == null ? imageSize : config.size;
+    IRect place = new IRect(0, 0, size.x, size.y);
+    if (config.letterbox) {
+      double scale = Math.min(size.x / (double) imageSize.x, size.y / (double) imageSize.y);
+      int w = (int) Math.round(imageSize.x * scale);
+      int h = (int) Math.round(imageSize.y * scale);
+      place = new IRect((size.x - w) / 2, (size.y - h) / 2, w, h);
+    }
+    boolean resized = place.width != imageSize.x || place.height != imageSize.y;
+    int planeSize = size.x * size.y;
+    assertEquals(planeSize * config.channels, actual.length);
+
+    double minStd = Double.MAX_VALUE;
+    for (float s : config.std)
+      minStd = Math.min(minStd, s);
+    // Resizing uses fixed point weights; allow about an 8-bit level of error
+    double tolerance = (resized ? 1.5 / 255 : 1e-6) / minStd;
+
+    for (int ty = 0; ty < size.y; ty++) {
+      for (int tx = 0; tx < size.x; tx++) {
+        double[] rgb;
+        if (tx < place.x || tx >= place.x + place.width || ty < place.y || ty >= place.y + place.height)
+          rgb = new double[] { config.fill, config.fill, config.fill };
+        else
+          rgb = sample(image, (tx - place.x + 0.5) * imageSize.x / place.width - 0.5,
+              (ty - place.y + 0.5) * imageSize.y / place.height - 0.5);
+        for (int c = 0; c < config.channels; c++) {
+          // The RGB channel for output channel c; a single channel uses green
+          int source = config.channels == 1 ? 1 : (config.bgr ? 2 - c : c);
+          int k = Math.min(config.mean.length - 1, source);
+          double expected = (rgb[source] / 255 - config.mean[k]) / config.std[k];
+          int index = config.layout == Layout.NHWC ? (ty * size.x + tx) * config.channels + c
+              : c * planeSize + ty * size.x + tx;
+          assertEquals("x " + tx + " y " + ty + " c " + c, expected, actual[index], tolerance);
+        }
+      }
+    }
+  }
+
+  /**
+   * Bilinearly sample an image's RGB channels, clamping to its edges
+   */
+  private static double[] sample(BufferedImage image, double x, double y) {
+    x = Math.max(0, Math.min(image.getWidth() - 1, x));
+    y = Math.max(0, Math.min(image.getHeight() - 1, y));
+    int x0 = (int) x;
+    int y0 = (int) y;
+    int x1 = Math.min(x0 + 1, image.getWidth() - 1);
+    int y1 = Math.min(y0 + 1, image.getHeight() - 1);
+    double fx = x - x0;
+    double fy = y - y0;
+    double[] rgb = new double[3];
+    for (int c = 0; c < 3; c++) {
+      int shift = 16 - 8 * c;
+      double top = channel(image, x0, y0, shift) * (1 - fx) + channel(image, x1, y0, shift) * fx;
+      double bottom = channel(image, x0, y1, shift) * (1 - fx) + channel(image, x1, y1, shift) * fx;
+      rgb[c] = top * (1 - fy) + bottom * fy;
+    }
+    return rgb;
+  }
+
+  private static int channel(BufferedImage image, int x, int y, int shift) {
+    return (image.getRGB(x, y) >> shift) & 0xff;
+  }
+
+  private BufferedImage image(int width, int height, int type) {
+    Random r = random();
+    BufferedImage image = new BufferedImage(width, height, type);
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        image.setRGB(x, y, 0xff000000 | r.nextInt(0x1000000));
+    return image;
+  }
+}
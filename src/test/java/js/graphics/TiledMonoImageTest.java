@@ -0,0 +1,129 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import js.geometry.IPoint;
+import js.geometry.IRect;
+import js.graphics.gen.MonoImage;
+import js.testutil.MyTestCase;
+
+public class TiledMonoImageTest extends MyTestCase {
+
+  @Test
+  public void raxRoundTrip() {
+    roundTrip(ImgUtil.EXT_RAX, new IPoint(16, 11));
+  }
+
+  @Test
+  public void jmgRoundTrip() {
+    roundTrip(ImgUtil.EXT_JMG, new IPoint(16, 11));
+  }
+
+  @Test
+  public void tilesLargerThanRaxVersion1() {
+    MonoImage image = randomImage(new IPoint(2600, 5));
+    File directory = generatedFile("wide");
+    TiledMonoImage.write(files(), image, directory, new IPoint(2500, 4), ImgUtil.EXT_RAX);
+    TiledMonoImage tiled = TiledMonoImage.open(directory);
+    assertEquals(new IPoint(2, 2), tiled.gridSize());
+    verifyRegion(image, tiled, new IRect(2490, 1, 110, 4));
+  }
+
+  @Test
+  public void offHeapWrite() {
+    MonoImage image = randomImage(new IPoint(50, 37));
+    File directory = generatedFile("offheap");
+    TiledMonoImage.write(files(), OffHeapMonoImage.from(image), directory, new IPoint(16, 11), ImgUtil.EXT_RAX);
+    verifyRegion(image, TiledMonoImage.open(directory), new IRect(image.size()));
+  }
+
+  @Test
+  public void cacheBudgetEvictsTiles() {
+    MonoImage image = randomImage(new IPoint(50, 37));
+    File directory = generatedFile("tiles");
+    TiledMonoImage.write(files(), image, directory, new IPoint(16, 11), ImgUtil.EXT_RAX);
+    // Room for two full tiles (of 16 x 11 pixels, 2 bytes each), but not three
+    TiledMonoImage tiled = TiledMonoImage.open(directory).withCacheBudget(16 * 11 * 2 * 2 + 100);
+    tiled.tile(0, 0);
+    tiled.tile(1, 0);
+    assertEquals(0L, tiled.cacheMetrics().opt("evictions", 0L));
+    tiled.tile(2, 0);
+    assertEquals(1L, tiled.cacheMetrics().opt("evictions", 0L));
+    assertEquals(2L, tiled.cacheMetrics().opt("entries", 0L));
+    // The least recently used tile was evicted, so reading it again is a miss
+    tiled.tile(0, 0);
+    assertEquals(4L, tiled.cacheMetrics().opt("misses", 0L));
+    tiled.tile(0, 0);
+    assertEquals(1L, tiled.cacheMetrics().opt("hits", 0L));
+
+    // Reading the whole image keeps within the budget
+    verifyRegion(image, tiled, new IRect(image.size()));
+    assertTrue(tiled.cacheMetrics().opt("weight", 0L) <= tiled.cacheMetrics().opt("budget", 0L));
+  }
+
+  private void roundTrip(String extension, IPoint tileSize) {
+    // Neither dimension is a multiple of the tile size, so the last tiles are
+    // partial
+    MonoImage image = randomImage(new IPoint(50, 37));
+    File directory = generatedFile("tiles_" + extension);
+    TiledMonoImage.write(files(), image, directory, tileSize, extension);
+
+    TiledMonoImage tiled = TiledMonoImage.open(directory);
+    assertEquals(image.size(), tiled.size());
+    assertEquals(new IPoint(4, 4), tiled.gridSize());
+    MonoImage lastTile = tiled.tile(3, 3);
+    assertEquals(new IPoint(2, 4), lastTile.size());
+    assertEquals(new IPoint(48, 33), lastTile.offset());
+
+    for (IRect region : new IRect[] { new IRect(image.size()), new IRect(0, 0, 16, 11), new IRect(15, 10, 2, 2),
+        new IRect(5, 7, 40, 25), new IRect(47, 30, 3, 7), new IRect(49, 36, 1, 1) })
+      verifyRegion(image, tiled, region);
+  }
+
+  private static void verifyRegion(MonoImage image, TiledMonoImage tiled, IRect region) {
+    MonoImage result = tiled.read(region);
+    assertEquals(region.size(), result.size());
+    assertEquals(region.location(), result.offset());
+    short[] expected = new short[region.width * region.height];
+    int width = image.size().x;
+    for (int y = 0; y < region.height; y++)
+      System.arraycopy(image.pixels(), (region.y + y) * width + region.x, expected, y * region.width,
+          region.width);
+    assertArrayEquals(expected, result.pixels());
+  }
+
+  private MonoImage randomImage(IPoint size) {
+    short[] pixels = new short[size.product()];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (short) random().nextInt(30000);
+    return MonoImageUtil.construct(size, pixels);
+  }
+}
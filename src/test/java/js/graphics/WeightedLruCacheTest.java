@@ -0,0 +1,126 @@
+/**
+ * MIT License
+ * 
+ * Copyright (c) 2021 Jeff Sember
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ **/
+package js.graphics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import js.json.JSMap;
+import js.testutil.MyTestCase;
+
+public class WeightedLruCacheTest extends MyTestCase {
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    WeightedLruCache<String, String> cache = cache(10);
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    assertEquals("aaaa", cache.get("a"));
+    cache.put("c", "cccc");
+    assertNull(cache.peek("b"));
+    assertEquals("aaaa", cache.peek("a"));
+    assertEquals("cccc", cache.peek("c"));
+    assertEquals(2, cache.size());
+    assertEquals(8, cache.weight());
+    assertEquals(1, metric(cache, "evictions"));
+  }
+
+  @Test
+  public void staysWithinBudget() {
+    WeightedLruCache<String, String> cache = cache(100);
+    for (int i = 0; i < 200; i++) {
+      cache.put("key" + i, "value".substring(0, 1 + i % 5) + i);
+      assertTrue(cache.weight() <= cache.budget());
+    }
+    assertEquals(200 - cache.size(), metric(cache, "evictions"));
+  }
+
+  @Test
+  public void keepsMostRecentHeavyValue() {
+    WeightedLruCache<String, String> cache = cache(5);
+    cache.put("a", "aaaaaaaaaa");
+    assertEquals("aaaaaaaaaa", cache.peek("a"));
+    assertEquals(10, cache.weight());
+    cache.put("b", "bb");
+    assertNull(cache.peek("a"));
+    assertEquals(2, cache.weight());
+  }
+
+  @Test
+  public void replacingAndRemovingAdjustWeight() {
+    WeightedLruCache<String, String> cache = cache(100);
+    cache.put("a", "aaaa");
+    cache.put("a", "aa");
+    assertEquals(2, cache.weight());
+    assertEquals("aa", cache.remove("a"));
+    assertEquals(0, cache.weight());
+    assertNull(cache.remove("a"));
+    cache.put("b", "bbb");
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.weight());
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    WeightedLruCache<String, String> cache = cache(100);
+    assertNull(cache.get("a"));
+    cache.put("a", "aaaa");
+    cache.get("a");
+    cache.get("a");
+    cache.peek("a");
+    cache.peek("b");
+    JSMap m = cache.metrics();
+    assertEquals(2, m.opt("hits", 0L));
+    assertEquals(1, m.opt("misses", 0L));
+    assertEquals(0, m.opt("evictions", 0L));
+    assertEquals(1, m.opt("entries", 0L));
+    assertEquals(4, m.opt("weight", 0L));
+    assertEquals(100, m.opt("budget", 0L));
+  }
+
+  @Test
+  public void loaderCalledOnMiss() {
+    WeightedLruCache<String, String> cache = cache(100);
+    int[] loads = new int[1];
+    for (int i = 0; i < 3; i++)
+      assertEquals("value a", cache.get("a", k -> {
+        loads[0]++;
+        return "value " + k;
+      }));
+    assertEquals(1, loads[0]);
+    assertEquals(2, metric(cache, "hits"));
+    assertEquals(1, metric(cache, "misses"));
+  }
+
+  private static WeightedLruCache<String, String> cache(long budget) {
+    return new WeightedLruCache<>(budget, String::length);
+  }
+
+  private static long metric(WeightedLruCache<?, ?> cache, String key) {
+    return cache.metrics().opt(key, 0L);
+  }
+}